@@ -13,19 +13,16 @@ import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
 import android.support.v7.graphics.Palette;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.view.SurfaceHolder;
 import android.widget.Toast;
+import com.qualcomm.qti.wakescheduler.WakeScheduler;
 
-import java.lang.ref.WeakReference;
 import java.util.Calendar;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Analog watch face with a ticking second hand. In ambient mode, the second hand isn't
@@ -41,17 +38,6 @@ import java.util.concurrent.TimeUnit;
  */
 public class MyWatchFace extends CanvasWatchFaceService {
 
-    /*
-     * Updates rate in milliseconds for interactive mode. We update once a second to advance the
-     * second hand.
-     */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
-
-    /**
-     * Handler message id for updating the time periodically in interactive mode.
-     */
-    private static final int MSG_UPDATE_TIME = 0;
-
     @Override
     public Engine onCreateEngine() {
         return new Engine();
@@ -95,6 +81,21 @@ public class MyWatchFace extends CanvasWatchFaceService {
         private boolean mLowBitAmbient;
         private boolean mBurnInProtection;
 
+        /*
+         * Frames are composited from two cached layers, so that only what moved is drawn again.
+         * The static layer holds the background and ticks, and is redrawn when the surface,
+         * ambient mode or hand colors change. The hands layer holds the static layer with the hour
+         * and minute hands over it, and is redrawn once a minute. Each frame blits the hands
+         * layer and draws the second hand over it.
+         */
+        private Bitmap mStaticLayer;
+        private Canvas mStaticCanvas;
+        private boolean mStaticLayerValid;
+        private Bitmap mHandsLayer;
+        private Canvas mHandsCanvas;
+        /* The minute of the day the hands layer shows, or -1 if it has to be redrawn. */
+        private int mHandsLayerMinute = -1;
+
         private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
@@ -103,8 +104,14 @@ public class MyWatchFace extends CanvasWatchFaceService {
             }
         };
 
-        /* Handler to update the time once a second in interactive mode. */
-        private final Handler mUpdateTimeHandler = new EngineHandler(this);
+        /* Wakes the engine once a second in interactive mode, to advance the second hand. */
+        private final WakeScheduler mWakeScheduler = new WakeScheduler(
+                new WakeScheduler.Callback() {
+                    @Override
+                    public void onWake() {
+                        invalidate();
+                    }
+                });
 
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -115,6 +122,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
                     .build());
 
             mCalendar = Calendar.getInstance();
+            mWakeScheduler.addTickingSecond();
 
             initializeBackground();
             initializeWatchFace();
@@ -176,7 +184,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mWakeScheduler.setActive(false);
             super.onDestroy();
         }
 
@@ -185,6 +193,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
             mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            invalidateLayers();
         }
 
         @Override
@@ -237,6 +246,13 @@ public class MyWatchFace extends CanvasWatchFaceService {
                 mSecondPaint.setShadowLayer(SHADOW_RADIUS, 0, 0, mWatchHandShadowColor);
                 mTickAndCirclePaint.setShadowLayer(SHADOW_RADIUS, 0, 0, mWatchHandShadowColor);
             }
+            invalidateLayers();
+        }
+
+        /* Makes the next frame redraw both cached layers. */
+        private void invalidateLayers() {
+            mStaticLayerValid = false;
+            mHandsLayerMinute = -1;
         }
 
         @Override
@@ -250,6 +266,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
                 mHourPaint.setAlpha(inMuteMode ? 100 : 255);
                 mMinutePaint.setAlpha(inMuteMode ? 100 : 255);
                 mSecondPaint.setAlpha(inMuteMode ? 80 : 255);
+                mHandsLayerMinute = -1;
                 invalidate();
             }
         }
@@ -294,6 +311,12 @@ public class MyWatchFace extends CanvasWatchFaceService {
             if (!mBurnInProtection && !mLowBitAmbient) {
                 initGrayBackgroundBitmap();
             }
+
+            mStaticLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mStaticCanvas = new Canvas(mStaticLayer);
+            mHandsLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mHandsCanvas = new Canvas(mHandsLayer);
+            invalidateLayers();
         }
 
         private void initGrayBackgroundBitmap() {
@@ -336,8 +359,30 @@ public class MyWatchFace extends CanvasWatchFaceService {
             long now = System.currentTimeMillis();
             mCalendar.setTimeInMillis(now);
 
-            drawBackground(canvas);
-            drawWatchFace(canvas);
+            if (!mStaticLayerValid) {
+                mStaticCanvas.drawColor(Color.BLACK);
+                drawBackground(mStaticCanvas);
+                drawTicks(mStaticCanvas);
+                mStaticLayerValid = true;
+                mHandsLayerMinute = -1;
+            }
+
+            int minuteOfDay =
+                    mCalendar.get(Calendar.HOUR_OF_DAY) * 60 + mCalendar.get(Calendar.MINUTE);
+            if (minuteOfDay != mHandsLayerMinute) {
+                mHandsCanvas.drawBitmap(mStaticLayer, 0, 0, null);
+                drawHourAndMinuteHands(mHandsCanvas);
+                mHandsLayerMinute = minuteOfDay;
+            }
+
+            canvas.drawBitmap(mHandsLayer, 0, 0, null);
+            /*
+             * Ensure the "seconds" hand is drawn only when we are in interactive mode.
+             * Otherwise, we only update the watch face once a minute.
+             */
+            if (!mAmbient) {
+                drawSecondHand(canvas);
+            }
         }
 
         private void drawBackground(Canvas canvas) {
@@ -351,7 +396,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
             }
         }
 
-        private void drawWatchFace(Canvas canvas) {
+        private void drawTicks(Canvas canvas) {
 
             /*
              * Draw ticks. Usually you will want to bake this directly into the photo, but in
@@ -369,15 +414,14 @@ public class MyWatchFace extends CanvasWatchFaceService {
                 canvas.drawLine(mCenterX + innerX, mCenterY + innerY,
                         mCenterX + outerX, mCenterY + outerY, mTickAndCirclePaint);
             }
+        }
+
+        private void drawHourAndMinuteHands(Canvas canvas) {
 
             /*
              * These calculations reflect the rotation in degrees per unit of time, e.g.,
              * 360 / 60 = 6 and 360 / 12 = 30.
              */
-            final float seconds =
-                    (mCalendar.get(Calendar.SECOND) + mCalendar.get(Calendar.MILLISECOND) / 1000f);
-            final float secondsRotation = seconds * 6f;
-
             final float minutesRotation = mCalendar.get(Calendar.MINUTE) * 6f;
 
             final float hourHandOffset = mCalendar.get(Calendar.MINUTE) / 2f;
@@ -404,20 +448,6 @@ public class MyWatchFace extends CanvasWatchFaceService {
                     mCenterY - sMinuteHandLength,
                     mMinutePaint);
 
-            /*
-             * Ensure the "seconds" hand is drawn only when we are in interactive mode.
-             * Otherwise, we only update the watch face once a minute.
-             */
-            if (!mAmbient) {
-                canvas.rotate(secondsRotation - minutesRotation, mCenterX, mCenterY);
-                canvas.drawLine(
-                        mCenterX,
-                        mCenterY - CENTER_GAP_AND_CIRCLE_RADIUS,
-                        mCenterX,
-                        mCenterY - mSecondHandLength,
-                        mSecondPaint);
-
-            }
             canvas.drawCircle(
                     mCenterX,
                     mCenterY,
@@ -428,6 +458,22 @@ public class MyWatchFace extends CanvasWatchFaceService {
             canvas.restore();
         }
 
+        private void drawSecondHand(Canvas canvas) {
+            final float seconds =
+                    (mCalendar.get(Calendar.SECOND) + mCalendar.get(Calendar.MILLISECOND) / 1000f);
+            final float secondsRotation = seconds * 6f;
+
+            canvas.save();
+            canvas.rotate(secondsRotation, mCenterX, mCenterY);
+            canvas.drawLine(
+                    mCenterX,
+                    mCenterY - CENTER_GAP_AND_CIRCLE_RADIUS,
+                    mCenterX,
+                    mCenterY - mSecondHandLength,
+                    mSecondPaint);
+            canvas.restore();
+        }
+
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
@@ -463,54 +509,18 @@ public class MyWatchFace extends CanvasWatchFaceService {
         }
 
         /**
-         * Starts/stops the {@link #mUpdateTimeHandler} timer based on the state of the watch face.
+         * Starts/stops the {@link #mWakeScheduler} based on the state of the watch face.
          */
         private void updateTimer() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
-            }
+            mWakeScheduler.setActive(shouldTimerBeRunning());
         }
 
         /**
-         * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer
-         * should only run in active mode.
+         * Returns whether the {@link #mWakeScheduler} should be running. It should only run in
+         * active mode.
          */
         private boolean shouldTimerBeRunning() {
             return isVisible() && !mAmbient;
         }
-
-        /**
-         * Handle updating the time periodically in interactive mode.
-         */
-        private void handleUpdateTimeMessage() {
-            invalidate();
-            if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-            }
-        }
-    }
-
-    private static class EngineHandler extends Handler {
-        private final WeakReference<MyWatchFace.Engine> mWeakReference;
-
-        public EngineHandler(MyWatchFace.Engine reference) {
-            mWeakReference = new WeakReference<>(reference);
-        }
-
-        @Override
-        public void handleMessage(Message msg) {
-            MyWatchFace.Engine engine = mWeakReference.get();
-            if (engine != null) {
-                switch (msg.what) {
-                    case MSG_UPDATE_TIME:
-                        engine.handleUpdateTimeMessage();
-                        break;
-                }
-            }
-        }
     }
 }
@@ -0,0 +1,527 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.decompositioncompiler;
+
+import com.google.android.clockwork.decomposablewatchface.AtlasPacker;
+import com.google.android.clockwork.decomposablewatchface.ImageQuantizer;
+import com.google.android.clockwork.decomposablewatchface.IndexedImage;
+import com.google.android.clockwork.decomposablewatchface.SpriteBounds;
+import com.google.android.clockwork.decomposablewatchface.WireFormat;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.imageio.ImageIO;
+
+/**
+ * Compiles {@link FaceDescription face descriptions} and the drawables they use into binary
+ * decomposition assets, read on the watch by {@code DecompositionCodec.decode(ByteBuffer,
+ * Context)}. The watch then skips building components, and the build fails on a layout that
+ * would not work.
+ *
+ * <p>Usage: {@code DecompositionCompiler --res <res dir> --out <asset dir> <face file>...}
+ * writes {@code <name>.wfd} to the asset directory for each {@code <name>.face}.
+ *
+ * <p>Each face can ask for its images to be processed:
+ *
+ * <ul>
+ *   <li>{@code option trim_hands} crops the transparent padding off images that rotate, and
+ *       shrinks their bounds to match.
+ *   <li>{@code option atlas=<size>} packs the images into pages of at most that many pixels
+ *       square, and has components show their part of a page through an image region. Only our
+ *       own receivers understand image regions; the system sidekick would draw whole pages.
+ *   <li>{@code option bits=<1|2|4|8>} stores each image with the fewest bits per pixel, up to the
+ *       given number, whose PSNR is at least {@code min_psnr} (by default, lossless). Add {@code
+ *       dither} to dither images with more colors than fit.
+ * </ul>
+ *
+ * Images that no option changes are written as drawable names, which the watch turns into
+ * resource icons, the cheapest form to send to the sidekick. Images that were changed but not
+ * quantized are written as PNG.
+ *
+ * <p>Besides parse errors, a face is rejected for duplicate component ids, fonts that are not
+ * defined, missing drawables, bounds that are empty or leave the screen, and font strips that
+ * are smaller than their digits.
+ */
+public final class DecompositionCompiler {
+
+    /** Transparent pixels kept around trimmed hands, so that filtered rotation is unchanged. */
+    private static final int TRIM_MARGIN = 1;
+    /** Empty pixels between images packed into an atlas page. */
+    private static final int ATLAS_PADDING = 1;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final File resDir;
+    private final PrintStream log;
+
+    private DecompositionCompiler(File resDir, PrintStream log) {
+        this.resDir = resDir;
+        this.log = log;
+    }
+
+    public static void main(String[] args) {
+        File resDir = null;
+        File outDir = null;
+        List<File> faces = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--res") && i + 1 < args.length) {
+                resDir = new File(args[++i]);
+            } else if (args[i].equals("--out") && i + 1 < args.length) {
+                outDir = new File(args[++i]);
+            } else {
+                faces.add(new File(args[i]));
+            }
+        }
+        if (resDir == null || outDir == null) {
+            System.err.println("Usage: DecompositionCompiler --res <res dir> --out <asset dir>"
+                    + " <face file>...");
+            System.exit(2);
+        }
+
+        DecompositionCompiler compiler = new DecompositionCompiler(resDir, System.out);
+        try {
+            Files.createDirectories(outDir.toPath());
+            for (File file : faces) {
+                FaceDescription face = FaceDescription.parse(file);
+                byte[] asset = compiler.compile(face, file);
+                Files.write(new File(outDir, face.name + ".wfd").toPath(), asset);
+            }
+        } catch (FaceDescriptionException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("error: " + e);
+            System.exit(1);
+        }
+    }
+
+    /** Pixels that end up as one entry of the image pool. */
+    private static final class PoolImage {
+        /** The drawable the pixels came from, or null for an atlas page. */
+        final String drawable;
+        final int width;
+        final int height;
+        final int[] argb;
+        /** Whether the pixels differ from those of {@link #drawable}. */
+        final boolean changed;
+        /** For a trimmed image, the left, top, right and bottom of the crop within the drawable. */
+        int[] crop;
+        /** Set when the image is packed into an atlas page, which is written instead. */
+        PoolImage page;
+        float[] region;
+
+        PoolImage(String drawable, int width, int height, int[] argb, boolean changed) {
+            this.drawable = drawable;
+            this.width = width;
+            this.height = height;
+            this.argb = argb;
+            this.changed = changed;
+        }
+    }
+
+    /** Returns the encoded decomposition described by {@code face}, read from {@code file}. */
+    byte[] compile(FaceDescription face, File file) throws IOException, FaceDescriptionException {
+        validateStructure(face, file);
+
+        Map<String, PoolImage> imagesByKey = new LinkedHashMap<>();
+        Map<FaceDescription.Component, PoolImage> imageOf = new HashMap<>();
+        Map<FaceDescription.Image, float[]> boundsOf = new HashMap<>();
+        int trimmed = 0;
+        for (FaceDescription.Image image : face.images) {
+            PoolImage source = load(imagesByKey, image.drawable, file, image.line);
+            float[] bounds = image.bounds;
+            if (face.trimHands && image.degreesPerDay != 0f) {
+                String key = image.drawable + "#trimmed";
+                PoolImage trimmedImage = imagesByKey.get(key);
+                if (trimmedImage == null) {
+                    trimmedImage = trim(source);
+                    imagesByKey.put(key, trimmedImage);
+                }
+                if (trimmedImage != source) {
+                    bounds = trimBounds(image.bounds, source, trimmedImage);
+                    source = trimmedImage;
+                    trimmed++;
+                }
+            }
+            imageOf.put(image, source);
+            boundsOf.put(image, bounds);
+        }
+        for (FaceDescription.Font font : face.fonts) {
+            PoolImage source = load(imagesByKey, font.drawable, file, font.line);
+            validateFont(font, source, file);
+            imageOf.put(font, source);
+        }
+        // Trimming may have left untrimmed copies that no component uses, and a hand that had
+        // nothing to trim is listed under both keys.
+        List<PoolImage> used = new ArrayList<>();
+        for (PoolImage image : imagesByKey.values()) {
+            if (imageOf.containsValue(image) && !used.contains(image)) {
+                used.add(image);
+            }
+        }
+
+        List<PoolImage> pool = face.atlasPageSize > 0 ? pack(used, face.atlasPageSize) : used;
+
+        WireFormat.Writer out = new WireFormat.Writer(4096);
+        WireFormat.Writer record = new WireFormat.Writer();
+        out.writeHeader();
+        Map<PoolImage, Long> hashes = new HashMap<>();
+        int indexedCount = 0;
+        int pngCount = 0;
+        double minPsnr = Double.POSITIVE_INFINITY;
+        for (PoolImage image : pool) {
+            IndexedImage indexed = null;
+            double psnr = Double.POSITIVE_INFINITY;
+            for (int bits = 1; bits <= face.maxBitsPerPixel && indexed == null; bits *= 2) {
+                IndexedImage candidate = ImageQuantizer.quantize(
+                        image.argb, image.width, image.height, bits, face.dither);
+                int[] quantized = new int[image.argb.length];
+                candidate.toArgb(quantized);
+                psnr = ImageQuantizer.psnr(image.argb, quantized);
+                if (psnr >= face.minPsnr) {
+                    indexed = candidate;
+                }
+            }
+            int tag;
+            byte[] data;
+            if (indexed != null) {
+                WireFormat.Writer indexedOut = new WireFormat.Writer();
+                indexedOut.writeIndexedImage(indexed);
+                tag = WireFormat.FIELD_POOL_INDEXED;
+                data = indexedOut.toByteArray();
+                indexedCount++;
+                minPsnr = Math.min(minPsnr, psnr);
+            } else if (image.changed) {
+                tag = WireFormat.FIELD_POOL_PNG;
+                data = toPng(image);
+                pngCount++;
+            } else {
+                tag = WireFormat.FIELD_POOL_RESOURCE;
+                data = image.drawable.getBytes(StandardCharsets.UTF_8);
+            }
+            long hash = hash(tag, data);
+            hashes.put(image, hash);
+            record.writeFieldHeader(tag, 8 + data.length);
+            record.writeLong(hash);
+            record.writeBytes(data, 0, data.length);
+        }
+        if (!pool.isEmpty()) {
+            out.writeRecord(WireFormat.RECORD_IMAGE_POOL, record);
+        }
+
+        for (FaceDescription.Image image : face.images) {
+            record.reset();
+            writeImage(record, face, image, imageOf.get(image), boundsOf.get(image), hashes);
+            out.writeRecord(WireFormat.RECORD_IMAGE, record);
+        }
+        for (FaceDescription.Number number : face.numbers) {
+            record.reset();
+            writeNumber(record, face, number);
+            out.writeRecord(WireFormat.RECORD_NUMBER, record);
+        }
+        for (FaceDescription.Font font : face.fonts) {
+            record.reset();
+            writeFont(record, font, imageOf.get(font), hashes);
+            out.writeRecord(WireFormat.RECORD_FONT, record);
+        }
+
+        byte[] asset = out.toByteArray();
+        log.println(face.name + ": " + (face.images.size() + face.fonts.size()
+                + face.numbers.size()) + " components, " + pool.size() + " images ("
+                + trimmed + " trimmed hands, " + indexedCount + " indexed"
+                + (indexedCount == 0 ? ""
+                        : Double.isInfinite(minPsnr) ? ", all lossless"
+                        : String.format(" at %.1fdB or better", minPsnr))
+                + ", " + pngCount + " PNG, " + (pool.size() - indexedCount - pngCount)
+                + " drawable references), " + asset.length + " bytes");
+        return asset;
+    }
+
+    private void validateStructure(FaceDescription face, File file)
+            throws FaceDescriptionException {
+        Set<Integer> ids = new HashSet<>();
+        Set<Integer> fontIds = new HashSet<>();
+        List<FaceDescription.Component> all = new ArrayList<>();
+        all.addAll(face.images);
+        all.addAll(face.fonts);
+        all.addAll(face.numbers);
+        for (FaceDescription.Component component : all) {
+            if (!ids.add(component.id)) {
+                throw new FaceDescriptionException(
+                        file, component.line, "Duplicate component id " + component.id);
+            }
+        }
+        for (FaceDescription.Font font : face.fonts) {
+            fontIds.add(font.id);
+        }
+        for (FaceDescription.Image image : face.images) {
+            float[] b = image.bounds;
+            if (b[0] >= b[2] || b[1] >= b[3]) {
+                throw new FaceDescriptionException(file, image.line, "Bounds are empty");
+            }
+            if (b[0] < 0 || b[1] < 0 || b[2] > face.screenWidth || b[3] > face.screenHeight) {
+                throw new FaceDescriptionException(file, image.line, "Bounds leave the screen");
+            }
+        }
+        for (FaceDescription.Number number : face.numbers) {
+            if (!fontIds.contains(number.fontId)) {
+                throw new FaceDescriptionException(
+                        file, number.line, "No font with id " + number.fontId);
+            }
+            if (number.msPerIncrement <= 0) {
+                throw new FaceDescriptionException(file, number.line, "increment must be positive");
+            }
+            if (number.highestValue < number.lowestValue) {
+                throw new FaceDescriptionException(file, number.line, "highest is below lowest");
+            }
+            float[] p = number.position;
+            if (p != null && (p[0] < 0 || p[1] < 0 || p[0] >= face.screenWidth
+                    || p[1] >= face.screenHeight)) {
+                throw new FaceDescriptionException(file, number.line, "Position is off screen");
+            }
+        }
+    }
+
+    private static void validateFont(FaceDescription.Font font, PoolImage image, File file)
+            throws FaceDescriptionException {
+        if (font.digitSize == null) {
+            if (image.height % font.digitCount != 0) {
+                throw new FaceDescriptionException(file, font.line, font.drawable + " is "
+                        + image.height + " pixels tall, not a multiple of " + font.digitCount
+                        + " digits; give digit_size");
+            }
+            return;
+        }
+        if (image.width < font.digitSize[0]
+                || image.height < font.digitCount * font.digitSize[1]) {
+            throw new FaceDescriptionException(file, font.line, font.drawable + " is "
+                    + image.width + "x" + image.height + ", too small for " + font.digitCount
+                    + " digits of " + font.digitSize[0] + "x" + font.digitSize[1]);
+        }
+    }
+
+    /** Returns the image of {@code drawable}, loading it if this is its first use. */
+    private PoolImage load(Map<String, PoolImage> imagesByKey, String drawable, File file,
+            int line) throws IOException, FaceDescriptionException {
+        PoolImage image = imagesByKey.get(drawable);
+        if (image != null) {
+            return image;
+        }
+        File png = findDrawable(drawable);
+        if (png == null) {
+            throw new FaceDescriptionException(file, line, "No PNG drawable named " + drawable);
+        }
+        BufferedImage bitmap = ImageIO.read(png);
+        if (bitmap == null) {
+            throw new FaceDescriptionException(file, line, "Cannot read " + png);
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        image = new PoolImage(drawable, width, height,
+                bitmap.getRGB(0, 0, width, height, null, 0, width), false);
+        imagesByKey.put(drawable, image);
+        return image;
+    }
+
+    /** Returns {@code res/drawable*\/<name>.png}, preferring the density-independent folder. */
+    private File findDrawable(String name) {
+        File nodpi = new File(new File(resDir, "drawable-nodpi"), name + ".png");
+        if (nodpi.isFile()) {
+            return nodpi;
+        }
+        File[] dirs = resDir.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File png = new File(dir, name + ".png");
+                if (dir.getName().startsWith("drawable") && png.isFile()) {
+                    return png;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns {@code image} cropped to its non-transparent pixels, or itself if it is full. */
+    private static PoolImage trim(PoolImage image) {
+        int[] b = new int[4];
+        if (!SpriteBounds.findOpaqueBounds(
+                        image.argb, image.width, image.height, TRIM_MARGIN, b)
+                || (b[0] == 0 && b[1] == 0 && b[2] == image.width && b[3] == image.height)) {
+            return image;
+        }
+        int width = b[2] - b[0];
+        int height = b[3] - b[1];
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(image.argb, (b[1] + y) * image.width + b[0], argb, y * width, width);
+        }
+        PoolImage trimmed = new PoolImage(image.drawable, width, height, argb, true);
+        trimmed.crop = b;
+        return trimmed;
+    }
+
+    /** Returns {@code bounds} shrunk to show only the part of {@code source} kept by a trim. */
+    private static float[] trimBounds(float[] bounds, PoolImage source, PoolImage trimmed) {
+        float scaleX = (bounds[2] - bounds[0]) / source.width;
+        float scaleY = (bounds[3] - bounds[1]) / source.height;
+        int[] crop = trimmed.crop;
+        return new float[] {
+            bounds[0] + crop[0] * scaleX,
+            bounds[1] + crop[1] * scaleY,
+            bounds[0] + crop[2] * scaleX,
+            bounds[1] + crop[3] * scaleY,
+        };
+    }
+
+    /**
+     * Packs {@code images} into atlas pages and returns the images to pool: the pages, plus any
+     * image that has a page to itself.
+     */
+    private static List<PoolImage> pack(List<PoolImage> images, int pageSize) {
+        int[] widths = new int[images.size()];
+        int[] heights = new int[images.size()];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = images.get(i).width;
+            heights[i] = images.get(i).height;
+        }
+        AtlasPacker.Result result =
+                new AtlasPacker(pageSize, pageSize, ATLAS_PADDING).pack(widths, heights);
+        PoolImage[] pages = new PoolImage[result.getPageCount()];
+        List<PoolImage> pool = new ArrayList<>();
+        for (int i = 0; i < widths.length; i++) {
+            PoolImage image = images.get(i);
+            int p = result.getPage(i);
+            if (result.isAlone(i)) {
+                pages[p] = image;
+                continue;
+            }
+            int pageWidth = result.getPageWidth(p);
+            int pageHeight = result.getPageHeight(p);
+            if (pages[p] == null) {
+                pages[p] = new PoolImage(null, pageWidth, pageHeight,
+                        new int[pageWidth * pageHeight], true);
+            }
+            int x = result.getX(i);
+            int y = result.getY(i);
+            for (int row = 0; row < image.height; row++) {
+                System.arraycopy(image.argb, row * image.width, pages[p].argb,
+                        (y + row) * pageWidth + x, image.width);
+            }
+            image.page = pages[p];
+            image.region = new float[] {
+                (float) x / pageWidth,
+                (float) y / pageHeight,
+                (float) (x + image.width) / pageWidth,
+                (float) (y + image.height) / pageHeight,
+            };
+        }
+        for (PoolImage page : pages) {
+            pool.add(page);
+        }
+        return pool;
+    }
+
+    private static void writeImage(WireFormat.Writer out, FaceDescription face,
+            FaceDescription.Image image, PoolImage source, float[] bounds,
+            Map<PoolImage, Long> hashes) {
+        out.writeIntField(WireFormat.FIELD_COMPONENT_ID, image.id);
+        if (image.zOrder != 0) {
+            out.writeIntField(WireFormat.FIELD_Z_ORDER, image.zOrder);
+        }
+        writeImageReference(out, source, hashes);
+        out.writeRectField(WireFormat.FIELD_BOUNDS,
+                bounds[0] / face.screenWidth, bounds[1] / face.screenHeight,
+                bounds[2] / face.screenWidth, bounds[3] / face.screenHeight);
+        if (image.pivot != null) {
+            out.writePointField(WireFormat.FIELD_PIVOT,
+                    image.pivot[0] / face.screenWidth, image.pivot[1] / face.screenHeight);
+        }
+        writeNonZeroFloat(out, WireFormat.FIELD_DEGREES_PER_DAY, image.degreesPerDay);
+        writeNonZeroFloat(out, WireFormat.FIELD_OFFSET_DEGREES, image.offsetDegrees);
+        writeNonZeroFloat(out, WireFormat.FIELD_DEGREES_PER_STEP, image.degreesPerStep);
+    }
+
+    private static void writeNumber(
+            WireFormat.Writer out, FaceDescription face, FaceDescription.Number number) {
+        out.writeIntField(WireFormat.FIELD_COMPONENT_ID, number.id);
+        if (number.zOrder != 0) {
+            out.writeIntField(WireFormat.FIELD_Z_ORDER, number.zOrder);
+        }
+        out.writeLongField(WireFormat.FIELD_MS_PER_INCREMENT, number.msPerIncrement);
+        out.writeLongField(WireFormat.FIELD_LOWEST_VALUE, number.lowestValue);
+        out.writeLongField(WireFormat.FIELD_HIGHEST_VALUE, number.highestValue);
+        if (number.timeOffsetMs != 0) {
+            out.writeLongField(WireFormat.FIELD_TIME_OFFSET_MS, number.timeOffsetMs);
+        }
+        out.writeIntField(WireFormat.FIELD_MIN_DIGITS_SHOWN, number.minDigitsShown);
+        out.writeIntField(WireFormat.FIELD_FONT_COMPONENT_ID, number.fontId);
+        if (number.position != null) {
+            out.writePointField(WireFormat.FIELD_POSITION,
+                    number.position[0] / face.screenWidth, number.position[1] / face.screenHeight);
+        }
+    }
+
+    private static void writeFont(WireFormat.Writer out, FaceDescription.Font font,
+            PoolImage source, Map<PoolImage, Long> hashes) {
+        out.writeIntField(WireFormat.FIELD_COMPONENT_ID, font.id);
+        writeImageReference(out, source, hashes);
+        out.writeIntField(WireFormat.FIELD_DIGIT_COUNT, font.digitCount);
+        if (font.digitSize != null) {
+            out.writePointField(
+                    WireFormat.FIELD_DIGIT_DIMENSIONS, font.digitSize[0], font.digitSize[1]);
+        }
+    }
+
+    /** Writes the pool reference for {@code image}, and its region if it is on an atlas page. */
+    private static void writeImageReference(
+            WireFormat.Writer out, PoolImage image, Map<PoolImage, Long> hashes) {
+        if (image.page != null) {
+            out.writeLongField(WireFormat.FIELD_IMAGE_HASH, hashes.get(image.page));
+            float[] r = image.region;
+            out.writeRectField(WireFormat.FIELD_IMAGE_REGION, r[0], r[1], r[2], r[3]);
+        } else {
+            out.writeLongField(WireFormat.FIELD_IMAGE_HASH, hashes.get(image));
+        }
+    }
+
+    private static void writeNonZeroFloat(WireFormat.Writer out, int tag, float value) {
+        if (value != 0f) {
+            out.writeFloatField(tag, value);
+        }
+    }
+
+    private static byte[] toPng(PoolImage image) throws IOException {
+        BufferedImage bitmap =
+                new BufferedImage(image.width, image.height, BufferedImage.TYPE_INT_ARGB);
+        bitmap.setRGB(0, 0, image.width, image.height, image.argb, 0, image.width);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(bitmap, "png", out);
+        return out.toByteArray();
+    }
+
+    /** FNV-1a over the pool field, so that equal entries get equal hashes. */
+    private static long hash(int tag, byte[] data) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = (hash ^ tag) * FNV_PRIME;
+        for (byte b : data) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,400 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.decompositioncompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed face description: the components of a watch face decomposition, laid out in screen
+ * pixels, and the options for processing its images.
+ *
+ * <p>A description is a text file with one statement per line. {@code #} starts a comment.
+ *
+ * <pre>
+ *   screen 390 390
+ *   option trim_hands
+ *   option atlas=1024
+ *   option bits=4 min_psnr=40 dither
+ *   image 1 drawable=bg_digital bounds=0,0,390,390 z=1
+ *   image 2 drawable=hour bounds=184,90,206,300 pivot=195,195 degrees_per_day=720
+ *   font 15 drawable=number_big digits=10 digit_size=52,79
+ *   number 20 font=15 increment=1h lowest=0 highest=11 position=15,165 z=2
+ * </pre>
+ *
+ * {@code screen} gives the size in pixels that bounds, pivots and positions are measured in, and
+ * must come first. Durations other than 0 take an {@code ms}, {@code s}, {@code m}, {@code h}
+ * or {@code d} suffix. Image options are described at {@link DecompositionCompiler}.
+ */
+final class FaceDescription {
+
+    /** Fields shared by all components. */
+    abstract static class Component {
+        final int line;
+        int id;
+        int zOrder;
+
+        Component(int line) {
+            this.line = line;
+        }
+    }
+
+    static final class Image extends Component {
+        String drawable;
+        float[] bounds;
+        float[] pivot;
+        float degreesPerDay;
+        float offsetDegrees;
+        float degreesPerStep;
+
+        Image(int line) {
+            super(line);
+        }
+    }
+
+    static final class Font extends Component {
+        String drawable;
+        int digitCount;
+        float[] digitSize;
+
+        Font(int line) {
+            super(line);
+        }
+    }
+
+    static final class Number extends Component {
+        int fontId;
+        long msPerIncrement;
+        long lowestValue;
+        long highestValue;
+        long timeOffsetMs;
+        int minDigitsShown = 1;
+        float[] position;
+
+        Number(int line) {
+            super(line);
+        }
+    }
+
+    final String name;
+    int screenWidth;
+    int screenHeight;
+    boolean trimHands;
+    int atlasPageSize;
+    int maxBitsPerPixel;
+    double minPsnr = Double.POSITIVE_INFINITY;
+    boolean dither;
+    final List<Image> images = new ArrayList<>();
+    final List<Font> fonts = new ArrayList<>();
+    final List<Number> numbers = new ArrayList<>();
+
+    private FaceDescription(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Parses the description in {@code file}.
+     *
+     * @throws FaceDescriptionException if a statement is malformed, or a component is missing a
+     *     required attribute
+     */
+    static FaceDescription parse(File file) throws IOException, FaceDescriptionException {
+        String fileName = file.getName();
+        int dot = fileName.lastIndexOf('.');
+        FaceDescription face = new FaceDescription(dot > 0 ? fileName.substring(0, dot) : fileName);
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (!line.isEmpty()) {
+                face.parseStatement(new Statement(file, i + 1, line));
+            }
+        }
+        if (face.screenWidth == 0) {
+            throw new FaceDescriptionException(file, 1, "Missing screen statement");
+        }
+        return face;
+    }
+
+    private void parseStatement(Statement statement) throws FaceDescriptionException {
+        String keyword = statement.keyword;
+        if (!keyword.equals("screen") && screenWidth == 0) {
+            throw statement.error("The screen statement must come first");
+        }
+        switch (keyword) {
+            case "screen":
+                if (screenWidth != 0) {
+                    throw statement.error("Duplicate screen statement");
+                }
+                screenWidth = statement.positiveInt(statement.word(0));
+                screenHeight = statement.positiveInt(statement.word(1));
+                statement.checkWordCount(2);
+                break;
+            case "option":
+                parseOption(statement);
+                break;
+            case "image":
+                Image image = new Image(statement.line);
+                image.id = statement.id();
+                image.zOrder = statement.optionalInt("z", 0);
+                image.drawable = statement.required("drawable");
+                image.bounds = statement.floats(statement.required("bounds"), 4);
+                String pivot = statement.optional("pivot");
+                image.pivot = pivot != null ? statement.floats(pivot, 2) : null;
+                image.degreesPerDay = statement.optionalFloat("degrees_per_day");
+                image.offsetDegrees = statement.optionalFloat("offset_degrees");
+                image.degreesPerStep = statement.optionalFloat("degrees_per_step");
+                statement.checkAllUsed();
+                images.add(image);
+                break;
+            case "font":
+                Font font = new Font(statement.line);
+                font.id = statement.id();
+                font.drawable = statement.required("drawable");
+                font.digitCount = statement.positiveInt(statement.required("digits"));
+                String digitSize = statement.optional("digit_size");
+                font.digitSize = digitSize != null ? statement.floats(digitSize, 2) : null;
+                statement.checkAllUsed();
+                fonts.add(font);
+                break;
+            case "number":
+                Number number = new Number(statement.line);
+                number.id = statement.id();
+                number.zOrder = statement.optionalInt("z", 0);
+                number.fontId = statement.integer(statement.required("font"));
+                number.msPerIncrement = statement.duration(statement.required("increment"));
+                number.lowestValue = statement.longValue(statement.required("lowest"));
+                number.highestValue = statement.longValue(statement.required("highest"));
+                String timeOffset = statement.optional("time_offset");
+                number.timeOffsetMs = timeOffset != null ? statement.duration(timeOffset) : 0;
+                number.minDigitsShown = statement.optionalInt("min_digits", 1);
+                String position = statement.optional("position");
+                number.position = position != null ? statement.floats(position, 2) : null;
+                statement.checkAllUsed();
+                numbers.add(number);
+                break;
+            default:
+                throw statement.error("Unknown statement " + keyword);
+        }
+    }
+
+    private void parseOption(Statement statement) throws FaceDescriptionException {
+        if (statement.attributes.isEmpty()) {
+            throw statement.error("Empty option statement");
+        }
+        if (statement.has("trim_hands")) {
+            trimHands = statement.flag("trim_hands");
+        }
+        if (statement.has("atlas")) {
+            atlasPageSize = statement.positiveInt(statement.optional("atlas"));
+        }
+        if (statement.has("bits")) {
+            maxBitsPerPixel = statement.positiveInt(statement.optional("bits"));
+            if (maxBitsPerPixel != 1 && maxBitsPerPixel != 2 && maxBitsPerPixel != 4
+                    && maxBitsPerPixel != 8) {
+                throw statement.error("bits must be 1, 2, 4 or 8");
+            }
+        }
+        if (statement.has("min_psnr")) {
+            String value = statement.optional("min_psnr");
+            minPsnr = value.equals("lossless")
+                    ? Double.POSITIVE_INFINITY
+                    : statement.floatValue(value);
+        }
+        if (statement.has("dither")) {
+            dither = statement.flag("dither");
+        }
+        statement.checkAllUsed();
+    }
+
+    /** One line of a description, split into a keyword, plain words and attributes. */
+    private static final class Statement {
+        final File file;
+        final int line;
+        final String keyword;
+        final List<String> words = new ArrayList<>();
+        final Map<String, String> attributes = new HashMap<>();
+
+        Statement(File file, int line, String text) throws FaceDescriptionException {
+            this.file = file;
+            this.line = line;
+            String[] tokens = text.split("\\s+");
+            keyword = tokens[0];
+            for (int i = 1; i < tokens.length; i++) {
+                int equals = tokens[i].indexOf('=');
+                String key = equals >= 0 ? tokens[i].substring(0, equals) : tokens[i];
+                String value = equals >= 0 ? tokens[i].substring(equals + 1) : null;
+                if (equals < 0 && attributes.isEmpty() && isNumber(key)) {
+                    words.add(key);
+                } else if (attributes.containsKey(key)) {
+                    throw error("Duplicate attribute " + key);
+                } else {
+                    attributes.put(key, value);
+                }
+            }
+        }
+
+        FaceDescriptionException error(String message) {
+            return new FaceDescriptionException(file, line, message);
+        }
+
+        String word(int index) throws FaceDescriptionException {
+            if (index >= words.size()) {
+                throw error(keyword + " needs " + (index + 1) + " values");
+            }
+            return words.get(index);
+        }
+
+        void checkWordCount(int count) throws FaceDescriptionException {
+            if (words.size() != count || !attributes.isEmpty()) {
+                throw error(keyword + " takes exactly " + count + " values");
+            }
+        }
+
+        int id() throws FaceDescriptionException {
+            if (words.size() != 1) {
+                throw error(keyword + " needs exactly one component id");
+            }
+            return integer(words.get(0));
+        }
+
+        boolean has(String key) {
+            return attributes.containsKey(key);
+        }
+
+        String required(String key) throws FaceDescriptionException {
+            String value = attributes.remove(key);
+            if (value == null) {
+                throw error(keyword + " needs " + key + "=");
+            }
+            return value;
+        }
+
+        String optional(String key) throws FaceDescriptionException {
+            if (!attributes.containsKey(key)) {
+                return null;
+            }
+            String value = attributes.remove(key);
+            if (value == null) {
+                throw error(key + " needs a value");
+            }
+            return value;
+        }
+
+        boolean flag(String key) throws FaceDescriptionException {
+            String value = attributes.remove(key);
+            if (value == null || value.equals("true")) {
+                return true;
+            }
+            if (value.equals("false")) {
+                return false;
+            }
+            throw error(key + " must be true or false");
+        }
+
+        int optionalInt(String key, int defaultValue) throws FaceDescriptionException {
+            String value = optional(key);
+            return value != null ? integer(value) : defaultValue;
+        }
+
+        float optionalFloat(String key) throws FaceDescriptionException {
+            String value = optional(key);
+            return value != null ? floatValue(value) : 0f;
+        }
+
+        void checkAllUsed() throws FaceDescriptionException {
+            if (!attributes.isEmpty()) {
+                throw error("Unknown attribute " + attributes.keySet().iterator().next());
+            }
+        }
+
+        int integer(String value) throws FaceDescriptionException {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw error("Not an integer: " + value);
+            }
+        }
+
+        int positiveInt(String value) throws FaceDescriptionException {
+            int result = integer(value);
+            if (result <= 0) {
+                throw error("Must be positive: " + value);
+            }
+            return result;
+        }
+
+        long longValue(String value) throws FaceDescriptionException {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw error("Not an integer: " + value);
+            }
+        }
+
+        float floatValue(String value) throws FaceDescriptionException {
+            try {
+                return Float.parseFloat(value);
+            } catch (NumberFormatException e) {
+                throw error("Not a number: " + value);
+            }
+        }
+
+        float[] floats(String value, int count) throws FaceDescriptionException {
+            String[] parts = value.split(",");
+            if (parts.length != count) {
+                throw error("Expected " + count + " comma-separated numbers: " + value);
+            }
+            float[] result = new float[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = floatValue(parts[i]);
+            }
+            return result;
+        }
+
+        /** Parses a duration such as {@code 500ms}, {@code 30s}, {@code 1h} or {@code 30d}. */
+        long duration(String value) throws FaceDescriptionException {
+            long unitMs;
+            String number;
+            if (value.equals("0")) {
+                return 0;
+            } else if (value.endsWith("ms")) {
+                unitMs = 1;
+                number = value.substring(0, value.length() - 2);
+            } else if (value.endsWith("s")) {
+                unitMs = 1000;
+                number = value.substring(0, value.length() - 1);
+            } else if (value.endsWith("m")) {
+                unitMs = 60 * 1000;
+                number = value.substring(0, value.length() - 1);
+            } else if (value.endsWith("h")) {
+                unitMs = 60 * 60 * 1000;
+                number = value.substring(0, value.length() - 1);
+            } else if (value.endsWith("d")) {
+                unitMs = 24 * 60 * 60 * 1000;
+                number = value.substring(0, value.length() - 1);
+            } else {
+                throw error("Duration needs a unit (ms, s, m, h or d): " + value);
+            }
+            return longValue(number) * unitMs;
+        }
+
+        private static boolean isNumber(String token) {
+            return token.matches("-?[0-9]+(\\.[0-9]*)?");
+        }
+    }
+}
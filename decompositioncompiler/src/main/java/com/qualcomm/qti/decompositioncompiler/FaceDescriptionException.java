@@ -0,0 +1,19 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.decompositioncompiler;
+
+import java.io.File;
+
+/** A face description that cannot be compiled, with the line at fault. */
+final class FaceDescriptionException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    FaceDescriptionException(File file, int line, String message) {
+        super(file.getPath() + ":" + line + ": " + message);
+    }
+}
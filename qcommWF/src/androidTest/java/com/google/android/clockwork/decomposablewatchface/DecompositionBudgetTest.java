@@ -0,0 +1,44 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.SCREEN_PX;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.image;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.noise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Icon;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Checks that a face with a full-screen background is degraded to fit a budget. */
+@RunWith(AndroidJUnit4.class)
+public class DecompositionBudgetTest {
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void downscalesFullScreenBackgroundToFit() {
+        WatchFaceDecomposition decomposition = new WatchFaceDecomposition.Builder()
+                .addImageComponents(image(1, Icon.createWithBitmap(noise(SCREEN_PX, SCREEN_PX, 1))))
+                .build();
+        DecompositionBudget budget = new DecompositionBudget.Builder()
+                .setBudgetBytes(SCREEN_PX * SCREEN_PX)
+                .build();
+
+        DecompositionBudget.Fit fit = budget.fit(context, decomposition, 0);
+
+        assertTrue(fit.isWithinBudget());
+        assertEquals(DecompositionBudget.Step.DOWNSCALE_BACKGROUNDS.ordinal() + 1, fit.getLevel());
+        Bitmap background = TextureAtlas.loadBitmap(
+                context, fit.getDecomposition().getImageComponents().get(0).getImage());
+        assertEquals(SCREEN_PX / 2, background.getWidth());
+        assertEquals(1, fit.getDecomposition().getImagePool().size());
+        assertEquals(1, DecompositionCodec.decode(ByteBuffer.wrap(
+                DecompositionCodec.encode(fit.getDecomposition()))).getImagePool().size());
+    }
+}
@@ -0,0 +1,69 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import android.support.test.runner.AndroidJUnit4;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Checks that malformed encodings are rejected as documented. */
+@RunWith(AndroidJUnit4.class)
+public class DecompositionCodecTest {
+
+    @Test
+    public void rejectsTruncatedInput() {
+        byte[] encoded = DecompositionCodec.encode(rightAligned());
+        // Cut inside the only record, as a cut between records still decodes the ones before it.
+        for (int length = WireFormat.HEADER_SIZE + 1; length < encoded.length; length++) {
+            assertRejected(Arrays.copyOf(encoded, length));
+        }
+    }
+
+    @Test
+    public void rejectsUnknownAlignment() {
+        byte[] encoded = DecompositionCodec.encode(rightAligned());
+        int ordinal = indexOf(encoded, new byte[] {
+                (byte) WireFormat.FIELD_ALIGNMENT, 1,
+                (byte) StringComponent.Alignment.RIGHT.ordinal()}) + 2;
+        encoded[ordinal] = (byte) StringComponent.Alignment.values().length;
+        assertRejected(encoded);
+    }
+
+    private static WatchFaceDecomposition rightAligned() {
+        WatchFaceDecomposition decomposition = new WatchFaceDecomposition.Builder()
+                .addStringComponents(new StringComponent.Builder()
+                        .setComponentId(1)
+                        .setFontComponentId(2)
+                        .setStringSourceId(3)
+                        .setAlignment(StringComponent.Alignment.RIGHT)
+                        .build())
+                .buildPartial();
+        assertEquals(1, DecompositionCodec.decode(ByteBuffer.wrap(
+                DecompositionCodec.encode(decomposition))).getStringComponents().size());
+        return decomposition;
+    }
+
+    private static void assertRejected(byte[] encoded) {
+        try {
+            DecompositionCodec.decode(ByteBuffer.wrap(encoded));
+            fail("Decoded " + encoded.length + " malformed bytes");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = data.length - pattern.length; i >= 0; i--) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new AssertionError("Pattern not found");
+    }
+}
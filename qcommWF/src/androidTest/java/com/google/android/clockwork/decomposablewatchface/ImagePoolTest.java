@@ -0,0 +1,140 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.RectF;
+import android.graphics.drawable.Icon;
+import android.os.Parcel;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that images of real size, which a parcel holds as file descriptors rather than inline, can
+ * be pooled, parcelled and encoded.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImagePoolTest {
+
+    /** The width and height of the sidekick's screen, in pixels. */
+    static final int SCREEN_PX = 390;
+
+    /** The largest data a parcel holds inline; anything larger is held as a file descriptor. */
+    private static final int INLINE_PARCEL_BYTES = 16 * 1024;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void poolsFullScreenBitmapsByPixels() {
+        Icon first = Icon.createWithBitmap(noise(SCREEN_PX, SCREEN_PX, 1));
+        Icon copy = Icon.createWithBitmap(noise(SCREEN_PX, SCREEN_PX, 1));
+        Icon other = Icon.createWithBitmap(noise(SCREEN_PX, SCREEN_PX, 2));
+
+        ImagePool pool = new WatchFaceDecomposition.Builder()
+                .addImageComponents(image(1, first), image(2, copy), image(3, other))
+                .build()
+                .getImagePool();
+
+        assertEquals(ImagePool.contentHash(first), ImagePool.contentHash(copy));
+        assertNotEquals(ImagePool.contentHash(first), ImagePool.contentHash(other));
+        assertEquals(2, pool.size());
+        assertEquals(2, pool.getReferenceCount(pool.indexOf(ImagePool.contentHash(first))));
+        assertEquals(SCREEN_PX * SCREEN_PX * 4, pool.getByteCount(0));
+    }
+
+    @Test
+    public void hashesLargeDataIcons() {
+        byte[] png = toPng(noise(SCREEN_PX, SCREEN_PX, 1));
+        assertTrue(png.length > INLINE_PARCEL_BYTES);
+
+        assertEquals(ImagePool.contentHash(ImagePool.createDataIcon(png)),
+                ImagePool.contentHash(ImagePool.createDataIcon(png.clone())));
+    }
+
+    @Test
+    public void encodesFullScreenBitmaps() {
+        Bitmap bitmap = noise(SCREEN_PX, SCREEN_PX, 1);
+        WatchFaceDecomposition decomposition = new WatchFaceDecomposition.Builder()
+                .addImageComponents(image(1, Icon.createWithBitmap(bitmap)),
+                        image(2, Icon.createWithBitmap(bitmap)))
+                .build();
+
+        WatchFaceDecomposition decoded = DecompositionCodec.decode(
+                ByteBuffer.wrap(DecompositionCodec.encode(decomposition)));
+
+        assertEquals(1, decoded.getImagePool().size());
+        assertSamePixels(bitmap, TextureAtlas.loadBitmap(
+                context, decoded.getImageComponents().get(0).getImage()));
+    }
+
+    @Test
+    public void parcelsFullScreenBitmaps() {
+        Bitmap bitmap = noise(SCREEN_PX, SCREEN_PX, 1);
+        WatchFaceDecomposition decomposition = new WatchFaceDecomposition.Builder()
+                .addImageComponents(image(1, Icon.createWithBitmap(bitmap)))
+                .build();
+
+        Parcel parcel = Parcel.obtain();
+        WatchFaceDecomposition unparcelled;
+        try {
+            decomposition.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            unparcelled = WatchFaceDecomposition.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+
+        assertEquals(decomposition.getImagePool().getHash(0),
+                unparcelled.getImagePool().getHash(0));
+    }
+
+    /** Returns a full-bounds image component with id {@code id} showing {@code icon}. */
+    static ImageComponent image(int id, Icon icon) {
+        return new ImageComponent.Builder()
+                .setComponentId(id)
+                .setImage(icon)
+                .setBounds(new RectF(0f, 0f, 1f, 1f))
+                .build();
+    }
+
+    /**
+     * Returns an opaque bitmap of random pixels, which compresses badly, so that even its PNG is
+     * larger than a parcel holds inline. Bitmaps with the same {@code seed} have the same pixels.
+     */
+    static Bitmap noise(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+        }
+        return Bitmap.createBitmap(argb, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    static void assertSamePixels(Bitmap expected, Bitmap actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertArrayEquals(pixels(expected), pixels(actual));
+    }
+
+    private static int[] pixels(Bitmap bitmap) {
+        int[] argb = new int[bitmap.getWidth() * bitmap.getHeight()];
+        bitmap.getPixels(argb, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        return argb;
+    }
+
+    private static byte[] toPng(Bitmap bitmap) {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100 /* ignored for PNG */, png);
+        return png.toByteArray();
+    }
+}
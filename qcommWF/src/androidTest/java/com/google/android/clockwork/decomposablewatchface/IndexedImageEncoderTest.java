@@ -0,0 +1,54 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.SCREEN_PX;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.assertSamePixels;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.image;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.Icon;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Checks that full-screen images survive quantizing, encoding and decoding. */
+@RunWith(AndroidJUnit4.class)
+public class IndexedImageEncoderTest {
+
+    private static final int[] STRIPE_COLORS = {Color.BLACK, Color.WHITE, Color.RED, Color.GREEN};
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void encodesFullScreenIndexedImages() {
+        Bitmap bitmap = stripes(SCREEN_PX, SCREEN_PX);
+        WatchFaceDecomposition decomposition = new WatchFaceDecomposition.Builder()
+                .addImageComponents(image(1, Icon.createWithBitmap(bitmap)))
+                .build();
+
+        IndexedImageEncoder.Result indexed = IndexedImageEncoder.encode(
+                context, decomposition, 2, false /* dither */, Double.POSITIVE_INFINITY);
+        assertNotNull(indexed.findImage(decomposition.getImagePool().getHash(0)));
+
+        // Decoding turns each indexed image back into a full-screen bitmap icon, which is pooled.
+        WatchFaceDecomposition decoded = DecompositionCodec.decode(
+                ByteBuffer.wrap(DecompositionCodec.encode(decomposition, indexed)));
+        assertEquals(1, decoded.getImagePool().size());
+        assertSamePixels(bitmap, TextureAtlas.loadBitmap(
+                context, decoded.getImageComponents().get(0).getImage()));
+    }
+
+    /** Returns an image of vertical stripes in the four {@link #STRIPE_COLORS}. */
+    private static Bitmap stripes(int width, int height) {
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = STRIPE_COLORS[(i % width) / 8 % STRIPE_COLORS.length];
+        }
+        return Bitmap.createBitmap(argb, width, height, Bitmap.Config.ARGB_8888);
+    }
+}
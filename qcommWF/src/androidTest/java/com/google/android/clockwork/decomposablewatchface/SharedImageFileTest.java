@@ -0,0 +1,44 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.SCREEN_PX;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.assertSamePixels;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.image;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.noise;
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Icon;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Checks that a receiver decodes full-screen images passed in a shared file. */
+@RunWith(AndroidJUnit4.class)
+public class SharedImageFileTest {
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void decodesFullScreenSharedImages() throws IOException {
+        Bitmap bitmap = noise(SCREEN_PX, SCREEN_PX, 1);
+        WatchFaceDecomposition decomposition = new WatchFaceDecomposition.Builder()
+                .addImageComponents(image(1, Icon.createWithBitmap(bitmap)))
+                .build();
+
+        WatchFaceDecomposition decoded;
+        try (SharedImageFile shared =
+                SharedImageFile.write(context, decomposition, context.getCacheDir())) {
+            byte[] payload = DecompositionCodec.encode(decomposition, shared);
+            decoded = DecompositionCodec.decode(ByteBuffer.wrap(payload), null,
+                    SharedImageFile.map(shared.getFileDescriptor()));
+        }
+
+        assertEquals(1, decoded.getImagePool().size());
+        assertSamePixels(bitmap, TextureAtlas.loadBitmap(
+                context, decoded.getImageComponents().get(0).getImage()));
+    }
+}
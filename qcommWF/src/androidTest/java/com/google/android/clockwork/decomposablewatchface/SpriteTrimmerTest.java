@@ -0,0 +1,66 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.SCREEN_PX;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.assertSamePixels;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.noise;
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.PointF;
+import android.graphics.RectF;
+import android.graphics.drawable.Icon;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Checks that hands trimmed to sprites larger than a parcel holds inline build and encode. */
+@RunWith(AndroidJUnit4.class)
+public class SpriteTrimmerTest {
+
+    private static final int HAND_WIDTH = 40;
+    private static final int HAND_LENGTH = 180;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void trimsLargeHands() {
+        Bitmap hand = noise(HAND_WIDTH, HAND_LENGTH, 1);
+        WatchFaceDecomposition decomposition = new WatchFaceDecomposition.Builder()
+                .addImageComponents(new ImageComponent.Builder()
+                        .setComponentId(1)
+                        .setImage(Icon.createWithBitmap(fullScreenHand(hand)))
+                        .setBounds(new RectF(0f, 0f, 1f, 1f))
+                        .setPivot(new PointF(0.5f, 0.5f))
+                        .setDegreesPerDay(720f)
+                        .build())
+                .build();
+
+        WatchFaceDecomposition trimmed = SpriteTrimmer.trimHands(context, decomposition);
+        ImageComponent component = trimmed.getImageComponents().get(0);
+        Bitmap sprite = TextureAtlas.loadBitmap(context, component.getImage());
+
+        // One transparent pixel is kept on each side.
+        assertEquals(HAND_WIDTH + 2, sprite.getWidth());
+        assertEquals(HAND_LENGTH + 2, sprite.getHeight());
+        assertSamePixels(hand, Bitmap.createBitmap(sprite, 1, 1, HAND_WIDTH, HAND_LENGTH));
+        assertEquals(1, trimmed.getImagePool().size());
+        assertEquals(sprite.getByteCount(), trimmed.getImagePool().getByteCount(0));
+
+        WatchFaceDecomposition decoded = DecompositionCodec.decode(
+                ByteBuffer.wrap(DecompositionCodec.encode(trimmed)));
+        assertSamePixels(sprite, TextureAtlas.loadBitmap(
+                context, decoded.getImageComponents().get(0).getImage()));
+    }
+
+    /** Returns {@code hand} drawn above the centre of a transparent full-screen bitmap. */
+    private static Bitmap fullScreenHand(Bitmap hand) {
+        Bitmap screen = Bitmap.createBitmap(SCREEN_PX, SCREEN_PX, Bitmap.Config.ARGB_8888);
+        new Canvas(screen).drawBitmap(
+                hand, (SCREEN_PX - HAND_WIDTH) / 2, SCREEN_PX / 2 - HAND_LENGTH, null);
+        return screen;
+    }
+}
@@ -0,0 +1,74 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.SCREEN_PX;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.assertSamePixels;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.image;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.noise;
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.graphics.drawable.Icon;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Checks that a decomposition packed into atlas pages of real size builds and encodes. */
+@RunWith(AndroidJUnit4.class)
+public class TextureAtlasTest {
+
+    /** The page size {@code DecompositionBenchmark} packs with. */
+    private static final int PAGE_SIZE = 1024;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void packsIntoOneFullSizePage() {
+        Bitmap background = noise(SCREEN_PX, SCREEN_PX, 1);
+        Bitmap hand = noise(40, 200, 2);
+        WatchFaceDecomposition decomposition = new WatchFaceDecomposition.Builder()
+                .addImageComponents(image(1, Icon.createWithBitmap(background)),
+                        image(2, Icon.createWithBitmap(hand)),
+                        image(3, Icon.createWithBitmap(hand)))
+                .build();
+
+        TextureAtlas atlas = TextureAtlas.pack(context, decomposition, PAGE_SIZE);
+        WatchFaceDecomposition packed = atlas.getDecomposition();
+
+        assertEquals(1, atlas.getPageCount());
+        assertEquals(1, packed.getImagePool().size());
+        Bitmap page = atlas.getPage(0);
+        assertEquals(page.getByteCount(), packed.getImagePool().getByteCount(0));
+        assertSamePixels(hand, crop(page, packed.getImageComponents().get(1)));
+    }
+
+    @Test
+    public void encodesPackedPages() {
+        WatchFaceDecomposition decomposition = new WatchFaceDecomposition.Builder()
+                .addImageComponents(image(1, Icon.createWithBitmap(noise(SCREEN_PX, SCREEN_PX, 1))),
+                        image(2, Icon.createWithBitmap(noise(40, 200, 2))))
+                .build();
+        TextureAtlas atlas = TextureAtlas.pack(context, decomposition, PAGE_SIZE);
+
+        WatchFaceDecomposition decoded = DecompositionCodec.decode(
+                ByteBuffer.wrap(DecompositionCodec.encode(atlas.getDecomposition())));
+
+        assertEquals(1, decoded.getImagePool().size());
+        assertSamePixels(atlas.getPage(0), TextureAtlas.loadBitmap(
+                context, decoded.getImageComponents().get(0).getImage()));
+    }
+
+    /** Returns the part of {@code page} that {@code component} shows. */
+    private static Bitmap crop(Bitmap page, ImageComponent component) {
+        RectF region = new RectF();
+        component.getImageRegion(region);
+        int left = Math.round(region.left * page.getWidth());
+        int top = Math.round(region.top * page.getHeight());
+        return Bitmap.createBitmap(page, left, top,
+                Math.round(region.right * page.getWidth()) - left,
+                Math.round(region.bottom * page.getHeight()) - top);
+    }
+}
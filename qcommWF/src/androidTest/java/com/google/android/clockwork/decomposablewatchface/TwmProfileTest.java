@@ -0,0 +1,58 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.SCREEN_PX;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.image;
+import static com.google.android.clockwork.decomposablewatchface.ImagePoolTest.noise;
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.PointF;
+import android.graphics.RectF;
+import android.graphics.drawable.Icon;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Checks that the profile of a face with full-screen layers derives and encodes. */
+@RunWith(AndroidJUnit4.class)
+public class TwmProfileTest {
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void mergesFullScreenLayers() {
+        ImageComponent background = new ImageComponent.Builder(
+                image(1, Icon.createWithBitmap(noise(SCREEN_PX, SCREEN_PX, 1))))
+                .setZOrder(1)
+                .build();
+        ImageComponent ring = new ImageComponent.Builder(
+                image(2, Icon.createWithBitmap(noise(SCREEN_PX, SCREEN_PX, 2))))
+                .setZOrder(2)
+                .build();
+        ImageComponent hand = new ImageComponent.Builder()
+                .setComponentId(3)
+                .setZOrder(3)
+                .setImage(Icon.createWithBitmap(noise(20, 180, 3)))
+                .setBounds(new RectF(0.47f, 0.04f, 0.53f, 0.5f))
+                .setPivot(new PointF(0.5f, 0.5f))
+                .setDegreesPerDay(720f)
+                .build();
+        WatchFaceDecomposition decomposition = new WatchFaceDecomposition.Builder()
+                .addImageComponents(background, ring, hand)
+                .build();
+
+        WatchFaceDecomposition profile = TwmProfile.derive(context, decomposition);
+
+        assertEquals(2, profile.getImageComponents().size());
+        assertEquals(2, profile.getImagePool().size());
+        ImageComponent merged = profile.getImageComponents().get(0);
+        assertEquals(background.getComponentId(), merged.getComponentId());
+        Bitmap bitmap = TextureAtlas.loadBitmap(context, merged.getImage());
+        assertEquals(SCREEN_PX, bitmap.getWidth());
+        assertEquals(2, DecompositionCodec.decode(ByteBuffer.wrap(
+                DecompositionCodec.encode(profile))).getImagePool().size());
+    }
+}
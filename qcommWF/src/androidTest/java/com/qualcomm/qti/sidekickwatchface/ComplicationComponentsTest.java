@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.sidekickwatchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.RectF;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+import com.google.android.clockwork.decomposablewatchface.DecompositionCodec;
+import com.google.android.clockwork.decomposablewatchface.WatchFaceDecomposition;
+import com.google.android.clockwork.sidekick.SidekickServiceConstants;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that complications with text and values build a decomposition that encodes and that the
+ * sidekick accepts, with slots large enough that the drawn bitmaps are not parcelled inline.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ComplicationComponentsTest {
+
+    private static final int FACE_PX = 390;
+    private static final int TEXT_ID = 1;
+    private static final int VALUE_ID = 2;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void buildsTextAndValueComponents() {
+        ComplicationComponents complications =
+                new ComplicationComponents(context, new int[] {TEXT_ID, VALUE_ID});
+        complications.setBounds(TEXT_ID, new RectF(0.05f, 0.3f, 0.45f, 0.7f), FACE_PX);
+        complications.setBounds(VALUE_ID, new RectF(0.55f, 0.3f, 0.95f, 0.7f), FACE_PX);
+        complications.setComplicationData(TEXT_ID,
+                new ComplicationData.Builder(ComplicationData.TYPE_SHORT_TEXT)
+                        .setShortText(ComplicationText.plainText("12:34"))
+                        .build());
+        complications.setComplicationData(VALUE_ID,
+                new ComplicationData.Builder(ComplicationData.TYPE_RANGED_VALUE)
+                        .setMinValue(0f)
+                        .setMaxValue(100f)
+                        .setValue(42f)
+                        .build());
+
+        WatchFaceDecomposition.Builder builder = new WatchFaceDecomposition.Builder();
+        complications.addTo(builder);
+        WatchFaceDecomposition decomposition = builder.build();
+
+        assertEquals(1, decomposition.getImageComponents().size());
+        assertEquals(1, decomposition.getNumberComponents().size());
+        assertEquals(1, decomposition.getFontComponents().size());
+        WatchFaceDecomposition decoded =
+                DecompositionCodec.decode(ByteBuffer.wrap(DecompositionCodec.encode(decomposition)));
+        assertEquals(2, decoded.getImagePool().size());
+        FakeSidekickService sidekick = new FakeSidekickService();
+        assertEquals(SidekickServiceConstants.RESULT_OK,
+                sidekick.sendWatchFace(decomposition, true));
+        assertTrue(sidekick.readyToDisplay());
+    }
+}
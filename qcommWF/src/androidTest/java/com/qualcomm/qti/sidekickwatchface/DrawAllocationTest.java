@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.sidekickwatchface;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.wearable.watchface.CanvasWatchFaceService;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import java.lang.reflect.Method;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that each engine's {@code onDraw} allocates nothing once it is warmed up. Each engine is
+ * created, sized and drawn on the main thread, as the system does, onto an offscreen bitmap; the
+ * objects the main thread allocates are counted around every frame.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DrawAllocationTest {
+
+    private static final int SCREEN_PX = 390;
+
+    /** The number of frames counted in each mode. */
+    private static final int FRAMES = 2000;
+
+    /** Frames drawn before counting, so that whatever the first frames cache is not counted. */
+    private static final int WARM_UP_FRAMES = 10;
+
+    /** Time given to background work the warm-up started, such as rendering hand sprites. */
+    private static final long SETTLE_MS = 2000;
+
+    @Test
+    public void analogDrawsWithoutAllocating() throws Exception {
+        assertDrawsWithoutAllocating(new AnalogWatchFace(), false);
+        assertDrawsWithoutAllocating(new AnalogWatchFace(), true);
+    }
+
+    @Test
+    public void complicationDrawsWithoutAllocating() throws Exception {
+        assertDrawsWithoutAllocating(new ComplicationWatchFaceService(), false);
+        assertDrawsWithoutAllocating(new ComplicationWatchFaceService(), true);
+    }
+
+    @Test
+    public void digitalDrawsWithoutAllocating() throws Exception {
+        assertDrawsWithoutAllocating(new DigitalWatchFace(), false);
+        assertDrawsWithoutAllocating(new DigitalWatchFace(), true);
+    }
+
+    private static void assertDrawsWithoutAllocating(
+            CanvasWatchFaceService service, final boolean ambient) throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        Method attachBaseContext =
+                ContextWrapper.class.getDeclaredMethod("attachBaseContext", Context.class);
+        attachBaseContext.setAccessible(true);
+        attachBaseContext.invoke(service, context);
+
+        final Bitmap bitmap =
+                Bitmap.createBitmap(SCREEN_PX, SCREEN_PX, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        final Rect bounds = new Rect(0, 0, SCREEN_PX, SCREEN_PX);
+        final SurfaceHolder holder = new OffscreenHolder(bounds);
+        final CanvasWatchFaceService.Engine engine = service.onCreateEngine();
+        final int[] allocations = new int[FRAMES];
+
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                engine.onCreate(holder);
+                engine.onPropertiesChanged(new Bundle());
+                engine.onSurfaceChanged(holder, PixelFormat.RGBA_8888, SCREEN_PX, SCREEN_PX);
+                engine.onAmbientModeChanged(ambient);
+                for (int i = 0; i < WARM_UP_FRAMES; i++) {
+                    engine.onDraw(canvas, bounds);
+                }
+            }
+        });
+        Thread.sleep(SETTLE_MS);
+
+        try {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    Debug.startAllocCounting();
+                    try {
+                        for (int i = 0; i < FRAMES; i++) {
+                            int count = Debug.getThreadAllocCount();
+                            engine.onDraw(canvas, bounds);
+                            allocations[i] = Debug.getThreadAllocCount() - count;
+                        }
+                    } finally {
+                        Debug.stopAllocCounting();
+                    }
+                }
+            });
+        } finally {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    engine.onDestroy();
+                }
+            });
+            bitmap.recycle();
+        }
+
+        int allocatingFrames = 0;
+        int total = 0;
+        for (int count : allocations) {
+            if (count > 0) {
+                allocatingFrames++;
+                total += count;
+            }
+        }
+        assertEquals(service.getClass().getSimpleName() + (ambient ? " ambient" : " interactive")
+                + " frames that allocated, " + total + " objects in all", 0, allocatingFrames);
+    }
+
+    private static void runOnMainSync(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+
+    /** A holder for a surface the engine never draws on itself, as the test draws it instead. */
+    private static class OffscreenHolder implements SurfaceHolder {
+        private final Rect mFrame;
+
+        OffscreenHolder(Rect frame) {
+            mFrame = frame;
+        }
+
+        @Override
+        public void addCallback(Callback callback) {}
+
+        @Override
+        public void removeCallback(Callback callback) {}
+
+        @Override
+        public boolean isCreating() {
+            return false;
+        }
+
+        @Override
+        public void setType(int type) {}
+
+        @Override
+        public void setFixedSize(int width, int height) {}
+
+        @Override
+        public void setSizeFromLayout() {}
+
+        @Override
+        public void setFormat(int format) {}
+
+        @Override
+        public void setKeepScreenOn(boolean screenOn) {}
+
+        @Override
+        public Canvas lockCanvas() {
+            return null;
+        }
+
+        @Override
+        public Canvas lockCanvas(Rect dirty) {
+            return null;
+        }
+
+        @Override
+        public void unlockCanvasAndPost(Canvas canvas) {}
+
+        @Override
+        public Rect getSurfaceFrame() {
+            return mFrame;
+        }
+
+        @Override
+        public Surface getSurface() {
+            return null;
+        }
+    }
+}
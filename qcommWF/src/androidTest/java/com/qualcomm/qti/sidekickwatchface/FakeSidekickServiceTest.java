@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.sidekickwatchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.graphics.drawable.Icon;
+import android.support.test.runner.AndroidJUnit4;
+import com.google.android.clockwork.decomposablewatchface.ImageComponent;
+import com.google.android.clockwork.decomposablewatchface.WatchFaceDecomposition;
+import com.google.android.clockwork.sidekick.SidekickServiceConstants;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Checks that the fake sidekick reports ready as the real one does. */
+@RunWith(AndroidJUnit4.class)
+public class FakeSidekickServiceTest {
+
+    @Test
+    public void readyOnceHoldingAFaceWithoutControl() {
+        FakeSidekickService service = new FakeSidekickService();
+        assertFalse(service.readyToDisplay());
+
+        ImageComponent background = new ImageComponent.Builder()
+                .setComponentId(1)
+                .setImage(Icon.createWithBitmap(
+                        Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888)))
+                .setBounds(new RectF(0f, 0f, 1f, 1f))
+                .build();
+        WatchFaceDecomposition decomposition = new WatchFaceDecomposition.Builder()
+                .addImageComponents(background)
+                .build();
+        assertEquals(SidekickServiceConstants.RESULT_OK,
+                service.sendWatchFace(decomposition, true));
+
+        assertFalse(service.isControllingDisplay());
+        assertTrue(service.readyToDisplay());
+
+        service.clearWatchFace();
+        assertFalse(service.readyToDisplay());
+    }
+}
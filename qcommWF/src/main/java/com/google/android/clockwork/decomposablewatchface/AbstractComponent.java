@@ -4,19 +4,30 @@ import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+/**
+ * Base class of all decomposition components.
+ *
+ * <p>Components are immutable and keep their fields in plain final members, so reading them is
+ * free of hashing and allocation. The string-keyed {@link Bundle} that the sidekick expects is
+ * only built in {@link #writeToParcel} and only read when a component is created from a parcel.
+ */
 public abstract class AbstractComponent implements Parcelable, WatchFaceDecomposition.Component {
     static final String FIELD_COMPONENT_ID = "component_id";
 
-    final Bundle fields;
+    private final int componentId;
 
-    AbstractComponent(Bundle fields) {
-        this.fields = fields;
+    AbstractComponent(Builder<?> builder) {
+        componentId = builder.componentId;
     }
 
-    AbstractComponent(Parcel in) {
-        fields = in.readBundle(getClass().getClassLoader());
+    AbstractComponent(Bundle fields) {
+        componentId = fields.getInt(FIELD_COMPONENT_ID);
     }
 
+    /** Reads the field bundle written by {@link #writeToParcel}. */
+    static Bundle readFields(Parcel in) {
+        return in.readBundle(AbstractComponent.class.getClassLoader());
+    }
 
     /** @hide */
     @Override
@@ -27,9 +38,19 @@ public abstract class AbstractComponent implements Parcelable, WatchFaceDecompos
     /** @hide */
     @Override
     public void writeToParcel(Parcel dest, int flags) {
+        Bundle fields = new Bundle();
+        writeFields(fields);
         dest.writeBundle(fields);
     }
 
+    /**
+     * Writes every field of this component into {@code fields}. Subclasses add their own fields and
+     * must call through to the superclass.
+     */
+    void writeFields(Bundle fields) {
+        fields.putInt(FIELD_COMPONENT_ID, componentId);
+    }
+
     /**
      * Returns the id for this component. Should be unique across all components in any given {@link
      * WatchFaceDecomposition}.
@@ -37,20 +58,35 @@ public abstract class AbstractComponent implements Parcelable, WatchFaceDecompos
     /** @hide */
     @Override
     public int getComponentId() {
-        return fields.getInt(FIELD_COMPONENT_ID);
+        return componentId;
     }
 
     /** Builder for {@link AbstractComponent} objects. */
     public static abstract class Builder<T extends Builder> {
-        Bundle fields = new Bundle();
+        int componentId;
+        boolean hasComponentId;
+
+        Builder() {}
+
+        Builder(AbstractComponent component) {
+            componentId = component.componentId;
+            hasComponentId = true;
+        }
 
         /**
          * Sets the id for the component. This field is required, and the id must be unique across all
          * components within a {@link WatchFaceDecomposition}.
          */
         public T setComponentId(int componentId) {
-            fields.putInt(FIELD_COMPONENT_ID, componentId);
+            this.componentId = componentId;
+            hasComponentId = true;
             return (T) this;
         }
+
+        void checkComponentId() {
+            if (!hasComponentId) {
+                throw new IllegalStateException("Component id must be provided");
+            }
+        }
     }
 }
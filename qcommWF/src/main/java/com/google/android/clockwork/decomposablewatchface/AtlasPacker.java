@@ -0,0 +1,251 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Packs rectangles into as few pages of bounded size as it can.
+ *
+ * <p>Rectangles are placed tallest first on horizontal shelves: each goes on the first shelf of any
+ * page that is tall enough and has room left, or starts a new shelf, or a new page. A rectangle
+ * larger than a page gets a page of its own, sized to fit it. Pages are trimmed to the area
+ * actually used.
+ *
+ * <p>This class has no Android dependencies so that it can also be used by host-side tools.
+ */
+public final class AtlasPacker {
+
+    private final int maxPageWidth;
+    private final int maxPageHeight;
+    private final int padding;
+
+    /**
+     * @param maxPageWidth the widest a page may be
+     * @param maxPageHeight the tallest a page may be
+     * @param padding empty pixels kept between neighbouring rectangles, so that filtering at the
+     *     edge of one does not sample the next
+     */
+    public AtlasPacker(int maxPageWidth, int maxPageHeight, int padding) {
+        if (maxPageWidth <= 0 || maxPageHeight <= 0 || padding < 0) {
+            throw new IllegalArgumentException("Invalid page size or padding");
+        }
+        this.maxPageWidth = maxPageWidth;
+        this.maxPageHeight = maxPageHeight;
+        this.padding = padding;
+    }
+
+    /** Packs rectangle {@code i} of size {@code widths[i]} by {@code heights[i]} for every i. */
+    public Result pack(final int[] widths, final int[] heights) {
+        if (widths.length != heights.length) {
+            throw new IllegalArgumentException("widths and heights differ in length");
+        }
+        int count = widths.length;
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            if (widths[i] <= 0 || heights[i] <= 0) {
+                throw new IllegalArgumentException("Rectangle " + i + " is empty");
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (heights[a] != heights[b]) {
+                    return heights[b] - heights[a];
+                }
+                return widths[b] - widths[a];
+            }
+        });
+
+        int[] pages = new int[count];
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        ArrayList<Page> pageList = new ArrayList<>();
+        for (int index : order) {
+            int width = widths[index];
+            int height = heights[index];
+            if (width > maxPageWidth || height > maxPageHeight) {
+                Page page = new Page();
+                page.width = width;
+                page.height = height;
+                page.full = true;
+                pages[index] = pageList.size();
+                pageList.add(page);
+                continue;
+            }
+            boolean placed = false;
+            for (int p = 0; p < pageList.size() && !placed; p++) {
+                Page page = pageList.get(p);
+                if (page.full) {
+                    continue;
+                }
+                int shelf = page.findShelf(width, height);
+                if (shelf == -1) {
+                    shelf = page.addShelf(height);
+                }
+                if (shelf != -1) {
+                    pages[index] = p;
+                    xs[index] = page.place(shelf, width);
+                    ys[index] = page.shelfY.get(shelf);
+                    placed = true;
+                }
+            }
+            if (!placed) {
+                Page page = new Page();
+                int shelf = page.addShelf(height);
+                pages[index] = pageList.size();
+                xs[index] = page.place(shelf, width);
+                ys[index] = 0;
+                pageList.add(page);
+            }
+        }
+
+        int[] pageWidths = new int[pageList.size()];
+        int[] pageHeights = new int[pageList.size()];
+        for (int p = 0; p < pageWidths.length; p++) {
+            pageWidths[p] = pageList.get(p).width;
+            pageHeights[p] = pageList.get(p).height;
+        }
+        return new Result(widths.clone(), heights.clone(), pages, xs, ys, pageWidths, pageHeights);
+    }
+
+    /** Shelves of one page under construction. */
+    private final class Page {
+        final ArrayList<Integer> shelfY = new ArrayList<>();
+        final ArrayList<Integer> shelfHeight = new ArrayList<>();
+        final ArrayList<Integer> shelfUsed = new ArrayList<>();
+        int width;
+        int height;
+        /** Set for an oversized page that holds a single rectangle. */
+        boolean full;
+
+        /** Returns the first shelf that can take a {@code width} by {@code height} rectangle. */
+        int findShelf(int width, int height) {
+            for (int s = 0; s < shelfY.size(); s++) {
+                if (height <= shelfHeight.get(s)
+                        && startOf(shelfUsed.get(s)) + width <= maxPageWidth) {
+                    return s;
+                }
+            }
+            return -1;
+        }
+
+        /** Starts a shelf of the given height, or returns -1 if the page has no room for it. */
+        int addShelf(int height) {
+            int y = shelfY.isEmpty() ? 0 : this.height + padding;
+            if (y + height > maxPageHeight) {
+                return -1;
+            }
+            shelfY.add(y);
+            shelfHeight.add(height);
+            shelfUsed.add(0);
+            this.height = y + height;
+            return shelfY.size() - 1;
+        }
+
+        /** Places a rectangle at the end of {@code shelf} and returns its x. */
+        int place(int shelf, int width) {
+            int x = startOf(shelfUsed.get(shelf));
+            shelfUsed.set(shelf, x + width);
+            this.width = Math.max(this.width, x + width);
+            return x;
+        }
+
+        private int startOf(int used) {
+            return used == 0 ? 0 : used + padding;
+        }
+    }
+
+    /** Where each rectangle went, and the size of each page. */
+    public static final class Result {
+        private final int[] widths;
+        private final int[] heights;
+        private final int[] pages;
+        private final int[] xs;
+        private final int[] ys;
+        private final int[] pageWidths;
+        private final int[] pageHeights;
+
+        Result(int[] widths, int[] heights, int[] pages, int[] xs, int[] ys, int[] pageWidths,
+                int[] pageHeights) {
+            this.widths = widths;
+            this.heights = heights;
+            this.pages = pages;
+            this.xs = xs;
+            this.ys = ys;
+            this.pageWidths = pageWidths;
+            this.pageHeights = pageHeights;
+        }
+
+        public int getPageCount() {
+            return pageWidths.length;
+        }
+
+        public int getPageWidth(int page) {
+            return pageWidths[page];
+        }
+
+        public int getPageHeight(int page) {
+            return pageHeights[page];
+        }
+
+        /** Returns the page that rectangle {@code i} was placed on. */
+        public int getPage(int i) {
+            return pages[i];
+        }
+
+        public int getWidth(int i) {
+            return widths[i];
+        }
+
+        public int getHeight(int i) {
+            return heights[i];
+        }
+
+        /** Returns the left edge of rectangle {@code i} within its page. */
+        public int getX(int i) {
+            return xs[i];
+        }
+
+        /** Returns the top edge of rectangle {@code i} within its page. */
+        public int getY(int i) {
+            return ys[i];
+        }
+
+        /** Returns whether rectangle {@code i} has a page to itself, filling it exactly. */
+        public boolean isAlone(int i) {
+            int page = pages[i];
+            return pageWidths[page] == widths[i] && pageHeights[page] == heights[i]
+                    && xs[i] == 0 && ys[i] == 0 && countOnPage(page) == 1;
+        }
+
+        /** Returns the total area of the input rectangles. */
+        public long getInputArea() {
+            long area = 0;
+            for (int i = 0; i < widths.length; i++) {
+                area += (long) widths[i] * heights[i];
+            }
+            return area;
+        }
+
+        /** Returns the total area of all pages. */
+        public long getPageArea() {
+            long area = 0;
+            for (int p = 0; p < pageWidths.length; p++) {
+                area += (long) pageWidths[p] * pageHeights[p];
+            }
+            return area;
+        }
+
+        private int countOnPage(int page) {
+            int count = 0;
+            for (int p : pages) {
+                if (p == page) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
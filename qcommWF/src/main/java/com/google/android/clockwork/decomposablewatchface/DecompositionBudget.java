@@ -0,0 +1,372 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.graphics.drawable.Icon;
+import android.util.LongSparseArray;
+import android.util.SparseBooleanArray;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.WeakHashMap;
+
+/**
+ * Estimates how much memory a {@link WatchFaceDecomposition} takes on the receiver, and degrades a
+ * decomposition that does not fit a budget until it does.
+ *
+ * <p>The estimate assumes the receiver stores each distinct image at the lowest depth its colors
+ * allow: 1, 2, 4 or 8 bits per pixel plus a palette, or 32 bits for images with more than 256
+ * colors. Each component adds {@link #COMPONENT_OVERHEAD_BYTES}.
+ *
+ * <p>Degradation climbs a ladder of {@link Step}s, least noticeable first. Level {@code n} applies
+ * the first {@code n} steps; level 0 is the decomposition as it is. Component ids are kept, so a
+ * degraded decomposition can be sent as an update to one sent before.
+ */
+public final class DecompositionBudget {
+
+    /** The ways a decomposition is degraded, in the order they are applied. */
+    public enum Step {
+        /**
+         * Removes number components that count seconds, and image components that turn once a
+         * minute or faster, together with any font no longer used.
+         */
+        DROP_SECONDS,
+        /** Halves the resolution of static images that cover most of the face. */
+        DOWNSCALE_BACKGROUNDS,
+        /** Quantizes every image with more colors to {@link #REDUCED_BITS_PER_PIXEL}. */
+        REDUCE_PALETTE,
+        /** Removes the image components marked as decorative. */
+        DROP_DECORATIONS,
+    }
+
+    /** The estimated receiver memory taken by a component, apart from its image. */
+    public static final int COMPONENT_OVERHEAD_BYTES = 64;
+
+    /** The palette depth of {@link Step#REDUCE_PALETTE}. */
+    public static final int REDUCED_BITS_PER_PIXEL = 4;
+
+    /** The fraction of the face an image must cover for {@link Step#DOWNSCALE_BACKGROUNDS}. */
+    static final float BACKGROUND_COVERAGE = 0.9f;
+
+    /** A hand that turns once a minute. */
+    static final float SECONDS_HAND_DEGREES_PER_DAY = 360f * 60 * 24;
+
+    static final long SECONDS_NUMBER_MS_PER_INCREMENT = 1000;
+
+    private static final Step[] LADDER = Step.values();
+
+    /** Estimated receiver bytes of each image, by icon. */
+    private static final WeakHashMap<Icon, Integer> imageBytesCache = new WeakHashMap<>();
+
+    private final long budgetBytes;
+    private final int[] decorativeIds;
+
+    private DecompositionBudget(Builder builder) {
+        budgetBytes = builder.budgetBytes;
+        decorativeIds = new int[builder.decorativeIds.size()];
+        for (int i = 0; i < decorativeIds.length; i++) {
+            decorativeIds[i] = builder.decorativeIds.keyAt(i);
+        }
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /** Returns the highest degradation level, at which every step has been applied. */
+    public static int getMaxLevel() {
+        return LADDER.length;
+    }
+
+    /** Returns the step that degradation level {@code level}, from 1, adds. */
+    public static Step getStep(int level) {
+        return LADDER[level - 1];
+    }
+
+    /**
+     * Returns the estimated receiver memory of {@code decomposition}, in bytes. This loads every
+     * image the first time it is seen, so call it off the main thread.
+     */
+    public static long estimateBytes(Context context, WatchFaceDecomposition decomposition) {
+        long total = (long) decomposition.getComponentCount() * COMPONENT_OVERHEAD_BYTES;
+        ImagePool pool = decomposition.getImagePool();
+        for (int i = 0; i < pool.size(); i++) {
+            total += estimateImageBytes(context, pool.getIcon(i));
+        }
+        return total;
+    }
+
+    /**
+     * Returns {@code decomposition} degraded to the lowest level, no lower than {@code minLevel},
+     * at which it fits the budget. If it fits at no level, it is returned at the highest.
+     */
+    public Fit fit(Context context, WatchFaceDecomposition decomposition, int minLevel) {
+        WatchFaceDecomposition degraded = degrade(context, decomposition, minLevel);
+        long bytes = estimateBytes(context, degraded);
+        int level = minLevel;
+        while (bytes > budgetBytes && level < LADDER.length) {
+            level++;
+            degraded = apply(context, degraded, getStep(level));
+            bytes = estimateBytes(context, degraded);
+        }
+        return new Fit(degraded, level, bytes, bytes <= budgetBytes);
+    }
+
+    /** Returns {@code decomposition} with the first {@code level} steps of the ladder applied. */
+    public WatchFaceDecomposition degrade(
+            Context context, WatchFaceDecomposition decomposition, int level) {
+        if (level < 0 || level > LADDER.length) {
+            throw new IllegalArgumentException("No degradation level " + level);
+        }
+        for (int i = 1; i <= level; i++) {
+            decomposition = apply(context, decomposition, getStep(i));
+        }
+        return decomposition;
+    }
+
+    private WatchFaceDecomposition apply(
+            Context context, WatchFaceDecomposition decomposition, Step step) {
+        switch (step) {
+            case DROP_SECONDS:
+                return dropSeconds(decomposition);
+            case DOWNSCALE_BACKGROUNDS:
+                return downscaleBackgrounds(context, decomposition);
+            case REDUCE_PALETTE:
+                return reducePalette(context, decomposition);
+            case DROP_DECORATIONS:
+                return dropDecorations(decomposition);
+            default:
+                throw new IllegalArgumentException("Unknown step " + step);
+        }
+    }
+
+    static WatchFaceDecomposition dropSeconds(WatchFaceDecomposition decomposition) {
+        List<ImageComponent> images = new ArrayList<>();
+        for (ImageComponent image : decomposition.getImageComponents()) {
+            if (Math.abs(image.getDegreesPerDay()) < SECONDS_HAND_DEGREES_PER_DAY) {
+                images.add(image);
+            }
+        }
+        List<NumberComponent> numbers = new ArrayList<>();
+        for (NumberComponent number : decomposition.getNumberComponents()) {
+            if (number.getMsPerIncrement() > SECONDS_NUMBER_MS_PER_INCREMENT) {
+                numbers.add(number);
+            }
+        }
+
+        SparseBooleanArray usedFonts = new SparseBooleanArray();
+        for (NumberComponent number : numbers) {
+            usedFonts.put(number.getFontComponentId(), true);
+        }
+        for (StringComponent string : decomposition.getStringComponents()) {
+            usedFonts.put(string.getFontComponentId(), true);
+        }
+        List<FontComponent> fonts = new ArrayList<>();
+        for (FontComponent font : decomposition.getFontComponents()) {
+            if (usedFonts.get(font.getComponentId())) {
+                fonts.add(font);
+            }
+        }
+        List<ProportionalFontComponent> proportionalFonts = new ArrayList<>();
+        for (ProportionalFontComponent font : decomposition.getProportionalFontComponents()) {
+            if (usedFonts.get(font.getComponentId())) {
+                proportionalFonts.add(font);
+            }
+        }
+        return rebuild(decomposition, images, numbers, fonts, proportionalFonts);
+    }
+
+    private static WatchFaceDecomposition downscaleBackgrounds(
+            Context context, WatchFaceDecomposition decomposition) {
+        List<ImageComponent> images = new ArrayList<>();
+        RectF bounds = new RectF();
+        for (ImageComponent image : decomposition.getImageComponents()) {
+            image.getBounds(bounds);
+            if (image.getDegreesPerDay() != 0f || image.hasImageRegion()
+                    || bounds.width() * bounds.height() < BACKGROUND_COVERAGE) {
+                images.add(image);
+                continue;
+            }
+            Bitmap bitmap = TextureAtlas.loadBitmap(context, image.getImage());
+            if (bitmap.getWidth() < 2 || bitmap.getHeight() < 2) {
+                images.add(image);
+                continue;
+            }
+            Bitmap scaled = Bitmap.createScaledBitmap(
+                    bitmap, bitmap.getWidth() / 2, bitmap.getHeight() / 2, true /* filter */);
+            images.add(new ImageComponent.Builder(image)
+                    .setImage(Icon.createWithBitmap(scaled))
+                    .build());
+        }
+        return rebuild(decomposition, images, decomposition.getNumberComponents(),
+                decomposition.getFontComponents(), decomposition.getProportionalFontComponents());
+    }
+
+    private static WatchFaceDecomposition reducePalette(
+            Context context, WatchFaceDecomposition decomposition) {
+        // Quantize each distinct image once, so that components sharing an image still do.
+        LongSparseArray<Icon> reduced = new LongSparseArray<>();
+        ImagePool pool = decomposition.getImagePool();
+        for (int i = 0; i < pool.size(); i++) {
+            Bitmap bitmap = TextureAtlas.loadBitmap(context, pool.getIcon(i));
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            int[] argb = new int[width * height];
+            bitmap.getPixels(argb, 0, width, 0, 0, width, height);
+            if (countColors(argb, 1 << REDUCED_BITS_PER_PIXEL) <= 1 << REDUCED_BITS_PER_PIXEL) {
+                continue;
+            }
+            IndexedImage image = ImageQuantizer.quantize(
+                    argb, width, height, REDUCED_BITS_PER_PIXEL, true /* dither */);
+            reduced.put(pool.getHash(i), IndexedImageEncoder.toIcon(image));
+        }
+
+        List<ImageComponent> images = new ArrayList<>();
+        for (ImageComponent image : decomposition.getImageComponents()) {
+            Icon icon = reduced.get(ImagePool.contentHash(image.getImage()));
+            images.add(icon == null ? image
+                    : new ImageComponent.Builder(image).setImage(icon).build());
+        }
+        List<FontComponent> fonts = new ArrayList<>();
+        for (FontComponent font : decomposition.getFontComponents()) {
+            Icon icon = reduced.get(ImagePool.contentHash(font.getImage()));
+            fonts.add(icon == null ? font
+                    : new FontComponent.Builder(font).setImage(icon).build());
+        }
+        return rebuild(decomposition, images, decomposition.getNumberComponents(), fonts,
+                decomposition.getProportionalFontComponents());
+    }
+
+    private WatchFaceDecomposition dropDecorations(WatchFaceDecomposition decomposition) {
+        List<ImageComponent> images = new ArrayList<>();
+        for (ImageComponent image : decomposition.getImageComponents()) {
+            if (Arrays.binarySearch(decorativeIds, image.getComponentId()) < 0) {
+                images.add(image);
+            }
+        }
+        return rebuild(decomposition, images, decomposition.getNumberComponents(),
+                decomposition.getFontComponents(), decomposition.getProportionalFontComponents());
+    }
+
+    static WatchFaceDecomposition rebuild(WatchFaceDecomposition decomposition,
+            List<ImageComponent> images, List<NumberComponent> numbers, List<FontComponent> fonts,
+            List<ProportionalFontComponent> proportionalFonts) {
+        return new WatchFaceDecomposition.Builder()
+                .addIdsToDelete(decomposition.getIdsToDelete())
+                .setClearAll(decomposition.isClearAll())
+                .addImageComponents(images.toArray(new ImageComponent[0]))
+                .addNumberComponents(numbers.toArray(new NumberComponent[0]))
+                .addFontComponents(fonts.toArray(new FontComponent[0]))
+                .addStringComponents(decomposition.getStringComponents()
+                        .toArray(new StringComponent[0]))
+                .addProportionalFontComponents(
+                        proportionalFonts.toArray(new ProportionalFontComponent[0]))
+                .buildPartial();
+    }
+
+    private static int estimateImageBytes(Context context, Icon icon) {
+        synchronized (imageBytesCache) {
+            Integer cached = imageBytesCache.get(icon);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Bitmap bitmap = TextureAtlas.loadBitmap(context, icon);
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] argb = new int[width * height];
+        bitmap.getPixels(argb, 0, width, 0, 0, width, height);
+        int colors = countColors(argb, 256);
+        int bytes = width * height * 4;
+        for (int bits = 1; bits <= 8; bits *= 2) {
+            if (colors <= 1 << bits) {
+                bytes = IndexedImage.rowBytes(width, bits) * height + colors * 4;
+                break;
+            }
+        }
+        synchronized (imageBytesCache) {
+            imageBytesCache.put(icon, bytes);
+        }
+        return bytes;
+    }
+
+    /** Returns the number of distinct colors in {@code argb}, or {@code max + 1} if more. */
+    private static int countColors(int[] argb, int max) {
+        int[] sorted = argb.clone();
+        Arrays.sort(sorted);
+        int colors = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                if (++colors > max) {
+                    break;
+                }
+            }
+        }
+        return colors;
+    }
+
+    /** A decomposition degraded to fit a budget. */
+    public static final class Fit {
+        private final WatchFaceDecomposition decomposition;
+        private final int level;
+        private final long estimatedBytes;
+        private final boolean withinBudget;
+
+        Fit(WatchFaceDecomposition decomposition, int level, long estimatedBytes,
+                boolean withinBudget) {
+            this.decomposition = decomposition;
+            this.level = level;
+            this.estimatedBytes = estimatedBytes;
+            this.withinBudget = withinBudget;
+        }
+
+        public WatchFaceDecomposition getDecomposition() {
+            return decomposition;
+        }
+
+        /** Returns the number of ladder steps applied. */
+        public int getLevel() {
+            return level;
+        }
+
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        /** Returns false if the decomposition is over budget even with every step applied. */
+        public boolean isWithinBudget() {
+            return withinBudget;
+        }
+    }
+
+    /** Builder for {@link DecompositionBudget} objects. */
+    public static class Builder {
+        private long budgetBytes = -1;
+        private final SparseBooleanArray decorativeIds = new SparseBooleanArray();
+
+        /** Sets the receiver memory, in bytes, that a decomposition may take. */
+        public Builder setBudgetBytes(long budgetBytes) {
+            this.budgetBytes = budgetBytes;
+            return this;
+        }
+
+        /**
+         * Marks image components that only decorate the face, such as a logo or a ring, to be
+         * dropped by the last step of the ladder.
+         */
+        public Builder addDecorativeIds(int... ids) {
+            for (int id : ids) {
+                decorativeIds.put(id, true);
+            }
+            return this;
+        }
+
+        public DecompositionBudget build() {
+            if (budgetBytes < 0) {
+                throw new IllegalStateException("Budget must be provided");
+            }
+            return new DecompositionBudget(this);
+        }
+    }
+}
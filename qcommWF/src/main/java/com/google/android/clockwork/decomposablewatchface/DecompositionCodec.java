@@ -0,0 +1,726 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import android.content.Context;
+import android.graphics.PointF;
+import android.graphics.RectF;
+import android.graphics.drawable.Icon;
+import android.os.Parcel;
+import android.util.LongSparseArray;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes and decodes {@link WatchFaceDecomposition} objects using the binary layout described in
+ * {@link WireFormat}.
+ *
+ * <p>Unlike the {@link android.os.Parcelable} path, which writes every component as a string-keyed
+ * {@link android.os.Bundle}, this encoding uses the fixed numeric field table and omits fields that
+ * hold their default value. Each distinct image is written once, in an image pool record, and
+ * components refer to it by content hash; see {@link ImagePool}. Decoding reads straight from a
+ * {@link ByteBuffer} into the component builders, and components that refer to the same pooled
+ * image share one {@link Icon}.
+ *
+ * <p>Pooled bitmaps are written as PNG files, since a bitmap parcels its pixels as a file
+ * descriptor that cannot be marshalled, and decoded into data icons. Other icons, such as
+ * resources, are written as their marshalled parcel.
+ *
+ * <p>Pooled images can also be written as low bit depth {@link IndexedImage}s; see {@link
+ * IndexedImageEncoder}. They are decoded back into bitmap icons.
+ *
+ * <p>Or the pixels can be left out of the encoding altogether and passed in a {@link
+ * SharedImageFile}, in which case only each image's place in that file is written.
+ */
+public final class DecompositionCodec {
+    private DecompositionCodec() {}
+
+    /** Encodes {@code decomposition} into a new byte array. */
+    public static byte[] encode(WatchFaceDecomposition decomposition) {
+        return encode(decomposition, null, null);
+    }
+
+    /**
+     * Encodes {@code decomposition} into a new byte array, writing the pooled images that {@code
+     * indexedImages} has a quantized form of in that form.
+     *
+     * @param indexedImages the result of {@link IndexedImageEncoder#encode} for this
+     *     decomposition, or null to write every image as it is
+     */
+    public static byte[] encode(
+            WatchFaceDecomposition decomposition, IndexedImageEncoder.Result indexedImages) {
+        return encode(decomposition, indexedImages, null);
+    }
+
+    /**
+     * Encodes {@code decomposition} into a new byte array, referring to the pooled images that
+     * {@code sharedImages} holds by their place in it instead of writing their pixels. Decode with
+     * {@link #decode(ByteBuffer, Context, ByteBuffer)}.
+     *
+     * @param sharedImages the images of this decomposition, as written by {@link
+     *     SharedImageFile#write}
+     */
+    public static byte[] encode(
+            WatchFaceDecomposition decomposition, SharedImageFile sharedImages) {
+        return encode(decomposition, null, sharedImages);
+    }
+
+    private static byte[] encode(WatchFaceDecomposition decomposition,
+            IndexedImageEncoder.Result indexedImages, SharedImageFile sharedImages) {
+        WireFormat.Writer out = new WireFormat.Writer(1024);
+        WireFormat.Writer record = new WireFormat.Writer();
+        out.writeHeader();
+
+        int[] idsToDelete = decomposition.getIdsToDelete();
+        if (decomposition.isClearAll() || idsToDelete.length > 0) {
+            if (decomposition.isClearAll()) {
+                record.writeByteField(WireFormat.FIELD_CLEAR_ALL, 1);
+            }
+            if (idsToDelete.length > 0) {
+                record.writeFieldHeader(WireFormat.FIELD_IDS_TO_DELETE,
+                        WireFormat.varIntSize(idsToDelete.length) + 4 * idsToDelete.length);
+                record.writeVarInt(idsToDelete.length);
+                for (int id : idsToDelete) {
+                    record.writeInt(id);
+                }
+            }
+            out.writeRecord(WireFormat.RECORD_UPDATE, record);
+        }
+
+        ImagePool pool = decomposition.getImagePool();
+        if (pool.size() > 0) {
+            record.reset();
+            for (int i = 0; i < pool.size(); i++) {
+                int[] shared = sharedImages != null ? sharedImages.find(pool.getHash(i)) : null;
+                if (shared != null) {
+                    record.writeFieldHeader(WireFormat.FIELD_POOL_SHARED, 8 + 3 * 4);
+                    record.writeLong(pool.getHash(i));
+                    record.writeInt(shared[0]);
+                    record.writeInt(shared[1]);
+                    record.writeInt(shared[2]);
+                    continue;
+                }
+                IndexedImage indexed = indexedImages != null
+                        ? indexedImages.findImage(pool.getHash(i))
+                        : null;
+                if (indexed != null) {
+                    record.writeFieldHeader(WireFormat.FIELD_POOL_INDEXED,
+                            8 + WireFormat.indexedImageSize(indexed));
+                    record.writeLong(pool.getHash(i));
+                    record.writeIndexedImage(indexed);
+                    continue;
+                }
+                byte[] file = ImagePool.toImageFile(pool.getIcon(i));
+                if (file != null) {
+                    record.writeFieldHeader(WireFormat.FIELD_POOL_PNG, 8 + file.length);
+                    record.writeLong(pool.getHash(i));
+                    record.writeBytes(file, 0, file.length);
+                    continue;
+                }
+                byte[] icon = ImagePool.marshall(pool.getIcon(i));
+                record.writeFieldHeader(WireFormat.FIELD_POOL_ICON, 8 + icon.length);
+                record.writeLong(pool.getHash(i));
+                record.writeBytes(icon, 0, icon.length);
+            }
+            out.writeRecord(WireFormat.RECORD_IMAGE_POOL, record);
+        }
+
+        for (ImageComponent component : decomposition.getImageComponents()) {
+            record.reset();
+            writeImage(record, component);
+            out.writeRecord(WireFormat.RECORD_IMAGE, record);
+        }
+        for (NumberComponent component : decomposition.getNumberComponents()) {
+            record.reset();
+            writeNumber(record, component);
+            out.writeRecord(WireFormat.RECORD_NUMBER, record);
+        }
+        for (FontComponent component : decomposition.getFontComponents()) {
+            record.reset();
+            writeFont(record, component);
+            out.writeRecord(WireFormat.RECORD_FONT, record);
+        }
+        for (StringComponent component : decomposition.getStringComponents()) {
+            record.reset();
+            writeString(record, component);
+            out.writeRecord(WireFormat.RECORD_STRING, record);
+        }
+        for (ProportionalFontComponent component : decomposition.getProportionalFontComponents()) {
+            record.reset();
+            writeProportionalFont(record, component);
+            out.writeRecord(WireFormat.RECORD_PROPORTIONAL_FONT, record);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a decomposition from the remaining bytes of {@code in}. On return the buffer's
+     * position is at its limit.
+     *
+     * @throws IllegalArgumentException if the data is not an encoded decomposition, or was written
+     *     by a newer, incompatible version of the format
+     */
+    public static WatchFaceDecomposition decode(ByteBuffer in) {
+        return decode(in, null);
+    }
+
+    /**
+     * Decodes a decomposition as by {@link #decode(ByteBuffer)}, resolving images that are given
+     * as drawable resource names against the resources of {@code context}. Such images are written
+     * by the host-side decomposition compiler.
+     *
+     * @param context the context whose package holds the drawables, or null if the data has none
+     * @throws IllegalArgumentException if the data is not an encoded decomposition, was written
+     *     by a newer, incompatible version of the format, or names a drawable that does not exist
+     */
+    public static WatchFaceDecomposition decode(ByteBuffer in, Context context) {
+        return decode(in, context, null);
+    }
+
+    /**
+     * Decodes a decomposition as by {@link #decode(ByteBuffer, Context)}, reading the pixels of
+     * shared images from {@code sharedPixels}.
+     *
+     * @param sharedPixels the mapping of the decomposition's {@link SharedImageFile}, as returned
+     *     by {@link SharedImageFile#map}, or null if it has none
+     * @throws IllegalArgumentException as {@link #decode(ByteBuffer, Context)} does, or if a shared
+     *     image is missing or lies outside {@code sharedPixels}
+     */
+    public static WatchFaceDecomposition decode(
+            ByteBuffer in, Context context, ByteBuffer sharedPixels) {
+        if (in.remaining() < WireFormat.HEADER_SIZE || in.getInt() != WireFormat.MAGIC) {
+            throw new IllegalArgumentException("Not an encoded watch face decomposition");
+        }
+        int version = in.get() & 0xff;
+        if (version > WireFormat.VERSION) {
+            throw new IllegalArgumentException("Unsupported wire format version " + version);
+        }
+
+        try {
+            return decodeRecords(in, context, sharedPixels);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated watch face decomposition", e);
+        }
+    }
+
+    private static WatchFaceDecomposition decodeRecords(
+            ByteBuffer in, Context context, ByteBuffer sharedPixels) {
+        WatchFaceDecomposition.Builder builder = new WatchFaceDecomposition.Builder();
+        LongSparseArray<Icon> pool = new LongSparseArray<>();
+        while (in.hasRemaining()) {
+            int recordType = in.get() & 0xff;
+            int length = WireFormat.readVarInt(in);
+            if (length < 0 || length > in.remaining()) {
+                throw new IllegalArgumentException("Truncated watch face decomposition");
+            }
+            int end = in.position() + length;
+            switch (recordType) {
+                case WireFormat.RECORD_IMAGE:
+                    builder.addImageComponents(readImage(in, end, pool));
+                    break;
+                case WireFormat.RECORD_NUMBER:
+                    builder.addNumberComponents(readNumber(in, end));
+                    break;
+                case WireFormat.RECORD_FONT:
+                    builder.addFontComponents(readFont(in, end, pool));
+                    break;
+                case WireFormat.RECORD_STRING:
+                    builder.addStringComponents(readString(in, end));
+                    break;
+                case WireFormat.RECORD_PROPORTIONAL_FONT:
+                    builder.addProportionalFontComponents(readProportionalFont(in, end, pool));
+                    break;
+                case WireFormat.RECORD_UPDATE:
+                    readUpdate(builder, in, end);
+                    break;
+                case WireFormat.RECORD_IMAGE_POOL:
+                    readImagePool(pool, in, end, context, sharedPixels);
+                    break;
+                default:
+                    // Unknown record from a newer writer; skip it.
+                    break;
+            }
+            in.position(end);
+        }
+        // The encoding may hold a partial update, so fonts are resolved where possible only.
+        return builder.buildPartial();
+    }
+
+    /**
+     * Returns a 64-bit fingerprint of the content of {@code decomposition}. Two decompositions with
+     * the same fingerprint show the same components with the same images, so one that a receiver
+     * already holds need not be sent again.
+     *
+     * <p>Images are hashed once, through {@link ImagePool}, so this is cheap to call again on the
+     * same decomposition. Resource images are identified by package and resource id, which only
+     * stay meaningful while the same build of that package is installed.
+     */
+    public static long fingerprint(WatchFaceDecomposition decomposition) {
+        long hash = ImagePool.FNV_OFFSET_BASIS;
+        hash = ImagePool.fnv1a(hash, new byte[] {(byte) (decomposition.isClearAll() ? 1 : 0)});
+        for (int id : decomposition.getIdsToDelete()) {
+            hash = ImagePool.fnv1a(hash, new byte[] {
+                    (byte) (id >>> 24), (byte) (id >>> 16), (byte) (id >>> 8), (byte) id});
+        }
+        for (AbstractComponent component : decomposition.getImageComponents()) {
+            hash = ImagePool.fnv1a(hash, encodeComponent(component));
+        }
+        for (AbstractComponent component : decomposition.getNumberComponents()) {
+            hash = ImagePool.fnv1a(hash, encodeComponent(component));
+        }
+        for (AbstractComponent component : decomposition.getFontComponents()) {
+            hash = ImagePool.fnv1a(hash, encodeComponent(component));
+        }
+        for (AbstractComponent component : decomposition.getStringComponents()) {
+            hash = ImagePool.fnv1a(hash, encodeComponent(component));
+        }
+        for (AbstractComponent component : decomposition.getProportionalFontComponents()) {
+            hash = ImagePool.fnv1a(hash, encodeComponent(component));
+        }
+        return hash;
+    }
+
+    /**
+     * Encodes a single component as a complete record, with its image written as a content hash
+     * reference. Two components with the same encoding are interchangeable, which {@link
+     * DecompositionDiff} relies on.
+     */
+    static byte[] encodeComponent(AbstractComponent component) {
+        WireFormat.Writer out = new WireFormat.Writer();
+        WireFormat.Writer record = new WireFormat.Writer();
+        if (component instanceof ImageComponent) {
+            writeImage(record, (ImageComponent) component);
+            out.writeRecord(WireFormat.RECORD_IMAGE, record);
+        } else if (component instanceof NumberComponent) {
+            writeNumber(record, (NumberComponent) component);
+            out.writeRecord(WireFormat.RECORD_NUMBER, record);
+        } else if (component instanceof FontComponent) {
+            writeFont(record, (FontComponent) component);
+            out.writeRecord(WireFormat.RECORD_FONT, record);
+        } else if (component instanceof StringComponent) {
+            writeString(record, (StringComponent) component);
+            out.writeRecord(WireFormat.RECORD_STRING, record);
+        } else if (component instanceof ProportionalFontComponent) {
+            writeProportionalFont(record, (ProportionalFontComponent) component);
+            out.writeRecord(WireFormat.RECORD_PROPORTIONAL_FONT, record);
+        } else {
+            throw new IllegalArgumentException("Unknown component type " + component.getClass());
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeDrawableFields(WireFormat.Writer out, DrawableComponent component) {
+        out.writeIntField(WireFormat.FIELD_COMPONENT_ID, component.getComponentId());
+        if (component.getZOrder() != 0) {
+            out.writeIntField(WireFormat.FIELD_Z_ORDER, component.getZOrder());
+        }
+        if (component.getBlinkEnabled()) {
+            out.writeFieldHeader(WireFormat.FIELD_BLINK, 17);
+            out.writeByte(1);
+            out.writeFloat(component.getBlinkPeriodOnMs());
+            out.writeFloat(component.getBlinkPeriodOffMs());
+            out.writeInt(component.getBlinkStartTimeDaysSinceLocalEpoch());
+            out.writeInt(component.getBlinkStartTimeMsSinceMidnight());
+        }
+    }
+
+    private static void writeImage(WireFormat.Writer out, ImageComponent component) {
+        writeDrawableFields(out, component);
+        writeIcon(out, component.getImage());
+        if (component.hasImageRegion()) {
+            writeImageRegion(out, component.getImageRegion());
+        }
+        RectF bounds = component.getBounds();
+        out.writeRectField(WireFormat.FIELD_BOUNDS,
+                bounds.left, bounds.top, bounds.right, bounds.bottom);
+        if (component.hasPivot()) {
+            out.writePointField(
+                    WireFormat.FIELD_PIVOT, component.getPivotX(), component.getPivotY());
+        }
+        writeNonZeroFloat(out, WireFormat.FIELD_DEGREES_PER_DAY, component.getDegreesPerDay());
+        writeNonZeroFloat(out, WireFormat.FIELD_OFFSET_DEGREES, component.getOffsetDegrees());
+        writeNonZeroFloat(out, WireFormat.FIELD_DEGREES_PER_STEP, component.getDegreesPerStep());
+    }
+
+    private static void writeNumber(WireFormat.Writer out, NumberComponent component) {
+        writeDrawableFields(out, component);
+        out.writeLongField(WireFormat.FIELD_MS_PER_INCREMENT, component.getMsPerIncrement());
+        out.writeLongField(WireFormat.FIELD_LOWEST_VALUE, component.getLowestValue());
+        out.writeLongField(WireFormat.FIELD_HIGHEST_VALUE, component.getHighestValue());
+        if (component.getTimeOffsetMs() != 0) {
+            out.writeLongField(WireFormat.FIELD_TIME_OFFSET_MS, component.getTimeOffsetMs());
+        }
+        out.writeIntField(WireFormat.FIELD_MIN_DIGITS_SHOWN, component.getMinDigitsShown());
+        out.writeIntField(WireFormat.FIELD_FONT_COMPONENT_ID, component.getFontComponentId());
+        if (component.hasPosition()) {
+            out.writePointField(WireFormat.FIELD_POSITION,
+                    component.getPositionX(), component.getPositionY());
+        }
+    }
+
+    private static void writeFont(WireFormat.Writer out, FontComponent component) {
+        out.writeIntField(WireFormat.FIELD_COMPONENT_ID, component.getComponentId());
+        writeIcon(out, component.getImage());
+        if (component.hasImageRegion()) {
+            writeImageRegion(out, component.getImageRegion());
+        }
+        out.writeIntField(WireFormat.FIELD_DIGIT_COUNT, component.getDigitCount());
+        if (component.getDigitDimensions() != null) {
+            out.writePointField(WireFormat.FIELD_DIGIT_DIMENSIONS,
+                    component.getDigitWidth(), component.getDigitHeight());
+        }
+    }
+
+    private static void writeString(WireFormat.Writer out, StringComponent component) {
+        writeDrawableFields(out, component);
+        out.writeIntField(WireFormat.FIELD_FONT_COMPONENT_ID, component.getFontComponentId());
+        out.writeIntField(WireFormat.FIELD_STRING_SOURCE_ID, component.getStringSourceId());
+        out.writeByteField(WireFormat.FIELD_ALIGNMENT, component.getAlignment().ordinal());
+        if (component.hasPosition()) {
+            out.writePointField(WireFormat.FIELD_POSITION,
+                    component.getPositionX(), component.getPositionY());
+        }
+    }
+
+    private static void writeProportionalFont(
+            WireFormat.Writer out, ProportionalFontComponent component) {
+        out.writeIntField(WireFormat.FIELD_COMPONENT_ID, component.getComponentId());
+        writeIcon(out, component.getImage());
+        if (component.hasImageRegion()) {
+            writeImageRegion(out, component.getImageRegion());
+        }
+        List<GlyphDescriptor> glyphs = component.getGlyphDescriptors();
+        out.writeFieldHeader(WireFormat.FIELD_GLYPHS,
+                WireFormat.varIntSize(glyphs.size()) + 3 * glyphs.size());
+        out.writeVarInt(glyphs.size());
+        for (GlyphDescriptor glyph : glyphs) {
+            out.writeShort(glyph.width);
+            out.writeByte(glyph.glyphCode);
+        }
+    }
+
+    private static void writeNonZeroFloat(WireFormat.Writer out, int tag, float value) {
+        if (value != 0f) {
+            out.writeFloatField(tag, value);
+        }
+    }
+
+    private static void writeImageRegion(WireFormat.Writer out, RectF region) {
+        out.writeRectField(WireFormat.FIELD_IMAGE_REGION,
+                region.left, region.top, region.right, region.bottom);
+    }
+
+    /** Writes a reference to {@code icon}, whose content is in the image pool record. */
+    private static void writeIcon(WireFormat.Writer out, Icon icon) {
+        out.writeLongField(WireFormat.FIELD_IMAGE_HASH, ImagePool.contentHash(icon));
+    }
+
+    /**
+     * Reads the fields common to every drawable component. Returns false if {@code tag} is not one
+     * of them, in which case nothing has been consumed.
+     */
+    private static boolean readDrawableField(
+            DrawableComponent.Builder<?> builder, int tag, ByteBuffer in) {
+        switch (tag) {
+            case WireFormat.FIELD_COMPONENT_ID:
+                builder.setComponentId(in.getInt());
+                return true;
+            case WireFormat.FIELD_Z_ORDER:
+                builder.setZOrder(in.getInt());
+                return true;
+            case WireFormat.FIELD_BLINK:
+                builder.setBlink(in.get() != 0, in.getFloat(), in.getFloat(), in.getInt(),
+                        in.getInt());
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static ImageComponent readImage(
+            ByteBuffer in, int end, LongSparseArray<Icon> pool) {
+        ImageComponent.Builder builder = new ImageComponent.Builder();
+        while (in.position() < end) {
+            int tag = in.get() & 0xff;
+            int length = WireFormat.readVarInt(in);
+            int fieldEnd = in.position() + length;
+            if (!readDrawableField(builder, tag, in)) {
+                switch (tag) {
+                    case WireFormat.FIELD_IMAGE:
+                        builder.setImage(readIcon(in, length));
+                        break;
+                    case WireFormat.FIELD_IMAGE_HASH:
+                        builder.setImage(readPooledIcon(pool, in));
+                        break;
+                    case WireFormat.FIELD_IMAGE_REGION:
+                        builder.setImageRegion(readRect(in));
+                        break;
+                    case WireFormat.FIELD_BOUNDS:
+                        builder.setBounds(readRect(in));
+                        break;
+                    case WireFormat.FIELD_PIVOT:
+                        builder.setPivot(new PointF(in.getFloat(), in.getFloat()));
+                        break;
+                    case WireFormat.FIELD_DEGREES_PER_DAY:
+                        builder.setDegreesPerDay(in.getFloat());
+                        break;
+                    case WireFormat.FIELD_OFFSET_DEGREES:
+                        builder.setOffsetDegrees(in.getFloat());
+                        break;
+                    case WireFormat.FIELD_DEGREES_PER_STEP:
+                        builder.setDegreesPerStep(in.getFloat());
+                        break;
+                    default:
+                        break;
+                }
+            }
+            in.position(fieldEnd);
+        }
+        return builder.build();
+    }
+
+    private static NumberComponent readNumber(ByteBuffer in, int end) {
+        NumberComponent.Builder builder = new NumberComponent.Builder();
+        while (in.position() < end) {
+            int tag = in.get() & 0xff;
+            int length = WireFormat.readVarInt(in);
+            int fieldEnd = in.position() + length;
+            if (!readDrawableField(builder, tag, in)) {
+                switch (tag) {
+                    case WireFormat.FIELD_MS_PER_INCREMENT:
+                        builder.setMsPerIncrement(in.getLong());
+                        break;
+                    case WireFormat.FIELD_LOWEST_VALUE:
+                        builder.setLowestValue(in.getLong());
+                        break;
+                    case WireFormat.FIELD_HIGHEST_VALUE:
+                        builder.setHighestValue(in.getLong());
+                        break;
+                    case WireFormat.FIELD_TIME_OFFSET_MS:
+                        builder.setTimeOffsetMs(in.getLong());
+                        break;
+                    case WireFormat.FIELD_MIN_DIGITS_SHOWN:
+                        builder.setMinDigitsShown(in.getInt());
+                        break;
+                    case WireFormat.FIELD_FONT_COMPONENT_ID:
+                        builder.setFontComponentId(in.getInt());
+                        break;
+                    case WireFormat.FIELD_POSITION:
+                        builder.setPosition(new PointF(in.getFloat(), in.getFloat()));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            in.position(fieldEnd);
+        }
+        return builder.build();
+    }
+
+    private static FontComponent readFont(
+            ByteBuffer in, int end, LongSparseArray<Icon> pool) {
+        FontComponent.Builder builder = new FontComponent.Builder();
+        while (in.position() < end) {
+            int tag = in.get() & 0xff;
+            int length = WireFormat.readVarInt(in);
+            int fieldEnd = in.position() + length;
+            switch (tag) {
+                case WireFormat.FIELD_COMPONENT_ID:
+                    builder.setComponentId(in.getInt());
+                    break;
+                case WireFormat.FIELD_IMAGE:
+                    builder.setImage(readIcon(in, length));
+                    break;
+                case WireFormat.FIELD_IMAGE_HASH:
+                    builder.setImage(readPooledIcon(pool, in));
+                    break;
+                case WireFormat.FIELD_IMAGE_REGION:
+                    builder.setImageRegion(readRect(in));
+                    break;
+                case WireFormat.FIELD_DIGIT_COUNT:
+                    builder.setDigitCount(in.getInt());
+                    break;
+                case WireFormat.FIELD_DIGIT_DIMENSIONS:
+                    builder.setDigitDimensions(new PointF(in.getFloat(), in.getFloat()));
+                    break;
+                default:
+                    break;
+            }
+            in.position(fieldEnd);
+        }
+        return builder.build();
+    }
+
+    private static StringComponent readString(ByteBuffer in, int end) {
+        StringComponent.Builder builder = new StringComponent.Builder();
+        while (in.position() < end) {
+            int tag = in.get() & 0xff;
+            int length = WireFormat.readVarInt(in);
+            int fieldEnd = in.position() + length;
+            if (!readDrawableField(builder, tag, in)) {
+                switch (tag) {
+                    case WireFormat.FIELD_FONT_COMPONENT_ID:
+                        builder.setFontComponentId(in.getInt());
+                        break;
+                    case WireFormat.FIELD_STRING_SOURCE_ID:
+                        builder.setStringSourceId(in.getInt());
+                        break;
+                    case WireFormat.FIELD_ALIGNMENT:
+                        StringComponent.Alignment[] alignments =
+                                StringComponent.Alignment.values();
+                        int alignment = in.get() & 0xff;
+                        if (alignment >= alignments.length) {
+                            throw new IllegalArgumentException("Unknown alignment " + alignment);
+                        }
+                        builder.setAlignment(alignments[alignment]);
+                        break;
+                    case WireFormat.FIELD_POSITION:
+                        builder.setPosition(new PointF(in.getFloat(), in.getFloat()));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            in.position(fieldEnd);
+        }
+        return builder.build();
+    }
+
+    private static ProportionalFontComponent readProportionalFont(
+            ByteBuffer in, int end, LongSparseArray<Icon> pool) {
+        ProportionalFontComponent.Builder builder = new ProportionalFontComponent.Builder();
+        while (in.position() < end) {
+            int tag = in.get() & 0xff;
+            int length = WireFormat.readVarInt(in);
+            int fieldEnd = in.position() + length;
+            switch (tag) {
+                case WireFormat.FIELD_COMPONENT_ID:
+                    builder.setComponentId(in.getInt());
+                    break;
+                case WireFormat.FIELD_IMAGE:
+                    builder.setImage(readIcon(in, length));
+                    break;
+                case WireFormat.FIELD_IMAGE_HASH:
+                    builder.setImage(readPooledIcon(pool, in));
+                    break;
+                case WireFormat.FIELD_IMAGE_REGION:
+                    builder.setImageRegion(readRect(in));
+                    break;
+                case WireFormat.FIELD_GLYPHS:
+                    int count = WireFormat.readVarInt(in);
+                    ArrayList<GlyphDescriptor> glyphs = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        glyphs.add(new GlyphDescriptor(in.getShort(), in.get()));
+                    }
+                    builder.setGlyphDescriptors(glyphs);
+                    break;
+                default:
+                    break;
+            }
+            in.position(fieldEnd);
+        }
+        return builder.build();
+    }
+
+    private static void readUpdate(WatchFaceDecomposition.Builder builder, ByteBuffer in, int end) {
+        while (in.position() < end) {
+            int tag = in.get() & 0xff;
+            int length = WireFormat.readVarInt(in);
+            int fieldEnd = in.position() + length;
+            switch (tag) {
+                case WireFormat.FIELD_CLEAR_ALL:
+                    builder.setClearAll(in.get() != 0);
+                    break;
+                case WireFormat.FIELD_IDS_TO_DELETE:
+                    int[] ids = new int[WireFormat.readVarInt(in)];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = in.getInt();
+                    }
+                    builder.addIdsToDelete(ids);
+                    break;
+                default:
+                    break;
+            }
+            in.position(fieldEnd);
+        }
+    }
+
+    private static RectF readRect(ByteBuffer in) {
+        return new RectF(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+    }
+
+    private static void readImagePool(LongSparseArray<Icon> pool, ByteBuffer in, int end,
+            Context context, ByteBuffer sharedPixels) {
+        while (in.position() < end) {
+            int tag = in.get() & 0xff;
+            int length = WireFormat.readVarInt(in);
+            int fieldEnd = in.position() + length;
+            if (tag == WireFormat.FIELD_POOL_ICON) {
+                long hash = in.getLong();
+                pool.put(hash, readIcon(in, length - 8));
+            } else if (tag == WireFormat.FIELD_POOL_INDEXED) {
+                long hash = in.getLong();
+                pool.put(hash, IndexedImageEncoder.toIcon(
+                        WireFormat.readIndexedImage(in, length - 8)));
+            } else if (tag == WireFormat.FIELD_POOL_RESOURCE) {
+                long hash = in.getLong();
+                pool.put(hash, readResourceIcon(in, length - 8, context));
+            } else if (tag == WireFormat.FIELD_POOL_PNG) {
+                long hash = in.getLong();
+                byte[] data = new byte[length - 8];
+                in.get(data);
+                pool.put(hash, ImagePool.createDataIcon(data));
+            } else if (tag == WireFormat.FIELD_POOL_SHARED) {
+                long hash = in.getLong();
+                if (sharedPixels == null) {
+                    throw new IllegalArgumentException("No shared file for shared images");
+                }
+                pool.put(hash, SharedImageFile.createIcon(
+                        sharedPixels, in.getInt(), in.getInt(), in.getInt()));
+            }
+            in.position(fieldEnd);
+        }
+    }
+
+    /**
+     * Returns the pooled icon whose content hash is next in {@code in}. Components that show the
+     * same image share one {@link Icon} instance.
+     */
+    private static Icon readPooledIcon(LongSparseArray<Icon> pool, ByteBuffer in) {
+        long hash = in.getLong();
+        Icon icon = pool.get(hash);
+        if (icon == null) {
+            throw new IllegalArgumentException("Image " + Long.toHexString(hash) + " not in pool");
+        }
+        return icon;
+    }
+
+    private static Icon readResourceIcon(ByteBuffer in, int length, Context context) {
+        byte[] name = new byte[length];
+        in.get(name);
+        String drawable = new String(name, StandardCharsets.UTF_8);
+        if (context == null) {
+            throw new IllegalArgumentException("No context to load drawable " + drawable);
+        }
+        int id = context.getResources()
+                .getIdentifier(drawable, "drawable", context.getPackageName());
+        if (id == 0) {
+            throw new IllegalArgumentException("No drawable named " + drawable);
+        }
+        return Icon.createWithResource(context, id);
+    }
+
+    private static Icon readIcon(ByteBuffer in, int length) {
+        byte[] data = new byte[length];
+        in.get(data);
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(data, 0, length);
+            parcel.setDataPosition(0);
+            return Icon.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
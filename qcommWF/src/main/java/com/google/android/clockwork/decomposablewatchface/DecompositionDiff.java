@@ -0,0 +1,203 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import android.util.SparseArray;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The smallest update that turns a previously sent {@link WatchFaceDecomposition} into a new one.
+ *
+ * <p>Components are matched by id and compared by their {@link DecompositionCodec} encoding. The
+ * update holds the components that changed. If there is no previous decomposition, or every
+ * component changed, the update is the whole new decomposition, and should be sent with {@code
+ * shouldReplace} true.
+ *
+ * <p>The system's {@code ISidekickService} only replaces components whose ids it already holds,
+ * so for it any change to the set of ids, or to a component's type, also makes the update the
+ * whole new decomposition. Receivers that understand {@link WatchFaceDecomposition#getIdsToDelete}
+ * and {@link WatchFaceDecomposition#isClearAll} can be sent partial updates that add components,
+ * and remove those that were dropped or whose type changed; a whole decomposition sent to them
+ * has {@code isClearAll()} set.
+ */
+public final class DecompositionDiff {
+
+    private final WatchFaceDecomposition update;
+    private final boolean shouldReplace;
+    private final int changedCount;
+    private final int deletedCount;
+
+    private DecompositionDiff(WatchFaceDecomposition update, boolean shouldReplace,
+            int changedCount, int deletedCount) {
+        this.update = update;
+        this.shouldReplace = shouldReplace;
+        this.changedCount = changedCount;
+        this.deletedCount = deletedCount;
+    }
+
+    /**
+     * Computes the update from {@code previous} to {@code next} for the system's sidekick, which
+     * only replaces components it already holds.
+     *
+     * @param previous the decomposition the receiver currently holds, or null if unknown
+     */
+    public static DecompositionDiff compute(
+            WatchFaceDecomposition previous, WatchFaceDecomposition next) {
+        return compute(previous, next, false);
+    }
+
+    /**
+     * Computes the update from {@code previous} to {@code next}.
+     *
+     * @param previous the decomposition the receiver currently holds, or null if unknown
+     * @param changesIds whether the receiver applies added components, ids to delete and clear-all
+     */
+    public static DecompositionDiff compute(
+            WatchFaceDecomposition previous, WatchFaceDecomposition next, boolean changesIds) {
+        if (previous == null) {
+            return replaceAll(next, changesIds);
+        }
+
+        SparseArray<byte[]> previousEncodings = new SparseArray<>();
+        addEncodings(previous.getImageComponents(), previousEncodings);
+        addEncodings(previous.getNumberComponents(), previousEncodings);
+        addEncodings(previous.getFontComponents(), previousEncodings);
+        addEncodings(previous.getStringComponents(), previousEncodings);
+        addEncodings(previous.getProportionalFontComponents(), previousEncodings);
+        int previousCount = previousEncodings.size();
+
+        WatchFaceDecomposition.Builder builder = new WatchFaceDecomposition.Builder();
+        int changed = 0;
+        int unchanged = 0;
+        for (ImageComponent component : next.getImageComponents()) {
+            if (hasChanged(component, previousEncodings, builder)) {
+                builder.addImageComponents(component);
+                changed++;
+            } else {
+                unchanged++;
+            }
+        }
+        for (NumberComponent component : next.getNumberComponents()) {
+            if (hasChanged(component, previousEncodings, builder)) {
+                builder.addNumberComponents(component);
+                changed++;
+            } else {
+                unchanged++;
+            }
+        }
+        for (FontComponent component : next.getFontComponents()) {
+            if (hasChanged(component, previousEncodings, builder)) {
+                builder.addFontComponents(component);
+                changed++;
+            } else {
+                unchanged++;
+            }
+        }
+        for (StringComponent component : next.getStringComponents()) {
+            if (hasChanged(component, previousEncodings, builder)) {
+                builder.addStringComponents(component);
+                changed++;
+            } else {
+                unchanged++;
+            }
+        }
+        for (ProportionalFontComponent component : next.getProportionalFontComponents()) {
+            if (hasChanged(component, previousEncodings, builder)) {
+                builder.addProportionalFontComponents(component);
+                changed++;
+            } else {
+                unchanged++;
+            }
+        }
+
+        // hasChanged() removes every matched id, so what is left was dropped from next.
+        for (int i = 0; i < previousEncodings.size(); i++) {
+            builder.addIdsToDelete(previousEncodings.keyAt(i));
+        }
+
+        if (unchanged == 0 && previousCount > 0) {
+            return replaceAll(next, changesIds);
+        }
+        // Unchanged fonts are not resent, so the update may reference fonts the receiver holds.
+        WatchFaceDecomposition update = builder.buildPartial();
+        int added = count(next) - (previousCount - previousEncodings.size());
+        if (!changesIds && (added > 0 || update.getIdsToDelete().length > 0)) {
+            return replaceAll(next, false);
+        }
+        return new DecompositionDiff(update, false, changed, update.getIdsToDelete().length);
+    }
+
+    /** Returns the decomposition to send. */
+    public WatchFaceDecomposition getUpdate() {
+        return update;
+    }
+
+    /** Returns the {@code shouldReplace} argument to send {@link #getUpdate()} with. */
+    public boolean shouldReplace() {
+        return shouldReplace;
+    }
+
+    /** Returns true if the receiver already holds the new decomposition and nothing needs sending. */
+    public boolean isEmpty() {
+        return !shouldReplace && changedCount == 0 && deletedCount == 0;
+    }
+
+    /** Returns the number of components in {@link #getUpdate()}. */
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    /** Returns the number of ids in {@link #getUpdate()}'s delete list. */
+    public int getDeletedCount() {
+        return deletedCount;
+    }
+
+    private static DecompositionDiff replaceAll(WatchFaceDecomposition next, boolean clearAll) {
+        WatchFaceDecomposition update = new WatchFaceDecomposition.Builder()
+                .addImageComponents(next.getImageComponents().toArray(new ImageComponent[0]))
+                .addNumberComponents(next.getNumberComponents().toArray(new NumberComponent[0]))
+                .addFontComponents(next.getFontComponents().toArray(new FontComponent[0]))
+                .addStringComponents(next.getStringComponents().toArray(new StringComponent[0]))
+                .addProportionalFontComponents(next.getProportionalFontComponents()
+                        .toArray(new ProportionalFontComponent[0]))
+                .setClearAll(clearAll)
+                .build();
+        return new DecompositionDiff(update, true, count(next), 0);
+    }
+
+    private static int count(WatchFaceDecomposition decomposition) {
+        return decomposition.getImageComponents().size()
+                + decomposition.getNumberComponents().size()
+                + decomposition.getFontComponents().size()
+                + decomposition.getStringComponents().size()
+                + decomposition.getProportionalFontComponents().size();
+    }
+
+    private static void addEncodings(
+            List<? extends AbstractComponent> components, SparseArray<byte[]> encodings) {
+        for (AbstractComponent component : components) {
+            encodings.put(component.getComponentId(), DecompositionCodec.encodeComponent(component));
+        }
+    }
+
+    /**
+     * Returns whether {@code component} differs from the previously sent component with the same
+     * id, and removes that id from {@code previousEncodings}. A component whose type changed is also
+     * added to the delete list, since the receiver only replaces components of the same type.
+     */
+    private static boolean hasChanged(AbstractComponent component,
+            SparseArray<byte[]> previousEncodings, WatchFaceDecomposition.Builder builder) {
+        int id = component.getComponentId();
+        byte[] previous = previousEncodings.get(id);
+        if (previous == null) {
+            return true;
+        }
+        previousEncodings.remove(id);
+        byte[] current = DecompositionCodec.encodeComponent(component);
+        if (previous[0] != current[0]) {
+            // The first byte of an encoded component is its record type.
+            builder.addIdsToDelete(id);
+            return true;
+        }
+        return !Arrays.equals(previous, current);
+    }
+}
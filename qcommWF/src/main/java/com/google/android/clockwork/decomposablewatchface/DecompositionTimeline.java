@@ -0,0 +1,270 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Predicts when each component of a {@link WatchFaceDecomposition} changes on the receiver's
+ * display over a span of time, from the fields that drive it alone: {@code msPerIncrement} for
+ * numbers, {@code degreesPerDay} and {@code degreesPerStep} for rotating images, and the blink
+ * fields for anything that blinks.
+ *
+ * <p>Times are in milliseconds since 1-Jan-1970 in local time, which is what those fields are
+ * measured against. An image that rotates without steps changes on every frame the receiver
+ * draws, so it has no {@link Event}s and is listed by {@link #getContinuousIds} instead. A string
+ * component shows one of the receiver's string sources, whose changes cannot be predicted, and is
+ * left out.
+ *
+ * <p>The timeline is deterministic, so it can be compared across versions of a face: the number
+ * of distinct {@link #getWakeCount wake times} is how often the receiver has to redraw.
+ */
+public final class DecompositionTimeline {
+
+    /**
+     * The most events a timeline holds, and the most any one component adds; later events are
+     * dropped.
+     */
+    public static final int MAX_EVENTS = 100000;
+
+    static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    /** How a component changes. */
+    public enum Change {
+        /** A rotating image turns by one step. */
+        ROTATED,
+        /** A number shows its next value. */
+        INCREMENTED,
+        /** A blinking component is shown. */
+        SHOWN,
+        /** A blinking component is hidden. */
+        HIDDEN,
+    }
+
+    /** A change of one component at one time. */
+    public static final class Event {
+        private final long timeMs;
+        private final int componentId;
+        private final Change change;
+
+        Event(long timeMs, int componentId, Change change) {
+            this.timeMs = timeMs;
+            this.componentId = componentId;
+            this.change = change;
+        }
+
+        public long getTimeMs() {
+            return timeMs;
+        }
+
+        public int getComponentId() {
+            return componentId;
+        }
+
+        public Change getChange() {
+            return change;
+        }
+
+        @Override
+        public String toString() {
+            return timeMs + " " + componentId + " " + change;
+        }
+    }
+
+    private static final Comparator<Event> BY_TIME = new Comparator<Event>() {
+        @Override
+        public int compare(Event a, Event b) {
+            if (a.timeMs != b.timeMs) {
+                return a.timeMs < b.timeMs ? -1 : 1;
+            }
+            return Integer.compare(a.componentId, b.componentId);
+        }
+    };
+
+    private final long startMs;
+    private final long endMs;
+    private final List<Event> events;
+    private final int[] continuousIds;
+    private final boolean truncated;
+
+    private DecompositionTimeline(long startMs, long endMs, List<Event> events,
+            int[] continuousIds, boolean truncated) {
+        this.startMs = startMs;
+        this.endMs = endMs;
+        this.events = Collections.unmodifiableList(events);
+        this.continuousIds = continuousIds;
+        this.truncated = truncated;
+    }
+
+    /**
+     * Returns the changes of {@code decomposition}'s components after {@code startMs} and up to
+     * {@code endMs}, both local times. The decomposition is taken to be complete.
+     */
+    public static DecompositionTimeline compute(
+            WatchFaceDecomposition decomposition, long startMs, long endMs) {
+        if (endMs < startMs) {
+            throw new IllegalArgumentException("endMs must not be before startMs");
+        }
+        List<Event> events = new ArrayList<>();
+        List<Integer> continuous = new ArrayList<>();
+        for (ImageComponent image : decomposition.getImageComponents()) {
+            float degreesPerDay = image.getDegreesPerDay();
+            if (degreesPerDay != 0f) {
+                if (image.getDegreesPerStep() > 0f) {
+                    addRotationSteps(image, startMs, endMs, events);
+                } else {
+                    continuous.add(image.getComponentId());
+                }
+            }
+            addBlinks(image, startMs, endMs, events);
+        }
+        for (NumberComponent number : decomposition.getNumberComponents()) {
+            addIncrements(number, startMs, endMs, events);
+            addBlinks(number, startMs, endMs, events);
+        }
+        for (StringComponent string : decomposition.getStringComponents()) {
+            addBlinks(string, startMs, endMs, events);
+        }
+        Collections.sort(events, BY_TIME);
+        boolean truncated = events.size() > MAX_EVENTS;
+        if (truncated) {
+            events = new ArrayList<>(events.subList(0, MAX_EVENTS));
+        }
+        int[] continuousIds = new int[continuous.size()];
+        for (int i = 0; i < continuousIds.length; i++) {
+            continuousIds[i] = continuous.get(i);
+        }
+        return new DecompositionTimeline(startMs, endMs, events, continuousIds, truncated);
+    }
+
+    public long getStartMs() {
+        return startMs;
+    }
+
+    public long getEndMs() {
+        return endMs;
+    }
+
+    /** Returns the changes in order of time, and of component id at the same time. */
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    /** Returns the ids of images that turn on every frame. */
+    public int[] getContinuousIds() {
+        return continuousIds.clone();
+    }
+
+    /** Returns whether events past {@link #MAX_EVENTS} were dropped. */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Returns the number of distinct times at which something changes, i.e. how often the
+     * receiver redraws, not counting images that turn on every frame.
+     */
+    public int getWakeCount() {
+        int count = 0;
+        long last = 0;
+        for (Event event : events) {
+            if (count == 0 || event.timeMs != last) {
+                count++;
+                last = event.timeMs;
+            }
+        }
+        return count;
+    }
+
+    /** Returns the number of changes of the component with id {@code componentId}. */
+    public int getChangeCount(int componentId) {
+        int count = 0;
+        for (Event event : events) {
+            if (event.componentId == componentId) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds the times, in (startMs, endMs], at which {@code image}'s angle crosses a multiple of
+     * its step. The angle at time t is {@code offsetDegrees + degreesPerDay * t / DAY_MS}.
+     */
+    private static void addRotationSteps(
+            ImageComponent image, long startMs, long endMs, List<Event> events) {
+        int limit = events.size() + MAX_EVENTS;
+        double degreesPerMs = (double) image.getDegreesPerDay() / DAY_MS;
+        double step = image.getDegreesPerStep();
+        double steps = (image.getOffsetDegrees() + degreesPerMs * startMs) / step;
+        // The next whole step in the direction of rotation.
+        long k = degreesPerMs > 0 ? (long) Math.floor(steps) + 1 : (long) Math.ceil(steps) - 1;
+        int direction = degreesPerMs > 0 ? 1 : -1;
+        while (events.size() <= limit) {
+            long timeMs = (long) Math.ceil(
+                    (k * step - image.getOffsetDegrees()) / degreesPerMs);
+            if (timeMs > endMs) {
+                break;
+            }
+            if (timeMs > startMs) {
+                events.add(new Event(timeMs, image.getComponentId(), Change.ROTATED));
+            }
+            k += direction;
+        }
+    }
+
+    /**
+     * Adds the times, in (startMs, endMs], at which {@code number}'s value changes: whenever
+     * {@code time + timeOffsetMs} crosses a multiple of {@code msPerIncrement}, unless its lowest
+     * and highest values are the same.
+     */
+    private static void addIncrements(
+            NumberComponent number, long startMs, long endMs, List<Event> events) {
+        long msPerIncrement = number.getMsPerIncrement();
+        if (msPerIncrement <= 0 || number.getLowestValue() >= number.getHighestValue()) {
+            return;
+        }
+        int limit = events.size() + MAX_EVENTS;
+        long offset = number.getTimeOffsetMs();
+        long timeMs = (Math.floorDiv(startMs + offset, msPerIncrement) + 1) * msPerIncrement
+                - offset;
+        for (; timeMs <= endMs && events.size() <= limit; timeMs += msPerIncrement) {
+            events.add(new Event(timeMs, number.getComponentId(), Change.INCREMENTED));
+        }
+    }
+
+    /**
+     * Adds the times, in (startMs, endMs], at which {@code component} is shown or hidden. It is
+     * shown before blinking starts, and from then on for {@code blinkPeriodOnMs} out of every
+     * {@code blinkPeriodOnMs + blinkPeriodOffMs}.
+     */
+    private static void addBlinks(
+            DrawableComponent component, long startMs, long endMs, List<Event> events) {
+        double onMs = component.getBlinkPeriodOnMs();
+        double periodMs = onMs + component.getBlinkPeriodOffMs();
+        if (!component.getBlinkEnabled() || onMs <= 0 || periodMs <= onMs) {
+            return;
+        }
+        int limit = events.size() + MAX_EVENTS;
+        long blinkStartMs = component.getBlinkStartTimeDaysSinceLocalEpoch() * DAY_MS
+                + component.getBlinkStartTimeMsSinceMidnight();
+        long cycle = startMs <= blinkStartMs
+                ? 0 : (long) Math.floor((startMs - blinkStartMs) / periodMs);
+        while (events.size() <= limit) {
+            double cycleStartMs = blinkStartMs + cycle * periodMs;
+            long hiddenMs = (long) Math.ceil(cycleStartMs + onMs);
+            long shownMs = (long) Math.ceil(cycleStartMs + periodMs);
+            if (hiddenMs > endMs) {
+                break;
+            }
+            if (hiddenMs > startMs) {
+                events.add(new Event(hiddenMs, component.getComponentId(), Change.HIDDEN));
+            }
+            if (shownMs > startMs && shownMs <= endMs) {
+                events.add(new Event(shownMs, component.getComponentId(), Change.SHOWN));
+            }
+            cycle++;
+        }
+    }
+}
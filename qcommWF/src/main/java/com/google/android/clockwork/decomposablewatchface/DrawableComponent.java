@@ -1,7 +1,6 @@
 package com.google.android.clockwork.decomposablewatchface;
 
 import android.os.Bundle;
-import android.os.Parcel;
 
 public abstract class DrawableComponent extends AbstractComponent {
     static final String FIELD_Z_ORDER = "z_order";
@@ -13,12 +12,46 @@ public abstract class DrawableComponent extends AbstractComponent {
     static final String FIELD_BLINK_START_TIME_MS_SINCE_MIDNIGHT =
             "blink_start_time_ms_since_midnight";
 
+    private final int zOrder;
+    private final boolean blinkEnabled;
+    private final float blinkPeriodOnMs;
+    private final float blinkPeriodOffMs;
+    private final int blinkStartTimeDaysSinceLocalEpoch;
+    private final int blinkStartTimeMsSinceMidnight;
+
+    DrawableComponent(Builder<?> builder) {
+        super(builder);
+        zOrder = builder.zOrder;
+        blinkEnabled = builder.blinkEnabled;
+        blinkPeriodOnMs = builder.blinkPeriodOnMs;
+        blinkPeriodOffMs = builder.blinkPeriodOffMs;
+        blinkStartTimeDaysSinceLocalEpoch = builder.blinkStartTimeDaysSinceLocalEpoch;
+        blinkStartTimeMsSinceMidnight = builder.blinkStartTimeMsSinceMidnight;
+    }
+
     DrawableComponent(Bundle fields) {
         super(fields);
+        zOrder = fields.getInt(FIELD_Z_ORDER);
+        blinkEnabled = fields.getBoolean(FIELD_BLINK_ENABLED);
+        blinkPeriodOnMs = fields.getFloat(FIELD_BLINK_PERIOD_ON_MS);
+        blinkPeriodOffMs = fields.getFloat(FIELD_BLINK_PERIOD_OFF_MS);
+        blinkStartTimeDaysSinceLocalEpoch =
+                fields.getInt(FIELD_BLINK_START_TIME_DAYS_SINCE_LOCAL_EPOCH);
+        blinkStartTimeMsSinceMidnight = fields.getInt(FIELD_BLINK_START_TIME_MS_SINCE_MIDNIGHT);
     }
 
-    DrawableComponent(Parcel in) {
-        super(in);
+    @Override
+    void writeFields(Bundle fields) {
+        super.writeFields(fields);
+        fields.putInt(FIELD_Z_ORDER, zOrder);
+        if (blinkEnabled) {
+            fields.putBoolean(FIELD_BLINK_ENABLED, true);
+            fields.putFloat(FIELD_BLINK_PERIOD_ON_MS, blinkPeriodOnMs);
+            fields.putFloat(FIELD_BLINK_PERIOD_OFF_MS, blinkPeriodOffMs);
+            fields.putInt(FIELD_BLINK_START_TIME_DAYS_SINCE_LOCAL_EPOCH,
+                    blinkStartTimeDaysSinceLocalEpoch);
+            fields.putInt(FIELD_BLINK_START_TIME_MS_SINCE_MIDNIGHT, blinkStartTimeMsSinceMidnight);
+        }
     }
 
     /**
@@ -28,7 +61,7 @@ public abstract class DrawableComponent extends AbstractComponent {
      */
     /** @hide */
     public int getZOrder() {
-        return fields.getInt(FIELD_Z_ORDER);
+        return zOrder;
     }
 
     /**
@@ -36,7 +69,7 @@ public abstract class DrawableComponent extends AbstractComponent {
      */
     /** @hide */
     public boolean getBlinkEnabled() {
-        return fields.getBoolean(FIELD_BLINK_ENABLED);
+        return blinkEnabled;
     }
 
     /**
@@ -44,7 +77,7 @@ public abstract class DrawableComponent extends AbstractComponent {
      */
     /** @hide */
     public float getBlinkPeriodOnMs() {
-        return fields.getFloat(FIELD_BLINK_PERIOD_ON_MS);
+        return blinkPeriodOnMs;
     }
 
     /**
@@ -52,7 +85,7 @@ public abstract class DrawableComponent extends AbstractComponent {
      */
     /** @hide */
     public float getBlinkPeriodOffMs() {
-        return fields.getFloat(FIELD_BLINK_PERIOD_OFF_MS);
+        return blinkPeriodOffMs;
     }
 
     /**
@@ -60,7 +93,7 @@ public abstract class DrawableComponent extends AbstractComponent {
      */
     /** @hide */
     public int getBlinkStartTimeDaysSinceLocalEpoch() {
-        return fields.getInt(FIELD_BLINK_START_TIME_DAYS_SINCE_LOCAL_EPOCH);
+        return blinkStartTimeDaysSinceLocalEpoch;
     }
 
     /**
@@ -68,18 +101,37 @@ public abstract class DrawableComponent extends AbstractComponent {
      */
     /** @hide */
     public int getBlinkStartTimeMsSinceMidnight() {
-        return fields.getInt(FIELD_BLINK_START_TIME_MS_SINCE_MIDNIGHT);
+        return blinkStartTimeMsSinceMidnight;
     }
 
     /** Builder for {@link DrawableComponent} objects. */
     public static abstract class Builder<T extends Builder> extends AbstractComponent.Builder<T> {
+        int zOrder;
+        boolean blinkEnabled;
+        float blinkPeriodOnMs;
+        float blinkPeriodOffMs;
+        int blinkStartTimeDaysSinceLocalEpoch;
+        int blinkStartTimeMsSinceMidnight;
+
+        Builder() {}
+
+        Builder(DrawableComponent component) {
+            super(component);
+            zOrder = component.zOrder;
+            blinkEnabled = component.blinkEnabled;
+            blinkPeriodOnMs = component.blinkPeriodOnMs;
+            blinkPeriodOffMs = component.blinkPeriodOffMs;
+            blinkStartTimeDaysSinceLocalEpoch = component.blinkStartTimeDaysSinceLocalEpoch;
+            blinkStartTimeMsSinceMidnight = component.blinkStartTimeMsSinceMidnight;
+        }
+
         /**
          * Sets the Z order of the component, which determines the order of drawing. Components with lower
          * order will be drawn before (i.e. below) components with higher order. This applies across both
          * image and number components.
          */
         public T setZOrder(int zOrder) {
-            fields.putInt(FIELD_Z_ORDER, zOrder);
+            this.zOrder = zOrder;
             return (T) this;
         }
 
@@ -94,12 +146,11 @@ public abstract class DrawableComponent extends AbstractComponent {
          */
         public T setBlink(boolean enabled, float periodOnMs, float periodOffMs,
                 int startTimeDaysSinceLocalEpoch, int startTimeMsSinceMidnight) {
-            fields.putBoolean(FIELD_BLINK_ENABLED, enabled);
-            fields.putFloat(FIELD_BLINK_PERIOD_ON_MS, periodOnMs);
-            fields.putFloat(FIELD_BLINK_PERIOD_OFF_MS, periodOffMs);
-            fields.putInt(FIELD_BLINK_START_TIME_DAYS_SINCE_LOCAL_EPOCH,
-                    startTimeDaysSinceLocalEpoch);
-            fields.putInt(FIELD_BLINK_START_TIME_MS_SINCE_MIDNIGHT, startTimeMsSinceMidnight);
+            blinkEnabled = enabled;
+            blinkPeriodOnMs = periodOnMs;
+            blinkPeriodOffMs = periodOffMs;
+            blinkStartTimeDaysSinceLocalEpoch = startTimeDaysSinceLocalEpoch;
+            blinkStartTimeMsSinceMidnight = startTimeMsSinceMidnight;
             return (T) this;
         }
     }
@@ -1,5 +1,6 @@
 package com.google.android.clockwork.decomposablewatchface;
 
+import android.graphics.RectF;
 import android.graphics.drawable.Icon;
 import android.os.Bundle;
 import android.os.Parcel;
@@ -12,7 +13,7 @@ public class FontComponent extends AbstractComponent {
             new Parcelable.Creator<FontComponent>() {
                 @Override
                 public FontComponent createFromParcel(Parcel source) {
-                    return new FontComponent(source);
+                    return new FontComponent(readFields(source));
                 }
 
                 @Override
@@ -22,21 +23,86 @@ public class FontComponent extends AbstractComponent {
             };
 
     private static final String FIELD_IMAGE = "image";
+    private static final String FIELD_IMAGE_REGION = "image_region";
     private static final String FIELD_DIGIT_COUNT = "digit_count";
     private static final String FIELD_DIMENSIONS = "dimensions";
 
+    private final Icon image;
+    /** left, top, right, bottom within {@link #image}, or null to use the whole image. */
+    private final float[] imageRegion;
+    private final int digitCount;
+    /** x, y, or null if no dimensions were set. */
+    private final float[] digitDimensions;
+
+    private FontComponent(Builder builder) {
+        super(builder);
+        image = builder.image;
+        imageRegion = builder.imageRegion == null ? null : builder.imageRegion.clone();
+        digitCount = builder.digitCount;
+        digitDimensions = builder.digitDimensions == null ? null : builder.digitDimensions.clone();
+    }
+
     private FontComponent(Bundle fields) {
         super(fields);
+        image = fields.getParcelable(FIELD_IMAGE);
+        RectF region = fields.getParcelable(FIELD_IMAGE_REGION);
+        imageRegion = region == null
+                ? null
+                : new float[] {region.left, region.top, region.right, region.bottom};
+        digitCount = fields.getInt(FIELD_DIGIT_COUNT);
+        android.graphics.PointF size = fields.getParcelable(FIELD_DIMENSIONS);
+        digitDimensions = size == null ? null : new float[] {size.x, size.y};
     }
 
-    private FontComponent(Parcel in) {
-        super(in);
+    @Override
+    void writeFields(Bundle fields) {
+        super.writeFields(fields);
+        fields.putParcelable(FIELD_IMAGE, image);
+        if (imageRegion != null) {
+            fields.putParcelable(FIELD_IMAGE_REGION, getImageRegion());
+        }
+        fields.putInt(FIELD_DIGIT_COUNT, digitCount);
+        if (digitDimensions != null) {
+            fields.putParcelable(FIELD_DIMENSIONS, getDigitDimensions());
+        }
     }
 
     /** Returns the image that makes up this font. */
     /** @hide */
     public Icon getImage() {
-        return fields.getParcelable(FIELD_IMAGE);
+        return image;
+    }
+
+    /**
+     * Returns the part of {@link #getImage()} that this component uses, in proportion to the image
+     * size with (0, 0) at its top left corner, or null if it uses the whole image. Regions are set
+     * when several images are packed into one {@link TextureAtlas} page.
+     */
+    /** @hide */
+    public RectF getImageRegion() {
+        if (imageRegion == null) {
+            return null;
+        }
+        return new RectF(imageRegion[0], imageRegion[1], imageRegion[2], imageRegion[3]);
+    }
+
+    /** Returns whether {@link #getImageRegion()} is non-null. */
+    /** @hide */
+    public boolean hasImageRegion() {
+        return imageRegion != null;
+    }
+
+    /**
+     * Copies the region returned by {@link #getImageRegion()} into {@code outRegion}, or the whole
+     * image (0, 0, 1, 1) if there is none.
+     */
+    /** @hide */
+    public void getImageRegion(RectF outRegion) {
+        if (imageRegion == null) {
+            outRegion.set(0f, 0f, 1f, 1f);
+        } else {
+            outRegion.set(imageRegion[0], imageRegion[1], imageRegion[2], imageRegion[3]);
+        }
     }
 
     /**
@@ -46,19 +112,62 @@ public class FontComponent extends AbstractComponent {
      */
     /** @hide */
     public int getDigitCount() {
-        return fields.getInt(FIELD_DIGIT_COUNT);
+        return digitCount;
     }
 
     /** @hide */
     public android.graphics.PointF getDigitDimensions() {
-        return fields.getParcelable(FIELD_DIMENSIONS);
+        if (digitDimensions == null) {
+            return null;
+        }
+        return new android.graphics.PointF(digitDimensions[0], digitDimensions[1]);
+    }
+
+    /** Returns the x value of {@link #getDigitDimensions()}, or 0 if none were set. */
+    /** @hide */
+    public float getDigitWidth() {
+        return digitDimensions == null ? 0f : digitDimensions[0];
+    }
+
+    /** Returns the y value of {@link #getDigitDimensions()}, or 0 if none were set. */
+    /** @hide */
+    public float getDigitHeight() {
+        return digitDimensions == null ? 0f : digitDimensions[1];
     }
 
     /** Builder for {@link FontComponent} objects. */
     public static class Builder extends AbstractComponent.Builder<Builder> {
+        Icon image;
+        float[] imageRegion;
+        int digitCount;
+        float[] digitDimensions;
+
+        public Builder() {}
+
+        /** Creates a builder initialized with every field of {@code component}. */
+        public Builder(FontComponent component) {
+            super(component);
+            image = component.image;
+            imageRegion = component.imageRegion == null ? null : component.imageRegion.clone();
+            digitCount = component.digitCount;
+            digitDimensions =
+                    component.digitDimensions == null ? null : component.digitDimensions.clone();
+        }
+
         /** Sets the image that makes up this font. */
         public Builder setImage(Icon image) {
-            fields.putParcelable(FIELD_IMAGE, image);
+            this.image = image;
+            return this;
+        }
+
+        /**
+         * Sets the part of the image that this component uses, in proportion to the image size with
+         * (0, 0) at its top left corner. If not specified, or null, the whole image is used.
+         */
+        public Builder setImageRegion(RectF region) {
+            imageRegion = region == null
+                    ? null
+                    : new float[] {region.left, region.top, region.right, region.bottom};
             return this;
         }
 
@@ -68,7 +177,7 @@ public class FontComponent extends AbstractComponent {
          * same height.
          */
         public Builder setDigitCount(int digitCount) {
-            fields.putInt(FIELD_DIGIT_COUNT, digitCount);
+            this.digitCount = digitCount;
             return this;
         }
 
@@ -80,20 +189,18 @@ public class FontComponent extends AbstractComponent {
          * not a location? It's more like pair<float, float> or just (float x, float y).
          */
         public Builder setDigitDimensions(android.graphics.PointF size) {
-            fields.putParcelable(FIELD_DIMENSIONS, size);
+            digitDimensions = size == null ? null : new float[] {size.x, size.y};
             return this;
         }
 
         public FontComponent build() {
-            if (!fields.containsKey(FIELD_COMPONENT_ID)) {
-                throw new IllegalStateException("Component id must be provided");
-            }
+            checkComponentId();
 
-            if (fields.getParcelable(FIELD_IMAGE) == null) {
+            if (image == null) {
                 throw new IllegalStateException("Image must be provided");
             }
 
-            return new FontComponent(fields);
+            return new FontComponent(this);
         }
     }
 }
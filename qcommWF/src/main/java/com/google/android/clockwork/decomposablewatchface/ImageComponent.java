@@ -15,7 +15,7 @@ public class ImageComponent extends DrawableComponent {
             new Creator<ImageComponent>() {
                 @Override
                 public ImageComponent createFromParcel(Parcel source) {
-                    return new ImageComponent(source);
+                    return new ImageComponent(readFields(source));
                 }
 
                 @Override
@@ -25,24 +25,105 @@ public class ImageComponent extends DrawableComponent {
             };
 
     private static final String FIELD_IMAGE = "image";
+    private static final String FIELD_IMAGE_REGION = "image_region";
     private static final String FIELD_BOUNDS = "bounds";
     private static final String FIELD_PIVOT = "pivot";
     private static final String FIELD_DEGREES_PER_DAY = "degrees_per_day";
     private static final String FIELD_OFFSET_DEGREES = "offset_degrees";
     private static final String FIELD_DEGREES_PER_STEP = "degrees_per_step";
 
+    private final Icon image;
+    /** left, top, right, bottom within {@link #image}, or null to use the whole image. */
+    private final float[] imageRegion;
+    /** left, top, right, bottom */
+    private final float[] bounds;
+    /** x, y, or null if the component does not rotate. */
+    private final float[] pivot;
+    private final float degreesPerDay;
+    private final float offsetDegrees;
+    private final float degreesPerStep;
+
+    private ImageComponent(Builder builder) {
+        super(builder);
+        image = builder.image;
+        imageRegion = builder.imageRegion == null ? null : builder.imageRegion.clone();
+        bounds = builder.bounds.clone();
+        pivot = builder.pivot == null ? null : builder.pivot.clone();
+        degreesPerDay = builder.degreesPerDay;
+        offsetDegrees = builder.offsetDegrees;
+        degreesPerStep = builder.degreesPerStep;
+    }
+
     private ImageComponent(Bundle fields) {
         super(fields);
+        image = fields.getParcelable(FIELD_IMAGE);
+        RectF region = fields.getParcelable(FIELD_IMAGE_REGION);
+        imageRegion = region == null
+                ? null
+                : new float[] {region.left, region.top, region.right, region.bottom};
+        RectF rect = fields.getParcelable(FIELD_BOUNDS);
+        bounds = rect == null
+                ? new float[] {0f, 0f, 1f, 1f}
+                : new float[] {rect.left, rect.top, rect.right, rect.bottom};
+        PointF point = fields.getParcelable(FIELD_PIVOT);
+        pivot = point == null ? null : new float[] {point.x, point.y};
+        degreesPerDay = fields.getFloat(FIELD_DEGREES_PER_DAY);
+        offsetDegrees = fields.getFloat(FIELD_OFFSET_DEGREES);
+        degreesPerStep = fields.getFloat(FIELD_DEGREES_PER_STEP);
     }
 
-    private ImageComponent(Parcel in) {
-        super(in);
+    @Override
+    void writeFields(Bundle fields) {
+        super.writeFields(fields);
+        fields.putParcelable(FIELD_IMAGE, image);
+        if (imageRegion != null) {
+            fields.putParcelable(FIELD_IMAGE_REGION, getImageRegion());
+        }
+        fields.putParcelable(FIELD_BOUNDS, getBounds());
+        if (pivot != null) {
+            fields.putParcelable(FIELD_PIVOT, getPivot());
+        }
+        fields.putFloat(FIELD_DEGREES_PER_DAY, degreesPerDay);
+        fields.putFloat(FIELD_OFFSET_DEGREES, offsetDegrees);
+        fields.putFloat(FIELD_DEGREES_PER_STEP, degreesPerStep);
     }
 
     /** Returns the image to be displayed. */
     /** @hide */
     public Icon getImage() {
-        return fields.getParcelable(FIELD_IMAGE);
+        return image;
+    }
+
+    /**
+     * Returns the part of {@link #getImage()} that this component uses, in proportion to the image
+     * size with (0, 0) at its top left corner, or null if it uses the whole image. Regions are set
+     * when several images are packed into one {@link TextureAtlas} page.
+     */
+    /** @hide */
+    public RectF getImageRegion() {
+        if (imageRegion == null) {
+            return null;
+        }
+        return new RectF(imageRegion[0], imageRegion[1], imageRegion[2], imageRegion[3]);
+    }
+
+    /** Returns whether {@link #getImageRegion()} is non-null. */
+    /** @hide */
+    public boolean hasImageRegion() {
+        return imageRegion != null;
+    }
+
+    /**
+     * Copies the region returned by {@link #getImageRegion()} into {@code outRegion}, or the whole
+     * image (0, 0, 1, 1) if there is none.
+     */
+    /** @hide */
+    public void getImageRegion(RectF outRegion) {
+        if (imageRegion == null) {
+            outRegion.set(0f, 0f, 1f, 1f);
+        } else {
+            outRegion.set(imageRegion[0], imageRegion[1], imageRegion[2], imageRegion[3]);
+        }
     }
 
     /**
@@ -52,7 +133,13 @@ public class ImageComponent extends DrawableComponent {
      */
     /** @hide */
     public RectF getBounds() {
-        return fields.getParcelable(FIELD_BOUNDS);
+        return new RectF(bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    /** Copies the bounds returned by {@link #getBounds()} into {@code outBounds}. */
+    /** @hide */
+    public void getBounds(RectF outBounds) {
+        outBounds.set(bounds[0], bounds[1], bounds[2], bounds[3]);
     }
 
     /**
@@ -61,7 +148,7 @@ public class ImageComponent extends DrawableComponent {
      */
     /** @hide */
     public float getDegreesPerDay() {
-        return fields.getFloat(FIELD_DEGREES_PER_DAY);
+        return degreesPerDay;
     }
 
     /**
@@ -75,17 +162,34 @@ public class ImageComponent extends DrawableComponent {
     /** @hide */
 //    @Nullable
     public PointF getPivot() {
-        PointF pivot = fields.getParcelable(FIELD_PIVOT);
         if (pivot == null) {
             return null;
         }
-        return new PointF(pivot.x, pivot.y);
+        return new PointF(pivot[0], pivot[1]);
+    }
+
+    /** Returns whether a pivot was set, i.e. whether {@link #getPivot()} is non-null. */
+    /** @hide */
+    public boolean hasPivot() {
+        return pivot != null;
+    }
+
+    /** Returns the x co-ordinate of {@link #getPivot()}, or 0 if there is no pivot. */
+    /** @hide */
+    public float getPivotX() {
+        return pivot == null ? 0f : pivot[0];
+    }
+
+    /** Returns the y co-ordinate of {@link #getPivot()}, or 0 if there is no pivot. */
+    /** @hide */
+    public float getPivotY() {
+        return pivot == null ? 0f : pivot[1];
     }
 
     /** Returns the clockwise rotation in degrees that should be applied to the image at time 0. */
     /** @hide */
     public float getOffsetDegrees() {
-        return fields.getFloat(FIELD_OFFSET_DEGREES);
+        return offsetDegrees;
     }
 
     /**
@@ -95,14 +199,47 @@ public class ImageComponent extends DrawableComponent {
      */
     /** @hide */
     public float getDegreesPerStep() {
-        return fields.getFloat(FIELD_DEGREES_PER_STEP);
+        return degreesPerStep;
     }
 
     /** Builder for {@link ImageComponent} objects. */
     public static class Builder extends DrawableComponent.Builder<Builder> {
+        Icon image;
+        float[] imageRegion;
+        float[] bounds;
+        float[] pivot;
+        float degreesPerDay;
+        float offsetDegrees;
+        float degreesPerStep;
+
+        public Builder() {}
+
+        /** Creates a builder initialized with every field of {@code component}. */
+        public Builder(ImageComponent component) {
+            super(component);
+            image = component.image;
+            imageRegion = component.imageRegion == null ? null : component.imageRegion.clone();
+            bounds = component.bounds.clone();
+            pivot = component.pivot == null ? null : component.pivot.clone();
+            degreesPerDay = component.degreesPerDay;
+            offsetDegrees = component.offsetDegrees;
+            degreesPerStep = component.degreesPerStep;
+        }
+
         /** Sets the image to be displayed. This field is required. */
         public Builder setImage(Icon image) {
-            fields.putParcelable(FIELD_IMAGE, image);
+            this.image = image;
+            return this;
+        }
+
+        /**
+         * Sets the part of the image that this component uses, in proportion to the image size with
+         * (0, 0) at its top left corner. If not specified, or null, the whole image is used.
+         */
+        public Builder setImageRegion(RectF region) {
+            imageRegion = region == null
+                    ? null
+                    : new float[] {region.left, region.top, region.right, region.bottom};
             return this;
         }
 
@@ -114,7 +251,7 @@ public class ImageComponent extends DrawableComponent {
          * <p>If not specified, the image will fill the bounds of the watch face.
          */
         public Builder setBounds(RectF bounds) {
-            fields.putParcelable(FIELD_BOUNDS, new RectF(bounds));
+            this.bounds = new float[] {bounds.left, bounds.top, bounds.right, bounds.bottom};
             return this;
         }
 
@@ -123,7 +260,7 @@ public class ImageComponent extends DrawableComponent {
          * day (i.e. 24 hours).
          */
         public Builder setDegreesPerDay(float degreesPerDay) {
-            fields.putFloat(FIELD_DEGREES_PER_DAY, degreesPerDay);
+            this.degreesPerDay = degreesPerDay;
             return this;
         }
 
@@ -134,17 +271,13 @@ public class ImageComponent extends DrawableComponent {
          * Will handle null pivot (should only be null on non-rotating objects).
          */
         public Builder setPivot(PointF pivot) {
-            if (pivot == null) {
-                fields.putParcelable(FIELD_PIVOT, null);
-                return this;
-            }
-            fields.putParcelable(FIELD_PIVOT, new PointF(pivot.x, pivot.y));
+            this.pivot = pivot == null ? null : new float[] {pivot.x, pivot.y};
             return this;
         }
 
         /** Sets the clockwise rotation in degrees that should be applied to the image at time 0. */
         public Builder setOffsetDegrees(float offset) {
-            fields.putFloat(FIELD_OFFSET_DEGREES, offset);
+            offsetDegrees = offset;
             return this;
         }
 
@@ -155,24 +288,22 @@ public class ImageComponent extends DrawableComponent {
          * degreesPerDay.
          */
         public Builder setDegreesPerStep(float degreesPerStep) {
-            fields.putFloat(FIELD_DEGREES_PER_STEP, degreesPerStep);
+            this.degreesPerStep = degreesPerStep;
             return this;
         }
 
         public ImageComponent build() {
-            if (!fields.containsKey(FIELD_COMPONENT_ID)) {
-                throw new IllegalStateException("Component id must be provided");
-            }
+            checkComponentId();
 
-            if (fields.getParcelable(FIELD_IMAGE) == null) {
+            if (image == null) {
                 throw new IllegalStateException("Image must be provided");
             }
 
-            if (!fields.containsKey(FIELD_BOUNDS)) {
+            if (bounds == null) {
                 throw new IllegalStateException("Bounds must be provided");
             }
 
-            return new ImageComponent(fields);
+            return new ImageComponent(this);
         }
     }
 }
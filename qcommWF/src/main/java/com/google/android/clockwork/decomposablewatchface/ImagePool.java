@@ -0,0 +1,277 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Icon;
+import android.os.Parcel;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
+/**
+ * The distinct images used by the image, font and proportional font components of a {@link
+ * WatchFaceDecomposition}, keyed by a hash of their content.
+ *
+ * <p>Two icons have the same content hash when they show the same thing: bitmaps of the same size
+ * and pixels, the same encoded image data, or the same resource of the same package. Bitmaps and
+ * data are hashed directly rather than through their parcelled form, which holds large images as
+ * file descriptors that cannot be marshalled.
+ *
+ * <p>{@link DecompositionCodec} writes each pooled image once and has components refer to it by
+ * hash, so the encoded size grows with the number of distinct images rather than the number of
+ * components that show them.
+ */
+public final class ImagePool {
+    static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Content hash and size of every icon hashed so far. {@link Icon} does not override equals, so
+     * this is keyed by identity and entries go away with their icon.
+     */
+    private static final WeakHashMap<Icon, long[]> hashCache = new WeakHashMap<>();
+    /** The data of every icon created by {@link #createDataIcon}. Guarded by {@link #hashCache}. */
+    private static final WeakHashMap<Icon, byte[]> iconData = new WeakHashMap<>();
+
+    private long[] hashes = new long[8];
+    private Icon[] icons = new Icon[8];
+    private int[] byteCounts = new int[8];
+    private int[] referenceCounts = new int[8];
+    private int size;
+
+    ImagePool() {}
+
+    /**
+     * Adds a reference to {@code icon}, pooling it if no icon with the same content is pooled yet.
+     * Returns its index in the pool.
+     */
+    int add(Icon icon) {
+        long[] hashAndSize = hashAndSize(icon);
+        int index = indexOf(hashAndSize[0]);
+        if (index == -1) {
+            if (size == hashes.length) {
+                int capacity = size * 2;
+                hashes = Arrays.copyOf(hashes, capacity);
+                icons = Arrays.copyOf(icons, capacity);
+                byteCounts = Arrays.copyOf(byteCounts, capacity);
+                referenceCounts = Arrays.copyOf(referenceCounts, capacity);
+            }
+            index = size++;
+            hashes[index] = hashAndSize[0];
+            icons[index] = icon;
+            byteCounts[index] = (int) hashAndSize[1];
+        }
+        referenceCounts[index]++;
+        return index;
+    }
+
+    /** Returns the number of distinct images in the pool. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the index of the image with the given content hash, or -1 if it is not pooled. */
+    public int indexOf(long hash) {
+        // Pools hold a handful of images, so a scan beats hashing a boxed key.
+        for (int i = 0; i < size; i++) {
+            if (hashes[i] == hash) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the content hash of the image at {@code index}. */
+    public long getHash(int index) {
+        checkIndex(index);
+        return hashes[index];
+    }
+
+    /** Returns the first icon added with the content of the image at {@code index}. */
+    public Icon getIcon(int index) {
+        checkIndex(index);
+        return icons[index];
+    }
+
+    /** Returns the number of components that use the image at {@code index}. */
+    public int getReferenceCount(int index) {
+        checkIndex(index);
+        return referenceCounts[index];
+    }
+
+    /**
+     * Returns the size in bytes of the image at {@code index}: the pixels of a bitmap, the encoded
+     * data of a data icon, or the parcelled form of a resource.
+     */
+    public int getByteCount(int index) {
+        checkIndex(index);
+        return byteCounts[index];
+    }
+
+    /** Returns the size in bytes, as {@link #getByteCount}, of all distinct images. */
+    public int getUniqueByteCount() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += byteCounts[i];
+        }
+        return total;
+    }
+
+    /** Returns the size in bytes of all images if each component carried its own. */
+    public int getReferencedByteCount() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += byteCounts[i] * referenceCounts[i];
+        }
+        return total;
+    }
+
+    /** Returns the content hash of {@code icon}. */
+    public static long contentHash(Icon icon) {
+        return hashAndSize(icon)[0];
+    }
+
+    /**
+     * Returns an icon of the encoded image {@code data}, as {@link Icon#createWithData} does, whose
+     * content can be hashed and encoded at any size. {@link Icon} does not give its data back, so
+     * a data icon created otherwise can only be hashed while it is small enough to be parcelled
+     * inline.
+     */
+    static Icon createDataIcon(byte[] data) {
+        Icon icon = Icon.createWithData(data, 0, data.length);
+        synchronized (hashCache) {
+            iconData.put(icon, data);
+        }
+        return icon;
+    }
+
+    /**
+     * Returns {@code icon} as an image file for {@link WireFormat#FIELD_POOL_PNG}: the data of an
+     * icon from {@link #createDataIcon}, or the pixels of a bitmap icon compressed as PNG. Returns
+     * null for other icons, such as resources, whose parcelled form is small and can be marshalled.
+     */
+    static byte[] toImageFile(Icon icon) {
+        synchronized (hashCache) {
+            byte[] data = iconData.get(icon);
+            if (data != null) {
+                return data;
+            }
+        }
+        Bitmap bitmap = getBitmap(icon);
+        if (bitmap == null) {
+            return null;
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100 /* ignored for PNG */, png);
+        return png.toByteArray();
+    }
+
+    /**
+     * Returns the bitmap of a bitmap icon, or null for an icon of another type. {@link Icon} has
+     * no public getter for it, so it is read back from the icon's parcelled form, which is the icon
+     * type followed by the bitmap.
+     */
+    static Bitmap getBitmap(Icon icon) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            icon.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            int type = parcel.readInt();
+            if (type != Icon.TYPE_BITMAP && type != Icon.TYPE_ADAPTIVE_BITMAP) {
+                return null;
+            }
+            return Bitmap.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static long[] hashAndSize(Icon icon) {
+        byte[] data;
+        synchronized (hashCache) {
+            long[] cached = hashCache.get(icon);
+            if (cached != null) {
+                return cached;
+            }
+            data = iconData.get(icon);
+        }
+        long[] hashAndSize;
+        if (data != null) {
+            hashAndSize = new long[] {
+                    fnv1a(fnv1a(FNV_OFFSET_BASIS, Icon.TYPE_DATA), data), data.length};
+        } else {
+            Bitmap bitmap = getBitmap(icon);
+            if (bitmap != null) {
+                hashAndSize = new long[] {hashPixels(bitmap), bitmap.getByteCount()};
+            } else {
+                byte[] parcelled = marshall(icon);
+                hashAndSize = new long[] {fnv1a(FNV_OFFSET_BASIS, parcelled), parcelled.length};
+            }
+        }
+        synchronized (hashCache) {
+            hashCache.put(icon, hashAndSize);
+        }
+        return hashAndSize;
+    }
+
+    /** Hashes the size and pixels of {@code bitmap}, a row at a time. */
+    private static long hashPixels(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        long hash = fnv1a(FNV_OFFSET_BASIS, Icon.TYPE_BITMAP);
+        hash = fnv1a(fnv1a(hash, width), height);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int argb : row) {
+                hash = fnv1a(hash, argb);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Continues a 64-bit FNV-1a hash, started from {@link #FNV_OFFSET_BASIS}, over {@code data}.
+     */
+    static long fnv1a(long hash, byte[] data) {
+        for (byte b : data) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /** Continues a 64-bit FNV-1a hash over the four bytes of {@code value}, high byte first. */
+    static long fnv1a(long hash, int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            hash ^= (value >>> shift) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the parcelled form of {@code icon}.
+     *
+     * @throws IllegalArgumentException if the icon parcels its content as a file descriptor, as
+     *     bitmaps and large data do, which cannot be marshalled
+     */
+    static byte[] marshall(Icon icon) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            icon.writeToParcel(parcel, 0);
+            if (parcel.hasFileDescriptors()) {
+                throw new IllegalArgumentException(
+                        "Cannot marshall an icon whose content is parcelled as a file descriptor");
+            }
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+    }
+}
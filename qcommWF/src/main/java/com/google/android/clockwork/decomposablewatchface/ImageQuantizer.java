@@ -0,0 +1,298 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Reduces ARGB images to an {@link IndexedImage} of 1, 2, 4 or 8 bits per pixel.
+ *
+ * <p>An image with few enough distinct colors keeps them all and is stored exactly. Otherwise the
+ * palette is chosen by median cut: the colors are repeatedly split at the median of their widest
+ * channel, and each palette entry is the average of its group. Each pixel then takes the nearest
+ * palette entry, optionally after adding a 4x4 ordered dither so that gradients become patterns
+ * instead of bands. Ordered dithering, unlike error diffusion, gives the same pattern for the same
+ * image every time, which keeps re-encoded images identical.
+ *
+ * <p>Fully transparent pixels are all stored as transparent black, so that their invisible colors
+ * do not take palette entries.
+ *
+ * <p>This class has no Android dependencies so that it can also be used by host-side tools.
+ */
+public final class ImageQuantizer {
+
+    private static final int[] BAYER_4X4 = {
+        0, 8, 2, 10,
+        12, 4, 14, 6,
+        3, 11, 1, 9,
+        15, 7, 13, 5,
+    };
+
+    private static final int[] CHANNEL_SHIFTS = {24, 16, 8, 0};
+
+    private ImageQuantizer() {}
+
+    /**
+     * Quantizes {@code argb}, a {@code width} by {@code height} image stored row by row.
+     *
+     * @param bitsPerPixel 1, 2, 4 or 8
+     * @param dither whether to apply ordered dithering when the image has more colors than fit
+     * @throws IllegalArgumentException if {@code bitsPerPixel} is not supported
+     */
+    public static IndexedImage quantize(
+            int[] argb, int width, int height, int bitsPerPixel, boolean dither) {
+        if (!IndexedImage.isSupportedDepth(bitsPerPixel)) {
+            throw new IllegalArgumentException("Unsupported bits per pixel: " + bitsPerPixel);
+        }
+        int pixelCount = width * height;
+        int[] sorted = new int[pixelCount];
+        for (int i = 0; i < pixelCount; i++) {
+            sorted[i] = normalize(argb[i]);
+        }
+        Arrays.sort(sorted);
+        int[] colors = new int[pixelCount];
+        int[] counts = new int[pixelCount];
+        int distinct = 0;
+        for (int i = 0; i < pixelCount; i++) {
+            if (distinct == 0 || colors[distinct - 1] != sorted[i]) {
+                colors[distinct++] = sorted[i];
+            }
+            counts[distinct - 1]++;
+        }
+
+        int maxColors = 1 << bitsPerPixel;
+        int[] palette;
+        boolean exact = distinct <= maxColors;
+        if (exact) {
+            palette = Arrays.copyOf(colors, distinct);
+        } else {
+            palette = medianCut(colors, counts, distinct, maxColors);
+        }
+
+        int rowBytes = IndexedImage.rowBytes(width, bitsPerPixel);
+        byte[] pixels = new byte[rowBytes * height];
+        HashMap<Integer, Integer> nearest = new HashMap<>();
+        float spread = exact || !dither ? 0f : ditherSpread(palette);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int color = normalize(argb[y * width + x]);
+                int index;
+                if (exact) {
+                    index = Arrays.binarySearch(palette, color);
+                } else if (dither && color != 0) {
+                    float threshold = (BAYER_4X4[(y & 3) * 4 + (x & 3)] + 0.5f) / 16f - 0.5f;
+                    index = findNearest(palette, offset(color, (int) (threshold * spread)));
+                } else {
+                    Integer cached = nearest.get(color);
+                    if (cached == null) {
+                        cached = findNearest(palette, color);
+                        nearest.put(color, cached);
+                    }
+                    index = cached;
+                }
+                int bit = x * bitsPerPixel;
+                pixels[y * rowBytes + (bit >> 3)] |= index << (8 - bitsPerPixel - (bit & 7));
+            }
+        }
+        return new IndexedImage(width, height, bitsPerPixel, palette, pixels);
+    }
+
+    /**
+     * Returns the peak signal-to-noise ratio, in decibels, of {@code actual} against {@code
+     * expected}. Both are ARGB images of the same size; colors are compared premultiplied by their
+     * alpha, so differences that cannot be seen do not count. Returns {@link
+     * Double#POSITIVE_INFINITY} if the images look identical.
+     */
+    public static double psnr(int[] expected, int[] actual) {
+        if (expected.length != actual.length) {
+            throw new IllegalArgumentException("Images differ in size");
+        }
+        double sumSquares = 0;
+        for (int i = 0; i < expected.length; i++) {
+            int a = expected[i];
+            int b = actual[i];
+            int alphaA = a >>> 24;
+            int alphaB = b >>> 24;
+            sumSquares += square(alphaA - alphaB);
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                sumSquares += square(premultiply((a >> shift) & 0xff, alphaA)
+                        - premultiply((b >> shift) & 0xff, alphaB));
+            }
+        }
+        if (sumSquares == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double mse = sumSquares / (expected.length * 4.0);
+        return 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    /**
+     * Chooses up to {@code maxColors} colors for the first {@code distinct} entries of {@code
+     * colors}, each seen {@code counts[i]} times. Reorders both arrays.
+     */
+    private static int[] medianCut(int[] colors, int[] counts, int distinct, int maxColors) {
+        // Each box is a range of colors; boxes[2 * b] is its start and boxes[2 * b + 1] its end.
+        int[] boxes = new int[maxColors * 2];
+        boxes[1] = distinct;
+        int boxCount = 1;
+        int[] scratchColors = new int[distinct];
+        int[] scratchCounts = new int[distinct];
+        while (boxCount < maxColors) {
+            int widest = -1;
+            int widestShift = 0;
+            int widestRange = 0;
+            for (int b = 0; b < boxCount; b++) {
+                int start = boxes[2 * b];
+                int end = boxes[2 * b + 1];
+                if (end - start < 2) {
+                    continue;
+                }
+                for (int shift : CHANNEL_SHIFTS) {
+                    int range = channelRange(colors, start, end, shift);
+                    if (range > widestRange) {
+                        widest = b;
+                        widestShift = shift;
+                        widestRange = range;
+                    }
+                }
+            }
+            if (widest == -1) {
+                break;
+            }
+            int start = boxes[2 * widest];
+            int end = boxes[2 * widest + 1];
+            sortByChannel(colors, counts, start, end, widestShift, scratchColors, scratchCounts);
+            int split = medianOf(counts, start, end);
+            boxes[2 * widest + 1] = split;
+            boxes[2 * boxCount] = split;
+            boxes[2 * boxCount + 1] = end;
+            boxCount++;
+        }
+
+        int[] palette = new int[boxCount];
+        for (int b = 0; b < boxCount; b++) {
+            palette[b] = average(colors, counts, boxes[2 * b], boxes[2 * b + 1]);
+        }
+        return palette;
+    }
+
+    /**
+     * Returns how far apart neighbouring palette colors are, per channel, on average. Dithering by
+     * that much lets a pixel reach the colors either side of it without adding visible noise.
+     */
+    private static float ditherSpread(int[] palette) {
+        double total = 0;
+        for (int i = 0; i < palette.length; i++) {
+            int closest = Integer.MAX_VALUE;
+            for (int j = 0; j < palette.length; j++) {
+                if (j != i) {
+                    closest = Math.min(closest, distance(palette[i], palette[j]));
+                }
+            }
+            total += Math.sqrt(closest / 3.0);
+        }
+        return (float) (total / palette.length);
+    }
+
+    private static int channelRange(int[] colors, int start, int end, int shift) {
+        int min = 255;
+        int max = 0;
+        for (int i = start; i < end; i++) {
+            int value = (colors[i] >> shift) & 0xff;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return max - min;
+    }
+
+    /** Stable counting sort of {@code colors[start, end)}, and their counts, by one channel. */
+    private static void sortByChannel(int[] colors, int[] counts, int start, int end, int shift,
+            int[] scratchColors, int[] scratchCounts) {
+        int[] offsets = new int[257];
+        for (int i = start; i < end; i++) {
+            offsets[((colors[i] >> shift) & 0xff) + 1]++;
+        }
+        for (int v = 1; v < offsets.length; v++) {
+            offsets[v] += offsets[v - 1];
+        }
+        for (int i = start; i < end; i++) {
+            int slot = offsets[(colors[i] >> shift) & 0xff]++;
+            scratchColors[slot] = colors[i];
+            scratchCounts[slot] = counts[i];
+        }
+        System.arraycopy(scratchColors, 0, colors, start, end - start);
+        System.arraycopy(scratchCounts, 0, counts, start, end - start);
+    }
+
+    /** Returns where to split {@code [start, end)} so each side holds about half the pixels. */
+    private static int medianOf(int[] counts, int start, int end) {
+        long total = 0;
+        for (int i = start; i < end; i++) {
+            total += counts[i];
+        }
+        long seen = 0;
+        int split = start;
+        while (split < end - 1 && (seen + counts[split]) * 2 <= total) {
+            seen += counts[split++];
+        }
+        return Math.max(split, start + 1);
+    }
+
+    private static int average(int[] colors, int[] counts, int start, int end) {
+        long total = 0;
+        long[] sums = new long[4];
+        for (int i = start; i < end; i++) {
+            total += counts[i];
+            for (int c = 0; c < 4; c++) {
+                sums[c] += (long) ((colors[i] >> CHANNEL_SHIFTS[c]) & 0xff) * counts[i];
+            }
+        }
+        int color = 0;
+        for (int c = 0; c < 4; c++) {
+            color |= (int) ((sums[c] + total / 2) / total) << CHANNEL_SHIFTS[c];
+        }
+        return color;
+    }
+
+    private static int findNearest(int[] palette, int color) {
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < palette.length; i++) {
+            int distance = distance(palette[i], color);
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private static int distance(int a, int b) {
+        int distance = 0;
+        for (int shift : CHANNEL_SHIFTS) {
+            distance += square(((a >> shift) & 0xff) - ((b >> shift) & 0xff));
+        }
+        return distance;
+    }
+
+    /** Adds {@code delta} to the red, green and blue channels of {@code color}, clamped. */
+    private static int offset(int color, int delta) {
+        int result = color & 0xff000000;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int value = Math.min(255, Math.max(0, ((color >> shift) & 0xff) + delta));
+            result |= value << shift;
+        }
+        return result;
+    }
+
+    private static int normalize(int color) {
+        return (color >>> 24) == 0 ? 0 : color;
+    }
+
+    private static int premultiply(int channel, int alpha) {
+        return (channel * alpha + 127) / 255;
+    }
+
+    private static int square(int value) {
+        return value * value;
+    }
+}
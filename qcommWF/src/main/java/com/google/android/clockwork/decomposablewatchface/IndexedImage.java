@@ -0,0 +1,107 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+/**
+ * An image stored as a palette of at most 2, 4, 16 or 256 ARGB colors and one palette index per
+ * pixel, packed 1, 2, 4 or 8 bits to a pixel.
+ *
+ * <p>Indices are packed most significant bits first, and every row starts on a byte boundary.
+ *
+ * <p>This class has no Android dependencies so that it can also be used by host-side tools.
+ */
+public final class IndexedImage {
+    private final int width;
+    private final int height;
+    private final int bitsPerPixel;
+    private final int[] palette;
+    private final byte[] pixels;
+
+    /**
+     * @param bitsPerPixel 1, 2, 4 or 8
+     * @param palette ARGB colors, no more than {@code 1 << bitsPerPixel} of them
+     * @param pixels packed indices, {@link #rowBytes} per row
+     * @throws IllegalArgumentException if the arguments do not describe a valid image
+     */
+    public IndexedImage(int width, int height, int bitsPerPixel, int[] palette, byte[] pixels) {
+        if (!isSupportedDepth(bitsPerPixel)) {
+            throw new IllegalArgumentException("Unsupported bits per pixel: " + bitsPerPixel);
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image is empty");
+        }
+        if (palette.length == 0 || palette.length > 1 << bitsPerPixel) {
+            throw new IllegalArgumentException(
+                    palette.length + " colors do not fit " + bitsPerPixel + " bits per pixel");
+        }
+        if (pixels.length != rowBytes(width, bitsPerPixel) * height) {
+            throw new IllegalArgumentException("Pixel data does not match the image size");
+        }
+        this.width = width;
+        this.height = height;
+        this.bitsPerPixel = bitsPerPixel;
+        this.palette = palette;
+        this.pixels = pixels;
+    }
+
+    /** Returns whether images can be stored with {@code bitsPerPixel} bits per pixel. */
+    public static boolean isSupportedDepth(int bitsPerPixel) {
+        return bitsPerPixel == 1 || bitsPerPixel == 2 || bitsPerPixel == 4 || bitsPerPixel == 8;
+    }
+
+    /** Returns the number of bytes that hold one row of {@code width} packed indices. */
+    public static int rowBytes(int width, int bitsPerPixel) {
+        return (width * bitsPerPixel + 7) / 8;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getBitsPerPixel() {
+        return bitsPerPixel;
+    }
+
+    public int getPaletteSize() {
+        return palette.length;
+    }
+
+    public int getPaletteColor(int index) {
+        return palette[index];
+    }
+
+    /** Returns the palette index of the pixel at ({@code x}, {@code y}). */
+    public int getIndex(int x, int y) {
+        int bit = x * bitsPerPixel;
+        int b = pixels[y * rowBytes(width, bitsPerPixel) + (bit >> 3)] & 0xff;
+        int shift = 8 - bitsPerPixel - (bit & 7);
+        return (b >> shift) & ((1 << bitsPerPixel) - 1);
+    }
+
+    /** Returns the packed indices. The array is not copied; do not modify it. */
+    byte[] getPixelData() {
+        return pixels;
+    }
+
+    /** Returns the packed indices, {@link #rowBytes} per row. */
+    public byte[] getPixels() {
+        return pixels.clone();
+    }
+
+    /** Expands the image into {@code out}, one ARGB color per pixel, row by row. */
+    public void toArgb(int[] out) {
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                out[row + x] = palette[getIndex(x, y)];
+            }
+        }
+    }
+
+    /** Returns the number of bytes taken by the palette and the packed indices. */
+    public int getByteCount() {
+        return palette.length * 4 + pixels.length;
+    }
+}
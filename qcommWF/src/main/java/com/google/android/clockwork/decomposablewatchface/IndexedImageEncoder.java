@@ -0,0 +1,148 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Icon;
+import android.util.LongSparseArray;
+
+/**
+ * Quantizes the images of a {@link WatchFaceDecomposition} to a low bit depth palette, for {@link
+ * DecompositionCodec#encode(WatchFaceDecomposition, IndexedImageEncoder.Result)} to write in place
+ * of the full ARGB images.
+ *
+ * <p>Each distinct image in the decomposition's {@link ImagePool} is quantized once with {@link
+ * ImageQuantizer}, and the quality lost is measured as PSNR against the original. Images that
+ * would fall below the requested PSNR are left as they are.
+ */
+public final class IndexedImageEncoder {
+    private IndexedImageEncoder() {}
+
+    /**
+     * Quantizes every pooled image of {@code decomposition} to {@code bitsPerPixel}.
+     *
+     * <p>This loads every image, so call it off the main thread.
+     *
+     * @param bitsPerPixel 1, 2, 4 or 8
+     * @param dither whether to apply ordered dithering to images with more colors than fit
+     * @param minPsnr the lowest PSNR, in decibels, at which an image is still worth quantizing;
+     *     {@link Double#POSITIVE_INFINITY} only accepts images that quantize losslessly
+     */
+    public static Result encode(Context context, WatchFaceDecomposition decomposition,
+            int bitsPerPixel, boolean dither, double minPsnr) {
+        ImagePool pool = decomposition.getImagePool();
+        IndexedImage[] images = new IndexedImage[pool.size()];
+        double[] psnrs = new double[pool.size()];
+        int[] argbByteCounts = new int[pool.size()];
+        for (int i = 0; i < images.length; i++) {
+            Bitmap bitmap = TextureAtlas.loadBitmap(context, pool.getIcon(i));
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            int[] argb = new int[width * height];
+            bitmap.getPixels(argb, 0, width, 0, 0, width, height);
+            argbByteCounts[i] = argb.length * 4;
+
+            IndexedImage image =
+                    ImageQuantizer.quantize(argb, width, height, bitsPerPixel, dither);
+            int[] quantized = new int[argb.length];
+            image.toArgb(quantized);
+            psnrs[i] = ImageQuantizer.psnr(argb, quantized);
+            if (psnrs[i] >= minPsnr) {
+                images[i] = image;
+            }
+        }
+        return new Result(pool, images, psnrs, argbByteCounts);
+    }
+
+    /** Returns a bitmap icon showing {@code image}. */
+    static Icon toIcon(IndexedImage image) {
+        int[] argb = new int[image.getWidth() * image.getHeight()];
+        image.toArgb(argb);
+        return Icon.createWithBitmap(Bitmap.createBitmap(
+                argb, image.getWidth(), image.getHeight(), Bitmap.Config.ARGB_8888));
+    }
+
+    /** The quantized images of one decomposition, by pool index, with their quality and size. */
+    public static final class Result {
+        private final LongSparseArray<IndexedImage> byHash = new LongSparseArray<>();
+        private final IndexedImage[] images;
+        private final double[] psnrs;
+        private final int[] argbByteCounts;
+
+        Result(ImagePool pool, IndexedImage[] images, double[] psnrs, int[] argbByteCounts) {
+            this.images = images;
+            this.psnrs = psnrs;
+            this.argbByteCounts = argbByteCounts;
+            for (int i = 0; i < images.length; i++) {
+                if (images[i] != null) {
+                    byHash.put(pool.getHash(i), images[i]);
+                }
+            }
+        }
+
+        /** Returns the number of images considered, which is the size of the image pool. */
+        public int size() {
+            return images.length;
+        }
+
+        /**
+         * Returns the quantized form of pooled image {@code index}, or null if it fell below the
+         * requested PSNR.
+         */
+        public IndexedImage getImage(int index) {
+            return images[index];
+        }
+
+        /** Returns the quantized image with the given content hash, or null if there is none. */
+        public IndexedImage findImage(long hash) {
+            return byHash.get(hash);
+        }
+
+        /** Returns the PSNR of the quantized form of pooled image {@code index}, used or not. */
+        public double getPsnr(int index) {
+            return psnrs[index];
+        }
+
+        /** Returns the lowest PSNR among the images that were quantized. */
+        public double getMinPsnr() {
+            double min = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < images.length; i++) {
+                if (images[i] != null) {
+                    min = Math.min(min, psnrs[i]);
+                }
+            }
+            return min;
+        }
+
+        /** Returns the number of images that were quantized. */
+        public int getEncodedCount() {
+            return byHash.size();
+        }
+
+        /** Returns the ARGB size in bytes of the images that were quantized. */
+        public int getArgbByteCount() {
+            int total = 0;
+            for (int i = 0; i < images.length; i++) {
+                if (images[i] != null) {
+                    total += argbByteCounts[i];
+                }
+            }
+            return total;
+        }
+
+        /** Returns the size in bytes of the images that were quantized, palettes included. */
+        public int getIndexedByteCount() {
+            int total = 0;
+            for (IndexedImage image : images) {
+                if (image != null) {
+                    total += image.getByteCount();
+                }
+            }
+            return total;
+        }
+
+        /** Returns the bytes saved by sending the quantized images instead of ARGB pixels. */
+        public int getBytesSaved() {
+            return getArgbByteCount() - getIndexedByteCount();
+        }
+    }
+}
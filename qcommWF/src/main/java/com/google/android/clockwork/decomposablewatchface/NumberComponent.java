@@ -12,7 +12,7 @@ public class NumberComponent extends DrawableComponent {
             new Creator<NumberComponent>() {
                 @Override
                 public NumberComponent createFromParcel(Parcel source) {
-                    return new NumberComponent(source);
+                    return new NumberComponent(readFields(source));
                 }
 
                 @Override
@@ -29,12 +29,50 @@ public class NumberComponent extends DrawableComponent {
     private static final String FIELD_POSITION = "position";
     private static final String FIELD_FONT_COMPONENT_ID = "font_component_id";
 
+    private final long msPerIncrement;
+    private final long lowestValue;
+    private final long highestValue;
+    private final long timeOffsetMs;
+    private final int minDigitsShown;
+    private final int fontComponentId;
+    /** x, y, or null if no position was set. */
+    private final float[] position;
+
+    private NumberComponent(Builder builder) {
+        super(builder);
+        msPerIncrement = builder.msPerIncrement;
+        lowestValue = builder.lowestValue;
+        highestValue = builder.highestValue;
+        timeOffsetMs = builder.timeOffsetMs;
+        minDigitsShown = builder.minDigitsShown;
+        fontComponentId = builder.fontComponentId;
+        position = builder.position == null ? null : builder.position.clone();
+    }
+
     private NumberComponent(Bundle fields) {
         super(fields);
+        msPerIncrement = fields.getLong(FIELD_MS_PER_INCREMENT);
+        lowestValue = fields.getLong(FIELD_LOWEST_VALUE);
+        highestValue = fields.getLong(FIELD_HIGHEST_VALUE);
+        timeOffsetMs = fields.getLong(FIELD_TIME_OFFSET_MS);
+        minDigitsShown = fields.getInt(FIELD_MIN_DIGITS_SHOWN, 1);
+        fontComponentId = fields.getInt(FIELD_FONT_COMPONENT_ID);
+        PointF point = fields.getParcelable(FIELD_POSITION);
+        position = point == null ? null : new float[] {point.x, point.y};
     }
 
-    private NumberComponent(Parcel in) {
-        super(in);
+    @Override
+    void writeFields(Bundle fields) {
+        super.writeFields(fields);
+        fields.putLong(FIELD_MS_PER_INCREMENT, msPerIncrement);
+        fields.putLong(FIELD_LOWEST_VALUE, lowestValue);
+        fields.putLong(FIELD_HIGHEST_VALUE, highestValue);
+        fields.putLong(FIELD_TIME_OFFSET_MS, timeOffsetMs);
+        fields.putInt(FIELD_MIN_DIGITS_SHOWN, minDigitsShown);
+        fields.putInt(FIELD_FONT_COMPONENT_ID, fontComponentId);
+        if (position != null) {
+            fields.putParcelable(FIELD_POSITION, getPosition());
+        }
     }
 
     /**
@@ -44,7 +82,7 @@ public class NumberComponent extends DrawableComponent {
      */
     /** @hide */
     public long getMsPerIncrement() {
-        return fields.getLong(FIELD_MS_PER_INCREMENT);
+        return msPerIncrement;
     }
 
     /**
@@ -53,7 +91,7 @@ public class NumberComponent extends DrawableComponent {
      */
     /** @hide */
     public long getLowestValue() {
-        return fields.getLong(FIELD_LOWEST_VALUE);
+        return lowestValue;
     }
 
     /**
@@ -62,7 +100,7 @@ public class NumberComponent extends DrawableComponent {
      */
     /** @hide */
     public long getHighestValue() {
-        return fields.getLong(FIELD_HIGHEST_VALUE);
+        return highestValue;
     }
 
     /**
@@ -74,7 +112,7 @@ public class NumberComponent extends DrawableComponent {
      */
     /** @hide */
     public long getTimeOffsetMs() {
-        return fields.getLong(FIELD_TIME_OFFSET_MS);
+        return timeOffsetMs;
     }
 
     /**
@@ -84,7 +122,7 @@ public class NumberComponent extends DrawableComponent {
      */
     /** @hide */
     public int getMinDigitsShown() {
-        return fields.getInt(FIELD_MIN_DIGITS_SHOWN);
+        return minDigitsShown;
     }
 
     /**
@@ -93,7 +131,7 @@ public class NumberComponent extends DrawableComponent {
      */
     /** @hide */
     public int getFontComponentId() {
-        return fields.getInt(FIELD_FONT_COMPONENT_ID);
+        return fontComponentId;
     }
 
     /**
@@ -104,15 +142,60 @@ public class NumberComponent extends DrawableComponent {
      */
     /** @hide */
     public PointF getPosition() {
-        PointF position = fields.getParcelable(FIELD_POSITION);
         if (position == null) {
             return null;
         }
-        return new PointF(position.x, position.y);
+        return new PointF(position[0], position[1]);
+    }
+
+    /** Returns whether a position was set, i.e. whether {@link #getPosition()} is non-null. */
+    /** @hide */
+    public boolean hasPosition() {
+        return position != null;
+    }
+
+    /** Returns the x co-ordinate of {@link #getPosition()}, or 0 if there is no position. */
+    /** @hide */
+    public float getPositionX() {
+        return position == null ? 0f : position[0];
+    }
+
+    /** Returns the y co-ordinate of {@link #getPosition()}, or 0 if there is no position. */
+    /** @hide */
+    public float getPositionY() {
+        return position == null ? 0f : position[1];
     }
 
     /** Builder for {@link NumberComponent} objects. */
     public static class Builder extends DrawableComponent.Builder<Builder> {
+        long msPerIncrement;
+        long lowestValue;
+        long highestValue;
+        long timeOffsetMs;
+        int minDigitsShown = 1;
+        int fontComponentId;
+        float[] position;
+        private boolean hasMsPerIncrement;
+        private boolean hasLowestValue;
+        private boolean hasHighestValue;
+
+        public Builder() {}
+
+        /** Creates a builder initialized with every field of {@code component}. */
+        public Builder(NumberComponent component) {
+            super(component);
+            msPerIncrement = component.msPerIncrement;
+            lowestValue = component.lowestValue;
+            highestValue = component.highestValue;
+            timeOffsetMs = component.timeOffsetMs;
+            minDigitsShown = component.minDigitsShown;
+            fontComponentId = component.fontComponentId;
+            position = component.position == null ? null : component.position.clone();
+            hasMsPerIncrement = true;
+            hasLowestValue = true;
+            hasHighestValue = true;
+        }
+
         /**
          * Sets the unit of time represented by the number. For example, if the component should show
          * the minutes in the current time, this should be one minute in milliseconds (60*1000).
@@ -120,7 +203,8 @@ public class NumberComponent extends DrawableComponent {
          * <p>This field is required.
          */
         public Builder setMsPerIncrement(long msPerIncrement) {
-            fields.putLong(FIELD_MS_PER_INCREMENT, msPerIncrement);
+            this.msPerIncrement = msPerIncrement;
+            hasMsPerIncrement = true;
             return this;
         }
 
@@ -131,7 +215,8 @@ public class NumberComponent extends DrawableComponent {
          * <p>This field is required.
          */
         public Builder setLowestValue(long lowestValue) {
-            fields.putLong(FIELD_LOWEST_VALUE, lowestValue);
+            this.lowestValue = lowestValue;
+            hasLowestValue = true;
             return this;
         }
 
@@ -142,7 +227,8 @@ public class NumberComponent extends DrawableComponent {
          * <p>This field is required.
          */
         public Builder setHighestValue(long highestValue) {
-            fields.putLong(FIELD_HIGHEST_VALUE, highestValue);
+            this.highestValue = highestValue;
+            hasHighestValue = true;
             return this;
         }
 
@@ -156,7 +242,7 @@ public class NumberComponent extends DrawableComponent {
          * <p>This field is optional.
          */
         public Builder setTimeOffsetMs(long timeOffsetMs) {
-            fields.putLong(FIELD_TIME_OFFSET_MS, timeOffsetMs);
+            this.timeOffsetMs = timeOffsetMs;
             return this;
         }
 
@@ -173,7 +259,7 @@ public class NumberComponent extends DrawableComponent {
          * <p>Defaults to 1.
          */
         public Builder setMinDigitsShown(int minDigitsShown) {
-            fields.putInt(FIELD_MIN_DIGITS_SHOWN, minDigitsShown);
+            this.minDigitsShown = minDigitsShown;
             return this;
         }
 
@@ -181,7 +267,7 @@ public class NumberComponent extends DrawableComponent {
          * Sets the component id of the {@link FontComponent} that should be used to render the numbers.
          */
         public Builder setFontComponentId(int fontComponentId) {
-            fields.putInt(FIELD_FONT_COMPONENT_ID, fontComponentId);
+            this.fontComponentId = fontComponentId;
             return this;
         }
 
@@ -192,32 +278,26 @@ public class NumberComponent extends DrawableComponent {
          * watch face.
          */
         public Builder setPosition(PointF position) {
-            fields.putParcelable(FIELD_POSITION, position);
+            this.position = position == null ? null : new float[] {position.x, position.y};
             return this;
         }
 
         public NumberComponent build() {
-            if (!fields.containsKey(FIELD_COMPONENT_ID)) {
-                throw new IllegalStateException("Component id must be provided");
-            }
+            checkComponentId();
 
-            if (!fields.containsKey(FIELD_MS_PER_INCREMENT)) {
+            if (!hasMsPerIncrement) {
                 throw new IllegalStateException("Time unit must be specified");
             }
 
-            if (!fields.containsKey(FIELD_LOWEST_VALUE)) {
+            if (!hasLowestValue) {
                 throw new IllegalStateException("Lowest value must be specified");
             }
 
-            if (!fields.containsKey(FIELD_HIGHEST_VALUE)) {
+            if (!hasHighestValue) {
                 throw new IllegalStateException("Highest value must be specified");
             }
 
-            if (!fields.containsKey(FIELD_MIN_DIGITS_SHOWN)) {
-                fields.putBoolean(FIELD_MIN_DIGITS_SHOWN, true);
-            }
-
-            return new NumberComponent(fields);
+            return new NumberComponent(this);
         }
     }
 }
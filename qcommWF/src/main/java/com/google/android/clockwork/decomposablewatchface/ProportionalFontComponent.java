@@ -1,11 +1,14 @@
 package com.google.android.clockwork.decomposablewatchface;
 
+import android.graphics.RectF;
 import android.graphics.drawable.Icon;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class ProportionalFontComponent extends AbstractComponent {
 
@@ -14,7 +17,7 @@ public class ProportionalFontComponent extends AbstractComponent {
             new Creator<ProportionalFontComponent>() {
                 @Override
                 public ProportionalFontComponent createFromParcel(Parcel source) {
-                    return new ProportionalFontComponent(source);
+                    return new ProportionalFontComponent(readFields(source));
                 }
 
                 @Override
@@ -24,54 +27,153 @@ public class ProportionalFontComponent extends AbstractComponent {
             };
 
     private static final String FIELD_IMAGE = "image";
+    private static final String FIELD_IMAGE_REGION = "image_region";
     private static final String FIELD_GLYPH_INFO = "glyph_info";
 
+    private final Icon image;
+    /** left, top, right, bottom within {@link #image}, or null to use the whole image. */
+    private final float[] imageRegion;
+    private final List<GlyphDescriptor> glyphDescriptors;
+
+    private ProportionalFontComponent(Builder builder) {
+        super(builder);
+        image = builder.image;
+        imageRegion = builder.imageRegion == null ? null : builder.imageRegion.clone();
+        glyphDescriptors = copyOf(builder.glyphDescriptors);
+    }
+
     private ProportionalFontComponent(Bundle fields) {
         super(fields);
+        image = fields.getParcelable(FIELD_IMAGE);
+        RectF region = fields.getParcelable(FIELD_IMAGE_REGION);
+        imageRegion = region == null
+                ? null
+                : new float[] {region.left, region.top, region.right, region.bottom};
+        ArrayList<GlyphDescriptor> glyphs = fields.getParcelableArrayList(FIELD_GLYPH_INFO);
+        glyphDescriptors = glyphs == null
+                ? Collections.<GlyphDescriptor>emptyList()
+                : Collections.unmodifiableList(glyphs);
     }
 
-    private ProportionalFontComponent(Parcel in) {
-        super(in);
+    @Override
+    void writeFields(Bundle fields) {
+        super.writeFields(fields);
+        fields.putParcelable(FIELD_IMAGE, image);
+        if (imageRegion != null) {
+            fields.putParcelable(FIELD_IMAGE_REGION, getImageRegion());
+        }
+        fields.putParcelableArrayList(FIELD_GLYPH_INFO, new ArrayList<>(glyphDescriptors));
     }
 
     /** Returns the image that makes up this font. */
     /** @hide */
     public Icon getImage() {
-        return fields.getParcelable(FIELD_IMAGE);
+        return image;
+    }
+
+    /**
+     * Returns the part of {@link #getImage()} that this component uses, in proportion to the image
+     * size with (0, 0) at its top left corner, or null if it uses the whole image. Regions are set
+     * when several images are packed into one {@link TextureAtlas} page.
+     */
+    /** @hide */
+    public RectF getImageRegion() {
+        if (imageRegion == null) {
+            return null;
+        }
+        return new RectF(imageRegion[0], imageRegion[1], imageRegion[2], imageRegion[3]);
+    }
+
+    /** Returns whether {@link #getImageRegion()} is non-null. */
+    /** @hide */
+    public boolean hasImageRegion() {
+        return imageRegion != null;
+    }
+
+    /**
+     * Copies the region returned by {@link #getImageRegion()} into {@code outRegion}, or the whole
+     * image (0, 0, 1, 1) if there is none.
+     */
+    /** @hide */
+    public void getImageRegion(RectF outRegion) {
+        if (imageRegion == null) {
+            outRegion.set(0f, 0f, 1f, 1f);
+        } else {
+            outRegion.set(imageRegion[0], imageRegion[1], imageRegion[2], imageRegion[3]);
+        }
     }
 
+    /**
+     * Returns the glyph descriptors of this font. The list is unmodifiable and must not be mutated
+     * through its elements either.
+     */
     /** @hide */
-    public ArrayList<GlyphDescriptor> getGlyphDescriptors() {
-        return fields.getParcelableArrayList(FIELD_GLYPH_INFO);
+    public List<GlyphDescriptor> getGlyphDescriptors() {
+        return glyphDescriptors;
+    }
+
+    /**
+     * {@link GlyphDescriptor} has public mutable fields, so take a private copy of each to keep the
+     * component immutable.
+     */
+    private static List<GlyphDescriptor> copyOf(List<GlyphDescriptor> glyphs) {
+        ArrayList<GlyphDescriptor> copy = new ArrayList<>(glyphs.size());
+        for (GlyphDescriptor glyph : glyphs) {
+            copy.add(new GlyphDescriptor(glyph.width, glyph.glyphCode));
+        }
+        return Collections.unmodifiableList(copy);
     }
 
     /** Builder for {@link ProportionalFontComponent} objects. */
     public static class Builder extends AbstractComponent.Builder<Builder> {
+        Icon image;
+        float[] imageRegion;
+        List<GlyphDescriptor> glyphDescriptors;
+
+        public Builder() {}
+
+        /** Creates a builder initialized with every field of {@code component}. */
+        public Builder(ProportionalFontComponent component) {
+            super(component);
+            image = component.image;
+            imageRegion = component.imageRegion == null ? null : component.imageRegion.clone();
+            glyphDescriptors = component.glyphDescriptors;
+        }
+
         /** Sets the image that makes up this font. */
         public Builder setImage(Icon image) {
-            fields.putParcelable(FIELD_IMAGE, image);
+            this.image = image;
+            return this;
+        }
+
+        /**
+         * Sets the part of the image that this component uses, in proportion to the image size with
+         * (0, 0) at its top left corner. If not specified, or null, the whole image is used.
+         */
+        public Builder setImageRegion(RectF region) {
+            imageRegion = region == null
+                    ? null
+                    : new float[] {region.left, region.top, region.right, region.bottom};
             return this;
         }
 
-        public Builder setGlyphDescriptors(ArrayList<GlyphDescriptor> glyphDescriptorList) {
-            fields.putParcelableArrayList(FIELD_GLYPH_INFO, glyphDescriptorList);
+        public Builder setGlyphDescriptors(List<GlyphDescriptor> glyphDescriptorList) {
+            glyphDescriptors = glyphDescriptorList;
             return this;
         }
 
         public ProportionalFontComponent build() {
-            if (!fields.containsKey(FIELD_COMPONENT_ID)) {
-                throw new IllegalStateException("Component id must be provided");
-            }
+            checkComponentId();
 
-            if (fields.getParcelable(FIELD_IMAGE) == null) {
+            if (image == null) {
                 throw new IllegalStateException("Image must be provided");
             }
 
-            if (!fields.containsKey(FIELD_GLYPH_INFO)) {
+            if (glyphDescriptors == null) {
                 throw new IllegalStateException("Glyph info must be provided");
             }
 
-            return new ProportionalFontComponent(fields);
+            return new ProportionalFontComponent(this);
         }
     }
 }
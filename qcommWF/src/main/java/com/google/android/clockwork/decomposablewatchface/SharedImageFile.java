@@ -0,0 +1,149 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Icon;
+import android.os.ParcelFileDescriptor;
+import android.util.LongSparseArray;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The pixels of a decomposition's pooled images, written once into a memory-mapped file that is
+ * handed to the receiver as a {@link ParcelFileDescriptor}.
+ *
+ * <p>A decomposition sent inline carries every image inside one Binder transaction, which is
+ * capped at about 1 MB, and the pixels are copied into the parcel, out of it, and into new
+ * bitmaps. With a shared file, {@link DecompositionCodec#encode(WatchFaceDecomposition,
+ * SharedImageFile)} writes only each image's offset and size; the receiver maps the file with
+ * {@link #map} and reads the pixels in place.
+ *
+ * <p>Each image is stored as ARGB_8888 in {@link Bitmap#copyPixelsToBuffer} layout, starting at a
+ * 4-byte aligned offset.
+ */
+public final class SharedImageFile implements Closeable {
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /** {offset, width, height} of each image, by content hash. */
+    private final LongSparseArray<int[]> entries;
+    private final ParcelFileDescriptor fileDescriptor;
+    private final long byteCount;
+
+    private SharedImageFile(LongSparseArray<int[]> entries, ParcelFileDescriptor fileDescriptor,
+            long byteCount) {
+        this.entries = entries;
+        this.fileDescriptor = fileDescriptor;
+        this.byteCount = byteCount;
+    }
+
+    /**
+     * Writes the pooled images of {@code decomposition} to a new file in {@code directory}. The
+     * file is unlinked at once; it lives as long as this object's descriptor, or a receiver's
+     * mapping of it, is open.
+     *
+     * <p>This loads every image, so call it off the main thread.
+     */
+    public static SharedImageFile write(Context context, WatchFaceDecomposition decomposition,
+            File directory) throws IOException {
+        ImagePool pool = decomposition.getImagePool();
+        Bitmap[] bitmaps = new Bitmap[pool.size()];
+        LongSparseArray<int[]> entries = new LongSparseArray<>(pool.size());
+        long size = 0;
+        for (int i = 0; i < bitmaps.length; i++) {
+            Bitmap bitmap = TextureAtlas.loadBitmap(context, pool.getIcon(i));
+            if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+                bitmap = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+            }
+            bitmaps[i] = bitmap;
+            entries.put(pool.getHash(i),
+                    new int[] {(int) size, bitmap.getWidth(), bitmap.getHeight()});
+            size += (long) bitmap.getWidth() * bitmap.getHeight() * BYTES_PER_PIXEL;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Images too large to share: " + size + " bytes");
+        }
+
+        File file = File.createTempFile("decomposition", ".pixels", directory);
+        try {
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.setLength(size);
+                MappedByteBuffer mapping =
+                        out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                for (int i = 0; i < bitmaps.length; i++) {
+                    mapping.position(entries.get(pool.getHash(i))[0]);
+                    bitmaps[i].copyPixelsToBuffer(mapping);
+                }
+                mapping.force();
+            }
+            ParcelFileDescriptor descriptor =
+                    ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+            return new SharedImageFile(entries, descriptor, size);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** Returns the descriptor to send to the receiver. */
+    public ParcelFileDescriptor getFileDescriptor() {
+        return fileDescriptor;
+    }
+
+    /** Returns the size of the file, which is the size of the images' pixels. */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Returns {offset, width, height} of the image with content hash {@code hash}, or null if the
+     * file does not hold it.
+     */
+    int[] find(long hash) {
+        return entries.get(hash);
+    }
+
+    /**
+     * Closes this side's descriptor. A receiver that has mapped the file keeps its mapping.
+     */
+    @Override
+    public void close() throws IOException {
+        fileDescriptor.close();
+    }
+
+    /**
+     * Maps a file written by {@link #write} read-only. The pixels are not copied: the buffer reads
+     * the pages of the file directly, and stays valid after {@code descriptor} is closed.
+     */
+    public static ByteBuffer map(ParcelFileDescriptor descriptor) throws IOException {
+        try (FileInputStream in = new FileInputStream(descriptor.getFileDescriptor())) {
+            FileChannel channel = in.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Returns a bitmap icon of the {@code width} by {@code height} image at {@code offset} in
+     * {@code pixels}, a buffer returned by {@link #map}. This is where the pixels are copied, once,
+     * into the bitmap.
+     *
+     * @throws IllegalArgumentException if the image does not lie within {@code pixels}
+     */
+    static Icon createIcon(ByteBuffer pixels, int offset, int width, int height) {
+        long length = (long) width * height * BYTES_PER_PIXEL;
+        if (width <= 0 || height <= 0 || offset < 0 || offset + length > pixels.capacity()) {
+            throw new IllegalArgumentException("Shared image outside the shared file");
+        }
+        ByteBuffer source = pixels.duplicate();
+        source.limit((int) (offset + length));
+        source.position(offset);
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.copyPixelsFromBuffer(source);
+        return Icon.createWithBitmap(bitmap);
+    }
+}
@@ -0,0 +1,64 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+/**
+ * Finds the part of a sprite that is not fully transparent.
+ *
+ * <p>This class has no Android dependencies so that it can also be used by host-side tools.
+ */
+public final class SpriteBounds {
+    private SpriteBounds() {}
+
+    /**
+     * Finds the smallest rectangle holding every pixel of {@code argb} whose alpha is not zero,
+     * grown by {@code margin} pixels on each side where the sprite has them.
+     *
+     * <p>Keep a margin of at least one pixel if the trimmed sprite will be drawn with filtering:
+     * the sampler then reads the same transparent border it would have read in the original, and
+     * the output is pixel-identical.
+     *
+     * @param argb the sprite's pixels, row by row
+     * @param outBounds receives left, top, right, bottom; right and bottom are exclusive
+     * @return false if the sprite is fully transparent, in which case {@code outBounds} is unset
+     */
+    public static boolean findOpaqueBounds(
+            int[] argb, int width, int height, int margin, int[] outBounds) {
+        int top = -1;
+        int bottom = -1;
+        int left = width;
+        int right = -1;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int rowLeft = -1;
+            for (int x = 0; x < width; x++) {
+                if ((argb[row + x] >>> 24) != 0) {
+                    rowLeft = x;
+                    break;
+                }
+            }
+            if (rowLeft == -1) {
+                continue;
+            }
+            int rowRight = rowLeft;
+            for (int x = width - 1; x > rowLeft; x--) {
+                if ((argb[row + x] >>> 24) != 0) {
+                    rowRight = x;
+                    break;
+                }
+            }
+            if (top == -1) {
+                top = y;
+            }
+            bottom = y;
+            left = Math.min(left, rowLeft);
+            right = Math.max(right, rowRight);
+        }
+        if (top == -1) {
+            return false;
+        }
+        outBounds[0] = Math.max(0, left - margin);
+        outBounds[1] = Math.max(0, top - margin);
+        outBounds[2] = Math.min(width, right + 1 + margin);
+        outBounds[3] = Math.min(height, bottom + 1 + margin);
+        return true;
+    }
+}
@@ -0,0 +1,104 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Draws numbers on a {@link Canvas} from the glyph strip of a {@link FontComponent}, the way the
+ * sidekick draws a {@link NumberComponent}, so that a face looks the same whichever of them draws
+ * it.
+ *
+ * <p>The strip is cut into one source rectangle per glyph when the font is created, and each
+ * digit is drawn with {@link Canvas#drawBitmap(Bitmap, Rect, RectF, Paint)}, so no text is shaped
+ * or rasterized and drawing allocates nothing. A font of {@code n} glyphs shows numbers in base
+ * {@code n}: a font of ten shows decimal digits, and a font of 31 days of the month shows each day
+ * as one glyph.
+ */
+public final class SpriteFont {
+
+    private final Bitmap strip;
+    private final Rect[] glyphs;
+    private final float glyphWidth;
+    private final float glyphHeight;
+    private final RectF dst = new RectF();
+
+    /**
+     * @param strip the image the glyphs are stacked in, smallest value at the top
+     * @param region the part of {@code strip} the glyphs take, in proportion to its size
+     * @param glyphCount the number of glyphs
+     * @param glyphWidth the width of each glyph, in pixels of {@code strip}
+     * @param glyphHeight the height of each glyph, in pixels of {@code strip}
+     */
+    public SpriteFont(
+            Bitmap strip, RectF region, int glyphCount, float glyphWidth, float glyphHeight) {
+        if (glyphCount < 2) {
+            throw new IllegalArgumentException("A font needs at least 2 glyphs: " + glyphCount);
+        }
+        this.strip = strip;
+        this.glyphWidth = glyphWidth;
+        this.glyphHeight = glyphHeight;
+        glyphs = new Rect[glyphCount];
+        float left = region.left * strip.getWidth();
+        float top = region.top * strip.getHeight();
+        for (int i = 0; i < glyphCount; i++) {
+            glyphs[i] = new Rect(Math.round(left), Math.round(top + i * glyphHeight),
+                    Math.round(left + glyphWidth), Math.round(top + (i + 1) * glyphHeight));
+        }
+    }
+
+    /** Returns the font drawn by {@code font}, loading its image. */
+    public static SpriteFont create(Context context, FontComponent font) {
+        RectF region = new RectF();
+        font.getImageRegion(region);
+        return new SpriteFont(TextureAtlas.loadBitmap(context, font.getImage()), region,
+                font.getDigitCount(), font.getDigitWidth(), font.getDigitHeight());
+    }
+
+    public int getGlyphCount() {
+        return glyphs.length;
+    }
+
+    public float getGlyphWidth() {
+        return glyphWidth;
+    }
+
+    public float getGlyphHeight() {
+        return glyphHeight;
+    }
+
+    /**
+     * Draws glyph {@code index} with its top left corner at ({@code left}, {@code top}), {@code
+     * scale} times its size in the strip.
+     */
+    public void drawGlyph(
+            Canvas canvas, int index, float left, float top, float scale, Paint paint) {
+        dst.set(left, top, left + glyphWidth * scale, top + glyphHeight * scale);
+        canvas.drawBitmap(strip, glyphs[index], dst, paint);
+    }
+
+    /**
+     * Draws {@code value}, which must not be negative, with at least {@code minDigits} digits
+     * and its top left corner at ({@code left}, {@code top}), as {@link #drawGlyph} does. Returns
+     * the x co-ordinate of its right edge.
+     */
+    public float drawNumber(Canvas canvas, long value, int minDigits, float left, float top,
+            float scale, Paint paint) {
+        int base = glyphs.length;
+        int digits = 1;
+        long divisor = 1;
+        while (value / divisor >= base || digits < minDigits) {
+            divisor *= base;
+            digits++;
+        }
+        float x = left;
+        for (; divisor > 0; divisor /= base) {
+            drawGlyph(canvas, (int) (value / divisor % base), x, top, scale, paint);
+            x += glyphWidth * scale;
+        }
+        return x;
+    }
+}
@@ -0,0 +1,126 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.graphics.drawable.Icon;
+
+/**
+ * Crops the transparent padding off sprites such as watch hands, which are usually drawn as tall
+ * strips centred on the pivot and are mostly empty.
+ *
+ * <p>A one pixel transparent margin is kept around the opaque area, so a trimmed sprite drawn at
+ * its offset, with or without rotation and filtering, produces the same pixels as the original
+ * while reading and blending far fewer of them.
+ */
+public final class SpriteTrimmer {
+
+    /** Transparent pixels kept around the opaque area; see {@link SpriteBounds}. */
+    private static final int MARGIN = 1;
+
+    private SpriteTrimmer() {}
+
+    /** A trimmed sprite and where its top left corner sits within the original. */
+    public static final class Sprite {
+        private final Bitmap bitmap;
+        private final int offsetX;
+        private final int offsetY;
+
+        Sprite(Bitmap bitmap, int offsetX, int offsetY) {
+            this.bitmap = bitmap;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+
+        public Bitmap getBitmap() {
+            return bitmap;
+        }
+
+        /** Returns how far right of the original's left edge to draw {@link #getBitmap()}. */
+        public int getOffsetX() {
+            return offsetX;
+        }
+
+        /** Returns how far below the original's top edge to draw {@link #getBitmap()}. */
+        public int getOffsetY() {
+            return offsetY;
+        }
+    }
+
+    /**
+     * Trims {@code source}. Returns {@code source} itself at offset (0, 0) if there is nothing to
+     * trim, or if it is fully transparent.
+     */
+    public static Sprite trim(Bitmap source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int[] pixels = new int[width * height];
+        source.getPixels(pixels, 0, width, 0, 0, width, height);
+        int[] bounds = new int[4];
+        if (!SpriteBounds.findOpaqueBounds(pixels, width, height, MARGIN, bounds)
+                || (bounds[0] == 0 && bounds[1] == 0 && bounds[2] == width && bounds[3] == height)) {
+            return new Sprite(source, 0, 0);
+        }
+        Bitmap trimmed = Bitmap.createBitmap(
+                source, bounds[0], bounds[1], bounds[2] - bounds[0], bounds[3] - bounds[1]);
+        return new Sprite(trimmed, bounds[0], bounds[1]);
+    }
+
+    /**
+     * Returns {@code component} with its image trimmed and its bounds shrunk to match, so that it
+     * draws the same pixels. The pivot is relative to the screen rather than to the bounds, so it
+     * does not change. Returns {@code component} itself if there is nothing to trim, or if it
+     * already uses an image region; trim before packing into a {@link TextureAtlas}.
+     *
+     * <p>The trimmed image is carried as a bitmap rather than a resource reference, which makes the
+     * component larger to parcel. This suits build-time use, or images that are already bitmaps.
+     */
+    public static ImageComponent trim(Context context, ImageComponent component) {
+        if (component.hasImageRegion()) {
+            return component;
+        }
+        Bitmap source = TextureAtlas.loadBitmap(context, component.getImage());
+        Sprite sprite = trim(source);
+        if (sprite.getBitmap() == source) {
+            return component;
+        }
+        RectF bounds = component.getBounds();
+        float scaleX = bounds.width() / source.getWidth();
+        float scaleY = bounds.height() / source.getHeight();
+        float left = bounds.left + sprite.getOffsetX() * scaleX;
+        float top = bounds.top + sprite.getOffsetY() * scaleY;
+        RectF trimmedBounds = new RectF(left, top,
+                left + sprite.getBitmap().getWidth() * scaleX,
+                top + sprite.getBitmap().getHeight() * scaleY);
+        return new ImageComponent.Builder(component)
+                .setImage(Icon.createWithBitmap(sprite.getBitmap()))
+                .setBounds(trimmedBounds)
+                .build();
+    }
+
+    /**
+     * Returns {@code decomposition} with every rotating image component trimmed as by {@link
+     * #trim(Context, ImageComponent)}. Static images, such as backgrounds, are left alone.
+     */
+    public static WatchFaceDecomposition trimHands(
+            Context context, WatchFaceDecomposition decomposition) {
+        WatchFaceDecomposition.Builder builder = new WatchFaceDecomposition.Builder()
+                .addIdsToDelete(decomposition.getIdsToDelete())
+                .setClearAll(decomposition.isClearAll());
+        for (ImageComponent component : decomposition.getImageComponents()) {
+            builder.addImageComponents(component.getDegreesPerDay() != 0f
+                    ? trim(context, component)
+                    : component);
+        }
+        return builder
+                .addNumberComponents(decomposition.getNumberComponents()
+                        .toArray(new NumberComponent[0]))
+                .addFontComponents(decomposition.getFontComponents()
+                        .toArray(new FontComponent[0]))
+                .addStringComponents(decomposition.getStringComponents()
+                        .toArray(new StringComponent[0]))
+                .addProportionalFontComponents(decomposition.getProportionalFontComponents()
+                        .toArray(new ProportionalFontComponent[0]))
+                .buildPartial();
+    }
+}
@@ -16,7 +16,7 @@ public class StringComponent extends DrawableComponent {
             new Creator<StringComponent>() {
                 @Override
                 public StringComponent createFromParcel(Parcel source) {
-                    return new StringComponent(source);
+                    return new StringComponent(readFields(source));
                 }
 
                 @Override
@@ -30,12 +30,38 @@ public class StringComponent extends DrawableComponent {
     private static final String FIELD_SOURCE_ID = "string_source_id";
     private static final String FIELD_ALIGNMENT = "alignment";
 
+    private final int fontComponentId;
+    /** x, y, or null if no position was set. */
+    private final float[] position;
+    private final int stringSourceId;
+    private final Alignment alignment;
+
+    private StringComponent(Builder builder) {
+        super(builder);
+        fontComponentId = builder.fontComponentId;
+        position = builder.position == null ? null : builder.position.clone();
+        stringSourceId = builder.stringSourceId;
+        alignment = builder.alignment;
+    }
+
     private StringComponent(Bundle fields) {
         super(fields);
+        fontComponentId = fields.getInt(FIELD_FONT_COMPONENT_ID);
+        PointF point = fields.getParcelable(FIELD_POSITION);
+        position = point == null ? null : new float[] {point.x, point.y};
+        stringSourceId = fields.getInt(FIELD_SOURCE_ID);
+        alignment = Alignment.values()[fields.getInt(FIELD_ALIGNMENT)];
     }
 
-    private StringComponent(Parcel in) {
-        super(in);
+    @Override
+    void writeFields(Bundle fields) {
+        super.writeFields(fields);
+        fields.putInt(FIELD_FONT_COMPONENT_ID, fontComponentId);
+        if (position != null) {
+            fields.putParcelable(FIELD_POSITION, getPosition());
+        }
+        fields.putInt(FIELD_SOURCE_ID, stringSourceId);
+        fields.putInt(FIELD_ALIGNMENT, alignment.ordinal());
     }
 
     /**
@@ -44,7 +70,7 @@ public class StringComponent extends DrawableComponent {
      */
     /** @hide */
     public int getFontComponentId() {
-        return fields.getInt(FIELD_FONT_COMPONENT_ID);
+        return fontComponentId;
     }
 
     /**
@@ -55,31 +81,65 @@ public class StringComponent extends DrawableComponent {
      */
     /** @hide */
     public PointF getPosition() {
-        PointF position = fields.getParcelable(FIELD_POSITION);
         if (position == null) {
             return null;
         }
-        return new PointF(position.x, position.y);
+        return new PointF(position[0], position[1]);
+    }
+
+    /** Returns whether a position was set, i.e. whether {@link #getPosition()} is non-null. */
+    /** @hide */
+    public boolean hasPosition() {
+        return position != null;
+    }
+
+    /** Returns the x co-ordinate of {@link #getPosition()}, or 0 if there is no position. */
+    /** @hide */
+    public float getPositionX() {
+        return position == null ? 0f : position[0];
+    }
+
+    /** Returns the y co-ordinate of {@link #getPosition()}, or 0 if there is no position. */
+    /** @hide */
+    public float getPositionY() {
+        return position == null ? 0f : position[1];
     }
 
     /** @hide */
     public int getStringSourceId() {
-        return fields.getInt(FIELD_SOURCE_ID);
+        return stringSourceId;
     }
 
     /** @hide */
     public Alignment getAlignment() {
-        return Alignment.values()[fields.getInt(FIELD_ALIGNMENT)];
+        return alignment;
     }
 
     /** Builder for {@link StringComponent} objects. */
     public static class Builder extends DrawableComponent.Builder<Builder> {
+        int fontComponentId;
+        float[] position;
+        int stringSourceId;
+        Alignment alignment;
+        private boolean hasStringSourceId;
+
+        public Builder() {}
+
+        /** Creates a builder initialized with every field of {@code component}. */
+        public Builder(StringComponent component) {
+            super(component);
+            fontComponentId = component.fontComponentId;
+            position = component.position == null ? null : component.position.clone();
+            stringSourceId = component.stringSourceId;
+            alignment = component.alignment;
+            hasStringSourceId = true;
+        }
 
         /**
          * Sets the component id of the {@link FontComponent} that should be used to render the numbers.
          */
         public Builder setFontComponentId(int fontComponentId) {
-            fields.putInt(FIELD_FONT_COMPONENT_ID, fontComponentId);
+            this.fontComponentId = fontComponentId;
             return this;
         }
 
@@ -90,34 +150,33 @@ public class StringComponent extends DrawableComponent {
          * watch face.
          */
         public Builder setPosition(PointF position) {
-            fields.putParcelable(FIELD_POSITION, position);
+            this.position = position == null ? null : new float[] {position.x, position.y};
             return this;
         }
 
         public Builder setStringSourceId(int sourceId) {
-            fields.putInt(FIELD_SOURCE_ID, sourceId);
+            stringSourceId = sourceId;
+            hasStringSourceId = true;
             return this;
         }
 
         public Builder setAlignment(Alignment alignment) {
-            fields.putInt(FIELD_ALIGNMENT, alignment.ordinal());
+            this.alignment = alignment;
             return this;
         }
 
         public StringComponent build() {
-            if (!fields.containsKey(FIELD_COMPONENT_ID)) {
-                throw new IllegalStateException("Component id must be provided");
-            }
+            checkComponentId();
 
-            if (!fields.containsKey(FIELD_SOURCE_ID)) {
+            if (!hasStringSourceId) {
                 throw new IllegalStateException("Source id must be specified");
             }
 
-            if (!fields.containsKey(FIELD_ALIGNMENT)) {
+            if (alignment == null) {
                 throw new IllegalStateException("Alignment must be specified");
             }
 
-            return new StringComponent(fields);
+            return new StringComponent(this);
         }
     }
 }
@@ -0,0 +1,198 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Icon;
+
+/**
+ * The images of a {@link WatchFaceDecomposition} packed into a few atlas pages.
+ *
+ * <p>Every distinct image in the decomposition's {@link ImagePool} is drawn into a page by {@link
+ * AtlasPacker}, and the image, font and proportional font components are rewritten to show their
+ * part of that page through an image region. A receiver then holds one allocation per page
+ * instead of one per image.
+ *
+ * <p>Image regions are only understood by receivers built from this package, such as our own
+ * renderers and {@link DecompositionCodec}. Do not send a packed decomposition to a sidekick that
+ * predates them: it would draw whole pages.
+ */
+public final class TextureAtlas {
+
+    /** Empty pixels between packed images, so that bilinear filtering does not bleed. */
+    private static final int PADDING = 1;
+
+    private final WatchFaceDecomposition decomposition;
+    private final Bitmap[] pages;
+    private final int unpackedByteCount;
+    private final int unpackedAllocationCount;
+
+    private TextureAtlas(WatchFaceDecomposition decomposition, Bitmap[] pages,
+            int unpackedByteCount, int unpackedAllocationCount) {
+        this.decomposition = decomposition;
+        this.pages = pages;
+        this.unpackedByteCount = unpackedByteCount;
+        this.unpackedAllocationCount = unpackedAllocationCount;
+    }
+
+    /**
+     * Packs the images of {@code decomposition} into pages no larger than {@code maxPageSize}
+     * pixels square. Images that are larger than that get a page of their own.
+     *
+     * <p>This loads and draws every image, so call it off the main thread.
+     */
+    public static TextureAtlas pack(
+            Context context, WatchFaceDecomposition decomposition, int maxPageSize) {
+        ImagePool pool = decomposition.getImagePool();
+        Bitmap[] images = new Bitmap[pool.size()];
+        int[] widths = new int[images.length];
+        int[] heights = new int[images.length];
+        int unpackedBytes = 0;
+        for (int i = 0; i < images.length; i++) {
+            images[i] = loadBitmap(context, pool.getIcon(i));
+            widths[i] = images[i].getWidth();
+            heights[i] = images[i].getHeight();
+            unpackedBytes += images[i].getAllocationByteCount();
+        }
+
+        AtlasPacker.Result result =
+                new AtlasPacker(maxPageSize, maxPageSize, PADDING).pack(widths, heights);
+        Bitmap[] pages = new Bitmap[result.getPageCount()];
+        Canvas canvas = new Canvas();
+        for (int i = 0; i < images.length; i++) {
+            int page = result.getPage(i);
+            if (result.isAlone(i)) {
+                // Nothing to gain from copying an image that fills its page.
+                pages[page] = images[i];
+                continue;
+            }
+            if (pages[page] == null) {
+                pages[page] = Bitmap.createBitmap(result.getPageWidth(page),
+                        result.getPageHeight(page), Bitmap.Config.ARGB_8888);
+            }
+            canvas.setBitmap(pages[page]);
+            canvas.drawBitmap(images[i], result.getX(i), result.getY(i), null);
+        }
+        canvas.setBitmap(null);
+
+        Icon[] pageIcons = new Icon[pages.length];
+        for (int p = 0; p < pages.length; p++) {
+            pageIcons[p] = Icon.createWithBitmap(pages[p]);
+        }
+        WatchFaceDecomposition packed = rewrite(decomposition, pool, result, pageIcons);
+        return new TextureAtlas(packed, pages, unpackedBytes, images.length);
+    }
+
+    /** Returns the decomposition with every image replaced by a region of an atlas page. */
+    public WatchFaceDecomposition getDecomposition() {
+        return decomposition;
+    }
+
+    public int getPageCount() {
+        return pages.length;
+    }
+
+    public Bitmap getPage(int page) {
+        return pages[page];
+    }
+
+    /** Returns the bytes taken by the distinct images before packing. */
+    public int getUnpackedByteCount() {
+        return unpackedByteCount;
+    }
+
+    /** Returns the bytes taken by the atlas pages. */
+    public int getPackedByteCount() {
+        int total = 0;
+        for (Bitmap page : pages) {
+            total += page.getAllocationByteCount();
+        }
+        return total;
+    }
+
+    /** Returns the number of bitmaps a receiver allocates for the unpacked images. */
+    public int getUnpackedAllocationCount() {
+        return unpackedAllocationCount;
+    }
+
+    /** Returns the number of bitmaps a receiver allocates for the atlas. */
+    public int getPackedAllocationCount() {
+        return pages.length;
+    }
+
+    private static WatchFaceDecomposition rewrite(WatchFaceDecomposition decomposition,
+            ImagePool pool, AtlasPacker.Result result, Icon[] pageIcons) {
+        WatchFaceDecomposition.Builder builder = new WatchFaceDecomposition.Builder()
+                .addIdsToDelete(decomposition.getIdsToDelete())
+                .setClearAll(decomposition.isClearAll());
+        RectF region = new RectF();
+        for (ImageComponent component : decomposition.getImageComponents()) {
+            int i = pool.indexOf(ImagePool.contentHash(component.getImage()));
+            component.getImageRegion(region);
+            builder.addImageComponents(new ImageComponent.Builder(component)
+                    .setImage(pageIcons[result.getPage(i)])
+                    .setImageRegion(mapRegion(result, i, region))
+                    .build());
+        }
+        for (FontComponent component : decomposition.getFontComponents()) {
+            int i = pool.indexOf(ImagePool.contentHash(component.getImage()));
+            component.getImageRegion(region);
+            builder.addFontComponents(new FontComponent.Builder(component)
+                    .setImage(pageIcons[result.getPage(i)])
+                    .setImageRegion(mapRegion(result, i, region))
+                    .build());
+        }
+        for (ProportionalFontComponent component : decomposition.getProportionalFontComponents()) {
+            int i = pool.indexOf(ImagePool.contentHash(component.getImage()));
+            component.getImageRegion(region);
+            builder.addProportionalFontComponents(new ProportionalFontComponent.Builder(component)
+                    .setImage(pageIcons[result.getPage(i)])
+                    .setImageRegion(mapRegion(result, i, region))
+                    .build());
+        }
+        builder.addNumberComponents(decomposition.getNumberComponents()
+                .toArray(new NumberComponent[0]));
+        builder.addStringComponents(decomposition.getStringComponents()
+                .toArray(new StringComponent[0]));
+        // Fonts may live outside a partial update; packing must not make that an error.
+        return builder.buildPartial();
+    }
+
+    /**
+     * Maps {@code region}, relative to image {@code i}, to the same area relative to the page the
+     * image was packed into. Returns null if that is the whole page.
+     */
+    private static RectF mapRegion(AtlasPacker.Result result, int i, RectF region) {
+        if (result.isAlone(i) && region.left == 0f && region.top == 0f && region.right == 1f
+                && region.bottom == 1f) {
+            return null;
+        }
+        int page = result.getPage(i);
+        float pageWidth = result.getPageWidth(page);
+        float pageHeight = result.getPageHeight(page);
+        int width = result.getWidth(i);
+        int height = result.getHeight(i);
+        float left = result.getX(i) + region.left * width;
+        float top = result.getY(i) + region.top * height;
+        float right = result.getX(i) + region.right * width;
+        float bottom = result.getY(i) + region.bottom * height;
+        return new RectF(left / pageWidth, top / pageHeight, right / pageWidth,
+                bottom / pageHeight);
+    }
+
+    /** Returns the pixels of {@code icon}, drawing it into a new bitmap if it is not one. */
+    static Bitmap loadBitmap(Context context, Icon icon) {
+        Drawable drawable = icon.loadDrawable(context);
+        if (drawable instanceof BitmapDrawable) {
+            return ((BitmapDrawable) drawable).getBitmap();
+        }
+        Bitmap bitmap = Bitmap.createBitmap(Math.max(1, drawable.getIntrinsicWidth()),
+                Math.max(1, drawable.getIntrinsicHeight()), Bitmap.Config.ARGB_8888);
+        drawable.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        drawable.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+}
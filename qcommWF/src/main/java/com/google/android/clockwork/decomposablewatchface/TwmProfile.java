@@ -0,0 +1,265 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Icon;
+import android.util.LongSparseArray;
+import android.util.SparseBooleanArray;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Derives the decomposition for traditional watch mode from a face's normal decomposition.
+ *
+ * <p>The sidekick falls back to traditional watch mode when the battery is nearly empty, and then
+ * draws the face it was last sent for that mode without waking the application processor. That
+ * face should cost as little to keep and draw as possible, so the derived profile:
+ * <ul>
+ *   <li>drops seconds, as {@link DecompositionBudget.Step#DROP_SECONDS} does, and every blinking
+ *       component, keeping the hour and minute;
+ *   <li>merges the static images below everything that moves or counts into a single image;
+ *   <li>turns every image into a {@link #BITS_PER_PIXEL} gray scale image.
+ * </ul>
+ *
+ * <p>Like {@link DecompositionBudget}, it keeps the ids of the components it does not merge away.
+ * Loading and merging images is slow, so call {@link #derive} off the main thread.
+ */
+public final class TwmProfile {
+
+    /** The palette depth of every image in the profile. */
+    public static final int BITS_PER_PIXEL = 1;
+
+    private static final Comparator<DrawableComponent> BY_Z_ORDER =
+            new Comparator<DrawableComponent>() {
+                @Override
+                public int compare(DrawableComponent a, DrawableComponent b) {
+                    return Integer.compare(a.getZOrder(), b.getZOrder());
+                }
+            };
+
+    private TwmProfile() {}
+
+    /** Returns the traditional watch mode profile of {@code decomposition}, a complete face. */
+    public static WatchFaceDecomposition derive(
+            Context context, WatchFaceDecomposition decomposition) {
+        WatchFaceDecomposition profile =
+                DecompositionBudget.dropSeconds(dropBlinking(decomposition));
+        profile = mergeStaticImages(context, profile);
+        return toGrayScale(context, profile);
+    }
+
+    /**
+     * Returns {@code decomposition} without the components with the given ids, such as
+     * complications whose values would be stale for the hours the profile may be shown. Pass the
+     * result to {@link #derive}.
+     */
+    public static WatchFaceDecomposition exclude(
+            WatchFaceDecomposition decomposition, int... componentIds) {
+        if (componentIds.length == 0) {
+            return decomposition;
+        }
+        SparseBooleanArray excluded = new SparseBooleanArray(componentIds.length);
+        for (int id : componentIds) {
+            excluded.put(id, true);
+        }
+        return new WatchFaceDecomposition.Builder()
+                .addIdsToDelete(decomposition.getIdsToDelete())
+                .setClearAll(decomposition.isClearAll())
+                .addImageComponents(without(
+                        decomposition.getImageComponents(), excluded, new ImageComponent[0]))
+                .addNumberComponents(without(
+                        decomposition.getNumberComponents(), excluded, new NumberComponent[0]))
+                .addFontComponents(
+                        without(decomposition.getFontComponents(), excluded, new FontComponent[0]))
+                .addStringComponents(without(
+                        decomposition.getStringComponents(), excluded, new StringComponent[0]))
+                .addProportionalFontComponents(
+                        without(decomposition.getProportionalFontComponents(), excluded,
+                                new ProportionalFontComponent[0]))
+                .buildPartial();
+    }
+
+    private static <T extends AbstractComponent> T[] without(
+            List<T> components, SparseBooleanArray excluded, T[] type) {
+        List<T> kept = new ArrayList<>(components.size());
+        for (T component : components) {
+            if (!excluded.get(component.getComponentId())) {
+                kept.add(component);
+            }
+        }
+        return kept.toArray(type);
+    }
+
+    private static WatchFaceDecomposition dropBlinking(WatchFaceDecomposition decomposition) {
+        List<ImageComponent> images = new ArrayList<>();
+        for (ImageComponent image : decomposition.getImageComponents()) {
+            if (!image.getBlinkEnabled()) {
+                images.add(image);
+            }
+        }
+        List<NumberComponent> numbers = new ArrayList<>();
+        for (NumberComponent number : decomposition.getNumberComponents()) {
+            if (!number.getBlinkEnabled()) {
+                numbers.add(number);
+            }
+        }
+        List<StringComponent> strings = new ArrayList<>();
+        for (StringComponent string : decomposition.getStringComponents()) {
+            if (!string.getBlinkEnabled()) {
+                strings.add(string);
+            }
+        }
+        // Fonts left without users are dropped with the seconds.
+        return new WatchFaceDecomposition.Builder()
+                .addIdsToDelete(decomposition.getIdsToDelete())
+                .setClearAll(decomposition.isClearAll())
+                .addImageComponents(images.toArray(new ImageComponent[0]))
+                .addNumberComponents(numbers.toArray(new NumberComponent[0]))
+                .addFontComponents(decomposition.getFontComponents()
+                        .toArray(new FontComponent[0]))
+                .addStringComponents(strings.toArray(new StringComponent[0]))
+                .addProportionalFontComponents(decomposition.getProportionalFontComponents()
+                        .toArray(new ProportionalFontComponent[0]))
+                .buildPartial();
+    }
+
+    /**
+     * Draws the static images that lie below every other drawable component into one image, which
+     * takes the id and z order of the lowest of them.
+     */
+    private static WatchFaceDecomposition mergeStaticImages(
+            Context context, WatchFaceDecomposition decomposition) {
+        int lowestMoving = Integer.MAX_VALUE;
+        for (ImageComponent image : decomposition.getImageComponents()) {
+            if (!isStatic(image)) {
+                lowestMoving = Math.min(lowestMoving, image.getZOrder());
+            }
+        }
+        for (NumberComponent number : decomposition.getNumberComponents()) {
+            lowestMoving = Math.min(lowestMoving, number.getZOrder());
+        }
+        for (StringComponent string : decomposition.getStringComponents()) {
+            lowestMoving = Math.min(lowestMoving, string.getZOrder());
+        }
+
+        List<ImageComponent> layers = new ArrayList<>();
+        List<ImageComponent> images = new ArrayList<>();
+        for (ImageComponent image : decomposition.getImageComponents()) {
+            if (isStatic(image) && image.getZOrder() < lowestMoving) {
+                layers.add(image);
+            } else {
+                images.add(image);
+            }
+        }
+        if (layers.size() < 2) {
+            return decomposition;
+        }
+        // Stable, so layers with equal z order keep the order they were added in.
+        Collections.sort(layers, BY_Z_ORDER);
+
+        // Draw at the finest resolution any layer has, over the area they cover together.
+        RectF union = new RectF(layers.get(0).getBounds());
+        float pixelsPerUnit = 0f;
+        RectF bounds = new RectF();
+        RectF region = new RectF();
+        Bitmap[] bitmaps = new Bitmap[layers.size()];
+        for (int i = 0; i < bitmaps.length; i++) {
+            ImageComponent layer = layers.get(i);
+            layer.getBounds(bounds);
+            layer.getImageRegion(region);
+            union.union(bounds);
+            bitmaps[i] = TextureAtlas.loadBitmap(context, layer.getImage());
+            if (bounds.width() > 0f && bounds.height() > 0f) {
+                pixelsPerUnit = Math.max(pixelsPerUnit, Math.max(
+                        region.width() * bitmaps[i].getWidth() / bounds.width(),
+                        region.height() * bitmaps[i].getHeight() / bounds.height()));
+            }
+        }
+        int width = Math.max(1, (int) Math.ceil(union.width() * pixelsPerUnit));
+        int height = Math.max(1, (int) Math.ceil(union.height() * pixelsPerUnit));
+        Bitmap merged = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(merged);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        Rect source = new Rect();
+        RectF destination = new RectF();
+        for (int i = 0; i < bitmaps.length; i++) {
+            ImageComponent layer = layers.get(i);
+            layer.getBounds(bounds);
+            layer.getImageRegion(region);
+            Bitmap bitmap = bitmaps[i];
+            source.set(Math.round(region.left * bitmap.getWidth()),
+                    Math.round(region.top * bitmap.getHeight()),
+                    Math.round(region.right * bitmap.getWidth()),
+                    Math.round(region.bottom * bitmap.getHeight()));
+            destination.set((bounds.left - union.left) * width / union.width(),
+                    (bounds.top - union.top) * height / union.height(),
+                    (bounds.right - union.left) * width / union.width(),
+                    (bounds.bottom - union.top) * height / union.height());
+            canvas.drawBitmap(bitmap, source, destination, paint);
+        }
+
+        images.add(0, new ImageComponent.Builder(layers.get(0))
+                .setImage(Icon.createWithBitmap(merged))
+                .setImageRegion(null)
+                .setBounds(union)
+                .build());
+        return DecompositionBudget.rebuild(decomposition, images,
+                decomposition.getNumberComponents(), decomposition.getFontComponents(),
+                decomposition.getProportionalFontComponents());
+    }
+
+    private static boolean isStatic(ImageComponent image) {
+        return image.getDegreesPerDay() == 0f && image.getOffsetDegrees() == 0f;
+    }
+
+    private static WatchFaceDecomposition toGrayScale(
+            Context context, WatchFaceDecomposition decomposition) {
+        // Convert each distinct image once, so that components sharing an image still do.
+        LongSparseArray<Icon> converted = new LongSparseArray<>();
+        ImagePool pool = decomposition.getImagePool();
+        for (int i = 0; i < pool.size(); i++) {
+            Bitmap bitmap = TextureAtlas.loadBitmap(context, pool.getIcon(i));
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            int[] argb = new int[width * height];
+            bitmap.getPixels(argb, 0, width, 0, 0, width, height);
+            for (int j = 0; j < argb.length; j++) {
+                int pixel = argb[j];
+                // Rec. 601 luma, in integer arithmetic.
+                int luma = (299 * ((pixel >> 16) & 0xff) + 587 * ((pixel >> 8) & 0xff)
+                        + 114 * (pixel & 0xff)) / 1000;
+                argb[j] = (pixel & 0xff000000) | luma << 16 | luma << 8 | luma;
+            }
+            IndexedImage image =
+                    ImageQuantizer.quantize(argb, width, height, BITS_PER_PIXEL, true /* dither */);
+            converted.put(pool.getHash(i), IndexedImageEncoder.toIcon(image));
+        }
+
+        List<ImageComponent> images = new ArrayList<>();
+        for (ImageComponent image : decomposition.getImageComponents()) {
+            images.add(new ImageComponent.Builder(image)
+                    .setImage(converted.get(ImagePool.contentHash(image.getImage())))
+                    .build());
+        }
+        List<FontComponent> fonts = new ArrayList<>();
+        for (FontComponent font : decomposition.getFontComponents()) {
+            fonts.add(new FontComponent.Builder(font)
+                    .setImage(converted.get(ImagePool.contentHash(font.getImage())))
+                    .build());
+        }
+        List<ProportionalFontComponent> proportionalFonts = new ArrayList<>();
+        for (ProportionalFontComponent font : decomposition.getProportionalFontComponents()) {
+            proportionalFonts.add(new ProportionalFontComponent.Builder(font)
+                    .setImage(converted.get(ImagePool.contentHash(font.getImage())))
+                    .build());
+        }
+        return DecompositionBudget.rebuild(decomposition, images,
+                decomposition.getNumberComponents(), fonts, proportionalFonts);
+    }
+}
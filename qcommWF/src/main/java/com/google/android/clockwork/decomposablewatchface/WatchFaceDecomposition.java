@@ -3,9 +3,12 @@ package com.google.android.clockwork.decomposablewatchface;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.util.SparseArray;
 import android.util.SparseBooleanArray;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 public class WatchFaceDecomposition implements Parcelable {
@@ -34,17 +37,89 @@ public class WatchFaceDecomposition implements Parcelable {
     private static final String FIELD_FONTS = "fonts";
     private static final String FIELD_STRINGS = "strings";
     private static final String FIELD_PROPORTIONAL_FONTS = "proportional-fonts";
+    private static final String FIELD_IDS_TO_DELETE = "ids-to-delete";
+    private static final String FIELD_CLEAR_ALL = "clear-all";
 
-    // TODO(olilan): Add "ids to delete", "clear all" flag
+    private static final int[] NO_IDS = new int[0];
 
-    private final Bundle fields;
+    private static final Comparator<DrawableComponent> BY_Z_ORDER =
+            new Comparator<DrawableComponent>() {
+                @Override
+                public int compare(DrawableComponent a, DrawableComponent b) {
+                    return Integer.compare(a.getZOrder(), b.getZOrder());
+                }
+            };
 
-    private WatchFaceDecomposition(Bundle fields) {
-        this.fields = fields;
+    private final List<ImageComponent> images;
+    private final List<NumberComponent> numbers;
+    private final List<FontComponent> fonts;
+    private final List<StringComponent> strings;
+    private final List<ProportionalFontComponent> proportionalFonts;
+    private final int[] idsToDelete;
+    private final boolean clearAll;
+
+    /** Every component in this decomposition, keyed by component id. */
+    private final SparseArray<Component> componentsById;
+    /** The font of each entry of {@link #numbers}, or null if it is not in this decomposition. */
+    private final FontComponent[] numberFonts;
+    /** The font of each entry of {@link #strings}, or null if it is not in this decomposition. */
+    private final AbstractComponent[] stringFonts;
+
+    /** Images, numbers and strings in drawing order. */
+    private final DrawableComponent[] drawList;
+    /** The font of each entry of {@link #drawList}, or null for images and unresolved fonts. */
+    private final AbstractComponent[] drawFonts;
+    /**
+     * Start index in {@link #drawList} of each draw batch, followed by the length of the draw list
+     * so that batch {@code i} ends at {@code drawBatchStarts[i + 1]}.
+     */
+    private final int[] drawBatchStarts;
+    /**
+     * The distinct images of {@link #images}, {@link #fonts} and {@link #proportionalFonts}, pooled
+     * on first use since hashing them reads every bitmap's pixels.
+     */
+    private ImagePool imagePool;
+
+    private WatchFaceDecomposition(Builder builder, SparseArray<Component> componentsById) {
+        images = unmodifiableCopy(builder.images);
+        numbers = unmodifiableCopy(builder.numbers);
+        fonts = unmodifiableCopy(builder.fonts);
+        strings = unmodifiableCopy(builder.strings);
+        proportionalFonts = unmodifiableCopy(builder.proportionalFonts);
+        idsToDelete = builder.getIdsToDelete();
+        clearAll = builder.clearAll;
+        this.componentsById = componentsById;
+        numberFonts = new FontComponent[numbers.size()];
+        stringFonts = new AbstractComponent[strings.size()];
+        resolveFonts();
+        drawList = sortForDrawing();
+        drawFonts = new AbstractComponent[drawList.length];
+        drawBatchStarts = batchByFont();
     }
 
     private WatchFaceDecomposition(Parcel in) {
-        fields = in.readBundle(getClass().getClassLoader());
+        Bundle fields = in.readBundle(getClass().getClassLoader());
+        images = readComponentList(fields, FIELD_IMAGES);
+        numbers = readComponentList(fields, FIELD_NUMBERS);
+        fonts = readComponentList(fields, FIELD_FONTS);
+        strings = readComponentList(fields, FIELD_STRINGS);
+        proportionalFonts = readComponentList(fields, FIELD_PROPORTIONAL_FONTS);
+        int[] ids = fields.getIntArray(FIELD_IDS_TO_DELETE);
+        idsToDelete = ids == null ? NO_IDS : ids;
+        clearAll = fields.getBoolean(FIELD_CLEAR_ALL);
+        // A parcel may carry a partial update, so unresolved fonts are not an error here.
+        componentsById = new SparseArray<>(getComponentCount());
+        addToIndex(images, componentsById);
+        addToIndex(numbers, componentsById);
+        addToIndex(fonts, componentsById);
+        addToIndex(strings, componentsById);
+        addToIndex(proportionalFonts, componentsById);
+        numberFonts = new FontComponent[numbers.size()];
+        stringFonts = new AbstractComponent[strings.size()];
+        resolveFonts();
+        drawList = sortForDrawing();
+        drawFonts = new AbstractComponent[drawList.length];
+        drawBatchStarts = batchByFont();
     }
 
     /** @hide */
@@ -56,38 +131,260 @@ public class WatchFaceDecomposition implements Parcelable {
     /** @hide */
     @Override
     public void writeToParcel(Parcel dest, int flags) {
+        Bundle fields = new Bundle();
+        if (idsToDelete.length > 0) {
+            fields.putIntArray(FIELD_IDS_TO_DELETE, idsToDelete);
+        }
+        if (clearAll) {
+            fields.putBoolean(FIELD_CLEAR_ALL, true);
+        }
+        fields.putParcelableArrayList(FIELD_IMAGES, new ArrayList<>(images));
+        fields.putParcelableArrayList(FIELD_NUMBERS, new ArrayList<>(numbers));
+        fields.putParcelableArrayList(FIELD_FONTS, new ArrayList<>(fonts));
+        fields.putParcelableArrayList(FIELD_STRINGS, new ArrayList<>(strings));
+        fields.putParcelableArrayList(FIELD_PROPORTIONAL_FONTS, new ArrayList<>(proportionalFonts));
         dest.writeBundle(fields);
     }
 
     /** Returns a list of all the image components in this decomposition. */
     /** @hide */
     public List<ImageComponent> getImageComponents() {
-        return getUnmodifiableComponentList(FIELD_IMAGES);
+        return images;
     }
 
     /** Returns a list of all the number components in this decomposition. */
     /** @hide */
     public List<NumberComponent> getNumberComponents() {
-        return getUnmodifiableComponentList(FIELD_NUMBERS);
+        return numbers;
     }
 
     /** Returns a list of all the font components in this decomposition. */
     /** @hide */
     public List<FontComponent> getFontComponents() {
-        return getUnmodifiableComponentList(FIELD_FONTS);
+        return fonts;
     }
 
     /** @hide */
     public List<StringComponent> getStringComponents() {
-        return getUnmodifiableComponentList(FIELD_STRINGS);
+        return strings;
     }
 
     /** @hide */
     public List<ProportionalFontComponent> getProportionalFontComponents() {
-        return getUnmodifiableComponentList(FIELD_PROPORTIONAL_FONTS);
+        return proportionalFonts;
+    }
+
+    /** Returns the total number of components of every type in this decomposition. */
+    /** @hide */
+    public int getComponentCount() {
+        return images.size() + numbers.size() + fonts.size() + strings.size()
+                + proportionalFonts.size();
+    }
+
+    /** Returns the component with the given id, or null if there is none. */
+    /** @hide */
+    public Component getComponent(int componentId) {
+        return componentsById.get(componentId);
+    }
+
+    /**
+     * Returns the font of the number component at {@code index} in {@link #getNumberComponents()}.
+     * This is only null for a partial update whose font was sent earlier.
+     */
+    /** @hide */
+    public FontComponent getNumberFont(int index) {
+        return numberFonts[index];
+    }
+
+    /**
+     * Returns the font of the string component at {@code index} in {@link #getStringComponents()},
+     * which is either a {@link FontComponent} or a {@link ProportionalFontComponent}. This is only
+     * null for a partial update whose font was sent earlier.
+     */
+    /** @hide */
+    public AbstractComponent getStringFont(int index) {
+        return stringFonts[index];
+    }
+
+    /**
+     * Returns every image, number and string component, sorted by {@link
+     * DrawableComponent#getZOrder()}. Components with equal order keep the order images, numbers,
+     * strings, and within a type the order they were added in.
+     */
+    /** @hide */
+    public List<DrawableComponent> getDrawList() {
+        return Collections.unmodifiableList(Arrays.asList(drawList));
+    }
+
+    /** Returns the number of entries in {@link #getDrawList()}. */
+    /** @hide */
+    public int getDrawCount() {
+        return drawList.length;
+    }
+
+    /** Returns entry {@code index} of {@link #getDrawList()} without allocating. */
+    /** @hide */
+    public DrawableComponent getDrawComponent(int index) {
+        return drawList[index];
+    }
+
+    /**
+     * Returns the resolved font of entry {@code index} of {@link #getDrawList()}, or null if it is an
+     * image or its font is not part of this decomposition.
+     */
+    /** @hide */
+    public AbstractComponent getDrawFont(int index) {
+        return drawFonts[index];
+    }
+
+    /**
+     * Returns the number of draw batches. A batch is a run of consecutive draw list entries that
+     * use the same font, so a renderer can bind the font image once per batch. Every image is a
+     * batch of its own.
+     */
+    /** @hide */
+    public int getDrawBatchCount() {
+        return drawBatchStarts.length - 1;
+    }
+
+    /** Returns the index in the draw list of the first entry of {@code batch}. */
+    /** @hide */
+    public int getDrawBatchStart(int batch) {
+        return drawBatchStarts[batch];
+    }
+
+    /** Returns the index in the draw list just past the last entry of {@code batch}. */
+    /** @hide */
+    public int getDrawBatchEnd(int batch) {
+        return drawBatchStarts[batch + 1];
+    }
+
+    /**
+     * Returns the distinct images used by the image, font and proportional font components of this
+     * decomposition. The first call hashes every image that has not been hashed before, reading the
+     * pixels of bitmaps, so make it off the main thread.
+     */
+    /** @hide */
+    public synchronized ImagePool getImagePool() {
+        if (imagePool == null) {
+            imagePool = poolImages();
+        }
+        return imagePool;
+    }
+
+    /**
+     * Returns the ids of previously sent components that this decomposition removes. Only
+     * meaningful for an update sent with {@code shouldReplace} false; deletions are applied before
+     * the components of this decomposition are added.
+     */
+    /** @hide */
+    public int[] getIdsToDelete() {
+        return idsToDelete.length == 0 ? NO_IDS : idsToDelete.clone();
+    }
+
+    /**
+     * Returns whether the receiver should discard every previously sent component before applying
+     * this decomposition.
+     */
+    /** @hide */
+    public boolean isClearAll() {
+        return clearAll;
+    }
+
+    /**
+     * Fills {@link #numberFonts} and {@link #stringFonts} from the index, leaving null any font that
+     * is missing or of the wrong type.
+     */
+    private void resolveFonts() {
+        for (int i = 0; i < numbers.size(); i++) {
+            numberFonts[i] = (FontComponent) findFont(numbers.get(i));
+        }
+        for (int i = 0; i < strings.size(); i++) {
+            stringFonts[i] = findFont(strings.get(i));
+        }
+    }
+
+    /**
+     * Returns the font that {@code component} draws with, or null if it is an image or its font is
+     * missing or of the wrong type. Numbers can only use a {@link FontComponent}; strings can also
+     * use a {@link ProportionalFontComponent}.
+     */
+    private AbstractComponent findFont(DrawableComponent component) {
+        if (component instanceof NumberComponent) {
+            Component font = componentsById.get(((NumberComponent) component).getFontComponentId());
+            return font instanceof FontComponent ? (FontComponent) font : null;
+        }
+        if (component instanceof StringComponent) {
+            Component font = componentsById.get(((StringComponent) component).getFontComponentId());
+            if (font instanceof FontComponent || font instanceof ProportionalFontComponent) {
+                return (AbstractComponent) font;
+            }
+        }
+        return null;
     }
 
-    private <T extends Parcelable> List<T> getUnmodifiableComponentList(String field) {
+    private DrawableComponent[] sortForDrawing() {
+        DrawableComponent[] sorted =
+                new DrawableComponent[images.size() + numbers.size() + strings.size()];
+        int count = 0;
+        for (ImageComponent image : images) {
+            sorted[count++] = image;
+        }
+        for (NumberComponent number : numbers) {
+            sorted[count++] = number;
+        }
+        for (StringComponent string : strings) {
+            sorted[count++] = string;
+        }
+        // Arrays.sort on objects is a stable merge sort.
+        Arrays.sort(sorted, BY_Z_ORDER);
+        return sorted;
+    }
+
+    /** Fills {@link #drawFonts} and returns the batch start indices for {@link #drawList}. */
+    private int[] batchByFont() {
+        int[] starts = new int[drawList.length + 1];
+        int batches = 0;
+        for (int i = 0; i < drawList.length; i++) {
+            drawFonts[i] = findFont(drawList[i]);
+            if (i == 0 || drawFonts[i] == null || drawFonts[i] != drawFonts[i - 1]) {
+                starts[batches++] = i;
+            }
+        }
+        starts[batches] = drawList.length;
+        return Arrays.copyOf(starts, batches + 1);
+    }
+
+    private ImagePool poolImages() {
+        ImagePool pool = new ImagePool();
+        for (ImageComponent image : images) {
+            pool.add(image.getImage());
+        }
+        for (FontComponent font : fonts) {
+            pool.add(font.getImage());
+        }
+        for (ProportionalFontComponent font : proportionalFonts) {
+            pool.add(font.getImage());
+        }
+        return pool;
+    }
+
+    /** Returns the id of the first component whose font could not be resolved, or -1. */
+    private int findUnresolvedFont() {
+        for (int i = 0; i < numberFonts.length; i++) {
+            if (numberFonts[i] == null) {
+                return numbers.get(i).getComponentId();
+            }
+        }
+        for (int i = 0; i < stringFonts.length; i++) {
+            if (stringFonts[i] == null) {
+                return strings.get(i).getComponentId();
+            }
+        }
+        return -1;
+    }
+
+    private static <T extends Parcelable> List<T> readComponentList(Bundle fields, String field) {
         List<T> components = fields.getParcelableArrayList(field);
         if (components == null) {
             return Collections.emptyList();
@@ -95,14 +392,39 @@ public class WatchFaceDecomposition implements Parcelable {
         return Collections.unmodifiableList(components);
     }
 
+    private static <T> List<T> unmodifiableCopy(List<T> list) {
+        if (list.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(list));
+    }
+
+    /**
+     * Adds every component in {@code componentList} to {@code index}. Returns false if any of their
+     * ids was already present.
+     */
+    private static <T extends Component> boolean addToIndex(
+            List<T> componentList, SparseArray<Component> index) {
+        boolean allNew = true;
+        for (T component : componentList) {
+            int id = component.getComponentId();
+            if (index.get(id) != null) {
+                allNew = false;
+            }
+            index.put(id, component);
+        }
+        return allNew;
+    }
+
     /** Builder for {@link WatchFaceDecomposition} objects. */
     public static class Builder {
-        private Bundle fields = new Bundle();
         private ArrayList<ImageComponent> images = new ArrayList<>();
         private ArrayList<NumberComponent> numbers = new ArrayList<>();
         private ArrayList<FontComponent> fonts = new ArrayList<>();
         private ArrayList<StringComponent> strings = new ArrayList<>();
         private ArrayList<ProportionalFontComponent> proportionalFonts = new ArrayList<>();
+        private SparseBooleanArray idsToDelete = new SparseBooleanArray();
+        private boolean clearAll;
 
         /**
          * Adds all the provided image components to the decomposition. Each component added should have
@@ -141,61 +463,70 @@ public class WatchFaceDecomposition implements Parcelable {
             return this;
         }
 
-        public WatchFaceDecomposition build() {
-            if (!allComponentIdsAreUnique()) {
-                throw new IllegalStateException("Duplicate component ids found.");
+        /**
+         * Marks previously sent components for removal. Deletions are applied before the components
+         * in this decomposition are added, so an id may be both deleted and re-added, for example
+         * when its component type changes.
+         */
+        public Builder addIdsToDelete(int... ids) {
+            for (int id : ids) {
+                idsToDelete.put(id, true);
             }
-
-            fields.putParcelableArrayList(FIELD_IMAGES, images);
-            fields.putParcelableArrayList(FIELD_NUMBERS, numbers);
-            fields.putParcelableArrayList(FIELD_FONTS, fonts);
-            fields.putParcelableArrayList(FIELD_STRINGS, strings);
-            fields.putParcelableArrayList(FIELD_PROPORTIONAL_FONTS, proportionalFonts);
-            return new WatchFaceDecomposition(fields);
+            return this;
         }
 
-        private boolean allComponentIdsAreUnique() {
-            SparseBooleanArray ids =
-                    new SparseBooleanArray(images.size() + numbers.size() + fonts.size() + strings.size() + proportionalFonts.size());
-
-            if (!allNewIds(images, ids)) {
-                return false;
-            }
-
-            if (!allNewIds(numbers, ids)) {
-                return false;
-            }
-
-            if (!allNewIds(fonts, ids)) {
-                return false;
-            }
-
-            if (!allNewIds(strings, ids)) {
-                return false;
-            }
+        /**
+         * Sets whether the receiver should discard every previously sent component before applying
+         * this decomposition.
+         */
+        public Builder setClearAll(boolean clearAll) {
+            this.clearAll = clearAll;
+            return this;
+        }
 
-            if (!allNewIds(proportionalFonts, ids)) {
-                return false;
+        /**
+         * Builds the decomposition. Every number and string component must reference a font
+         * component in the same decomposition.
+         */
+        public WatchFaceDecomposition build() {
+            WatchFaceDecomposition decomposition = buildPartial();
+            int unresolvedId = decomposition.findUnresolvedFont();
+            if (unresolvedId != -1) {
+                throw new IllegalStateException(
+                        "Component " + unresolvedId + " references a missing font component.");
             }
-
-            return true;
+            return decomposition;
         }
 
         /**
-         * Returns true if the componentId of every {@link Component} in {@code componentList} is unique
-         * and is not present in {@code currentIds}. Also adds all the componentIds from the list into
-         * currentIds.
+         * Builds a decomposition whose number and string components may reference fonts that are
+         * not part of it, as in an update to a decomposition the receiver already holds.
+         * {@link WatchFaceDecomposition#getNumberFont} and {@link
+         * WatchFaceDecomposition#getStringFont} return null for those.
          */
-        private <T extends Component> boolean allNewIds(
-            List<T> componentList, SparseBooleanArray currentIds) {
-            for (T component : componentList) {
-                int id = component.getComponentId();
-                if (currentIds.get(id)) {
-                    return false;
-                }
-                currentIds.put(id, true);
+        WatchFaceDecomposition buildPartial() {
+            SparseArray<Component> componentsById = new SparseArray<>(images.size()
+                    + numbers.size() + fonts.size() + strings.size() + proportionalFonts.size());
+            boolean unique = addToIndex(images, componentsById);
+            unique &= addToIndex(numbers, componentsById);
+            unique &= addToIndex(fonts, componentsById);
+            unique &= addToIndex(strings, componentsById);
+            unique &= addToIndex(proportionalFonts, componentsById);
+            if (!unique) {
+                throw new IllegalStateException("Duplicate component ids found.");
+            }
+            return new WatchFaceDecomposition(this, componentsById);
+        }
+
+        private int[] getIdsToDelete() {
+            if (idsToDelete.size() == 0) {
+                return NO_IDS;
+            }
+            int[] ids = new int[idsToDelete.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = idsToDelete.keyAt(i);
             }
-            return true;
+            return ids;
         }
     }
 }
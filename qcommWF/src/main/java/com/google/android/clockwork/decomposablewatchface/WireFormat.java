@@ -0,0 +1,347 @@
+package com.google.android.clockwork.decomposablewatchface;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Field table and primitive helpers for the compact binary encoding of a
+ * {@link WatchFaceDecomposition}.
+ *
+ * <p>An encoded decomposition is a header followed by a flat sequence of records:
+ *
+ * <pre>
+ *   header : int MAGIC, byte VERSION
+ *   record : byte recordType, varint length, field*
+ *   field  : byte fieldTag, varint length, value
+ * </pre>
+ *
+ * Every field tag has a fixed value layout, listed next to its constant below. All multi-byte
+ * values are big-endian. Readers skip records and fields they do not recognize, so new tags can be
+ * added without bumping {@link #VERSION}; the version only changes when an existing layout does.
+ *
+ * <p>This class has no Android dependencies so that it can also be used by host-side tools.
+ */
+public final class WireFormat {
+    private WireFormat() {}
+
+    /** "WFDC" */
+    public static final int MAGIC = 0x57464443;
+
+    /** Version 2 moved images into {@link #RECORD_IMAGE_POOL}. Version 1 data is still read. */
+    public static final int VERSION = 2;
+
+    /** Size in bytes of the header that precedes the first record. */
+    public static final int HEADER_SIZE = 5;
+
+    public static final int RECORD_IMAGE = 1;
+    public static final int RECORD_NUMBER = 2;
+    public static final int RECORD_FONT = 3;
+    public static final int RECORD_STRING = 4;
+    public static final int RECORD_PROPORTIONAL_FONT = 5;
+    /** Update metadata: {@link #FIELD_CLEAR_ALL} and {@link #FIELD_IDS_TO_DELETE}. */
+    public static final int RECORD_UPDATE = 6;
+    /**
+     * Distinct images, one {@link #FIELD_POOL_ICON}, {@link #FIELD_POOL_INDEXED}, {@link
+     * #FIELD_POOL_RESOURCE}, {@link #FIELD_POOL_PNG} or {@link #FIELD_POOL_SHARED} each. Written
+     * before any component record so that {@link #FIELD_IMAGE_HASH} references can be resolved as
+     * components are read.
+     */
+    public static final int RECORD_IMAGE_POOL = 7;
+
+    // Fields shared by all components.
+    /** int */
+    public static final int FIELD_COMPONENT_ID = 1;
+
+    // Fields shared by all drawable components.
+    /** int */
+    public static final int FIELD_Z_ORDER = 2;
+    /** byte enabled, float periodOnMs, float periodOffMs, int startDays, int startMs */
+    public static final int FIELD_BLINK = 3;
+
+    // Image and font components.
+    /**
+     * Marshalled {@code Icon} parcel; the field length is the blob length. Only written by version
+     * 1, which had no image pool.
+     */
+    public static final int FIELD_IMAGE = 10;
+    /** float left, float top, float right, float bottom */
+    public static final int FIELD_BOUNDS = 11;
+    /** float x, float y */
+    public static final int FIELD_PIVOT = 12;
+    /** float */
+    public static final int FIELD_DEGREES_PER_DAY = 13;
+    /** float */
+    public static final int FIELD_OFFSET_DEGREES = 14;
+    /** float */
+    public static final int FIELD_DEGREES_PER_STEP = 15;
+    /** long, the content hash of an image in {@link #RECORD_IMAGE_POOL} */
+    public static final int FIELD_IMAGE_HASH = 16;
+    /** float left, float top, float right, float bottom, in proportion to the image size */
+    public static final int FIELD_IMAGE_REGION = 17;
+
+    // Number and string components.
+    /** long */
+    public static final int FIELD_MS_PER_INCREMENT = 20;
+    /** long */
+    public static final int FIELD_LOWEST_VALUE = 21;
+    /** long */
+    public static final int FIELD_HIGHEST_VALUE = 22;
+    /** long */
+    public static final int FIELD_TIME_OFFSET_MS = 23;
+    /** int */
+    public static final int FIELD_MIN_DIGITS_SHOWN = 24;
+    /** float x, float y */
+    public static final int FIELD_POSITION = 25;
+    /** int */
+    public static final int FIELD_FONT_COMPONENT_ID = 26;
+    /** int */
+    public static final int FIELD_STRING_SOURCE_ID = 27;
+    /** byte, the ordinal of {@code StringComponent.Alignment} */
+    public static final int FIELD_ALIGNMENT = 28;
+
+    // Font components.
+    /** int */
+    public static final int FIELD_DIGIT_COUNT = 30;
+    /** float x, float y */
+    public static final int FIELD_DIGIT_DIMENSIONS = 31;
+    /** varint count, then (short width, byte glyphCode) per glyph */
+    public static final int FIELD_GLYPHS = 32;
+
+    // Update metadata.
+    /** byte, non-zero to clear all previously sent components */
+    public static final int FIELD_CLEAR_ALL = 40;
+    /** varint count, then int per id */
+    public static final int FIELD_IDS_TO_DELETE = 41;
+
+    // Image pool.
+    /**
+     * long contentHash, then the marshalled {@code Icon} parcel filling the rest of the field. Only
+     * written for icons without bitmaps or data, such as resources, since those parcel their
+     * content as file descriptors.
+     */
+    public static final int FIELD_POOL_ICON = 50;
+    /**
+     * long contentHash, then an {@link IndexedImage}: byte bitsPerPixel, varint width, varint
+     * height, varint paletteSize, int ARGB per palette entry, then the packed indices filling the
+     * rest of the field. The hash is that of the original icon, so components refer to it as
+     * usual.
+     */
+    public static final int FIELD_POOL_INDEXED = 51;
+    /**
+     * long contentHash, then the name of a drawable resource of the receiving package in UTF-8
+     * filling the rest of the field. Written by host-side tools, which cannot marshall an {@code
+     * Icon}; the hash is then any value unique within the pool.
+     */
+    public static final int FIELD_POOL_RESOURCE = 52;
+    /**
+     * long contentHash, then a PNG file filling the rest of the field. Written for bitmap and data
+     * icons, whose data may be in any format {@link android.graphics.BitmapFactory} reads, and by
+     * host-side tools for images they have processed; the hash is then any value unique within the
+     * pool.
+     */
+    public static final int FIELD_POOL_PNG = 53;
+    /**
+     * long contentHash, int offset, int width, int height. The pixels are not in the encoding but
+     * in a separate file shared with the receiver, {@code width * height} ARGB_8888 pixels in
+     * {@link android.graphics.Bitmap#copyPixelsToBuffer} layout from {@code offset}; see {@link
+     * SharedImageFile}.
+     */
+    public static final int FIELD_POOL_SHARED = 54;
+
+    /**
+     * Reads an unsigned LEB128 varint from {@code in}.
+     *
+     * @throws IllegalArgumentException if the varint is longer than five bytes
+     */
+    public static int readVarInt(ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /** Returns the number of bytes {@link Writer#writeVarInt} uses to encode {@code value}. */
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /** Returns the number of bytes {@link Writer#writeIndexedImage} uses to encode {@code image}. */
+    public static int indexedImageSize(IndexedImage image) {
+        return 1 + varIntSize(image.getWidth()) + varIntSize(image.getHeight())
+                + varIntSize(image.getPaletteSize()) + image.getByteCount();
+    }
+
+    /**
+     * Reads an {@link IndexedImage} of {@code length} bytes from {@code in}.
+     *
+     * @throws IllegalArgumentException if the data does not describe a valid image
+     */
+    public static IndexedImage readIndexedImage(ByteBuffer in, int length) {
+        int end = in.position() + length;
+        int bitsPerPixel = in.get() & 0xff;
+        int width = readVarInt(in);
+        int height = readVarInt(in);
+        int[] palette = new int[readVarInt(in)];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = in.getInt();
+        }
+        byte[] pixels = new byte[end - in.position()];
+        in.get(pixels);
+        return new IndexedImage(width, height, bitsPerPixel, palette, pixels);
+    }
+
+    /** Growable big-endian byte sink used to build records and fields. */
+    public static final class Writer {
+        private byte[] buffer;
+        private int size;
+
+        public Writer() {
+            this(256);
+        }
+
+        public Writer(int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        /** Returns the number of bytes written so far. */
+        public int size() {
+            return size;
+        }
+
+        /** Discards everything written so far, keeping the allocated capacity. */
+        public void reset() {
+            size = 0;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        public void writeHeader() {
+            writeInt(MAGIC);
+            writeByte(VERSION);
+        }
+
+        public void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+        }
+
+        public void writeShort(int value) {
+            ensureCapacity(2);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        public void writeInt(int value) {
+            ensureCapacity(4);
+            buffer[size++] = (byte) (value >>> 24);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        public void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        public void writeFloat(float value) {
+            writeInt(Float.floatToIntBits(value));
+        }
+
+        public void writeVarInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        public void writeBytes(byte[] bytes, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        /** Writes {@code image} in the layout described at {@link #FIELD_POOL_INDEXED}. */
+        public void writeIndexedImage(IndexedImage image) {
+            writeByte(image.getBitsPerPixel());
+            writeVarInt(image.getWidth());
+            writeVarInt(image.getHeight());
+            writeVarInt(image.getPaletteSize());
+            for (int i = 0; i < image.getPaletteSize(); i++) {
+                writeInt(image.getPaletteColor(i));
+            }
+            byte[] pixels = image.getPixelData();
+            writeBytes(pixels, 0, pixels.length);
+        }
+
+        /** Writes {@code payload} as a complete record of the given type. */
+        public void writeRecord(int recordType, Writer payload) {
+            writeByte(recordType);
+            writeVarInt(payload.size);
+            writeBytes(payload.buffer, 0, payload.size);
+        }
+
+        public void writeIntField(int tag, int value) {
+            writeFieldHeader(tag, 4);
+            writeInt(value);
+        }
+
+        public void writeLongField(int tag, long value) {
+            writeFieldHeader(tag, 8);
+            writeLong(value);
+        }
+
+        public void writeFloatField(int tag, float value) {
+            writeFieldHeader(tag, 4);
+            writeFloat(value);
+        }
+
+        public void writeByteField(int tag, int value) {
+            writeFieldHeader(tag, 1);
+            writeByte(value);
+        }
+
+        public void writePointField(int tag, float x, float y) {
+            writeFieldHeader(tag, 8);
+            writeFloat(x);
+            writeFloat(y);
+        }
+
+        public void writeRectField(int tag, float left, float top, float right, float bottom) {
+            writeFieldHeader(tag, 16);
+            writeFloat(left);
+            writeFloat(top);
+            writeFloat(right);
+            writeFloat(bottom);
+        }
+
+        public void writeBytesField(int tag, byte[] bytes) {
+            writeFieldHeader(tag, bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        public void writeFieldHeader(int tag, int length) {
+            writeByte(tag);
+            writeVarInt(length);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.sidekickwatchface;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Hands the display to the sidekick while an engine is in ambient mode, and takes it back when
+ * the engine turns interactive.
+ *
+ * <p>On entering ambient mode the handoff checks, on the {@link SidekickClient}'s thread, that the
+ * sidekick holds this engine's watch face and reports {@code readyToDisplay()}, and only then gives
+ * it control of the display. Until that is confirmed, and whenever it cannot be, the engine keeps
+ * drawing its own ambient frames; once {@link #isSidekickInControl} returns true, it should stop.
+ *
+ * <p>On turning interactive, control is only taken back once the engine has drawn its first
+ * interactive frame and reported it through {@link #onFrameDrawn}, so that the screen goes from
+ * the sidekick's ambient face straight to the new frame. The sidekick's ambient mode is enabled
+ * only while it has control, and disabled again whenever control is taken back, including when
+ * the engine is hidden or the handoff is released.
+ *
+ * <p>The time spent with each {@link Owner} of the display is recorded while the engine is
+ * visible, and logged when the handoff is released. All methods are called on the main thread.
+ */
+public class AmbientHandoff {
+
+    private static final String TAG = "AmbientHandoff";
+
+    /** What draws the watch face. */
+    public enum Owner {
+        /** The engine, in interactive mode. */
+        INTERACTIVE,
+        /** The engine, drawing ambient frames on the application processor. */
+        AMBIENT,
+        /** The sidekick. */
+        SIDEKICK,
+    }
+
+    private final OffloadController mOffloadController;
+    private final String mFaceName;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final long[] mOwnerTimesMs = new long[Owner.values().length];
+
+    private boolean mVisible;
+    private boolean mAmbient;
+    private boolean mSidekickInControl;
+    /** Whether control may have been given to the sidekick and not yet taken back. */
+    private boolean mHandedOff;
+    /** Whether control is to be taken back after the next frame. */
+    private boolean mReturnPending;
+    /** Counts handoffs and returns, so that a stale confirmation is ignored. */
+    private int mGeneration;
+    /** The current owner, or null while the engine is not visible. */
+    private Owner mOwner;
+    private long mOwnerSinceMs;
+
+    /**
+     * @param faceName the name the owner times are logged under
+     */
+    public AmbientHandoff(OffloadController offloadController, String faceName) {
+        mOffloadController = offloadController;
+        mFaceName = faceName;
+    }
+
+    /** Call from the engine's {@code onAmbientModeChanged}. */
+    public void onAmbientModeChanged(boolean inAmbientMode) {
+        mAmbient = inAmbientMode;
+        if (!mVisible) {
+            return;
+        }
+        if (inAmbientMode) {
+            setOwner(Owner.AMBIENT);
+            handOff();
+        } else if (mHandedOff) {
+            // Keep the sidekick's face up until the engine has an interactive frame to show.
+            mGeneration++;
+            mSidekickInControl = false;
+            mReturnPending = true;
+        } else {
+            setOwner(Owner.INTERACTIVE);
+        }
+    }
+
+    /** Call from the engine's {@code onVisibilityChanged}. */
+    public void onVisibilityChanged(boolean visible) {
+        mVisible = visible;
+        if (visible) {
+            setOwner(mAmbient ? Owner.AMBIENT : Owner.INTERACTIVE);
+            if (mAmbient) {
+                handOff();
+            }
+        } else {
+            // Something else is on screen, so there is no frame of ours to wait for.
+            takeBack();
+            setOwner(null);
+        }
+    }
+
+    /** Call at the end of the engine's {@code onDraw}. */
+    public void onFrameDrawn() {
+        if (mReturnPending) {
+            takeBack();
+            setOwner(Owner.INTERACTIVE);
+        }
+    }
+
+    /**
+     * Returns whether the sidekick is showing the watch face, in which case the engine need not
+     * draw ambient frames.
+     */
+    public boolean isSidekickInControl() {
+        return mSidekickInControl;
+    }
+
+    /**
+     * Returns the time the display has spent with {@code owner} so far, while the engine was
+     * visible.
+     */
+    public long getOwnerTimeMs(Owner owner) {
+        long total = mOwnerTimesMs[owner.ordinal()];
+        if (owner == mOwner) {
+            total += SystemClock.elapsedRealtime() - mOwnerSinceMs;
+        }
+        return total;
+    }
+
+    /**
+     * Takes control back if the sidekick has it, and logs the owner times. Call from the engine's
+     * {@code onDestroy}, before releasing the {@link OffloadController}.
+     */
+    public void release() {
+        takeBack();
+        setOwner(null);
+        mMainHandler.removeCallbacksAndMessages(null);
+        Log.i(TAG, mFaceName + ": interactive " + getOwnerTimeMs(Owner.INTERACTIVE)
+                + "ms, ambient " + getOwnerTimeMs(Owner.AMBIENT)
+                + "ms, sidekick " + getOwnerTimeMs(Owner.SIDEKICK) + "ms");
+    }
+
+    private void handOff() {
+        final int generation = ++mGeneration;
+        mHandedOff = true;
+        mReturnPending = false;
+        final SidekickClient client = mOffloadController.getClient();
+        client.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (!client.hasSentWatchFace() || !client.readyToDisplay()) {
+                    Log.d(TAG, "Sidekick not ready, drawing ambient frames");
+                    return;
+                }
+                client.setAmbientEnabled(true);
+                if (!client.setShouldControlDisplay(true)) {
+                    client.setAmbientEnabled(false);
+                    return;
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            mSidekickInControl = true;
+                            setOwner(Owner.SIDEKICK);
+                        }
+                    }
+                });
+            }
+        }, 0);
+    }
+
+    private void takeBack() {
+        mGeneration++;
+        mSidekickInControl = false;
+        mReturnPending = false;
+        if (!mHandedOff) {
+            return;
+        }
+        mHandedOff = false;
+        // Runs after any handoff still waiting on the client's thread, so it always wins.
+        final SidekickClient client = mOffloadController.getClient();
+        client.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                client.setShouldControlDisplay(false);
+                client.setAmbientEnabled(false);
+            }
+        }, 0);
+    }
+
+    private void setOwner(Owner owner) {
+        long now = SystemClock.elapsedRealtime();
+        if (mOwner != null) {
+            mOwnerTimesMs[mOwner.ordinal()] += now - mOwnerSinceMs;
+        }
+        mOwner = owner;
+        mOwnerSinceMs = now;
+    }
+}
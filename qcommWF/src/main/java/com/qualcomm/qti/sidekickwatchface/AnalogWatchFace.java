@@ -30,6 +30,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
@@ -39,31 +40,32 @@ import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
 import android.util.Log;
 import android.util.TypedValue;
 import android.view.SurfaceHolder;
 import android.widget.Toast;
 import android.os.AsyncTask;
 import java.nio.ByteBuffer;
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Calendar;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
+import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.PrintWriter;
 
 
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.os.Handler;
 import java.lang.Runnable;
 
+import com.google.android.clockwork.decomposablewatchface.SpriteTrimmer;
+import com.google.android.clockwork.decomposablewatchface.WatchFaceDecomposition;
+import com.qualcomm.qti.wakescheduler.WakeScheduler;
+
 /**
  * Analog watch face with a ticking second hand. In ambient mode, the second hand isn't
  * shown. On devices with low-bit ambient mode, the hands are drawn without anti-aliasing in ambient
@@ -72,16 +74,15 @@ import java.lang.Runnable;
 public class AnalogWatchFace extends CanvasWatchFaceService {
 
     private static final String TAG = "AnalogWatchFaceBg";
-    /*
-     * Update rate in milliseconds for interactive mode. We update once a second to advance the
-     * second hand.
-     */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1)/10;
 
-    /**
-     * Handler message id for updating the time periodically in interactive mode.
+    /*
+     * The most memory the hand sprites may take. The 60 second hand sprites are prerendered,
+     * about 1.75 MB on a 390 pixel face. The minute and hour hands take too many positions to
+     * prerender, R.integer.minute_hand_positions and hour_hand_positions, so their sprites are
+     * rendered a position ahead of the frames that draw them, and evict the least recently drawn
+     * once the budget is full.
      */
-    private static final int MSG_UPDATE_TIME = 0;
+    private static final long HAND_SPRITE_CACHE_BYTES = 4 * 1024 * 1024;
 
 
     @Override
@@ -89,24 +90,11 @@ public class AnalogWatchFace extends CanvasWatchFaceService {
         return new Engine();
     }
 
-    private static class EngineHandler extends Handler {
-        private final WeakReference<AnalogWatchFace.Engine> mWeakReference;
-
-        public EngineHandler(AnalogWatchFace.Engine reference) {
-            mWeakReference = new WeakReference<>(reference);
-        }
-
-        @Override
-        public void handleMessage(Message msg) {
-            AnalogWatchFace.Engine engine = mWeakReference.get();
-            if (engine != null) {
-                switch (msg.what) {
-                    case MSG_UPDATE_TIME:
-                        engine.handleUpdateTimeMessage();
-                        break;
-                }
-            }
-        }
+    /** Adds the offload telemetry to {@code adb shell dumpsys activity service}. */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        OffloadTelemetry.dumpAll(writer);
     }
 
     private class Engine extends CanvasWatchFaceService.Engine {
@@ -118,8 +106,14 @@ public class AnalogWatchFace extends CanvasWatchFaceService {
 
         private static final int SHADOW_RADIUS = 6;
         private final Rect mPeekCardBounds = new Rect();
-        /* Handler to update the time once a second in interactive mode. */
-        private final Handler mUpdateTimeHandler = new EngineHandler(this);
+        /* Wakes the engine in interactive mode whenever the hands move, i.e. each second. */
+        private final WakeScheduler mWakeScheduler = new WakeScheduler(
+                new WakeScheduler.Callback() {
+                    @Override
+                    public void onWake() {
+                        invalidate();
+                    }
+                });
         private Calendar mCalendar;
         private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
@@ -136,22 +130,31 @@ public class AnalogWatchFace extends CanvasWatchFaceService {
         private float sMinuteHandLength;
         private float sHourHandLength;
         private Bitmap mHourHandBitmap;
-        private Bitmap mHourHandAmbBitmap;
         private float mHourHandHeight;
         private float mHourHandWidth;
+        private int mHourHandOffsetX;
+        private int mHourHandOffsetY;
         private Bitmap mMinHandBitmap;
-        private Bitmap mMinHandAmbBitmap;
         private float mMinHandHeight;
         private float mMinHandWidth;
+        private int mMinHandOffsetX;
+        private int mMinHandOffsetY;
         private Bitmap mSecHandBitmap;
-        private Bitmap mSecHandAmbBitmap;
         private float mSecHandHeight;
         private float mSecHandWidth;
+        private int mSecHandOffsetX;
+        private int mSecHandOffsetY;
+        private HandSpriteCache mHandSprites;
+        private int mHourHandSprite;
+        private int mMinHandSprite;
+        private int mSecHandSprite;
         private Paint mTickAndCirclePaint;
         private Paint mBackgroundPaint;
         private Bitmap mBackgroundBitmap;
         private Bitmap mGrayBackgroundBitmap;
         private boolean mAmbient;
+        private OffloadController mOffloadController;
+        private OffloadScheduler mOffloadScheduler;
         private boolean mLowBitAmbient;
         private boolean mBurnInProtection;
 
@@ -169,39 +172,42 @@ public class AnalogWatchFace extends CanvasWatchFaceService {
             mBackgroundBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.bg_interactive);
             mGrayBackgroundBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.bg_interactive);
             mHourHandBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.hour_interactive);
-            mHourHandAmbBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.hour_interactive);
             mHourHandHeight = mHourHandBitmap.getHeight();
             mHourHandWidth = mHourHandBitmap.getWidth();
 
             mMinHandBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.min_interactive);
-            mMinHandAmbBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.min_interactive);
             mMinHandHeight = mMinHandBitmap.getHeight();
             mMinHandWidth  = (mMinHandBitmap.getWidth());
 
             mSecHandBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.sec_interactive);
-            mSecHandAmbBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.sec_interactive);
 
             mSecHandHeight = mSecHandBitmap.getHeight();
             mSecHandWidth = mSecHandBitmap.getWidth();
 
             mCalendar = Calendar.getInstance();
+            /* Every hand ticks, so nothing moves between seconds. */
+            mWakeScheduler.addTickingSecond();
 
-            final OffloadController mOffloadController = new OffloadController();
+            mOffloadController = new OffloadController(AnalogWatchFace.this, "analog");
             final AnalogDecomposition mDecomposition = new AnalogDecomposition();
-            mOffloadController.clearDecomposition();
-            Handler handler = new Handler();
-            handler.postDelayed(new Runnable() {
+            mOffloadScheduler = new OffloadScheduler(mOffloadController);
+            mOffloadScheduler.start(new OffloadScheduler.DecompositionSource() {
                 @Override
-                public void run() {
-//                    mOffloadController.sendDecomposition(mDecomposition.buildWatchFaceDecomposition(AnalogWatchFace.this),false);
-
+                public WatchFaceDecomposition buildDecomposition() {
+//                    return mDecomposition.buildWatchFaceDecomposition(AnalogWatchFace.this);
+                    return null;
                 }
-            }, 1000);
+            });
         }
 
         @Override
         public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mWakeScheduler.setActive(false);
+            mOffloadScheduler.cancel();
+            mOffloadController.release();
+            if (mHandSprites != null) {
+                mHandSprites.release();
+            }
             super.onDestroy();
         }
 
@@ -243,6 +249,16 @@ public class AnalogWatchFace extends CanvasWatchFaceService {
             }
         }
 
+        /**
+         * Decodes a hand strip at the given size and trims its transparent padding. The strip is
+         * decoded afresh so that repeated surface changes do not rescale an already trimmed hand.
+         */
+        private SpriteTrimmer.Sprite loadHand(int resId, float width, float height) {
+            Bitmap hand = BitmapFactory.decodeResource(getResources(), resId);
+            return SpriteTrimmer.trim(
+                    Bitmap.createScaledBitmap(hand, (int) width, (int) height, true));
+        }
+
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
             super.onSurfaceChanged(holder, format, width, height);
@@ -264,36 +280,54 @@ public class AnalogWatchFace extends CanvasWatchFaceService {
             sMinuteHandLength = (float) (mCenterX * 0.75);
             sHourHandLength = (float) (mCenterX * 0.5);
 
-            float scale = ((float)height) / (float) mHourHandBitmap.getHeight();
-            mHourHandWidth = (float) (mHourHandWidth * scale );
-            mHourHandHeight = (float) (mHourHandHeight * scale);
-
-            mHourHandBitmap = Bitmap.createScaledBitmap(mHourHandBitmap,
-                    (int) (mHourHandWidth),
-                    (int) (mHourHandHeight), true);
-
-            mHourHandAmbBitmap = Bitmap.createScaledBitmap(mHourHandAmbBitmap,
-                    (int) (mHourHandWidth),
-                    (int) (mHourHandHeight), true);
-
-            scale = ((float)height) / (float) mMinHandBitmap.getHeight();
-            mMinHandWidth = (float) (mMinHandWidth * scale );
-            mMinHandHeight = (float) (mMinHandHeight * scale);
-            mMinHandBitmap = Bitmap.createScaledBitmap(mMinHandBitmap,
-                    (int) (mMinHandWidth),
-                    (int) (mMinHandHeight), true);
-
-            mMinHandAmbBitmap = Bitmap.createScaledBitmap(mMinHandAmbBitmap,
-                    (int) (mMinHandWidth),
-                    (int) (mMinHandHeight), true);
-
-            scale = ((float)height) / (float) mSecHandBitmap.getHeight();
-            mSecHandWidth = (float) (mSecHandWidth * scale);
-            mSecHandHeight = (float) (mSecHandHeight * scale);
-             mSecHandBitmap = Bitmap.createScaledBitmap(mSecHandBitmap,
-                    (int) (mSecHandWidth),
-                    (int) (mSecHandHeight), true);
-            mSecHandAmbBitmap = mSecHandBitmap;
+            float scale = ((float) height) / mHourHandHeight;
+            mHourHandWidth = mHourHandWidth * scale;
+            mHourHandHeight = mHourHandHeight * scale;
+            SpriteTrimmer.Sprite hand =
+                    loadHand(R.drawable.hour_interactive, mHourHandWidth, mHourHandHeight);
+            mHourHandBitmap = hand.getBitmap();
+            mHourHandOffsetX = hand.getOffsetX();
+            mHourHandOffsetY = hand.getOffsetY();
+
+            scale = ((float) height) / mMinHandHeight;
+            mMinHandWidth = mMinHandWidth * scale;
+            mMinHandHeight = mMinHandHeight * scale;
+            hand = loadHand(R.drawable.min_interactive, mMinHandWidth, mMinHandHeight);
+            mMinHandBitmap = hand.getBitmap();
+            mMinHandOffsetX = hand.getOffsetX();
+            mMinHandOffsetY = hand.getOffsetY();
+
+            scale = ((float) height) / mSecHandHeight;
+            mSecHandWidth = mSecHandWidth * scale;
+            mSecHandHeight = mSecHandHeight * scale;
+            hand = loadHand(R.drawable.sec_interactive, mSecHandWidth, mSecHandHeight);
+            mSecHandBitmap = hand.getBitmap();
+            mSecHandOffsetX = hand.getOffsetX();
+            mSecHandOffsetY = hand.getOffsetY();
+
+            /*
+             * Render the second hand at every position it takes in the background, so that frames
+             * blit it instead of rotating it. The minute and hour hands' sprites are rendered as
+             * the hands reach them.
+             */
+            Resources resources = getResources();
+            if (mHandSprites != null) {
+                mHandSprites.release();
+            }
+            mHandSprites = new HandSpriteCache(mCenterX, mCenterY, HAND_SPRITE_CACHE_BYTES);
+            mSecHandSprite = mHandSprites.addHand(mSecHandBitmap,
+                    mCenterX - (mSecHandWidth / 2) + mSecHandOffsetX,
+                    mCenterY - (mSecHandHeight / 2) + mSecHandOffsetY,
+                    resources.getInteger(R.integer.second_hand_positions), true);
+            mMinHandSprite = mHandSprites.addHand(mMinHandBitmap,
+                    mCenterX - (mMinHandWidth / 2) + mMinHandOffsetX,
+                    mCenterY - (mMinHandHeight / 2) + mMinHandOffsetY,
+                    resources.getInteger(R.integer.minute_hand_positions), false);
+            mHourHandSprite = mHandSprites.addHand(mHourHandBitmap,
+                    mCenterX - (mHourHandWidth / 2) + mHourHandOffsetX,
+                    mCenterY - (mHourHandHeight / 2) + mHourHandOffsetY,
+                    resources.getInteger(R.integer.hour_hand_positions), false);
+            mHandSprites.prerender();
 
             /* Scale loaded background image (more efficient) if surface dimensions change. */
             scale = ((float) width) / (float) mBackgroundBitmap.getWidth();
@@ -301,7 +335,6 @@ public class AnalogWatchFace extends CanvasWatchFaceService {
             mBackgroundBitmap = Bitmap.createScaledBitmap(mBackgroundBitmap,
                     (int) (mBackgroundBitmap.getWidth() * scale),
                     (int) (mBackgroundBitmap.getHeight() * scale), true);
-
         }
 
         /**
@@ -354,66 +387,9 @@ public class AnalogWatchFace extends CanvasWatchFaceService {
             final float hourHandOffset = mCalendar.get(Calendar.MINUTE) / 2f;
             final float hoursRotation = (mCalendar.get(Calendar.HOUR) * 30) + hourHandOffset;
 
-            /*
-             * Save the canvas state before we can begin to rotate it.
-             */
-            canvas.save();
-
-            Paint p = new Paint();
-            p.setAntiAlias(true);
-            p.setFilterBitmap(true);
-            canvas.rotate(hoursRotation, mCenterX, mCenterY);
-            if (mAmbient) {
-                canvas.drawBitmap(
-                        mHourHandAmbBitmap,
-                        mCenterX - (mHourHandWidth / 2),
-                        mCenterY - (mHourHandHeight / 2),
-                        p);
-
-                canvas.rotate(minutesRotation - hoursRotation, mCenterX, mCenterY);
-                canvas.drawBitmap(
-                        mMinHandAmbBitmap,
-                        mCenterX - (mMinHandWidth / 2),
-                        mCenterY - (mMinHandHeight / 2),
-                        p);
-            } else {
-                canvas.drawBitmap(
-                        mHourHandBitmap,
-                        mCenterX - (mHourHandWidth / 2),
-                        mCenterY - (mHourHandHeight / 2),
-                        p);
-
-                canvas.rotate(minutesRotation - hoursRotation, mCenterX, mCenterY);
-                canvas.drawBitmap(
-                        mMinHandBitmap,
-                        mCenterX - (mMinHandWidth / 2),
-                        mCenterY - (mMinHandHeight / 2),
-                        p);
-            }
-            /*
-             * Ensure the "seconds" hand is drawn only when we are in interactive mode.
-             * Otherwise, we only update the watch face once a minute.
-             */
-            if (!mAmbient) {
-                canvas.rotate(secondsRotation - minutesRotation, mCenterX, mCenterY);
-
-                canvas.drawBitmap(
-                        mSecHandBitmap,
-                        mCenterX - (mSecHandWidth/2),
-                        mCenterY - (mSecHandHeight/2),
-                        p);
-            } else {
-                canvas.rotate(secondsRotation - minutesRotation, mCenterX, mCenterY);
-
-                canvas.drawBitmap(
-                        mSecHandAmbBitmap,
-                        mCenterX - (mSecHandWidth/2),
-                        mCenterY - (mSecHandHeight/2),
-                        p);
-            }
-
-            /* Restore the canvas' original orientation. */
-            canvas.restore();
+            mHandSprites.draw(canvas, mHourHandSprite, hoursRotation);
+            mHandSprites.draw(canvas, mMinHandSprite, minutesRotation);
+            mHandSprites.draw(canvas, mSecHandSprite, secondsRotation);
 
             /* Draw rectangle behind peek card in ambient mode to improve readability. */
             if (mAmbient) {
@@ -456,34 +432,18 @@ public class AnalogWatchFace extends CanvasWatchFaceService {
         }
 
         /**
-         * Starts/stops the {@link #mUpdateTimeHandler} timer based on the state of the watch face.
+         * Starts/stops the {@link #mWakeScheduler} based on the state of the watch face.
          */
         private void updateTimer() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
-            }
+            mWakeScheduler.setActive(shouldTimerBeRunning());
         }
 
         /**
-         * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer
-         * should only run in active mode.
+         * Returns whether the {@link #mWakeScheduler} should be waking the engine. It should
+         * only wake it in interactive mode.
          */
         private boolean shouldTimerBeRunning() {
             return isVisible() && !mAmbient;
         }
-
-        /**
-         * Handle updating the time periodically in interactive mode.
-         */
-        private void handleUpdateTimeMessage() {
-            invalidate();
-            if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-            }
-        }
     }
 }
@@ -0,0 +1,307 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.sidekickwatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PointF;
+import android.graphics.RectF;
+import android.graphics.drawable.Icon;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+import android.util.SparseArray;
+import com.google.android.clockwork.decomposablewatchface.FontComponent;
+import com.google.android.clockwork.decomposablewatchface.ImageComponent;
+import com.google.android.clockwork.decomposablewatchface.NumberComponent;
+import com.google.android.clockwork.decomposablewatchface.WatchFaceDecomposition;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns the face's {@link ComplicationData} into decomposition components, so that complications
+ * stay on screen while the sidekick draws the face.
+ *
+ * <p>Each complication slot owns a fixed range of component ids, {@link #IDS_PER_COMPLICATION}
+ * from {@link #FIRST_COMPONENT_ID} up, with one id for each part it can show: its icon, its short
+ * text and its ranged value. The ids do not change with the data, so an update only differs from
+ * the watch face the sidekick holds in the parts that changed, and that is all {@link
+ * SidekickClient} sends.
+ *
+ * <ul>
+ *   <li>An icon becomes an {@link ImageComponent} of the provider's own icon.
+ *   <li>A ranged value without a label of its own becomes a {@link NumberComponent} whose
+ *       lowest and highest values are both the rounded value, drawn with a digit font made to fit
+ *       the slot.
+ *   <li>Short text, and labels of ranged values, are drawn into an image, because a {@code
+ *       StringComponent} can only show the sidekick's own string sources. So are negative values,
+ *       which digits alone cannot show. The image is only drawn again when the text changes.
+ * </ul>
+ *
+ * <p>Text that depends on the time, such as a countdown, is fixed at the time it was last drawn.
+ * Data is set on the main thread and components are built on the {@link SidekickClient}'s.
+ */
+public class ComplicationComponents {
+
+    /** The first component id used for complications. */
+    static final int FIRST_COMPONENT_ID = 100;
+    /** The number of component ids each complication slot takes. */
+    static final int IDS_PER_COMPLICATION = 4;
+    /** The id of the digit font shared by every ranged value. */
+    static final int DIGIT_FONT_COMPONENT_ID = 99;
+
+    /** The z order of complications: above the background and below the hands. */
+    static final int Z_ORDER = 2;
+
+    private static final int ICON_PART = 0;
+    private static final int TEXT_PART = 1;
+    private static final int VALUE_PART = 2;
+
+    /** The height of text and digits, in proportion to the size of the slot. */
+    private static final float TEXT_HEIGHT = 0.3f;
+
+    private final Context mContext;
+    private final int[] mComplicationIds;
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    // Guarded by this.
+    private final SparseArray<RectF> mBounds = new SparseArray<>();
+    private final SparseArray<ComplicationData> mData = new SparseArray<>();
+    private final SparseArray<Slot> mSlots = new SparseArray<>();
+    private int mFaceWidthPx;
+    private FontComponent mDigitFont;
+
+    /** The components built for a complication slot, and the data they show. */
+    private static class Slot {
+        ComplicationData data;
+        ImageComponent icon;
+        /** The text drawn in {@link #text}, so that it is only drawn again when it changes. */
+        String textShown;
+        ImageComponent text;
+        NumberComponent value;
+    }
+
+    /**
+     * @param complicationIds the face's complication slots, in order; the position of each fixes
+     *     its component ids
+     */
+    public ComplicationComponents(Context context, int[] complicationIds) {
+        mContext = context.getApplicationContext();
+        mComplicationIds = complicationIds.clone();
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+    }
+
+    /**
+     * Sets where complication {@code complicationId} is drawn, in proportion to the bounds of the
+     * watch face, and the width of the face in pixels.
+     */
+    public synchronized void setBounds(int complicationId, RectF bounds, int faceWidthPx) {
+        mBounds.put(complicationId, new RectF(bounds));
+        if (faceWidthPx != mFaceWidthPx) {
+            mFaceWidthPx = faceWidthPx;
+            mDigitFont = null;
+        }
+        // Drawn text and positions depend on the bounds.
+        mSlots.clear();
+    }
+
+    /** Sets the data of complication {@code complicationId}, or null if it has none. */
+    public synchronized void setComplicationData(int complicationId, ComplicationData data) {
+        mData.put(complicationId, data);
+    }
+
+    /** Returns every component id complications may use, including the digit font's. */
+    public int[] getComponentIds() {
+        int[] ids = new int[mComplicationIds.length * IDS_PER_COMPLICATION + 1];
+        for (int i = 0; i < ids.length - 1; i++) {
+            ids[i] = FIRST_COMPONENT_ID + i;
+        }
+        ids[ids.length - 1] = DIGIT_FONT_COMPONENT_ID;
+        return ids;
+    }
+
+    /**
+     * Adds the components of every complication with data to {@code builder}. This draws text
+     * that changed, so call it off the main thread.
+     */
+    public synchronized void addTo(WatchFaceDecomposition.Builder builder) {
+        long now = System.currentTimeMillis();
+        boolean usesDigitFont = false;
+        for (int i = 0; i < mComplicationIds.length; i++) {
+            int complicationId = mComplicationIds[i];
+            RectF bounds = mBounds.get(complicationId);
+            ComplicationData data = mData.get(complicationId);
+            if (bounds == null || data == null || !data.isActive(now)) {
+                continue;
+            }
+            Slot slot = mSlots.get(complicationId);
+            if (slot == null) {
+                slot = new Slot();
+                mSlots.put(complicationId, slot);
+            }
+            build(slot, FIRST_COMPONENT_ID + i * IDS_PER_COMPLICATION, bounds, data, now);
+            if (slot.icon != null) {
+                builder.addImageComponents(slot.icon);
+            }
+            if (slot.text != null) {
+                builder.addImageComponents(slot.text);
+            }
+            if (slot.value != null) {
+                builder.addNumberComponents(slot.value);
+                usesDigitFont = true;
+            }
+        }
+        if (usesDigitFont) {
+            builder.addFontComponents(mDigitFont);
+        }
+    }
+
+    private void build(Slot slot, int firstId, RectF bounds, ComplicationData data, long now) {
+        if (data != slot.data) {
+            slot.data = data;
+            slot.icon = null;
+            slot.value = null;
+        }
+        CharSequence text = null;
+        long value = -1;
+        switch (data.getType()) {
+            case ComplicationData.TYPE_SHORT_TEXT:
+                text = getText(data.getShortText(), now);
+                break;
+            case ComplicationData.TYPE_RANGED_VALUE:
+                // Providers usually label the value themselves; otherwise show it, rounded.
+                text = getText(data.getShortText(), now);
+                if (text == null) {
+                    if (data.getValue() >= 0f) {
+                        value = Math.round(data.getValue());
+                    } else {
+                        text = String.valueOf(Math.round(data.getValue()));
+                    }
+                }
+                break;
+            case ComplicationData.TYPE_ICON:
+                break;
+            default:
+                // Types the face does not support are not drawn on the application processor
+                // either.
+                slot.icon = null;
+                slot.text = null;
+                slot.textShown = null;
+                return;
+        }
+        boolean hasLabel = text != null || value >= 0;
+
+        Icon icon = data.getIcon();
+        if (icon == null) {
+            slot.icon = null;
+        } else if (slot.icon == null) {
+            // With a label, the icon takes the top of the slot; alone, it takes the middle.
+            RectF iconBounds = hasLabel
+                    ? inset(bounds, 0.3f, 0.15f, 0.3f, 0.45f)
+                    : inset(bounds, 0.2f, 0.2f, 0.2f, 0.2f);
+            slot.icon = new ImageComponent.Builder()
+                    .setComponentId(firstId + ICON_PART)
+                    .setZOrder(Z_ORDER)
+                    .setImage(icon)
+                    .setBounds(iconBounds)
+                    .build();
+        }
+        float labelTop = icon != null ? 0.55f : 0.5f - TEXT_HEIGHT / 2;
+
+        if (text == null) {
+            slot.text = null;
+            slot.textShown = null;
+        } else if (!text.toString().equals(slot.textShown)) {
+            slot.textShown = text.toString();
+            slot.text = new ImageComponent.Builder()
+                    .setComponentId(firstId + TEXT_PART)
+                    .setZOrder(Z_ORDER)
+                    .setImage(Icon.createWithBitmap(drawText(slot.textShown, bounds)))
+                    .setBounds(inset(bounds, 0f, labelTop, 0f, 1f - labelTop - TEXT_HEIGHT))
+                    .build();
+        }
+
+        if (value < 0) {
+            slot.value = null;
+        } else if (slot.value == null) {
+            FontComponent font = getDigitFont(bounds);
+            int digits = String.valueOf(value).length();
+            float digitsWidth = digits * font.getDigitWidth() / mFaceWidthPx;
+            slot.value = new NumberComponent.Builder()
+                    .setComponentId(firstId + VALUE_PART)
+                    .setZOrder(Z_ORDER)
+                    // A number whose lowest and highest values are equal never changes.
+                    .setMsPerIncrement(TimeUnit.DAYS.toMillis(1))
+                    .setLowestValue(value)
+                    .setHighestValue(value)
+                    .setMinDigitsShown(1)
+                    .setFontComponentId(DIGIT_FONT_COMPONENT_ID)
+                    .setPosition(new PointF(bounds.centerX() - digitsWidth / 2,
+                            bounds.top + labelTop * bounds.height()))
+                    .build();
+        }
+    }
+
+    private CharSequence getText(ComplicationText text, long now) {
+        return text == null ? null : text.getText(mContext, now);
+    }
+
+    /**
+     * Returns a bitmap of {@code text}, as wide as {@code bounds} and {@link #TEXT_HEIGHT} of it
+     * tall.
+     */
+    private Bitmap drawText(String text, RectF bounds) {
+        int width = Math.max(1, Math.round(bounds.width() * mFaceWidthPx));
+        int height = Math.max(1, Math.round(bounds.height() * TEXT_HEIGHT * mFaceWidthPx));
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        fitText(text, width, height);
+        new Canvas(bitmap).drawText(text, width / 2f, height - mTextPaint.descent(), mTextPaint);
+        return bitmap;
+    }
+
+    /** Sets the text size so that {@code text} fits {@code width} by {@code height}. */
+    private void fitText(String text, int width, int height) {
+        mTextPaint.setTextSize(height * 0.8f);
+        float measured = mTextPaint.measureText(text);
+        if (measured > width) {
+            mTextPaint.setTextSize(height * 0.8f * width / measured);
+        }
+    }
+
+    /** Returns the digit font, drawing it for the current face size if need be. */
+    private FontComponent getDigitFont(RectF bounds) {
+        if (mDigitFont == null) {
+            int height = Math.max(1, Math.round(bounds.height() * TEXT_HEIGHT * mFaceWidthPx));
+            fitText("0", Integer.MAX_VALUE, height);
+            int width = Math.max(1, (int) Math.ceil(mTextPaint.measureText("0")));
+            // Digits are stacked from 0 at the top, as in the face's own font strips.
+            Bitmap strip = Bitmap.createBitmap(width, height * 10, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(strip);
+            for (int digit = 0; digit < 10; digit++) {
+                canvas.drawText(String.valueOf(digit), width / 2f,
+                        (digit + 1) * height - mTextPaint.descent(), mTextPaint);
+            }
+            mDigitFont = new FontComponent.Builder()
+                    .setComponentId(DIGIT_FONT_COMPONENT_ID)
+                    .setImage(Icon.createWithBitmap(strip))
+                    .setDigitCount(10)
+                    .setDigitDimensions(new PointF(width, height))
+                    .build();
+        }
+        return mDigitFont;
+    }
+
+    /** Returns {@code bounds} with the given fractions of its size taken off each side. */
+    private static RectF inset(RectF bounds, float left, float top, float right, float bottom) {
+        return new RectF(bounds.left + left * bounds.width(),
+                bounds.top + top * bounds.height(),
+                bounds.right - right * bounds.width(),
+                bounds.bottom - bottom * bounds.height());
+    }
+}
@@ -19,6 +19,15 @@ public class ComplicationDecomposition
 {
 
     public WatchFaceDecomposition buildWatchFaceDecomposition(Context mContext) {
+        return buildWatchFaceDecomposition(mContext, null);
+    }
+
+    /**
+     * Builds the face with the components of {@code complications}, if not null, drawn between
+     * the background and the hands.
+     */
+    public WatchFaceDecomposition buildWatchFaceDecomposition(Context mContext,
+            ComplicationComponents complications) {
 
         ImageComponent backgroundImageComponent = new ImageComponent.Builder()
                     .setComponentId(1)
@@ -28,7 +37,7 @@ public class ComplicationDecomposition
                     .build();
         ImageComponent hourImageComponent = new ImageComponent.Builder()
                     .setComponentId(10)
-                    .setZOrder(2)
+                    .setZOrder(3)
                     .setImage(Icon.createWithResource(mContext, R.drawable.hour))
                     .setBounds(new RectF(0.471794871F, 0.2641026F, 0.530769F, 0.53333333F))
                     .setDegreesPerDay(720.0F)
@@ -36,7 +45,7 @@ public class ComplicationDecomposition
                     .build();
         ImageComponent minImageComponent = new ImageComponent.Builder()
                     .setComponentId(12)
-                    .setZOrder(3)
+                    .setZOrder(4)
                     .setImage(Icon.createWithResource(mContext, R.drawable.min))
                     .setBounds(new RectF(0.46923076F, 0.06923076F, 0.530769F, 0.53333333F))
                     .setDegreesPerDay(8640.0F)
@@ -44,14 +53,17 @@ public class ComplicationDecomposition
                     .build();
         ImageComponent secImageComponent = new ImageComponent.Builder()
                     .setComponentId(15)
-                    .setZOrder(4)
+                    .setZOrder(5)
                     .setImage(Icon.createWithResource(mContext, R.drawable.sec))
                     .setBounds(new RectF(0.47948717F, 0.01794871F, 0.52051282F, 0.6179487179F))
                     .setDegreesPerDay(518400.0F)
                     .setPivot(new PointF(0.5F, 0.5F))
                     .build();
-        return new WatchFaceDecomposition.Builder()
-                    .addImageComponents(new ImageComponent[] { backgroundImageComponent, hourImageComponent, minImageComponent, secImageComponent })
-                    .build();
+        WatchFaceDecomposition.Builder builder = new WatchFaceDecomposition.Builder()
+                    .addImageComponents(new ImageComponent[] { backgroundImageComponent, hourImageComponent, minImageComponent, secImageComponent });
+        if (complications != null) {
+            complications.addTo(builder);
+        }
+        return builder.build();
         }
 }
\ No newline at end of file
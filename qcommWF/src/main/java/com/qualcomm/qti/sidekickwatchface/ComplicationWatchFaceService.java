@@ -31,15 +31,15 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
 import android.support.wearable.complications.ComplicationData;
 import android.support.wearable.complications.ComplicationHelperActivity;
 import android.support.wearable.complications.rendering.ComplicationDrawable;
@@ -49,10 +49,15 @@ import android.util.Log;
 import android.util.SparseArray;
 import android.view.SurfaceHolder;
 
+import com.google.android.clockwork.decomposablewatchface.DecompositionBudget;
+import com.google.android.clockwork.decomposablewatchface.SpriteTrimmer;
+import com.google.android.clockwork.decomposablewatchface.WatchFaceDecomposition;
+import com.qualcomm.qti.wakescheduler.WakeScheduler;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.Calendar;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
-import android.os.Handler;
 import java.lang.Runnable;
 
 /** Watch Face for "Adding Complications to your Watch Face" code lab. */
@@ -122,19 +127,27 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
     }
 
     /*
-     * Update rate in milliseconds for interactive mode. We update once a second to advance the
-     * second hand.
+     * The most memory the hand sprites may take. The 60 second hand sprites are prerendered,
+     * about 1.75 MB on a 390 pixel face. The minute and hour hands take too many positions to
+     * prerender, R.integer.minute_hand_positions and hour_hand_positions, so their sprites are
+     * rendered a position ahead of the frames that draw them, and evict the least recently drawn
+     * once the budget is full.
      */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long HAND_SPRITE_CACHE_BYTES = 4 * 1024 * 1024;
 
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine {
-        private static final int MSG_UPDATE_TIME = 0;
+    /** Adds the offload telemetry to {@code adb shell dumpsys activity service}. */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        OffloadTelemetry.dumpAll(writer);
+    }
 
+    private class Engine extends CanvasWatchFaceService.Engine {
         private static final float HOUR_AND_MINUTE_STROKE_WIDTH = 5f;
         private static final float SECOND_TICK_STROKE_WIDTH = 2f;
         private static final float CENTER_GAP_AND_CIRCLE_RADIUS = 4f;
@@ -156,18 +169,29 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
         private Paint mBackgroundPaint;
         private Bitmap mBackgroundBitmap;
         private Bitmap mHourHandBitmap;
-        private Bitmap mHourHandAmbBitmap;
         private float mHourHandHeight;
         private float mHourHandWidth;
+        private int mHourHandOffsetX;
+        private int mHourHandOffsetY;
         private Bitmap mMinHandBitmap;
-        private Bitmap mMinHandAmbBitmap;
         private float mMinHandHeight;
         private float mMinHandWidth;
+        private int mMinHandOffsetX;
+        private int mMinHandOffsetY;
         private Bitmap mSecHandBitmap;
-        private Bitmap mSecHandAmbBitmap;
         private float mSecHandHeight;
         private float mSecHandWidth;
+        private int mSecHandOffsetX;
+        private int mSecHandOffsetY;
+        private HandSpriteCache mHandSprites;
+        private int mHourHandSprite;
+        private int mMinHandSprite;
+        private int mSecHandSprite;
         private boolean mAmbient;
+        private OffloadController mOffloadController;
+        private OffloadScheduler mOffloadScheduler;
+        private AmbientHandoff mAmbientHandoff;
+        private ComplicationComponents mComplicationComponents;
 
         /*
          * Whether the display supports fewer bits for each color in ambient mode.
@@ -201,21 +225,15 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
                     }
                 };
 
-        // Handler to update the time once a second in interactive mode.
-        private final Handler mUpdateTimeHandler =
-                new Handler() {
-                    @Override
-                    public void handleMessage(Message message) {
-                        invalidate();
-                        if (shouldTimerBeRunning()) {
-                            long timeMs = System.currentTimeMillis();
-                            long delayMs =
-                                    INTERACTIVE_UPDATE_RATE_MS
-                                            - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                            mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-                        }
-                    }
-                };
+        // Wakes the engine once a second in interactive mode, to advance the second hand.
+        private final WakeScheduler mWakeScheduler =
+                new WakeScheduler(
+                        new WakeScheduler.Callback() {
+                            @Override
+                            public void onWake() {
+                                invalidate();
+                            }
+                        });
 
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -227,6 +245,8 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
                             .build());
 
             mCalendar = Calendar.getInstance();
+            // Every hand ticks, so nothing moves between seconds.
+            mWakeScheduler.addTickingSecond();
 
             initializeBackground();
 
@@ -234,16 +254,27 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
 
             initializeHands();
 
-            final OffloadController mOffloadController = new OffloadController();
+            mOffloadController =
+                    new OffloadController(ComplicationWatchFaceService.this, "complication");
+            mOffloadController.setBudget(ComplicationWatchFaceService.this,
+                    new DecompositionBudget.Builder()
+                            .setBudgetBytes(OffloadController.DEFAULT_BUDGET_BYTES)
+                            .build());
+            mOffloadController.setDerivesTwmProfile(ComplicationWatchFaceService.this, true);
+            mAmbientHandoff = new AmbientHandoff(mOffloadController, "complication");
+            mComplicationComponents =
+                    new ComplicationComponents(ComplicationWatchFaceService.this, COMPLICATION_IDS);
+            // Complication values go stale long before traditional watch mode ends.
+            mOffloadController.setTwmExcludedIds(mComplicationComponents.getComponentIds());
             final ComplicationDecomposition mDecomposition = new ComplicationDecomposition();
-            mOffloadController.clearDecomposition();
-            Handler handler = new Handler();
-            handler.postDelayed(new Runnable() {
+            mOffloadScheduler = new OffloadScheduler(mOffloadController);
+            mOffloadScheduler.start(new OffloadScheduler.DecompositionSource() {
                 @Override
-                public void run() {
-                    mOffloadController.sendDecomposition(mDecomposition.buildWatchFaceDecomposition(ComplicationWatchFaceService.this),false);
+                public WatchFaceDecomposition buildDecomposition() {
+                    return mDecomposition.buildWatchFaceDecomposition(
+                            ComplicationWatchFaceService.this, mComplicationComponents);
                 }
-            }, 1000);
+            });
         }
 
         private void initializeBackground() {
@@ -281,17 +312,14 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
 
         private void initializeHands() {
             mHourHandBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.hour_interactive);
-            mHourHandAmbBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.hour_interactive);
             mHourHandHeight = mHourHandBitmap.getHeight();
             mHourHandWidth = mHourHandBitmap.getWidth();
 
             mMinHandBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.min_interactive);
-            mMinHandAmbBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.min_interactive);
             mMinHandHeight = mMinHandBitmap.getHeight();
             mMinHandWidth  = (mMinHandBitmap.getWidth());
 
             mSecHandBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.sec_interactive);
-            mSecHandAmbBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.sec_interactive);
 
             mSecHandHeight = mSecHandBitmap.getHeight();
             mSecHandWidth = mSecHandBitmap.getWidth();
@@ -299,7 +327,13 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
 
         @Override
         public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mWakeScheduler.setActive(false);
+            mOffloadScheduler.cancel();
+            mAmbientHandoff.release();
+            mOffloadController.release();
+            if (mHandSprites != null) {
+                mHandSprites.release();
+            }
             super.onDestroy();
         }
 
@@ -335,6 +369,10 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
                     mComplicationDrawableSparseArray.get(complicationId);
             complicationDrawable.setComplicationData(complicationData);
 
+            // Only the changed complication's components differ from what the sidekick holds.
+            mComplicationComponents.setComplicationData(complicationId, complicationData);
+            mOffloadScheduler.onSourceChanged();
+
             invalidate();
         }
 
@@ -426,7 +464,10 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            invalidate();
+            // In ambient mode the sidekick draws the face once it has taken over the display.
+            if (!mAmbient || !mAmbientHandoff.isSidekickInControl()) {
+                invalidate();
+            }
         }
 
         @Override
@@ -434,6 +475,7 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
 
             mAmbient = inAmbientMode;
+            mAmbientHandoff.onAmbientModeChanged(inAmbientMode);
 
             // Update drawable complications' ambient state.
             // Note: ComplicationDrawable handles switching between active/ambient colors, we just
@@ -449,6 +491,16 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
             updateTimer();
         }
 
+        /**
+         * Decodes a hand strip at the given size and trims its transparent padding. The strip is
+         * decoded afresh so that repeated surface changes do not rescale an already trimmed hand.
+         */
+        private SpriteTrimmer.Sprite loadHand(int resId, float width, float height) {
+            Bitmap hand = BitmapFactory.decodeResource(getResources(), resId);
+            return SpriteTrimmer.trim(
+                    Bitmap.createScaledBitmap(hand, (int) width, (int) height, true));
+        }
+
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
             super.onSurfaceChanged(holder, format, width, height);
@@ -465,36 +517,54 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
             /*
              * Calculate lengths of different hands based on watch screen size.
              */
-            float scale = ((float)height) / (float) mHourHandBitmap.getHeight();
-            mHourHandWidth = (float) (mHourHandWidth * scale );
-            mHourHandHeight = (float) (mHourHandHeight * scale);
-
-            mHourHandBitmap = Bitmap.createScaledBitmap(mHourHandBitmap,
-                    (int) (mHourHandWidth),
-                    (int) (mHourHandHeight), true);
-
-            mHourHandAmbBitmap = Bitmap.createScaledBitmap(mHourHandAmbBitmap,
-                    (int) (mHourHandWidth),
-                    (int) (mHourHandHeight), true);
-
-            scale = ((float)height) / (float) mMinHandBitmap.getHeight();
-            mMinHandWidth = (float) (mMinHandWidth * scale );
-            mMinHandHeight = (float) (mMinHandHeight * scale);
-            mMinHandBitmap = Bitmap.createScaledBitmap(mMinHandBitmap,
-                    (int) (mMinHandWidth),
-                    (int) (mMinHandHeight), true);
-
-            mMinHandAmbBitmap = Bitmap.createScaledBitmap(mMinHandAmbBitmap,
-                    (int) (mMinHandWidth),
-                    (int) (mMinHandHeight), true);
-
-            scale = ((float)height) / (float) mSecHandBitmap.getHeight();
-            mSecHandWidth = (float) (mSecHandWidth * scale);
-            mSecHandHeight = (float) (mSecHandHeight * scale);
-            mSecHandBitmap = Bitmap.createScaledBitmap(mSecHandBitmap,
-                    (int) (mSecHandWidth),
-                    (int) (mSecHandHeight), true);
-            mSecHandAmbBitmap = mSecHandBitmap;
+            float scale = ((float) height) / mHourHandHeight;
+            mHourHandWidth = mHourHandWidth * scale;
+            mHourHandHeight = mHourHandHeight * scale;
+            SpriteTrimmer.Sprite hand =
+                    loadHand(R.drawable.hour_interactive, mHourHandWidth, mHourHandHeight);
+            mHourHandBitmap = hand.getBitmap();
+            mHourHandOffsetX = hand.getOffsetX();
+            mHourHandOffsetY = hand.getOffsetY();
+
+            scale = ((float) height) / mMinHandHeight;
+            mMinHandWidth = mMinHandWidth * scale;
+            mMinHandHeight = mMinHandHeight * scale;
+            hand = loadHand(R.drawable.min_interactive, mMinHandWidth, mMinHandHeight);
+            mMinHandBitmap = hand.getBitmap();
+            mMinHandOffsetX = hand.getOffsetX();
+            mMinHandOffsetY = hand.getOffsetY();
+
+            scale = ((float) height) / mSecHandHeight;
+            mSecHandWidth = mSecHandWidth * scale;
+            mSecHandHeight = mSecHandHeight * scale;
+            hand = loadHand(R.drawable.sec_interactive, mSecHandWidth, mSecHandHeight);
+            mSecHandBitmap = hand.getBitmap();
+            mSecHandOffsetX = hand.getOffsetX();
+            mSecHandOffsetY = hand.getOffsetY();
+
+            /*
+             * Render the second hand at every position it takes in the background, so that frames
+             * blit it instead of rotating it. The minute and hour hands' sprites are rendered as
+             * the hands reach them.
+             */
+            Resources resources = getResources();
+            if (mHandSprites != null) {
+                mHandSprites.release();
+            }
+            mHandSprites = new HandSpriteCache(mCenterX, mCenterY, HAND_SPRITE_CACHE_BYTES);
+            mSecHandSprite = mHandSprites.addHand(mSecHandBitmap,
+                    mCenterX - (mSecHandWidth / 2) + mSecHandOffsetX,
+                    mCenterY - (mSecHandHeight / 2) + mSecHandOffsetY,
+                    resources.getInteger(R.integer.second_hand_positions), true);
+            mMinHandSprite = mHandSprites.addHand(mMinHandBitmap,
+                    mCenterX - (mMinHandWidth / 2) + mMinHandOffsetX,
+                    mCenterY - (mMinHandHeight / 2) + mMinHandOffsetY,
+                    resources.getInteger(R.integer.minute_hand_positions), false);
+            mHourHandSprite = mHandSprites.addHand(mHourHandBitmap,
+                    mCenterX - (mHourHandWidth / 2) + mHourHandOffsetX,
+                    mCenterY - (mHourHandHeight / 2) + mHourHandOffsetY,
+                    resources.getInteger(R.integer.hour_hand_positions), false);
+            mHandSprites.prerender();
 
             /* Scale loaded background image (more efficient) if surface dimensions change. */
             scale = ((float) width) / (float) mBackgroundBitmap.getWidth();
@@ -543,6 +613,16 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
             ComplicationDrawable rightComplicationDrawable =
                     mComplicationDrawableSparseArray.get(RIGHT_COMPLICATION_ID);
             rightComplicationDrawable.setBounds(rightBounds);
+
+            mComplicationComponents.setBounds(LEFT_COMPLICATION_ID,
+                    new RectF(leftBounds.left / (float) width, leftBounds.top / (float) height,
+                            leftBounds.right / (float) width, leftBounds.bottom / (float) height),
+                    width);
+            mComplicationComponents.setBounds(RIGHT_COMPLICATION_ID,
+                    new RectF(rightBounds.left / (float) width, rightBounds.top / (float) height,
+                            rightBounds.right / (float) width, rightBounds.bottom / (float) height),
+                    width);
+            mOffloadScheduler.onSourceChanged();
         }
 
         @Override
@@ -555,6 +635,8 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
             drawComplications(canvas, now);
 
             drawHands(canvas);
+
+            mAmbientHandoff.onFrameDrawn();
         }
 
         private void drawComplications(Canvas canvas, long currentTimeMillis) {
@@ -596,66 +678,9 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
             final float hourHandOffset = mCalendar.get(Calendar.MINUTE) / 2f;
             final float hoursRotation = (mCalendar.get(Calendar.HOUR) * 30) + hourHandOffset;
 
-            /*
-             * Saves the canvas state before we rotate it.
-             */
-            canvas.save();
-
-            Paint p = new Paint();
-            p.setAntiAlias(true);
-            p.setFilterBitmap(true);
-            canvas.rotate(hoursRotation, mCenterX, mCenterY);
-            if (mAmbient) {
-                canvas.drawBitmap(
-                        mHourHandAmbBitmap,
-                        mCenterX - (mHourHandWidth / 2),
-                        mCenterY - (mHourHandHeight / 2),
-                        p);
-
-                canvas.rotate(minutesRotation - hoursRotation, mCenterX, mCenterY);
-                canvas.drawBitmap(
-                        mMinHandAmbBitmap,
-                        mCenterX - (mMinHandWidth / 2),
-                        mCenterY - (mMinHandHeight / 2),
-                        p);
-            } else {
-                canvas.drawBitmap(
-                        mHourHandBitmap,
-                        mCenterX - (mHourHandWidth / 2),
-                        mCenterY - (mHourHandHeight / 2),
-                        p);
-
-                canvas.rotate(minutesRotation - hoursRotation, mCenterX, mCenterY);
-                canvas.drawBitmap(
-                        mMinHandBitmap,
-                        mCenterX - (mMinHandWidth / 2),
-                        mCenterY - (mMinHandHeight / 2),
-                        p);
-            }
-            /*
-             * Ensure the "seconds" hand is drawn only when we are in interactive mode.
-             * Otherwise, we only update the watch face once a minute.
-             */
-            if (!mAmbient) {
-                canvas.rotate(secondsRotation - minutesRotation, mCenterX, mCenterY);
-
-                canvas.drawBitmap(
-                        mSecHandBitmap,
-                        mCenterX - (mSecHandWidth/2),
-                        mCenterY - (mSecHandHeight/2),
-                        p);
-            } else {
-                canvas.rotate(secondsRotation - minutesRotation, mCenterX, mCenterY);
-
-                canvas.drawBitmap(
-                        mSecHandAmbBitmap,
-                        mCenterX - (mSecHandWidth/2),
-                        mCenterY - (mSecHandHeight/2),
-                        p);
-            }
-
-            /* Restore the canvas' original orientation. */
-            canvas.restore();
+            mHandSprites.draw(canvas, mHourHandSprite, hoursRotation);
+            mHandSprites.draw(canvas, mMinHandSprite, minutesRotation);
+            mHandSprites.draw(canvas, mSecHandSprite, secondsRotation);
 
             /* Draw rectangle behind peek card in ambient mode to improve readability. */
             if (mAmbient) {
@@ -666,6 +691,7 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
+            mAmbientHandoff.onVisibilityChanged(visible);
 
             if (visible) {
                 registerReceiver();
@@ -702,18 +728,15 @@ public class ComplicationWatchFaceService extends CanvasWatchFaceService {
         }
 
         /**
-         * Starts/stops the {@link #mUpdateTimeHandler} timer based on the state of the watch face.
+         * Starts/stops the {@link #mWakeScheduler} based on the state of the watch face.
          */
         private void updateTimer() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
-            }
+            mWakeScheduler.setActive(shouldTimerBeRunning());
         }
 
         /*
-         * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer
-         * should only run when we're visible and in interactive mode.
+         * Returns whether the {@link #mWakeScheduler} should be running. It should only run when
+         * we're visible and in interactive mode.
          */
         private boolean shouldTimerBeRunning() {
             return isVisible() && !isInAmbientMode();
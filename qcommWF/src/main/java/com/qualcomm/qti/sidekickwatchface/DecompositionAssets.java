@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.sidekickwatchface;
+
+import android.content.Context;
+import com.google.android.clockwork.decomposablewatchface.DecompositionCodec;
+import com.google.android.clockwork.decomposablewatchface.WatchFaceDecomposition;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Loads the decompositions that the build compiles from {@code src/main/decompositions} into
+ * assets. A compiled decomposition has been validated at build time and needs no per-component
+ * work at startup: it is read and decoded in one pass.
+ */
+public final class DecompositionAssets {
+
+    private DecompositionAssets() {}
+
+    /**
+     * Loads the compiled decomposition {@code assetName}, for example {@code "digital.wfd"}.
+     *
+     * @throws IOException if the asset is missing or cannot be read
+     * @throws IllegalArgumentException if the asset is not a valid decomposition
+     */
+    public static WatchFaceDecomposition load(Context context, String assetName)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = context.getAssets().open(assetName)) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+        }
+        return DecompositionCodec.decode(ByteBuffer.wrap(bytes.toByteArray()), context);
+    }
+}
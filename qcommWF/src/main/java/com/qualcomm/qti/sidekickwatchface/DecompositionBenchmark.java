@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.sidekickwatchface;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.android.clockwork.decomposablewatchface.AbstractComponent;
+import com.google.android.clockwork.decomposablewatchface.DecompositionCodec;
+import com.google.android.clockwork.decomposablewatchface.ImagePool;
+import com.google.android.clockwork.decomposablewatchface.SharedImageFile;
+import com.google.android.clockwork.decomposablewatchface.IndexedImageEncoder;
+import com.google.android.clockwork.decomposablewatchface.TextureAtlas;
+import com.google.android.clockwork.decomposablewatchface.WatchFaceDecomposition;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Compares the size and encode/decode cost of the {@link android.os.Parcelable} representation of
+ * our decompositions with the binary {@link DecompositionCodec} encoding, the image memory of the
+ * decompositions with and without a {@link TextureAtlas}, the size and quality of their images
+ * at each {@link IndexedImageEncoder} bit depth, the cost of building the digital decomposition
+ * at runtime against loading it from {@link DecompositionAssets}, and the cost of offloading them
+ * through {@link SidekickClient} to a {@link FakeSidekickService} inline and through a {@link
+ * SharedImageFile}. Results are logged under {@link #TAG}; enable with {@code adb shell setprop
+ * log.tag.DecompositionBenchmark DEBUG}.
+ */
+public final class DecompositionBenchmark {
+
+    public static final String TAG = "DecompositionBenchmark";
+
+    private static final int ITERATIONS = 200;
+    private static final int ATLAS_PAGE_SIZE = 1024;
+    private static final int[] INDEXED_BITS_PER_PIXEL = {1, 2, 4, 8};
+
+    private DecompositionBenchmark() {}
+
+    public static boolean isEnabled() {
+        return Log.isLoggable(TAG, Log.DEBUG);
+    }
+
+    /**
+     * Runs the comparison for the digital and analog decompositions. This takes a few hundred
+     * milliseconds, so call it off the main thread.
+     */
+    public static void compareWireFormats(Context context) {
+        WatchFaceDecomposition digital =
+                new DigitalDecomposition().buildWatchFaceDecomposition(context);
+        compareWireFormats("digital", digital);
+        compareAtlas(context, "digital", digital);
+        compareIndexed(context, "digital", digital);
+        compareAssetLoad(context, "digital", "digital.wfd");
+        // AnalogDecomposition builds the support library's decomposition type; the complication
+        // face ships the same analog layout using ours.
+        WatchFaceDecomposition analog =
+                new ComplicationDecomposition().buildWatchFaceDecomposition(context);
+        compareWireFormats("analog", analog);
+        compareAtlas(context, "analog", analog);
+        compareIndexed(context, "analog", analog);
+        compareOffload(context, "digital to analog", digital, analog, false /* shared */);
+        compareOffload(context, "digital to analog", digital, analog, true /* shared */);
+    }
+
+    /**
+     * Logs how long a {@link SidekickClient} takes to deliver each decomposition to a {@link
+     * FakeSidekickService}, alternating between the two, measured from the request to the result,
+     * and how far the Java heap grows while it does. With {@code shared}, the images go through a
+     * {@link SharedImageFile} instead of inside the parcel.
+     */
+    private static void compareOffload(Context context, String name,
+            WatchFaceDecomposition first, WatchFaceDecomposition second, boolean shared) {
+        FakeSidekickService service = new FakeSidekickService();
+        SidekickClient client = new SidekickClient(service);
+        if (shared) {
+            client.setSharedTransport(context, service.getSharedTransport());
+        }
+        final Semaphore done = new Semaphore(0);
+        final long[] peakHeapBytes = new long[1];
+        final Runtime runtime = Runtime.getRuntime();
+        client.setListener(new SidekickClient.Listener() {
+            @Override
+            public void onResult(SidekickClient.Operation operation,
+                    WatchFaceDecomposition decomposition, SidekickClient.Result result) {
+                peakHeapBytes[0] = Math.max(
+                        peakHeapBytes[0], runtime.totalMemory() - runtime.freeMemory());
+                done.release();
+            }
+        });
+        int sends = ITERATIONS / 10;
+        long totalNs = 0;
+        long maxGrowthBytes = 0;
+        try {
+            for (int i = 0; i < sends; i++) {
+                System.gc();
+                long baseHeapBytes = runtime.totalMemory() - runtime.freeMemory();
+                peakHeapBytes[0] = 0;
+                long start = SystemClock.elapsedRealtimeNanos();
+                client.sendWatchFace(i % 2 == 0 ? first : second);
+                done.acquireUninterruptibly();
+                totalNs += SystemClock.elapsedRealtimeNanos() - start;
+                maxGrowthBytes = Math.max(maxGrowthBytes, peakHeapBytes[0] - baseHeapBytes);
+            }
+        } finally {
+            client.shutdown();
+        }
+        Log.d(TAG, name + ": offload " + (shared ? "shared" : "inline") + " "
+                + totalNs / sends / 1000 + "us per send, heap grew up to "
+                + maxGrowthBytes / 1024 + "KB, " + service.getBytesReceived() / sends
+                + " bytes through Binder and " + service.getBytesMapped() / sends
+                + " mapped per send");
+    }
+
+    /**
+     * Logs how long it takes to build the decomposition at runtime against loading the same
+     * decomposition compiled into {@code assetName} at build time.
+     */
+    private static void compareAssetLoad(Context context, String name, String assetName) {
+        long buildNs = 0;
+        long loadNs = 0;
+        try {
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                new DigitalDecomposition().buildWatchFaceDecomposition(context);
+                buildNs += SystemClock.elapsedRealtimeNanos() - start;
+
+                start = SystemClock.elapsedRealtimeNanos();
+                DecompositionAssets.load(context, assetName);
+                loadNs += SystemClock.elapsedRealtimeNanos() - start;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, name + ": cannot load " + assetName, e);
+            return;
+        }
+        Log.d(TAG, name + ": built in " + buildNs / ITERATIONS / 1000 + "us, loaded from "
+                + assetName + " in " + loadNs / ITERATIONS / 1000 + "us");
+    }
+
+    /** Logs the encoded size and image quality of the decomposition at each indexed bit depth. */
+    private static void compareIndexed(
+            Context context, String name, WatchFaceDecomposition decomposition) {
+        int plainBytes = DecompositionCodec.encode(decomposition).length;
+        for (int bitsPerPixel : INDEXED_BITS_PER_PIXEL) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            IndexedImageEncoder.Result indexed = IndexedImageEncoder.encode(
+                    context, decomposition, bitsPerPixel, true /* dither */, 0 /* minPsnr */);
+            long encodeNs = SystemClock.elapsedRealtimeNanos() - start;
+            int indexedBytes = DecompositionCodec.encode(decomposition, indexed).length;
+            Log.d(TAG, name + ": " + bitsPerPixel + "bpp " + indexed.getEncodedCount()
+                    + " images, min PSNR " + String.format("%.1f", indexed.getMinPsnr())
+                    + "dB, " + indexed.getBytesSaved() + " of " + indexed.getArgbByteCount()
+                    + " pixel bytes saved; binary " + indexedBytes + " bytes (" + plainBytes
+                    + " unquantized); quantized in " + encodeNs / 1000 + "us");
+        }
+    }
+
+    /** Logs what packing the decomposition's images into a {@link TextureAtlas} would save. */
+    private static void compareAtlas(
+            Context context, String name, WatchFaceDecomposition decomposition) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        TextureAtlas atlas = TextureAtlas.pack(context, decomposition, ATLAS_PAGE_SIZE);
+        long packNs = SystemClock.elapsedRealtimeNanos() - start;
+        Log.d(TAG, name + ": atlas " + atlas.getPackedAllocationCount() + " pages, "
+                + atlas.getPackedByteCount() + " bytes; unpacked "
+                + atlas.getUnpackedAllocationCount() + " bitmaps, "
+                + atlas.getUnpackedByteCount() + " bytes; packed in " + packNs / 1000 + "us");
+    }
+
+    private static void compareWireFormats(String name, WatchFaceDecomposition decomposition) {
+        Parcel parcel = Parcel.obtain();
+        long parcelEncodeNs = 0;
+        long parcelDecodeNs = 0;
+        int parcelBytes = 0;
+        try {
+            for (int i = 0; i < ITERATIONS; i++) {
+                parcel.setDataPosition(0);
+                long start = SystemClock.elapsedRealtimeNanos();
+                decomposition.writeToParcel(parcel, 0);
+                parcelEncodeNs += SystemClock.elapsedRealtimeNanos() - start;
+                parcelBytes = parcel.dataPosition();
+
+                parcel.setDataPosition(0);
+                start = SystemClock.elapsedRealtimeNanos();
+                touchAllComponents(WatchFaceDecomposition.CREATOR.createFromParcel(parcel));
+                parcelDecodeNs += SystemClock.elapsedRealtimeNanos() - start;
+            }
+        } finally {
+            parcel.recycle();
+        }
+
+        long binaryEncodeNs = 0;
+        long binaryDecodeNs = 0;
+        byte[] encoded = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            encoded = DecompositionCodec.encode(decomposition);
+            binaryEncodeNs += SystemClock.elapsedRealtimeNanos() - start;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            touchAllComponents(DecompositionCodec.decode(ByteBuffer.wrap(encoded)));
+            binaryDecodeNs += SystemClock.elapsedRealtimeNanos() - start;
+        }
+
+        Log.d(TAG, name + ": parcel " + parcelBytes + " bytes, encode "
+                + parcelEncodeNs / ITERATIONS / 1000 + "us, decode "
+                + parcelDecodeNs / ITERATIONS / 1000 + "us; binary " + encoded.length
+                + " bytes, encode " + binaryEncodeNs / ITERATIONS / 1000 + "us, decode "
+                + binaryDecodeNs / ITERATIONS / 1000 + "us");
+
+        ImagePool pool = decomposition.getImagePool();
+        Log.d(TAG, name + ": " + pool.size() + " distinct images, "
+                + pool.getUniqueByteCount() + " of " + pool.getReferencedByteCount()
+                + " image bytes after pooling");
+    }
+
+    /**
+     * Reads one field from every component so that the decode timings include the work a receiver
+     * would actually do.
+     */
+    private static int touchAllComponents(WatchFaceDecomposition decomposition) {
+        return sumIds(decomposition.getImageComponents())
+                + sumIds(decomposition.getNumberComponents())
+                + sumIds(decomposition.getFontComponents())
+                + sumIds(decomposition.getStringComponents())
+                + sumIds(decomposition.getProportionalFontComponents());
+    }
+
+    private static int sumIds(List<? extends AbstractComponent> components) {
+        int sum = 0;
+        for (AbstractComponent component : components) {
+            sum += component.getComponentId();
+        }
+        return sum;
+    }
+}
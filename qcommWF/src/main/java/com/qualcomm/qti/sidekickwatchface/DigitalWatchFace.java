@@ -37,104 +37,105 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.Message;
 import android.support.v4.content.ContextCompat;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.text.format.DateFormat;
 import android.util.Log;
+import android.util.SparseArray;
 import android.util.TypedValue;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Arrays;
+import com.google.android.clockwork.decomposablewatchface.DecompositionBudget;
+import com.google.android.clockwork.decomposablewatchface.FontComponent;
+import com.google.android.clockwork.decomposablewatchface.ImageComponent;
+import com.google.android.clockwork.decomposablewatchface.NumberComponent;
+import com.google.android.clockwork.decomposablewatchface.SpriteFont;
+import com.google.android.clockwork.decomposablewatchface.WatchFaceDecomposition;
+import com.qualcomm.qti.wakescheduler.WakeScheduler;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import android.os.Handler;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.Runnable;
 
 /**
- * Sample digital watch face with blinking colons and seconds. In ambient mode, the seconds are
- * replaced with an AM/PM indicator and the colons don't blink. On devices with low-bit ambient
- * mode, the text is drawn without anti-aliasing in ambient mode. On devices which require burn-in
- * protection, the hours are drawn in normal rather than bold. The time is drawn with less contrast
- * and without seconds in mute mode.
+ * Sample digital watch face with blinking colons and seconds. The colons, digits and date are
+ * drawn from the images and fonts of digital.face, the decomposition offloaded to the sidekick.
+ * In ambient mode, the seconds are replaced with an AM/PM indicator and the colons don't blink.
+ * The time is drawn with less contrast and without seconds in mute mode.
  */
 public class DigitalWatchFace extends CanvasWatchFaceService {
 
     private static final String TAG = "DigitalWatchFaceService";
 
-    private static final Typeface BOLD_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
+    /** Compiled from src/main/decompositions/digital.face at build time. */
+    private static final String DIGITAL_DECOMPOSITION_ASSET = "digital.wfd";
+
+    /** Ids of the decorative images in digital.face. */
+    private static final int RING_COMPONENT_ID = 10;
+    private static final int LOGO_COMPONENT_ID = 11;
+
+    /** Ids of the colons, digits and date in digital.face, which the engine draws the same way. */
+    private static final int HOUR_COLON_COMPONENT_ID = 12;
+    private static final int COMMA_COMPONENT_ID = 13;
+    private static final int MINUTE_COLON_COMPONENT_ID = 14;
+    private static final int HOUR_COMPONENT_ID = 20;
+    private static final int MINUTE_COMPONENT_ID = 21;
+    private static final int SECOND_COMPONENT_ID = 22;
+    private static final int DAY_OF_WEEK_COMPONENT_ID = 23;
+    private static final int MONTH_COMPONENT_ID = 24;
+    private static final int DAY_OF_MONTH_COMPONENT_ID = 25;
+
+    /** The width of the screen digital.face is laid out for, where glyphs are drawn unscaled. */
+    private static final float DECOMPOSITION_SCREEN_PX = 390f;
+
     private static final Typeface NORMAL_TYPEFACE =
             Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
 
-    /**
-     * Update rate in milliseconds for normal (not ambient and not mute) mode. We update twice
-     * a second to blink the colons.
-     */
-    private static final long NORMAL_UPDATE_RATE_MS = 500;
-
-    /**
-     * Update rate in milliseconds for mute mode. We update every minute, like in ambient mode.
-     */
-    private static final long MUTE_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
+    /** How long the colons show, and then hide, each second in normal mode. */
+    private static final long COLON_BLINK_MS = 500;
 
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine {
-        static final String COLON_STRING = ":";
+    /** Adds the offload telemetry to {@code adb shell dumpsys activity service}. */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        OffloadTelemetry.dumpAll(writer);
+    }
 
+    private class Engine extends CanvasWatchFaceService.Engine {
         /** Alpha value for drawing time when in mute mode. */
         static final int MUTE_ALPHA = 100;
 
         /** Alpha value for drawing time when not in mute mode. */
         static final int NORMAL_ALPHA = 255;
 
-        static final int MSG_UPDATE_TIME = 0;
-
-        /** How often {@link #mUpdateTimeHandler} ticks in milliseconds. */
-        long mInteractiveUpdateRateMs = NORMAL_UPDATE_RATE_MS;
-
-        /** Handler to update the time periodically in interactive mode. */
-        final Handler mUpdateTimeHandler = new Handler() {
+        /** Wakes the engine in interactive mode whenever the colons or the digits change. */
+        final WakeScheduler mWakeScheduler = new WakeScheduler(new WakeScheduler.Callback() {
             @Override
-            public void handleMessage(Message message) {
-                switch (message.what) {
-                    case MSG_UPDATE_TIME:
-                        if (Log.isLoggable(TAG, Log.VERBOSE)) {
-                            Log.v(TAG, "updating time");
-                        }
-                        invalidate();
-                        if (shouldTimerBeRunning()) {
-                            long timeMs = System.currentTimeMillis();
-                            long delayMs =
-                                    mInteractiveUpdateRateMs - (timeMs % mInteractiveUpdateRateMs);
-                            mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-                        }
-                        break;
+            public void onWake() {
+                if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                    Log.v(TAG, "updating time");
                 }
+                invalidate();
             }
-        };
+        });
 
         /**
-         * Handles time zone and locale changes.
+         * Handles time zone, locale and time format changes.
          */
         final BroadcastReceiver mReceiver = new BroadcastReceiver() {
             @Override
@@ -155,35 +156,50 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
         Bitmap mRingBitmap;
         Bitmap mQLogBitmap;
         Bitmap mBackgroundBitmap;
-        Paint mDatePaint;
-        Paint mHourPaint;
-        Paint mMinutePaint;
-        Paint mSecondPaint;
         Paint mAmPmPaint;
-        Paint mColonPaint;
-        float mColonWidth;
         boolean mMute;
 
+        /* The 24-hour setting, read in initFormats() so that drawing a frame allocates nothing. */
+        boolean mIs24Hour;
+
+        /*
+         * The colons, digits and date as digital.face lays them out, set by applyFaceLayout()
+         * once loadFaceLayout() has decoded them; until then frames only draw the background.
+         * The engine draws them from the same images and fonts as the sidekick, at the same
+         * places, so the face looks the same whichever of them draws it.
+         */
+        final Handler mMainHandler = new Handler();
+        SparseArray<SpriteFont> mFonts;
+        NumberComponent mHourNumber;
+        NumberComponent mMinuteNumber;
+        NumberComponent mSecondNumber;
+        NumberComponent mDayOfWeekNumber;
+        NumberComponent mMonthNumber;
+        NumberComponent mDayOfMonthNumber;
+        final RectF mHourColonBounds = new RectF();
+        final RectF mMinuteColonBounds = new RectF();
+        final RectF mCommaBounds = new RectF();
+        Bitmap mColonBitmap;
+        Bitmap mCommaBitmap;
+        final Paint mGlyphPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        final RectF mImageDst = new RectF();
+
+        OffloadController mOffloadController;
+        OffloadScheduler mOffloadScheduler;
+        AmbientHandoff mAmbientHandoff;
+        /**
+         * digital.face, decoded once for both drawing and offloading. Only used on the client's
+         * thread.
+         */
+        WatchFaceDecomposition mFace;
+
         Calendar mCalendar;
-        Date mDate;
-        SimpleDateFormat mDayOfWeekFormat;
-        SimpleDateFormat mMonthFormat;
-        java.text.DateFormat mDateFormat;
 
         boolean mShouldDrawColons;
-        float mXOffset;
-        float mYOffset;
-        float mLineHeight;
         String mAmString;
         String mPmString;
         int mInteractiveBackgroundColor =
                 COLOR_VALUE_DEFAULT_AND_AMBIENT_BACKGROUND;
-        int mInteractiveHourDigitsColor =
-                COLOR_VALUE_DEFAULT_AND_AMBIENT_HOUR_DIGITS;
-        int mInteractiveMinuteDigitsColor =
-                COLOR_VALUE_DEFAULT_AND_AMBIENT_MINUTE_DIGITS;
-        int mInteractiveSecondDigitsColor =
-                COLOR_VALUE_DEFAULT_AND_AMBIENT_SECOND_DIGITS;
 
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
@@ -204,8 +220,6 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
                     .setShowSystemUiTime(false)
                     .build());
             Resources resources = DigitalWatchFace.this.getResources();
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
-            mLineHeight = resources.getDimension(R.dimen.digital_line_height);
             mAmString = resources.getString(R.string.digital_am);
             mPmString = resources.getString(R.string.digital_pm);
 
@@ -216,49 +230,61 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
             mRingBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.ring);
             mQLogBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.logo);
 
-            mDatePaint = createTextPaint(
-                    ContextCompat.getColor(getApplicationContext(), R.color.digital_date));
-            mHourPaint = createTextPaint(mInteractiveHourDigitsColor, BOLD_TYPEFACE);
-            mMinutePaint = createTextPaint(mInteractiveMinuteDigitsColor);
-            mSecondPaint = new Paint();
-            mSecondPaint.setColor(Color.parseColor("#00BFFF"));
             mAmPmPaint = createTextPaint(
                     ContextCompat.getColor(getApplicationContext(), R.color.digital_am_pm));
-            mColonPaint = createTextPaint(
-                    ContextCompat.getColor(getApplicationContext(), R.color.digital_colons));
 
             mCalendar = Calendar.getInstance();
-            mDate = new Date();
             initFormats();
+            declareAnimatedElements();
 
-            final OffloadController mOffloadController = new OffloadController();
-            final DigitalDecomposition mDecomposition = new DigitalDecomposition();
-            mOffloadController.clearDecomposition();
-            Handler handler = new Handler();
-            handler.postDelayed(new Runnable() {
+            mOffloadController = new OffloadController(DigitalWatchFace.this, "digital");
+            // The ring and logo are the first things to go if the face does not fit.
+            mOffloadController.setBudget(DigitalWatchFace.this, new DecompositionBudget.Builder()
+                    .setBudgetBytes(OffloadController.DEFAULT_BUDGET_BYTES)
+                    .addDecorativeIds(RING_COMPONENT_ID, LOGO_COMPONENT_ID)
+                    .build());
+            mOffloadController.setDerivesTwmProfile(DigitalWatchFace.this, true);
+            mAmbientHandoff = new AmbientHandoff(mOffloadController, "digital");
+            mOffloadScheduler = new OffloadScheduler(mOffloadController);
+            // The face is decoded on the client's thread, off the main thread, and before the
+            // scheduler's first build there, which offloads the same decomposition.
+            mOffloadController.getClient().postDelayed(new Runnable() {
                 @Override
                 public void run() {
-                    mOffloadController.sendDecomposition(mDecomposition.buildWatchFaceDecomposition(DigitalWatchFace.this),false);
+                    loadFaceLayout();
                 }
-            }, 1000);
-
-
+            }, 0);
+            mOffloadScheduler.start(new OffloadScheduler.DecompositionSource() {
+                @Override
+                public WatchFaceDecomposition buildDecomposition() {
+                    return mFace;
+                }
+            });
+
+            if (DecompositionBenchmark.isEnabled()) {
+                AsyncTask.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        DecompositionBenchmark.compareWireFormats(DigitalWatchFace.this);
+                    }
+                });
+            }
         }
 
         @Override
         public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mWakeScheduler.setActive(false);
+            mMainHandler.removeCallbacksAndMessages(null);
+            mOffloadScheduler.cancel();
+            mAmbientHandoff.release();
+            mOffloadController.release();
             super.onDestroy();
         }
 
         private Paint createTextPaint(int defaultInteractiveColor) {
-            return createTextPaint(defaultInteractiveColor, NORMAL_TYPEFACE);
-        }
-
-        private Paint createTextPaint(int defaultInteractiveColor, Typeface typeface) {
             Paint paint = new Paint();
             paint.setColor(defaultInteractiveColor);
-            paint.setTypeface(typeface);
+            paint.setTypeface(NORMAL_TYPEFACE);
             paint.setAntiAlias(true);
             return paint;
         }
@@ -269,6 +295,7 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
                 Log.d(TAG, "onVisibilityChanged: " + visible);
             }
             super.onVisibilityChanged(visible);
+            mAmbientHandoff.onVisibilityChanged(visible);
 
             if (visible) {
 
@@ -288,12 +315,56 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
         }
 
         private void initFormats() {
-            mDayOfWeekFormat = new SimpleDateFormat("EEE", Locale.getDefault());
-            mDayOfWeekFormat.setCalendar(mCalendar);
-            mMonthFormat = new SimpleDateFormat("MMM", Locale.getDefault());
-            mMonthFormat.setCalendar(mCalendar);
-            mDateFormat = DateFormat.getDateFormat(DigitalWatchFace.this);
-            mDateFormat.setCalendar(mCalendar);
+            mIs24Hour = DateFormat.is24HourFormat(DigitalWatchFace.this);
+        }
+
+        /**
+         * Decodes digital.face, the decomposition offloaded to the sidekick, into {@link #mFace},
+         * and its fonts and images, then has the main thread draw with them. Runs on the client's
+         * thread.
+         */
+        private void loadFaceLayout() {
+            final WatchFaceDecomposition face;
+            try {
+                face = DecompositionAssets.load(DigitalWatchFace.this, DIGITAL_DECOMPOSITION_ASSET);
+            } catch (IOException e) {
+                // The asset is compiled into the APK, so this only happens to a broken build.
+                Log.e(TAG, "Failed to load " + DIGITAL_DECOMPOSITION_ASSET, e);
+                return;
+            }
+            final SparseArray<SpriteFont> fonts = new SparseArray<>();
+            for (FontComponent font : face.getFontComponents()) {
+                fonts.put(font.getComponentId(), SpriteFont.create(DigitalWatchFace.this, font));
+            }
+            final Bitmap colon = BitmapFactory.decodeResource(getResources(), R.drawable.colon);
+            final Bitmap comma = BitmapFactory.decodeResource(getResources(), R.drawable.comma);
+            mFace = face;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    applyFaceLayout(face, fonts, colon, comma);
+                }
+            });
+        }
+
+        /** Draws from now on with the layout {@link #loadFaceLayout} decoded. */
+        private void applyFaceLayout(WatchFaceDecomposition face, SparseArray<SpriteFont> fonts,
+                Bitmap colon, Bitmap comma) {
+            mFonts = fonts;
+            mHourNumber = (NumberComponent) face.getComponent(HOUR_COMPONENT_ID);
+            mMinuteNumber = (NumberComponent) face.getComponent(MINUTE_COMPONENT_ID);
+            mSecondNumber = (NumberComponent) face.getComponent(SECOND_COMPONENT_ID);
+            mDayOfWeekNumber = (NumberComponent) face.getComponent(DAY_OF_WEEK_COMPONENT_ID);
+            mMonthNumber = (NumberComponent) face.getComponent(MONTH_COMPONENT_ID);
+            mDayOfMonthNumber = (NumberComponent) face.getComponent(DAY_OF_MONTH_COMPONENT_ID);
+            ((ImageComponent) face.getComponent(HOUR_COLON_COMPONENT_ID))
+                    .getBounds(mHourColonBounds);
+            ((ImageComponent) face.getComponent(MINUTE_COLON_COMPONENT_ID))
+                    .getBounds(mMinuteColonBounds);
+            ((ImageComponent) face.getComponent(COMMA_COMPONENT_ID)).getBounds(mCommaBounds);
+            mColonBitmap = colon;
+            mCommaBitmap = comma;
+            invalidate();
         }
 
         private void registerReceiver() {
@@ -303,6 +374,8 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
             mRegisteredReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
             filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            // Also sent when the 24-hour setting changes.
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
             DigitalWatchFace.this.registerReceiver(mReceiver, filter);
         }
 
@@ -324,21 +397,10 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
             // Load resources that have alternate values for round watches.
             Resources resources = DigitalWatchFace.this.getResources();
             boolean isRound = insets.isRound();
-            mXOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
-            float textSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
             float amPmSize = resources.getDimension(isRound
                     ? R.dimen.digital_am_pm_size_round : R.dimen.digital_am_pm_size);
 
-            mDatePaint.setTextSize(resources.getDimension(R.dimen.digital_date_text_size));
-            mHourPaint.setTextSize(textSize);
-            mMinutePaint.setTextSize(textSize);
-            mSecondPaint.setTextSize(textSize);
             mAmPmPaint.setTextSize(amPmSize);
-            mColonPaint.setTextSize(textSize);
-
-            mColonWidth = mColonPaint.measureText(COLON_STRING);
         }
 
         @Override
@@ -346,7 +408,6 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
             super.onPropertiesChanged(properties);
 
             boolean burnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
-            mHourPaint.setTypeface(burnInProtection ? NORMAL_TYPEFACE : BOLD_TYPEFACE);
 
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
 
@@ -362,8 +423,10 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onTimeTick: ambient = " + isInAmbientMode());
             }
-            if (!isInAmbientMode())
+            // In ambient mode the sidekick draws the face once it has taken over the display.
+            if (!isInAmbientMode() || !mAmbientHandoff.isSidekickInControl()) {
                 invalidate();
+            }
         }
 
         @Override
@@ -372,38 +435,12 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onAmbientModeChanged: " + inAmbientMode);
             }
-            /*adjustPaintColorToCurrentMode(mBackgroundPaint, mInteractiveBackgroundColor,
-                    COLOR_VALUE_DEFAULT_AND_AMBIENT_BACKGROUND);
-            adjustPaintColorToCurrentMode(mHourPaint, mInteractiveHourDigitsColor,
-                    COLOR_VALUE_DEFAULT_AND_AMBIENT_HOUR_DIGITS);
-            adjustPaintColorToCurrentMode(mMinutePaint, mInteractiveMinuteDigitsColor,
-                    COLOR_VALUE_DEFAULT_AND_AMBIENT_MINUTE_DIGITS);
-            // Actually, the seconds are not rendered in the ambient mode, so we could pass just any
-            // value as ambientColor here.
-            //adjustPaintColorToCurrentMode(mSecondPaint, mInteractiveSecondDigitsColor,
-            //        COLOR_VALUE_DEFAULT_AND_AMBIENT_SECOND_DIGITS);
-
-            if (mLowBitAmbient) {
-                boolean antiAlias = !inAmbientMode;
-                mDatePaint.setAntiAlias(antiAlias);
-                mHourPaint.setAntiAlias(antiAlias);
-                mMinutePaint.setAntiAlias(antiAlias);
-                mSecondPaint.setAntiAlias(antiAlias);
-                mAmPmPaint.setAntiAlias(antiAlias);
-                mColonPaint.setAntiAlias(antiAlias);
-            }
-            invalidate();
-		*/
+            mAmbientHandoff.onAmbientModeChanged(inAmbientMode);
             // Whether the timer should be running depends on whether we're in ambient mode (as well
             // as whether we're visible), so we may need to start or stop the timer.
             updateTimer();
         }
 
-        private void adjustPaintColorToCurrentMode(Paint paint, int interactiveColor,
-                                                   int ambientColor) {
-            paint.setColor(isInAmbientMode() ? ambientColor : interactiveColor);
-        }
-
         @Override
         public void onInterruptionFilterChanged(int interruptionFilter) {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
@@ -412,30 +449,27 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
             super.onInterruptionFilterChanged(interruptionFilter);
 
             boolean inMuteMode = interruptionFilter == WatchFaceService.INTERRUPTION_FILTER_NONE;
-            // We only need to update once a minute in mute mode.
-            setInteractiveUpdateRateMs(inMuteMode ? MUTE_UPDATE_RATE_MS : NORMAL_UPDATE_RATE_MS);
-
             if (mMute != inMuteMode) {
                 mMute = inMuteMode;
+                declareAnimatedElements();
                 int alpha = inMuteMode ? MUTE_ALPHA : NORMAL_ALPHA;
-                mDatePaint.setAlpha(alpha);
-                mHourPaint.setAlpha(alpha);
-                mMinutePaint.setAlpha(alpha);
-                mColonPaint.setAlpha(alpha);
                 mAmPmPaint.setAlpha(alpha);
+                mGlyphPaint.setAlpha(alpha);
                 invalidate();
             }
         }
 
-        public void setInteractiveUpdateRateMs(long updateRateMs) {
-            if (updateRateMs == mInteractiveUpdateRateMs) {
-                return;
-            }
-            mInteractiveUpdateRateMs = updateRateMs;
-
-            // Stop and restart the timer so the new update rate takes effect immediately.
-            if (shouldTimerBeRunning()) {
-                updateTimer();
+        /**
+         * Tells {@link #mWakeScheduler} what changes in interactive mode. Normally the colons
+         * blink and the seconds tick; mute mode shows neither, so only the minutes change.
+         */
+        private void declareAnimatedElements() {
+            mWakeScheduler.clear();
+            if (mMute) {
+                mWakeScheduler.addMinute();
+            } else {
+                mWakeScheduler.addBlink(COLON_BLINK_MS, COLON_BLINK_MS);
+                mWakeScheduler.addTickingSecond();
             }
         }
 
@@ -450,23 +484,23 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
             updatePaintIfInteractive(mBackgroundPaint, color);
         }
 
-        private void setInteractiveHourDigitsColor(int color) {
-            mInteractiveHourDigitsColor = color;
-            updatePaintIfInteractive(mHourPaint, color);
+        /** Draws {@code value} with {@code number}'s font, at its place on a face of bounds. */
+        private void drawNumber(Canvas canvas, Rect bounds, NumberComponent number, long value,
+                int minDigits) {
+            SpriteFont font = mFonts.get(number.getFontComponentId());
+            float scale = bounds.width() / DECOMPOSITION_SCREEN_PX;
+            font.drawNumber(canvas, value, minDigits,
+                    bounds.left + number.getPositionX() * bounds.width(),
+                    bounds.top + number.getPositionY() * bounds.height(), scale, mGlyphPaint);
         }
 
-        private void setInteractiveMinuteDigitsColor(int color) {
-            mInteractiveMinuteDigitsColor = color;
-            updatePaintIfInteractive(mMinutePaint, color);
-        }
-
-        private void setInteractiveSecondDigitsColor(int color) {
-            mInteractiveSecondDigitsColor = color;
-            updatePaintIfInteractive(mSecondPaint, color);
-        }
-
-        private String formatTwoDigitNumber(int hour) {
-            return String.format("%02d", hour);
+        /** Draws {@code bitmap} at {@code fraction} of {@code bounds}. */
+        private void drawImage(Canvas canvas, Rect bounds, Bitmap bitmap, RectF fraction) {
+            mImageDst.set(bounds.left + fraction.left * bounds.width(),
+                    bounds.top + fraction.top * bounds.height(),
+                    bounds.left + fraction.right * bounds.width(),
+                    bounds.top + fraction.bottom * bounds.height());
+            canvas.drawBitmap(bitmap, null, mImageDst, mGlyphPaint);
         }
 
         private String getAmPmString(int amPm) {
@@ -477,92 +511,85 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
         public void onDraw(Canvas canvas, Rect bounds) {
             long now = System.currentTimeMillis();
             mCalendar.setTimeInMillis(now);
-            mDate.setTime(now);
-            boolean is24Hour = DateFormat.is24HourFormat(DigitalWatchFace.this);
+            boolean is24Hour = mIs24Hour;
 
             // Show colons for the first half of each second so the colons blink on when the time
             // updates.
-            mShouldDrawColons = (System.currentTimeMillis() % 1000) < 500;
+            mShouldDrawColons = (now % 1000) < 500;
 
             // Draw the background.
             canvas.drawBitmap(mBackgroundBitmap, null, bounds, null);
 
             canvas.drawBitmap(mRingBitmap, null, bounds, null);
+            if (mFonts == null) {
+                return;
+            }
 
             // Draw the hours.
-            float x = mXOffset;
-            String hourString;
             if (is24Hour) {
-                hourString = formatTwoDigitNumber(mCalendar.get(Calendar.HOUR_OF_DAY));
+                drawNumber(canvas, bounds, mHourNumber, mCalendar.get(Calendar.HOUR_OF_DAY), 2);
             } else {
                 int hour = mCalendar.get(Calendar.HOUR);
                 if (hour == 0) {
                     hour = 12;
                 }
-                hourString = String.valueOf(hour);
+                drawNumber(canvas, bounds, mHourNumber, hour, 1);
             }
-            canvas.drawText(hourString, x, mYOffset, mHourPaint);
-            x += mHourPaint.measureText(hourString);
 
             // In ambient and mute modes, always draw the first colon. Otherwise, draw the
             // first colon for the first half of each second.
             if (isInAmbientMode() || mMute || mShouldDrawColons) {
-                canvas.drawText(COLON_STRING, x, mYOffset, mColonPaint);
+                drawImage(canvas, bounds, mColonBitmap, mHourColonBounds);
             }
-            x += mColonWidth;
 
             // Draw the minutes.
-            String minuteString = formatTwoDigitNumber(mCalendar.get(Calendar.MINUTE));
-            canvas.drawText(minuteString, x, mYOffset, mMinutePaint);
-            x += mMinutePaint.measureText(minuteString);
+            drawNumber(canvas, bounds, mMinuteNumber, mCalendar.get(Calendar.MINUTE), 2);
 
             // In unmuted interactive mode, draw a second blinking colon followed by the seconds.
-            // Otherwise, if we're in 12-hour mode, draw AM/PM
+            // Otherwise, if we're in 12-hour mode, draw AM/PM where the seconds would be.
             if (!isInAmbientMode() && !mMute) {
                 if (mShouldDrawColons) {
-                    canvas.drawText(COLON_STRING, x, mYOffset, mColonPaint);
+                    drawImage(canvas, bounds, mColonBitmap, mMinuteColonBounds);
                 }
-                x += mColonWidth;
-                canvas.drawText(formatTwoDigitNumber(
-                        mCalendar.get(Calendar.SECOND)), x, mYOffset, mSecondPaint);
+                drawNumber(canvas, bounds, mSecondNumber, mCalendar.get(Calendar.SECOND), 2);
             } else if (!is24Hour) {
-                x += mColonWidth;
-                canvas.drawText(getAmPmString(
-                        mCalendar.get(Calendar.AM_PM)), x, mYOffset, mAmPmPaint);
+                float scale = bounds.width() / DECOMPOSITION_SCREEN_PX;
+                SpriteFont font = mFonts.get(mSecondNumber.getFontComponentId());
+                canvas.drawText(getAmPmString(mCalendar.get(Calendar.AM_PM)),
+                        bounds.left + mSecondNumber.getPositionX() * bounds.width(),
+                        bounds.top + mSecondNumber.getPositionY() * bounds.height()
+                                + font.getGlyphHeight() * scale,
+                        mAmPmPaint);
             }
 
             // Only render the day of week and date if there is no peek card, so they do not bleed
-            // into each other in ambient mode.
+            // into each other in ambient mode. Each glyph of their fonts is a whole name or day,
+            // from Monday, January and the 1st on.
             if (getPeekCardPosition().isEmpty()) {
-                String mStr = mDayOfWeekFormat.format(mDate) + ", " +mMonthFormat.format(mDate) + " " + mCalendar.get(Calendar.DATE);
-                // Day of week
-                canvas.drawText(
-                        mStr,
-                        mXOffset + 20, mYOffset + mLineHeight, mDatePaint);
-                // Date
-                //canvas.drawText(
-                //        mDateFormat.format(mDate),
-                //        mXOffset, mYOffset + mLineHeight * 2, mDatePaint);
+                int dayOfWeek = (mCalendar.get(Calendar.DAY_OF_WEEK) - Calendar.MONDAY + 7) % 7;
+                drawNumber(canvas, bounds, mDayOfWeekNumber, dayOfWeek, 1);
+                drawImage(canvas, bounds, mCommaBitmap, mCommaBounds);
+                drawNumber(canvas, bounds, mMonthNumber, mCalendar.get(Calendar.MONTH), 1);
+                drawNumber(canvas, bounds, mDayOfMonthNumber, mCalendar.get(Calendar.DATE) - 1, 1);
             }
+
+            mAmbientHandoff.onFrameDrawn();
         }
 
         /**
-         * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't currently
-         * or stops it if it shouldn't be running but currently is.
+         * Starts the {@link #mWakeScheduler} if it should be running and isn't currently or stops
+         * it if it shouldn't be running but currently is.
          */
         private void updateTimer() {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "updateTimer");
             }
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
-            }
+            mWakeScheduler.setActive(shouldTimerBeRunning());
         }
 
         /**
-         * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer should
-         * only run when we're visible and in interactive mode.
+         * Returns whether the {@link #mWakeScheduler} should be running. It should only run when
+         * we're visible and in interactive mode.
          */
         private boolean shouldTimerBeRunning() {
             return isVisible() && !isInAmbientMode();
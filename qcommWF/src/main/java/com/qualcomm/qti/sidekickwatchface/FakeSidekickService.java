@@ -0,0 +1,438 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.sidekickwatchface;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import com.google.android.clockwork.decomposablewatchface.DecompositionBudget;
+import com.google.android.clockwork.decomposablewatchface.DecompositionCodec;
+import com.google.android.clockwork.decomposablewatchface.DecompositionTimeline;
+import com.google.android.clockwork.decomposablewatchface.DrawableComponent;
+import com.google.android.clockwork.decomposablewatchface.FontComponent;
+import com.google.android.clockwork.decomposablewatchface.ImageComponent;
+import com.google.android.clockwork.decomposablewatchface.NumberComponent;
+import com.google.android.clockwork.decomposablewatchface.ProportionalFontComponent;
+import com.google.android.clockwork.decomposablewatchface.SharedImageFile;
+import com.google.android.clockwork.decomposablewatchface.StringComponent;
+import com.google.android.clockwork.decomposablewatchface.WatchFaceDecomposition;
+import com.google.android.clockwork.sidekick.ISidekickService;
+import com.google.android.clockwork.sidekick.SidekickServiceConstants;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * An in-process stand-in for the system's {@link ISidekickService}, for running the offload path
+ * on devices without a sidekick and for benchmarking it.
+ *
+ * <p>Like the real service, it receives each watch face through a {@link Parcel}, applies partial
+ * updates to the components it already holds, or replaces them all when asked to, and rejects
+ * updates that leave a number or string without its font or that have fields the sidekick cannot
+ * draw. With {@link #setMemoryBudget}, it also rejects updates after which the normal and
+ * traditional watch mode faces together would not fit the sidekick's memory, as estimated by
+ * {@link DecompositionBudget#estimateBytes}. A rejected update leaves the watch face held as it
+ * was. Results can be forced with {@link #setResultCode}, and a fixed delay can be added to each
+ * send with {@link #setSendLatencyMs} to stand in for the transfer to the sidekick.
+ *
+ * <p>{@link #getTimeline} predicts when the sidekick would redraw each component of the face it
+ * holds, so that what faces send can be checked and compared without a device.
+ *
+ * <p>It also implements {@link ISharedSidekickService}; see {@link #getSharedTransport}. A watch
+ * face sent that way is kept as its encoding and a read-only mapping of its image file, so that
+ * receiving it copies no pixels. It is only decoded, in order with the other updates, when the
+ * watch face is next asked for or updated inline.
+ */
+public class FakeSidekickService extends ISidekickService.Stub {
+
+    private final TreeMap<Integer, WatchFaceDecomposition.Component> components = new TreeMap<>();
+    private final List<SharedUpdate> pendingSharedUpdates = new ArrayList<>();
+
+    private WatchFaceDecomposition watchFace;
+    private WatchFaceDecomposition twmWatchFace;
+    private boolean shouldControlDisplay;
+    private boolean ambientEnabled;
+    private int resultCode = SidekickServiceConstants.RESULT_OK;
+    private Context budgetContext;
+    private long memoryBudgetBytes = -1;
+    private long watchFaceBytes;
+    private long twmWatchFaceBytes;
+    private int replaceCount;
+    private long sendLatencyMs;
+    private int sendCount;
+    private int clearCount;
+    private long bytesReceived;
+    private long bytesMapped;
+
+    private final ISharedSidekickService.Stub sharedTransport = new ISharedSidekickService.Stub() {
+        @Override
+        public int sendWatchFaceShared(
+                byte[] payload, ParcelFileDescriptor pixels, boolean shouldReplace) {
+            return receiveShared(payload, pixels, shouldReplace);
+        }
+    };
+
+    /** A watch face received through the shared transport and not yet decoded. */
+    private static class SharedUpdate {
+        final byte[] payload;
+        final ByteBuffer pixels;
+        final boolean shouldReplace;
+
+        SharedUpdate(byte[] payload, ByteBuffer pixels, boolean shouldReplace) {
+            this.payload = payload;
+            this.pixels = pixels;
+            this.shouldReplace = shouldReplace;
+        }
+    }
+
+    /**
+     * Makes every following clear and send return {@code resultCode}, one of the {@code
+     * SidekickServiceConstants.RESULT_*} codes, without changing the watch face held.
+     */
+    public synchronized void setResultCode(int resultCode) {
+        this.resultCode = resultCode;
+    }
+
+    /** Makes every following send take at least {@code sendLatencyMs}. */
+    public synchronized void setSendLatencyMs(long sendLatencyMs) {
+        this.sendLatencyMs = sendLatencyMs;
+    }
+
+    /**
+     * Makes every following send fail with {@code RESULT_INSUFFICIENT_SPACE} if, once applied, the
+     * watch faces held would take more than {@code budgetBytes}, or sets no budget if negative.
+     * While a budget is set, watch faces sent through the shared transport are decoded as they
+     * arrive, so that they can be measured.
+     *
+     * @param context the context that loads the images to measure
+     */
+    public synchronized void setMemoryBudget(Context context, long budgetBytes) {
+        budgetContext = context.getApplicationContext();
+        memoryBudgetBytes = budgetBytes;
+        applySharedUpdates();
+        watchFaceBytes = watchFace == null ? 0 : measure(watchFace);
+        twmWatchFaceBytes = twmWatchFace == null ? 0 : measure(twmWatchFace);
+    }
+
+    /** Returns the transport that receives watch faces with their pixels in a shared file. */
+    public ISharedSidekickService getSharedTransport() {
+        return sharedTransport;
+    }
+
+    /**
+     * Returns the complete watch face held after the updates so far, or null if none.
+     *
+     * @throws IllegalArgumentException if a watch face sent through the shared transport cannot
+     *     be decoded
+     */
+    public synchronized WatchFaceDecomposition getWatchFace() {
+        applySharedUpdates();
+        return watchFace;
+    }
+
+    /** Returns the last watch face sent for traditional watch mode, or null if none. */
+    public synchronized WatchFaceDecomposition getTwmWatchFace() {
+        return twmWatchFace;
+    }
+
+    /** Returns the number of sends of either kind received, successful or not. */
+    public synchronized int getSendCount() {
+        return sendCount;
+    }
+
+    public synchronized int getClearCount() {
+        return clearCount;
+    }
+
+    /**
+     * Returns the total size of the watch faces received through Binder: parceled, or encoded for
+     * the shared transport.
+     */
+    public synchronized long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /** Returns the total size of the image files mapped from the shared transport. */
+    public synchronized long getBytesMapped() {
+        return bytesMapped;
+    }
+
+    /**
+     * Returns the estimated memory taken by the watch faces held, or 0 if no budget has been set.
+     */
+    public synchronized long getMemoryUsedBytes() {
+        return watchFaceBytes + twmWatchFaceBytes;
+    }
+
+    /** Returns the number of updates applied that replaced every component held. */
+    public synchronized int getReplaceCount() {
+        return replaceCount;
+    }
+
+    /**
+     * Returns when each component of the watch face held changes between {@code startMs} and
+     * {@code endMs}, in milliseconds since 1-Jan-1970 local time, or null if no watch face is held.
+     */
+    public synchronized DecompositionTimeline getTimeline(long startMs, long endMs) {
+        WatchFaceDecomposition held = getWatchFace();
+        return held == null ? null : DecompositionTimeline.compute(held, startMs, endMs);
+    }
+
+    public synchronized boolean isAmbientEnabled() {
+        return ambientEnabled;
+    }
+
+    public synchronized boolean isControllingDisplay() {
+        return shouldControlDisplay;
+    }
+
+    @Override
+    public synchronized int clearWatchFace() {
+        clearCount++;
+        if (resultCode != SidekickServiceConstants.RESULT_OK) {
+            return resultCode;
+        }
+        components.clear();
+        pendingSharedUpdates.clear();
+        watchFace = null;
+        twmWatchFace = null;
+        watchFaceBytes = 0;
+        twmWatchFaceBytes = 0;
+        return SidekickServiceConstants.RESULT_OK;
+    }
+
+    @Override
+    public synchronized int sendWatchFace(
+            WatchFaceDecomposition update, boolean shouldReplace) {
+        update = receive(update);
+        if (resultCode != SidekickServiceConstants.RESULT_OK) {
+            return resultCode;
+        }
+        applySharedUpdates();
+        return apply(update, shouldReplace);
+    }
+
+    private synchronized int receiveShared(
+            byte[] payload, ParcelFileDescriptor pixels, boolean shouldReplace) {
+        sendCount++;
+        long start = SystemClock.elapsedRealtime();
+        ByteBuffer mapping;
+        try {
+            mapping = SharedImageFile.map(pixels);
+        } catch (IOException e) {
+            return SidekickServiceConstants.RESULT_INVALID_ARGUMENT;
+        }
+        bytesReceived += payload.length;
+        bytesMapped += mapping.capacity();
+        waitOutLatency(start);
+        if (resultCode != SidekickServiceConstants.RESULT_OK) {
+            return resultCode;
+        }
+        SharedUpdate update = new SharedUpdate(payload, mapping, shouldReplace);
+        if (memoryBudgetBytes >= 0) {
+            applySharedUpdates();
+            try {
+                return apply(update);
+            } catch (IllegalArgumentException e) {
+                return SidekickServiceConstants.RESULT_INVALID_ARGUMENT;
+            }
+        }
+        pendingSharedUpdates.add(update);
+        return SidekickServiceConstants.RESULT_OK;
+    }
+
+    private void applySharedUpdates() {
+        for (SharedUpdate update : pendingSharedUpdates) {
+            apply(update);
+        }
+        pendingSharedUpdates.clear();
+    }
+
+    private int apply(SharedUpdate update) {
+        return apply(
+                DecompositionCodec.decode(ByteBuffer.wrap(update.payload), null, update.pixels),
+                update.shouldReplace);
+    }
+
+    /** Applies {@code update} to the components held. */
+    private int apply(WatchFaceDecomposition update, boolean shouldReplace) {
+        TreeMap<Integer, WatchFaceDecomposition.Component> updated =
+                shouldReplace || update.isClearAll() ? new TreeMap<>() : new TreeMap<>(components);
+        for (int id : update.getIdsToDelete()) {
+            updated.remove(id);
+        }
+        putAll(update.getImageComponents(), updated);
+        putAll(update.getNumberComponents(), updated);
+        putAll(update.getFontComponents(), updated);
+        putAll(update.getStringComponents(), updated);
+        putAll(update.getProportionalFontComponents(), updated);
+
+        WatchFaceDecomposition.Builder builder = new WatchFaceDecomposition.Builder();
+        for (WatchFaceDecomposition.Component component : updated.values()) {
+            if (component instanceof ImageComponent) {
+                builder.addImageComponents((ImageComponent) component);
+            } else if (component instanceof NumberComponent) {
+                builder.addNumberComponents((NumberComponent) component);
+            } else if (component instanceof FontComponent) {
+                builder.addFontComponents((FontComponent) component);
+            } else if (component instanceof StringComponent) {
+                builder.addStringComponents((StringComponent) component);
+            } else if (component instanceof ProportionalFontComponent) {
+                builder.addProportionalFontComponents((ProportionalFontComponent) component);
+            }
+        }
+        WatchFaceDecomposition applied;
+        try {
+            applied = builder.build();
+        } catch (IllegalStateException e) {
+            return SidekickServiceConstants.RESULT_INVALID_ARGUMENT;
+        }
+        if (!isDrawable(applied)) {
+            return SidekickServiceConstants.RESULT_INVALID_ARGUMENT;
+        }
+        long appliedBytes = measure(applied);
+        if (!fits(appliedBytes + twmWatchFaceBytes)) {
+            return SidekickServiceConstants.RESULT_INSUFFICIENT_SPACE;
+        }
+        watchFace = applied;
+        watchFaceBytes = appliedBytes;
+        components.clear();
+        components.putAll(updated);
+        if (shouldReplace || update.isClearAll()) {
+            replaceCount++;
+        }
+        return SidekickServiceConstants.RESULT_OK;
+    }
+
+    @Override
+    public synchronized int sendWatchFaceForTWM(WatchFaceDecomposition twmUpdate) {
+        twmUpdate = receive(twmUpdate);
+        if (resultCode != SidekickServiceConstants.RESULT_OK) {
+            return resultCode;
+        }
+        if (!isDrawable(twmUpdate)) {
+            return SidekickServiceConstants.RESULT_INVALID_ARGUMENT;
+        }
+        long twmBytes = measure(twmUpdate);
+        if (!fits(watchFaceBytes + twmBytes)) {
+            return SidekickServiceConstants.RESULT_INSUFFICIENT_SPACE;
+        }
+        twmWatchFace = twmUpdate;
+        twmWatchFaceBytes = twmBytes;
+        return SidekickServiceConstants.RESULT_OK;
+    }
+
+    @Override
+    public boolean sidekickExists() {
+        return true;
+    }
+
+    /**
+     * Like the real service, reports ready iff a valid watch face with something to draw is held,
+     * whether or not the sidekick has been given control of the display yet.
+     */
+    @Override
+    public synchronized boolean readyToDisplay() {
+        applySharedUpdates();
+        return watchFace != null && !components.isEmpty();
+    }
+
+    @Override
+    public synchronized void setShouldControlDisplay(boolean visible) {
+        shouldControlDisplay = visible;
+    }
+
+    @Override
+    public synchronized void setAmbientEnabled(boolean enabled) {
+        ambientEnabled = enabled;
+    }
+
+    /**
+     * Passes {@code sent} through a parcel, as a call from another process would, and waits
+     * out the send latency.
+     */
+    private WatchFaceDecomposition receive(WatchFaceDecomposition sent) {
+        sendCount++;
+        long start = SystemClock.elapsedRealtime();
+        Parcel parcel = Parcel.obtain();
+        WatchFaceDecomposition received;
+        try {
+            sent.writeToParcel(parcel, 0);
+            bytesReceived += parcel.dataPosition();
+            parcel.setDataPosition(0);
+            received = WatchFaceDecomposition.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+        waitOutLatency(start);
+        return received;
+    }
+
+    /** Returns the estimated memory taken by {@code decomposition}, or 0 if there is no budget. */
+    private long measure(WatchFaceDecomposition decomposition) {
+        return memoryBudgetBytes < 0
+                ? 0 : DecompositionBudget.estimateBytes(budgetContext, decomposition);
+    }
+
+    private boolean fits(long bytes) {
+        return memoryBudgetBytes < 0 || bytes <= memoryBudgetBytes;
+    }
+
+    /**
+     * Returns whether every field of {@code decomposition} is one the sidekick can draw: numbers
+     * that count forward through a range, steps and blink periods that are not negative, and
+     * fonts with digits.
+     */
+    private static boolean isDrawable(WatchFaceDecomposition decomposition) {
+        for (ImageComponent image : decomposition.getImageComponents()) {
+            if (image.getDegreesPerStep() < 0f || !isDrawable(image)) {
+                return false;
+            }
+        }
+        for (NumberComponent number : decomposition.getNumberComponents()) {
+            if (number.getMsPerIncrement() <= 0
+                    || number.getLowestValue() > number.getHighestValue()
+                    || number.getMinDigitsShown() < 0
+                    || !isDrawable(number)) {
+                return false;
+            }
+        }
+        for (StringComponent string : decomposition.getStringComponents()) {
+            if (!isDrawable(string)) {
+                return false;
+            }
+        }
+        for (FontComponent font : decomposition.getFontComponents()) {
+            if (font.getDigitCount() <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDrawable(DrawableComponent component) {
+        return !component.getBlinkEnabled()
+                || (component.getBlinkPeriodOnMs() > 0f && component.getBlinkPeriodOffMs() >= 0f);
+    }
+
+    private void waitOutLatency(long startMs) {
+        long remainingMs = sendLatencyMs - (SystemClock.elapsedRealtime() - startMs);
+        if (remainingMs > 0) {
+            SystemClock.sleep(remainingMs);
+        }
+    }
+
+    private static void putAll(Iterable<? extends WatchFaceDecomposition.Component> source,
+            TreeMap<Integer, WatchFaceDecomposition.Component> components) {
+        for (WatchFaceDecomposition.Component component : source) {
+            components.put(component.getComponentId(), component);
+        }
+    }
+}
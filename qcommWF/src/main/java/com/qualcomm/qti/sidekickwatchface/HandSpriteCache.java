@@ -0,0 +1,421 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.sidekickwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.Log;
+
+/**
+ * Draws bitmap hands from sprites rendered ahead of time at each position the hand can take, so
+ * that drawing a hand is a blit at whole pixels, with no rotation and no filtering.
+ *
+ * <p>Each hand added with {@link #addHand} turns about the face's center in a fixed number of
+ * positions, which should match how often it moves: 60 for a ticking second hand, 3600 for a
+ * minute hand that moves every second. {@link #prerender} renders the sprites of the hands added
+ * for it on the cache's own background thread, until they fill the cache's byte budget. A hand
+ * whose sprite is missing is drawn rotated, at the same position, and its sprite is queued for
+ * rendering. Each draw also queues the sprite of the hand's next position, so that a hand with
+ * too many positions to prerender is still blitted once it moves on. Sprites drawn for a miss or
+ * queued ahead are rendered before prerendering goes on, and once the budget is full they evict
+ * the sprite drawn least recently, of whichever hand.
+ *
+ * <p>A sprite is the box its rotated hand covers, so it takes up to the square of the hand's
+ * length in pixels, times 4 bytes, and about a third of that on average over a turn: some 30 KB
+ * for a second hand on a 390 pixel face. The budget caps the total.
+ *
+ * <p>Sprites are laid out for one face size; make a new cache when the surface changes, and
+ * {@link #release} the old one, which also stops its thread. Drawing happens on the main thread,
+ * and allocates nothing: queueing a sprite only flags it and wakes the renderer.
+ */
+public class HandSpriteCache {
+
+    private static final String TAG = "HandSpriteCache";
+
+    private static final int MAX_HANDS = 4;
+
+    /** Allowance for floating point error, so that e.g. 6 degrees is position 1 and not 0. */
+    private static final float POSITION_EPSILON = 1e-3f;
+
+    private final float mCenterX;
+    private final float mCenterY;
+    private final long mMaxBytes;
+    private final Hand[] mHands = new Hand[MAX_HANDS];
+    private final Paint mLivePaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+
+    // Guarded by this.
+    private int mHandCount;
+    /** The most recently drawn sprite; the least recently drawn is {@code mLeastRecent}. */
+    private Sprite mMostRecent;
+    private Sprite mLeastRecent;
+    private long mBytes;
+    private boolean mReleased;
+    /** Whether {@link #prerender} was called and has not yet rendered every sprite it can. */
+    private boolean mPrerendering;
+    /** The hand and position prerendering has reached. */
+    private int mPrerenderHand;
+    private int mPrerenderPosition;
+    private int mPrerendered;
+    private long mPrerenderStartMs;
+    private int mHits;
+    private int mMisses;
+
+    /**
+     * Renders sprites one at a time, those {@link #queueLocked} flagged first, then those left to
+     * prerender, and waits for more when there are none, until the cache is released.
+     */
+    private final Thread mRenderer = new Thread(TAG) {
+        @Override
+        public void run() {
+            while (true) {
+                Hand hand;
+                int position;
+                boolean queued;
+                synchronized (HandSpriteCache.this) {
+                    while (true) {
+                        if (mReleased) {
+                            return;
+                        }
+                        hand = nextQueuedLocked();
+                        if (hand != null) {
+                            position = indexOf(hand.queued);
+                            queued = true;
+                            break;
+                        }
+                        hand = nextPrerenderLocked();
+                        if (hand != null) {
+                            position = mPrerenderPosition;
+                            queued = false;
+                            break;
+                        }
+                        try {
+                            HandSpriteCache.this.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+                // Prerendering fills the budget but never evicts to stay within it.
+                boolean added = add(render(hand, position), queued);
+                synchronized (HandSpriteCache.this) {
+                    if (queued) {
+                        hand.queued[position] = false;
+                    } else if (added) {
+                        mPrerendered++;
+                    } else if (!mReleased) {
+                        Log.d(TAG, "Budget full after " + mPrerendered + " sprites");
+                        mPrerendering = false;
+                    }
+                }
+            }
+        }
+    };
+
+    /** A hand and the sprites rendered for it, by position. */
+    private static class Hand {
+        final Bitmap bitmap;
+        final float left;
+        final float top;
+        final float degreesPerPosition;
+        final boolean prerender;
+        // Guarded by the cache.
+        final Sprite[] sprites;
+        final boolean[] queued;
+
+        Hand(Bitmap bitmap, float left, float top, int positions, boolean prerender) {
+            this.bitmap = bitmap;
+            this.left = left;
+            this.top = top;
+            degreesPerPosition = 360f / positions;
+            this.prerender = prerender;
+            sprites = new Sprite[positions];
+            queued = new boolean[positions];
+        }
+    }
+
+    /** A hand rendered at one position, and its place in the least recently drawn order. */
+    private static class Sprite {
+        final Hand hand;
+        final int position;
+        final Bitmap bitmap;
+        final int x;
+        final int y;
+        Sprite newer;
+        Sprite older;
+
+        Sprite(Hand hand, int position, Bitmap bitmap, int x, int y) {
+            this.hand = hand;
+            this.position = position;
+            this.bitmap = bitmap;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * @param centerX the x co-ordinate hands turn about, on the face
+     * @param centerY the y co-ordinate hands turn about, on the face
+     * @param maxBytes the most memory the sprites of every hand may take together
+     */
+    public HandSpriteCache(float centerX, float centerY, long maxBytes) {
+        mCenterX = centerX;
+        mCenterY = centerY;
+        mMaxBytes = maxBytes;
+        mRenderer.setPriority(Thread.NORM_PRIORITY - 1);
+        mRenderer.start();
+    }
+
+    /**
+     * Adds a hand, and returns the index to draw it by. Add every hand before {@link #prerender}.
+     *
+     * @param hand the hand pointing up, at 0 degrees
+     * @param left the x co-ordinate of the hand's left edge on the face, pointing up
+     * @param top the y co-ordinate of the hand's top edge on the face, pointing up
+     * @param positions the number of positions the hand takes in a turn
+     * @param prerender whether {@link #prerender} renders the hand's sprites, rather than only
+     *     rendering each once it is drawn or about to be
+     */
+    public synchronized int addHand(
+            Bitmap hand, float left, float top, int positions, boolean prerender) {
+        if (mHandCount == MAX_HANDS) {
+            throw new IllegalStateException("At most " + MAX_HANDS + " hands can be added");
+        }
+        mHands[mHandCount] = new Hand(hand, left, top, positions, prerender);
+        return mHandCount++;
+    }
+
+    /**
+     * Renders the sprites of every hand added for it on the cache's thread, in the order the
+     * hands were added, until they are all rendered or fill the budget. Returns at once.
+     */
+    public synchronized void prerender() {
+        mPrerendering = true;
+        mPrerenderHand = 0;
+        mPrerenderPosition = 0;
+        mPrerendered = 0;
+        mPrerenderStartMs = System.currentTimeMillis();
+        notify();
+    }
+
+    /**
+     * Draws hand {@code hand} on {@code canvas} at the position {@code degrees} falls in, counted
+     * clockwise from 12 o'clock.
+     */
+    public void draw(Canvas canvas, int hand, float degrees) {
+        Hand h = mHands[hand];
+        int position = (int) Math.floor(degrees / h.degreesPerPosition + POSITION_EPSILON)
+                % h.sprites.length;
+        if (position < 0) {
+            position += h.sprites.length;
+        }
+        Sprite sprite;
+        synchronized (this) {
+            sprite = h.sprites[position];
+            if (sprite != null) {
+                mHits++;
+                touch(sprite);
+            } else {
+                mMisses++;
+                queueLocked(h, position);
+            }
+            queueLocked(h, (position + 1) % h.sprites.length);
+        }
+        if (sprite != null) {
+            canvas.drawBitmap(sprite.bitmap, sprite.x, sprite.y, null);
+        } else {
+            drawRotated(canvas, h, position * h.degreesPerPosition);
+        }
+    }
+
+    private void drawRotated(Canvas canvas, Hand hand, float degrees) {
+        canvas.save();
+        canvas.rotate(degrees, mCenterX, mCenterY);
+        canvas.drawBitmap(hand.bitmap, hand.left, hand.top, mLivePaint);
+        canvas.restore();
+    }
+
+    /** Returns the number of draws that found their sprite. */
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    /** Returns the number of draws that had to rotate the hand. */
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    /** Returns the memory taken by the sprites rendered so far. */
+    public synchronized long getByteCount() {
+        return mBytes;
+    }
+
+    /** Stops rendering and drops every sprite. Call on the main thread. */
+    public synchronized void release() {
+        mReleased = true;
+        notify();
+        for (int i = 0; i < mHandCount; i++) {
+            Hand hand = mHands[i];
+            for (int position = 0; position < hand.sprites.length; position++) {
+                hand.sprites[position] = null;
+            }
+        }
+        mMostRecent = null;
+        mLeastRecent = null;
+        mBytes = 0;
+        Log.d(TAG, "Released after " + mHits + " hits and " + mMisses + " misses");
+    }
+
+    /** Renders the sprite of {@code hand} at {@code position} in the background, if missing. */
+    private void queueLocked(Hand hand, int position) {
+        if (hand.sprites[position] != null || hand.queued[position] || mReleased) {
+            return;
+        }
+        hand.queued[position] = true;
+        notify();
+    }
+
+    /**
+     * Returns the first hand with a sprite queued that is still missing, or null. Clears the
+     * flags of queued sprites that were rendered in the meantime, by prerendering.
+     */
+    private Hand nextQueuedLocked() {
+        for (int i = 0; i < mHandCount; i++) {
+            Hand hand = mHands[i];
+            int position;
+            while ((position = indexOf(hand.queued)) >= 0) {
+                if (hand.sprites[position] == null) {
+                    return hand;
+                }
+                hand.queued[position] = false;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the hand whose sprite at {@link #mPrerenderPosition} is the next to prerender, or
+     * null once there are none left.
+     */
+    private Hand nextPrerenderLocked() {
+        while (mPrerendering && mPrerenderHand < mHandCount) {
+            Hand hand = mHands[mPrerenderHand];
+            if (!hand.prerender || mPrerenderPosition == hand.sprites.length) {
+                mPrerenderHand++;
+                mPrerenderPosition = 0;
+            } else if (hand.sprites[mPrerenderPosition] != null) {
+                mPrerenderPosition++;
+            } else {
+                return hand;
+            }
+        }
+        if (mPrerendering) {
+            Log.d(TAG, "Rendered " + mPrerendered + " sprites in "
+                    + (System.currentTimeMillis() - mPrerenderStartMs) + "ms");
+            mPrerendering = false;
+        }
+        return null;
+    }
+
+    /** Returns the first index at which {@code flags} is true, or -1. */
+    private static int indexOf(boolean[] flags) {
+        for (int i = 0; i < flags.length; i++) {
+            if (flags[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Renders {@code hand} at {@code position}, cropped to the pixels it covers on the face. */
+    private Sprite render(Hand hand, int position) {
+        Matrix matrix = new Matrix();
+        matrix.setTranslate(hand.left, hand.top);
+        matrix.postRotate(position * hand.degreesPerPosition, mCenterX, mCenterY);
+        RectF covered = new RectF(0, 0, hand.bitmap.getWidth(), hand.bitmap.getHeight());
+        matrix.mapRect(covered);
+        int x = (int) Math.floor(covered.left);
+        int y = (int) Math.floor(covered.top);
+        int width = Math.max(1, (int) Math.ceil(covered.right) - x);
+        int height = Math.max(1, (int) Math.ceil(covered.bottom) - y);
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.translate(-x, -y);
+        canvas.concat(matrix);
+        canvas.drawBitmap(hand.bitmap, 0, 0,
+                new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG));
+        return new Sprite(hand, position, bitmap, x, y);
+    }
+
+    /**
+     * Adds {@code sprite} as the most recently drawn, first evicting the least recently drawn
+     * sprites to make room if {@code evict}. Returns false if it does not fit. A sprite already
+     * held for the same position is kept, and the new one dropped.
+     */
+    private synchronized boolean add(Sprite sprite, boolean evict) {
+        if (mReleased) {
+            return false;
+        }
+        if (sprite.hand.sprites[sprite.position] != null) {
+            return true;
+        }
+        long bytes = sprite.bitmap.getAllocationByteCount();
+        if (bytes > mMaxBytes) {
+            return false;
+        }
+        while (evict && mBytes + bytes > mMaxBytes && mLeastRecent != null) {
+            Sprite evicted = mLeastRecent;
+            unlink(evicted);
+            evicted.hand.sprites[evicted.position] = null;
+            mBytes -= evicted.bitmap.getAllocationByteCount();
+        }
+        if (mBytes + bytes > mMaxBytes) {
+            return false;
+        }
+        sprite.hand.sprites[sprite.position] = sprite;
+        linkMostRecent(sprite);
+        mBytes += bytes;
+        return true;
+    }
+
+    private void touch(Sprite sprite) {
+        if (sprite != mMostRecent) {
+            unlink(sprite);
+            linkMostRecent(sprite);
+        }
+    }
+
+    private void linkMostRecent(Sprite sprite) {
+        sprite.older = mMostRecent;
+        sprite.newer = null;
+        if (mMostRecent != null) {
+            mMostRecent.newer = sprite;
+        }
+        mMostRecent = sprite;
+        if (mLeastRecent == null) {
+            mLeastRecent = sprite;
+        }
+    }
+
+    private void unlink(Sprite sprite) {
+        if (sprite.newer != null) {
+            sprite.newer.older = sprite.older;
+        } else {
+            mMostRecent = sprite.older;
+        }
+        if (sprite.older != null) {
+            sprite.older.newer = sprite.newer;
+        } else {
+            mLeastRecent = sprite.newer;
+        }
+        sprite.newer = null;
+        sprite.older = null;
+    }
+}
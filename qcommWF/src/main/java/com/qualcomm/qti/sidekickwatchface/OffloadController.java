@@ -6,33 +6,363 @@
 
 package com.qualcomm.qti.sidekickwatchface;
 
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
 import android.graphics.PointF;
+import com.google.android.clockwork.decomposablewatchface.DecompositionBudget;
+import com.google.android.clockwork.decomposablewatchface.DecompositionCodec;
 import com.google.android.clockwork.decomposablewatchface.ImageComponent;
 import com.google.android.clockwork.decomposablewatchface.FontComponent;
 import com.google.android.clockwork.decomposablewatchface.NumberComponent;
+import com.google.android.clockwork.decomposablewatchface.TwmProfile;
 import com.google.android.clockwork.decomposablewatchface.WatchFaceDecomposition;
 import android.util.Log;
-//import com.google.android.clockwork.sidekick.SidekickManager;
+import com.google.android.clockwork.sidekick.ISidekickService;
 //import com.google.android.clockwork.watchface.decomposed.ImageComponentBridge;
 //import com.google.android.clockwork.watchface.decomposed.FontComponentBridge;
 //import com.google.android.clockwork.watchface.decomposed.NumberComponentBridge;
 //import com.google.android.clockwork.watchface.decomposed.WatchFaceBridge;
 
-public class OffloadController {
+/**
+ * Offloads a watch face's decomposition to the sidekick. Calls return at once; the work is done
+ * by a {@link SidekickClient} on its own thread.
+ *
+ * <p>With a {@link DecompositionBudget} set, each decomposition is degraded as far as the budget
+ * needs before it is sent, and if the sidekick still rejects it with {@link
+ * SidekickClient.Result#INSUFFICIENT_SPACE}, it is sent again one step further down the ladder,
+ * until it lands or the ladder runs out.
+ *
+ * <p>A controller created for a named face also remembers, in its app's preferences, what the
+ * sidekick was last sent successfully in each mode: which face, a {@link
+ * DecompositionCodec#fingerprint} of the complete decomposition, and how far it was degraded. The
+ * sidekick keeps its watch face across restarts of this process, so {@link #isAlreadyOffloaded}
+ * lets a new engine skip clearing and resending a face the sidekick still shows. There is one
+ * record per mode rather than per face, because the sidekick holds one face at a time: sending
+ * another face, or clearing, replaces it.
+ *
+ * <p>With {@link #setDerivesTwmProfile} on, every normal decomposition sent is followed by its
+ * {@link TwmProfile}, so that the sidekick always has a traditional watch mode face to fall back
+ * to without the application processor waking to send one.
+ */
+public class OffloadController implements SidekickClient.Listener {
+
+  private static final String TAG = "OffloadController";
+
+  /**
+   * The receiver memory, as {@link DecompositionBudget} estimates it, that a watch face may take.
+   * The sidekick does not report its free space; this errs low, and a sidekick that still runs out
+   * of space only costs a retry one step further degraded.
+   */
+  public static final long DEFAULT_BUDGET_BYTES = 256 * 1024;
+
+  private static final String PREFS_NAME = "offload_controller";
+  private static final String KEY_FACE = ".face";
+  private static final String KEY_FINGERPRINT = ".fingerprint";
+  private static final String KEY_LEVEL = ".level";
+  private static final String KEY_INSTALL_TIME = ".install_time";
+  private static final String MODE_NORMAL = "normal";
+  private static final String MODE_TWM = "twm";
+
+  private final SidekickClient client;
+  /** Where the last sends are remembered, or null if they are not. */
+  private final SharedPreferences prefs;
+  private final String faceName;
+  /** When this build of the app was installed; resource ids in fingerprints only hold in it. */
+  private final long installTime;
+  private final OffloadTelemetry telemetry;
 
-//  private final SidekickManager sidekickManager;
+  private volatile Context context;
+  private volatile DecompositionBudget budget;
+  private volatile boolean derivesTwmProfile;
+  private volatile int[] twmExcludedIds = new int[0];
 
-  public OffloadController() {
-//    sidekickManager = new SidekickManager();
+  // Only used on the client's thread.
+  private final BudgetedSend normalSend = new BudgetedSend();
+  private final BudgetedSend twmSend = new BudgetedSend();
+  /**
+   * The fingerprint of what the last traditional watch mode profile was derived from, or null if
+   * it has to be derived again.
+   */
+  private Long twmSourceFingerprint;
+
+  /** The latest send of one kind and how far it was degraded. */
+  private static class BudgetedSend {
+    WatchFaceDecomposition requested;
+    WatchFaceDecomposition sent;
+    int level;
   }
-//
-  public void sendDecomposition(WatchFaceDecomposition decomposition, boolean forTWM) {
-//    sidekickManager.sendWatchFace(convertDecomposition(decomposition), forTWM);
-    Log.i("zhao11","forTWM:"+forTWM);
+
+  /**
+   * Creates a controller for the system's sidekick that remembers what it sends as {@code
+   * faceName}, which must be unique among the app's faces. On devices without a sidekick,
+   * requests fail with {@link SidekickClient.Result#SERVICE_UNAVAILABLE}, unless the app was built
+   * with {@code -PfakeSidekick}, in which case they go to a {@link FakeSidekickService} so that the
+   * rest of the path still runs.
+   */
+  public OffloadController(Context context, String faceName) {
+    this(new SidekickClient(getServiceOrFake()), context.getApplicationContext(), faceName);
   }
-//
+
+  /** Creates a controller that sends through {@code client} and remembers nothing. */
+  public OffloadController(SidekickClient client) {
+    this(client, null, null);
+  }
+
+  private OffloadController(SidekickClient client, Context context, String faceName) {
+    this.client = client;
+    this.context = context;
+    this.faceName = faceName;
+    // Unnamed controllers keep their figures to themselves rather than mix them with a face's.
+    telemetry = faceName != null
+        ? OffloadTelemetry.forFace(faceName) : new OffloadTelemetry("unnamed");
+    client.setTelemetry(telemetry);
+    if (context != null) {
+      prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+      installTime = getInstallTime(context);
+    } else {
+      prefs = null;
+      installTime = 0;
+    }
+    client.setListener(this);
+  }
+
+  private static long getInstallTime(Context context) {
+    try {
+      return context.getPackageManager().getPackageInfo(context.getPackageName(), 0)
+          .lastUpdateTime;
+    } catch (PackageManager.NameNotFoundException e) {
+      return 0;
+    }
+  }
+
+  private static ISidekickService getServiceOrFake() {
+    ISidekickService service = SidekickClient.getSystemService();
+    if (service == null && BuildConfig.FAKE_SIDEKICK) {
+      Log.d(TAG, "No sidekick service, offloading to a local stand-in");
+      service = new FakeSidekickService();
+    }
+    return service;
+  }
+
+  /** Returns the client that makes this controller's calls. */
+  public SidekickClient getClient() {
+    return client;
+  }
+
+  /** Returns where this controller's sends, and the engine's offload timings, are recorded. */
+  public OffloadTelemetry getTelemetry() {
+    return telemetry;
+  }
+
+  /**
+   * Sets the budget that decompositions are degraded to fit, or null to send them as they are.
+   * Applies from the next send.
+   */
+  public void setBudget(Context context, DecompositionBudget budget) {
+    this.context = context.getApplicationContext();
+    this.budget = budget;
+  }
+
+  /**
+   * Sets whether each normal decomposition sent is followed by its {@link TwmProfile}. Applies
+   * from the next send.
+   */
+  public void setDerivesTwmProfile(Context context, boolean derivesTwmProfile) {
+    this.context = context.getApplicationContext();
+    this.derivesTwmProfile = derivesTwmProfile;
+  }
+
+  /**
+   * Leaves the components with the given ids, and any changes to them, out of the {@link
+   * TwmProfile}. Applies from the next send.
+   */
+  public void setTwmExcludedIds(int... componentIds) {
+    twmExcludedIds = componentIds.clone();
+  }
+
+  /**
+   * Sends {@code decomposition}, a complete watch face, to the sidekick. For the normal watch face
+   * only the components that changed since the last successful send are transferred; traditional
+   * watch mode always takes a complete watch face. A send that is still waiting when a newer one
+   * arrives is dropped.
+   */
+  public void sendDecomposition(final WatchFaceDecomposition decomposition, final boolean forTWM) {
+    if (budget == null) {
+      send(decomposition, forTWM);
+    } else {
+      // Fitting loads the images, so it runs on the client's thread too.
+      client.postDelayed(new Runnable() {
+        @Override
+        public void run() {
+          sendWithinBudget(forTWM ? twmSend : normalSend, decomposition, forTWM, 0);
+        }
+      }, 0);
+    }
+    if (!forTWM && derivesTwmProfile) {
+      sendTwmProfile(decomposition);
+    }
+  }
+
+  /**
+   * Returns whether the sidekick still shows {@code decomposition}, a complete watch face, as this
+   * face last sent it: the remembered fingerprint matches and the sidekick reports it is ready to
+   * display. If so, the controller carries on from that send, so the next one is a partial update
+   * and is degraded as far as that one was. Only call this on the client's thread.
+   */
+  public boolean isAlreadyOffloaded(WatchFaceDecomposition decomposition, boolean forTWM) {
+    if (prefs == null) {
+      return false;
+    }
+    String mode = forTWM ? MODE_TWM : MODE_NORMAL;
+    if (!faceName.equals(prefs.getString(mode + KEY_FACE, null))
+        || prefs.getLong(mode + KEY_INSTALL_TIME, -1) != installTime
+        || prefs.getLong(mode + KEY_FINGERPRINT, 0)
+            != DecompositionCodec.fingerprint(decomposition)
+        || !client.readyToDisplay()) {
+      return false;
+    }
+    int level = prefs.getInt(mode + KEY_LEVEL, 0);
+    WatchFaceDecomposition held = decomposition;
+    if (level > 0) {
+      if (budget == null || level > DecompositionBudget.getMaxLevel()) {
+        return false;
+      }
+      held = budget.degrade(context, decomposition, level);
+    }
+    BudgetedSend state = forTWM ? twmSend : normalSend;
+    state.requested = decomposition;
+    state.sent = held;
+    state.level = level;
+    if (!forTWM) {
+      client.assumeSent(held);
+    }
+    return true;
+  }
+
+  /**
+   * Derives the {@link TwmProfile} of {@code decomposition}, a complete normal watch face, and
+   * sends it unless the sidekick already holds it. Does nothing unless {@link
+   * #setDerivesTwmProfile} is on.
+   */
+  public void sendTwmProfile(final WatchFaceDecomposition decomposition) {
+    if (!derivesTwmProfile) {
+      return;
+    }
+    // Posted after the normal send, so that deriving the profile does not hold that up.
+    client.postDelayed(new Runnable() {
+      @Override
+      public void run() {
+        WatchFaceDecomposition source = TwmProfile.exclude(decomposition, twmExcludedIds);
+        // Comparing fingerprints is far cheaper than deriving, and skips the normal sends that
+        // only change excluded components.
+        long fingerprint = DecompositionCodec.fingerprint(source);
+        if (twmSourceFingerprint != null && twmSourceFingerprint == fingerprint) {
+          return;
+        }
+        WatchFaceDecomposition profile = TwmProfile.derive(context, source);
+        // Only now, so that a profile that failed to derive is derived again on the next send.
+        twmSourceFingerprint = fingerprint;
+        if (isAlreadyOffloaded(profile, true)) {
+          Log.d(TAG, "Sidekick already holds this traditional watch mode profile");
+          return;
+        }
+        sendDecomposition(profile, true);
+      }
+    }, 0);
+  }
+
+  private void send(WatchFaceDecomposition decomposition, boolean forTWM) {
+    if (forTWM) {
+      client.sendWatchFaceForTWM(decomposition);
+    } else {
+      client.sendWatchFace(decomposition);
+    }
+  }
+
+  private void sendWithinBudget(BudgetedSend state, WatchFaceDecomposition decomposition,
+      boolean forTWM, int minLevel) {
+    DecompositionBudget.Fit fit = budget.fit(context, decomposition, minLevel);
+    if (fit.getLevel() > 0) {
+      Log.i(TAG, "Degraded to level " + fit.getLevel() + " ("
+          + DecompositionBudget.getStep(fit.getLevel()) + "), estimated "
+          + fit.getEstimatedBytes() + " of " + budget.getBudgetBytes() + " bytes");
+    }
+    state.requested = decomposition;
+    state.sent = fit.getDecomposition();
+    state.level = fit.getLevel();
+    send(state.sent, forTWM);
+  }
+
+  @Override
+  public void onResult(SidekickClient.Operation operation, WatchFaceDecomposition decomposition,
+      SidekickClient.Result result) {
+    if (operation == SidekickClient.Operation.CLEAR) {
+      // Even a failed clear may have wiped the sidekick.
+      forget(MODE_NORMAL);
+      forget(MODE_TWM);
+      twmSourceFingerprint = null;
+      return;
+    }
+    boolean forTWM = operation == SidekickClient.Operation.SEND_FOR_TWM;
+    BudgetedSend state = forTWM ? twmSend : normalSend;
+    if (forTWM && !result.isSuccess()) {
+      // Derive and send the profile again with the next normal send, even if it is unchanged.
+      twmSourceFingerprint = null;
+    }
+    if (budget == null) {
+      remember(forTWM, result, decomposition, 0);
+    } else if (decomposition == state.sent) {
+      remember(forTWM, result, state.requested, state.level);
+    }
+    if (result != SidekickClient.Result.INSUFFICIENT_SPACE || budget == null) {
+      return;
+    }
+    if (decomposition != state.sent) {
+      // A newer decomposition has been fitted since; it will be sent in its turn.
+      return;
+    }
+    if (state.level >= DecompositionBudget.getMaxLevel()) {
+      Log.e(TAG, "Decomposition does not fit the sidekick even fully degraded");
+      return;
+    }
+    Log.w(TAG, "Sidekick out of space at level " + state.level + ", retrying");
+    sendWithinBudget(state, state.requested, forTWM, state.level + 1);
+  }
+
+  private void remember(boolean forTWM, SidekickClient.Result result,
+      WatchFaceDecomposition requested, int level) {
+    String mode = forTWM ? MODE_TWM : MODE_NORMAL;
+    if (!result.isSuccess()) {
+      forget(mode);
+    } else if (prefs != null && result != SidekickClient.Result.UNCHANGED) {
+      prefs.edit()
+          .putString(mode + KEY_FACE, faceName)
+          .putLong(mode + KEY_FINGERPRINT, DecompositionCodec.fingerprint(requested))
+          .putInt(mode + KEY_LEVEL, level)
+          .putLong(mode + KEY_INSTALL_TIME, installTime)
+          .apply();
+    }
+  }
+
+  private void forget(String mode) {
+    if (prefs != null) {
+      prefs.edit()
+          .remove(mode + KEY_FACE)
+          .remove(mode + KEY_FINGERPRINT)
+          .remove(mode + KEY_LEVEL)
+          .remove(mode + KEY_INSTALL_TIME)
+          .apply();
+    }
+  }
+
   public void clearDecomposition() {
-//    sidekickManager.clearWatchFace();
+    client.clearWatchFace();
+  }
+
+  /** Stops the controller's thread. Call from the engine's {@code onDestroy}. */
+  public void release() {
+    client.shutdown();
   }
 //
 //  private ImageComponentBridge convertImageComponent(ImageComponent component) {
@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.sidekickwatchface;
+
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.android.clockwork.decomposablewatchface.WatchFaceDecomposition;
+
+/**
+ * Decides when an engine first offloads its decomposition.
+ *
+ * <p>The scheduler asks once whether a sidekick exists. If none does, as on units whose sidekick
+ * service has no HAL, it stops there: the decomposition is never built and nothing is sent or
+ * polled. Otherwise it builds the decomposition and asks the {@link OffloadController} whether the
+ * sidekick already shows it, as it will when this process restarts with the face unchanged; if
+ * so, nothing is cleared or sent, apart from a traditional watch mode profile the sidekick does
+ * not hold yet. If the source builds no decomposition, the sidekick is only cleared. Otherwise it
+ * polls {@code readyToDisplay()}, waiting {@link #FIRST_POLL_DELAY_MS} and then twice as long each
+ * time, up to {@link #MAX_POLL_DELAY_MS}. It sends as soon as the sidekick reports ready, and at
+ * the latest once {@link #MAX_WAIT_MS} have passed, because a sidekick that holds no watch face
+ * may not report ready until it is sent one. The sidekick is not cleared first, which would make
+ * it report not ready for the whole wait; the first send replaces whatever face it holds.
+ *
+ * <p>Everything, building the decomposition included, runs on the {@link SidekickClient}'s
+ * thread. Build times, and the time from the scheduler's creation to the sidekick first reporting
+ * ready, go to the controller's {@link OffloadTelemetry}; create the scheduler in the engine's
+ * {@code onCreate} so that the latter covers the engine's start.
+ */
+public class OffloadScheduler {
+
+    private static final String TAG = "OffloadScheduler";
+
+    static final long FIRST_POLL_DELAY_MS = 50;
+    static final long MAX_POLL_DELAY_MS = 400;
+    static final long MAX_WAIT_MS = 1000;
+
+    /** Builds the decomposition to offload, only once a sidekick is known to exist. */
+    public interface DecompositionSource {
+        /** Returns the complete decomposition, or null if it cannot be built. */
+        WatchFaceDecomposition buildDecomposition();
+    }
+
+    private final OffloadController mOffloadController;
+    private final long mCreatedMs = SystemClock.elapsedRealtime();
+    private volatile boolean mCancelled;
+
+    // Only used on the client's thread.
+    private DecompositionSource mSource;
+    /** Whether the first offload has been sent, or found not to be needed. */
+    private boolean mStarted;
+    /** Whether the source changed while the first offload was waiting for the sidekick. */
+    private boolean mSourceChanged;
+
+    public OffloadScheduler(OffloadController offloadController) {
+        mOffloadController = offloadController;
+    }
+
+    /** Starts offloading the decomposition built by {@code source}. Returns at once. */
+    public void start(final DecompositionSource source) {
+        mOffloadController.getClient().postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (mCancelled) {
+                    return;
+                }
+                mSource = source;
+                if (!mOffloadController.getClient().sidekickExists()) {
+                    Log.i(TAG, "No sidekick, not offloading");
+                    return;
+                }
+                WatchFaceDecomposition decomposition = build();
+                if (decomposition == null) {
+                    // Nothing to offload, but the sidekick must not go on showing another face.
+                    mOffloadController.clearDecomposition();
+                    mStarted = true;
+                    return;
+                }
+                if (mOffloadController.isAlreadyOffloaded(decomposition, false)) {
+                    Log.i(TAG, "Sidekick already shows this decomposition, not resending");
+                    mOffloadController.getTelemetry().recordTimeToReady(
+                            SystemClock.elapsedRealtime() - mCreatedMs);
+                    mStarted = true;
+                    mOffloadController.sendTwmProfile(decomposition);
+                    return;
+                }
+                schedulePoll(decomposition, SystemClock.elapsedRealtime(), FIRST_POLL_DELAY_MS);
+            }
+        }, 0);
+    }
+
+    /**
+     * Offloads the decomposition again, after what the source builds has changed. Returns at once.
+     * Before the first offload has been sent, this only makes sure it is built afresh.
+     */
+    public void onSourceChanged() {
+        mOffloadController.getClient().postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (mCancelled || mSource == null) {
+                    return;
+                }
+                if (!mStarted) {
+                    mSourceChanged = true;
+                    return;
+                }
+                WatchFaceDecomposition decomposition = build();
+                if (decomposition != null) {
+                    mOffloadController.sendDecomposition(decomposition, false);
+                }
+            }
+        }, 0);
+    }
+
+    /** Stops a pending offload. A send that has already been queued still goes out. */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    private void schedulePoll(
+            final WatchFaceDecomposition decomposition, final long startMs, final long delayMs) {
+        mOffloadController.getClient().postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                poll(decomposition, startMs, delayMs);
+            }
+        }, delayMs);
+    }
+
+    private void poll(WatchFaceDecomposition decomposition, long startMs, long delayMs) {
+        if (mCancelled) {
+            return;
+        }
+        long waitedMs = SystemClock.elapsedRealtime() - startMs;
+        boolean ready = mOffloadController.getClient().readyToDisplay();
+        if (!ready && waitedMs < MAX_WAIT_MS) {
+            schedulePoll(decomposition, startMs, Math.min(delayMs * 2, MAX_POLL_DELAY_MS));
+            return;
+        }
+        Log.d(TAG, (ready ? "Sidekick ready" : "Sidekick not ready") + " after " + waitedMs
+                + "ms, sending");
+        OffloadTelemetry telemetry = mOffloadController.getTelemetry();
+        if (ready) {
+            telemetry.recordTimeToReady(SystemClock.elapsedRealtime() - mCreatedMs);
+        } else {
+            telemetry.recordReadyTimeout();
+        }
+        mStarted = true;
+        if (mSourceChanged) {
+            decomposition = build();
+            if (decomposition == null) {
+                return;
+            }
+        }
+        mOffloadController.sendDecomposition(decomposition, false);
+    }
+
+    /** Builds the source's decomposition and records how long that took. */
+    private WatchFaceDecomposition build() {
+        long start = SystemClock.elapsedRealtime();
+        WatchFaceDecomposition decomposition = mSource.buildDecomposition();
+        if (decomposition != null) {
+            mOffloadController.getTelemetry().recordBuild(SystemClock.elapsedRealtime() - start);
+        }
+        return decomposition;
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.sidekickwatchface;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts what offloading costs a face: how long decompositions take to build, how many bytes the
+ * sends pass to the sidekick and how much of that is image data, how long the sidekick takes to answer each call and with what result, and how
+ * long after the engine was created the sidekick first reported ready.
+ *
+ * <p>Values go into {@link Histogram}s with fixed buckets, so recording one is a short scan and
+ * an increment, and nothing is allocated. There is one telemetry per face name for the life of
+ * the process, so that the figures add up across engines. Print them with {@code adb shell
+ * dumpsys activity service com.qualcomm.qti.sidekickwatchface}, which reaches {@link #dumpAll}
+ * through the watch face services' {@code dump}.
+ */
+public class OffloadTelemetry {
+
+    /** Bucket upper bounds for times, in milliseconds. */
+    static final long[] TIME_BUCKETS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+    /** Bucket upper bounds for sizes, in bytes. */
+    static final long[] SIZE_BUCKETS_BYTES = {
+        1 << 10, 4 << 10, 16 << 10, 64 << 10, 256 << 10, 1 << 20, 4 << 20};
+
+    private static final Map<String, OffloadTelemetry> sByFace = new LinkedHashMap<>();
+
+    private final String mName;
+    private final Histogram mBuildMs = new Histogram(TIME_BUCKETS_MS);
+    private final Histogram mPayloadBytes = new Histogram(SIZE_BUCKETS_BYTES);
+    private final Histogram mImageBytes = new Histogram(SIZE_BUCKETS_BYTES);
+    private final Histogram[] mCallMs = new Histogram[SidekickClient.Operation.values().length];
+    private final Histogram mTimeToReadyMs = new Histogram(TIME_BUCKETS_MS);
+    /** Counts by operation and result. Guarded by itself. */
+    private final long[][] mResults = new long[SidekickClient.Operation.values().length]
+            [SidekickClient.Result.values().length];
+    private long mReadyTimeouts;
+
+    OffloadTelemetry(String name) {
+        mName = name;
+        for (int i = 0; i < mCallMs.length; i++) {
+            mCallMs[i] = new Histogram(TIME_BUCKETS_MS);
+        }
+    }
+
+    /** Returns the telemetry of the face called {@code faceName}, creating it if need be. */
+    public static OffloadTelemetry forFace(String faceName) {
+        synchronized (sByFace) {
+            OffloadTelemetry telemetry = sByFace.get(faceName);
+            if (telemetry == null) {
+                telemetry = new OffloadTelemetry(faceName);
+                sByFace.put(faceName, telemetry);
+            }
+            return telemetry;
+        }
+    }
+
+    /** Prints the telemetry of every face. */
+    public static void dumpAll(PrintWriter writer) {
+        synchronized (sByFace) {
+            for (OffloadTelemetry telemetry : sByFace.values()) {
+                telemetry.dump(writer);
+            }
+        }
+    }
+
+    /** Records the time taken to build a complete decomposition. */
+    public void recordBuild(long durationMs) {
+        mBuildMs.record(durationMs);
+    }
+
+    /**
+     * Records the bytes a send passes across the binder: the parcelled decomposition, or the
+     * encoded one when its images go in a shared file.
+     */
+    public void recordPayloadBytes(long bytes) {
+        mPayloadBytes.record(bytes);
+    }
+
+    /**
+     * Records the bytes of image data a send hands to the sidekick, whether parcelled with each
+     * component that shows it or written once to a shared file.
+     */
+    public void recordImageBytes(long bytes) {
+        mImageBytes.record(bytes);
+    }
+
+    /** Records the time the sidekick took to answer an {@code operation}. */
+    public void recordCall(SidekickClient.Operation operation, long durationMs) {
+        mCallMs[operation.ordinal()].record(durationMs);
+    }
+
+    /** Records the result of an {@code operation}, whether or not it called the sidekick. */
+    public void recordResult(SidekickClient.Operation operation, SidekickClient.Result result) {
+        synchronized (mResults) {
+            mResults[operation.ordinal()][result.ordinal()]++;
+        }
+    }
+
+    /** Records the time from the engine's creation to the sidekick first reporting ready. */
+    public void recordTimeToReady(long durationMs) {
+        mTimeToReadyMs.record(durationMs);
+    }
+
+    /** Records that the sidekick was not ready when the engine stopped waiting for it. */
+    public void recordReadyTimeout() {
+        synchronized (mResults) {
+            mReadyTimeouts++;
+        }
+    }
+
+    public Histogram getBuildMs() {
+        return mBuildMs;
+    }
+
+    public Histogram getPayloadBytes() {
+        return mPayloadBytes;
+    }
+
+    public Histogram getImageBytes() {
+        return mImageBytes;
+    }
+
+    public Histogram getCallMs(SidekickClient.Operation operation) {
+        return mCallMs[operation.ordinal()];
+    }
+
+    public Histogram getTimeToReadyMs() {
+        return mTimeToReadyMs;
+    }
+
+    public long getResultCount(SidekickClient.Operation operation, SidekickClient.Result result) {
+        synchronized (mResults) {
+            return mResults[operation.ordinal()][result.ordinal()];
+        }
+    }
+
+    /** Prints this face's histograms and result counts. */
+    public void dump(PrintWriter writer) {
+        writer.println("Offload telemetry for " + mName + ":");
+        mBuildMs.dump(writer, "  build", "ms");
+        mPayloadBytes.dump(writer, "  payload", "B");
+        mImageBytes.dump(writer, "  images", "B");
+        for (SidekickClient.Operation operation : SidekickClient.Operation.values()) {
+            mCallMs[operation.ordinal()].dump(writer, "  " + operation + " call", "ms");
+        }
+        mTimeToReadyMs.dump(writer, "  create to ready", "ms");
+        synchronized (mResults) {
+            writer.println("  ready timeouts: " + mReadyTimeouts);
+            for (SidekickClient.Operation operation : SidekickClient.Operation.values()) {
+                StringBuilder line = new StringBuilder("  " + operation + " results:");
+                for (SidekickClient.Result result : SidekickClient.Result.values()) {
+                    long count = mResults[operation.ordinal()][result.ordinal()];
+                    if (count > 0) {
+                        line.append(' ').append(result).append('=').append(count);
+                    }
+                }
+                writer.println(line);
+            }
+        }
+    }
+
+    /**
+     * Counts values into fixed buckets. Bucket {@code i} holds the values no greater than the
+     * {@code i}th upper bound and greater than the one before; a last bucket holds everything
+     * larger.
+     */
+    public static final class Histogram {
+        private final long[] mUpperBounds;
+        // Guarded by this.
+        private final long[] mCounts;
+        private long mCount;
+        private long mSum;
+        private long mMax;
+
+        Histogram(long[] upperBounds) {
+            mUpperBounds = upperBounds;
+            mCounts = new long[upperBounds.length + 1];
+        }
+
+        public synchronized void record(long value) {
+            int bucket = 0;
+            while (bucket < mUpperBounds.length && value > mUpperBounds[bucket]) {
+                bucket++;
+            }
+            mCounts[bucket]++;
+            mCount++;
+            mSum += value;
+            mMax = Math.max(mMax, value);
+        }
+
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        public synchronized long getMax() {
+            return mMax;
+        }
+
+        /** Returns the mean of the values recorded, or 0 if none were. */
+        public synchronized long getMean() {
+            return mCount == 0 ? 0 : mSum / mCount;
+        }
+
+        /** Returns the number of values in bucket {@code bucket}; see the class comment. */
+        public synchronized long getBucketCount(int bucket) {
+            return mCounts[bucket];
+        }
+
+        synchronized void dump(PrintWriter writer, String name, String unit) {
+            StringBuilder line = new StringBuilder(name).append(": n=").append(mCount);
+            if (mCount > 0) {
+                line.append(" mean=").append(mSum / mCount).append(unit)
+                        .append(" max=").append(mMax).append(unit);
+                for (int i = 0; i < mCounts.length; i++) {
+                    if (mCounts[i] == 0) {
+                        continue;
+                    }
+                    line.append(i < mUpperBounds.length ? " <=" + mUpperBounds[i]
+                            : " >" + mUpperBounds[mUpperBounds.length - 1]);
+                    line.append(unit).append(':').append(mCounts[i]);
+                }
+            }
+            writer.println(line);
+        }
+    }
+}
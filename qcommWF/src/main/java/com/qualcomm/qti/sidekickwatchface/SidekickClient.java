@@ -0,0 +1,552 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.sidekickwatchface;
+
+import android.content.Context;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.android.clockwork.decomposablewatchface.DecompositionCodec;
+import com.google.android.clockwork.decomposablewatchface.DecompositionDiff;
+import com.google.android.clockwork.decomposablewatchface.SharedImageFile;
+import com.google.android.clockwork.decomposablewatchface.WatchFaceDecomposition;
+import com.google.android.clockwork.sidekick.ISidekickService;
+import com.google.android.clockwork.sidekick.SidekickServiceConstants;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes the {@link ISidekickService} calls for an {@link OffloadController} on a background
+ * thread of its own, so that binder transactions, and the diffing and parceling that go with them,
+ * never run on the engine's main thread.
+ *
+ * <p>Requests are coalesced: each kind of request has a single pending slot, and a request that
+ * arrives while an earlier one of the same kind is still waiting replaces it. Only the newest
+ * watch face is ever sent. This is safe because callers always pass complete decompositions; the
+ * client itself computes the {@link DecompositionDiff} against the last watch face the sidekick
+ * accepted, at the time the request actually runs. A clear drops any sends that were waiting
+ * before it.
+ *
+ * <p>Results are mapped from the {@code SidekickServiceConstants.RESULT_*} codes to {@link
+ * Result} and reported to the {@link Listener} on the client's thread.
+ *
+ * <p>Receivers that implement {@link ISharedSidekickService} can be given to {@link
+ * #setSharedTransport}; normal watch faces are then sent with their image pixels in a {@link
+ * SharedImageFile} rather than inside the Binder transaction.
+ */
+public class SidekickClient {
+
+    private static final String TAG = "SidekickClient";
+
+    /** The requests a client makes. */
+    public enum Operation {
+        CLEAR,
+        SEND,
+        SEND_FOR_TWM,
+    }
+
+    /** The outcome of a request. */
+    public enum Result {
+        OK,
+        /** The decomposition matched the last one the sidekick accepted, so nothing was sent. */
+        UNCHANGED,
+        UNKNOWN_ERROR,
+        INVALID_ARGUMENT,
+        INSUFFICIENT_SPACE,
+        /** The sidekick service is missing or its process died. */
+        SERVICE_UNAVAILABLE;
+
+        /** Maps a {@code SidekickServiceConstants.RESULT_*} code to a result. */
+        public static Result fromCode(int code) {
+            switch (code) {
+                case SidekickServiceConstants.RESULT_OK:
+                    return OK;
+                case SidekickServiceConstants.RESULT_INVALID_ARGUMENT:
+                    return INVALID_ARGUMENT;
+                case SidekickServiceConstants.RESULT_INSUFFICIENT_SPACE:
+                    return INSUFFICIENT_SPACE;
+                default:
+                    return UNKNOWN_ERROR;
+            }
+        }
+
+        /** Returns whether the sidekick holds the requested watch face after this result. */
+        public boolean isSuccess() {
+            return this == OK || this == UNCHANGED;
+        }
+    }
+
+    /** Receives the outcome of each request, on the client's thread. */
+    public interface Listener {
+        /**
+         * Called when a request completes.
+         *
+         * @param decomposition the complete decomposition that was requested, or null for {@link
+         *     Operation#CLEAR}
+         */
+        void onResult(Operation operation, WatchFaceDecomposition decomposition, Result result);
+    }
+
+    private final ISidekickService service;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Object lock = new Object();
+
+    private Listener listener;
+    private volatile OffloadTelemetry telemetry;
+    private volatile ISharedSidekickService sharedTransport;
+    private volatile Context sharedContext;
+
+    // Guarded by lock.
+    private boolean pendingClear;
+    private WatchFaceDecomposition pendingWatchFace;
+    private WatchFaceDecomposition pendingTwmWatchFace;
+    private boolean drainScheduled;
+
+    // Only used on the client's thread.
+    /** The watch face the sidekick holds, or null if unknown. */
+    private WatchFaceDecomposition lastSentDecomposition;
+    /** Whether the sidekick exists, or null until asked. */
+    private Boolean sidekickExists;
+
+    /**
+     * @param service the sidekick to send to, or null if there is none, in which case every
+     *     request completes with {@link Result#SERVICE_UNAVAILABLE}
+     */
+    public SidekickClient(ISidekickService service) {
+        this.service = service;
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        }) {
+            @Override
+            protected void afterExecute(Runnable task, Throwable thrown) {
+                super.afterExecute(task, thrown);
+                logFailure(task);
+            }
+        };
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Logs what {@code task} threw, if anything. The executor runs every task inside a future,
+     * which keeps the exception to itself, so a task that fails would otherwise just stop.
+     */
+    private static void logFailure(Runnable task) {
+        if (!(task instanceof Future<?>) || !((Future<?>) task).isDone()) {
+            return;
+        }
+        try {
+            ((Future<?>) task).get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Task failed", e.getCause());
+        } catch (CancellationException e) {
+            // Dropped by shutdown; nothing went wrong.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the system's sidekick service, or null if this device has none. The service is not
+     * part of the public SDK, so it is looked up by name through {@code ServiceManager}.
+     */
+    public static ISidekickService getSystemService() {
+        try {
+            IBinder binder = (IBinder) Class.forName("android.os.ServiceManager")
+                    .getMethod("getService", String.class)
+                    .invoke(null, SidekickServiceConstants.NAME);
+            return binder != null ? ISidekickService.Stub.asInterface(binder) : null;
+        } catch (ReflectiveOperationException e) {
+            Log.w(TAG, "Cannot look up " + SidekickServiceConstants.NAME, e);
+            return null;
+        }
+    }
+
+    /** Sets the listener for request outcomes, or null for none. */
+    public void setListener(Listener listener) {
+        synchronized (lock) {
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Records the latency, payload size and result of each request in {@code telemetry}, or in
+     * nothing if null.
+     */
+    public void setTelemetry(OffloadTelemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Sends normal watch faces through {@code transport}, with their image pixels in a shared
+     * file, or through the sidekick service again if null. Traditional watch mode faces and clears
+     * always go to the sidekick service.
+     *
+     * @param context the context that loads the images and holds the shared files
+     */
+    public void setSharedTransport(Context context, ISharedSidekickService transport) {
+        sharedContext = context.getApplicationContext();
+        sharedTransport = transport;
+    }
+
+    /**
+     * Runs {@code task} on the client's thread after {@code delayMs}, in order with the client's
+     * requests. Tasks posted after {@link #shutdown} are dropped.
+     */
+    public void postDelayed(Runnable task, long delayMs) {
+        try {
+            executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shut down; nothing more should be sent.
+        }
+    }
+
+    /**
+     * Returns whether the sidekick exists and initialized without errors. The service is only
+     * asked once; its answer does not change while the system runs. Only call this on the
+     * client's thread, from a task posted with {@link #postDelayed}.
+     */
+    public boolean sidekickExists() {
+        if (sidekickExists == null) {
+            if (service == null) {
+                sidekickExists = false;
+            } else {
+                try {
+                    sidekickExists = service.sidekickExists();
+                } catch (RemoteException e) {
+                    Log.w(TAG, "sidekickExists failed", e);
+                    sidekickExists = false;
+                }
+            }
+        }
+        return sidekickExists;
+    }
+
+    /**
+     * Returns whether the sidekick is ready to take control of the display. Only call this on the
+     * client's thread, from a task posted with {@link #postDelayed}.
+     */
+    public boolean readyToDisplay() {
+        if (service == null) {
+            return false;
+        }
+        try {
+            return service.readyToDisplay();
+        } catch (RemoteException e) {
+            Log.w(TAG, "readyToDisplay failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Gives the sidekick control of the display, or takes it back. Returns false if the call did
+     * not reach the sidekick. Only call this on the client's thread.
+     */
+    public boolean setShouldControlDisplay(boolean shouldControlDisplay) {
+        if (service == null) {
+            return false;
+        }
+        try {
+            service.setShouldControlDisplay(shouldControlDisplay);
+            return true;
+        } catch (RemoteException e) {
+            Log.w(TAG, "setShouldControlDisplay failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Tells the sidekick whether the always-on ambient display is enabled. Returns false if the
+     * call did not reach the sidekick. Only call this on the client's thread.
+     */
+    public boolean setAmbientEnabled(boolean ambientEnabled) {
+        if (service == null) {
+            return false;
+        }
+        try {
+            service.setAmbientEnabled(ambientEnabled);
+            return true;
+        } catch (RemoteException e) {
+            Log.w(TAG, "setAmbientEnabled failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether the sidekick holds the last watch face this client sent, or one recorded
+     * with {@link #assumeSent}. Only call this on the client's thread.
+     */
+    public boolean hasSentWatchFace() {
+        return lastSentDecomposition != null;
+    }
+
+    /**
+     * Records that the sidekick already holds {@code decomposition}, as sent before this client
+     * was created, so that the next send only transfers what differs from it. Only call this on
+     * the client's thread, from a task posted with {@link #postDelayed}.
+     */
+    public void assumeSent(WatchFaceDecomposition decomposition) {
+        lastSentDecomposition = decomposition;
+    }
+
+    /**
+     * Queues {@code decomposition}, a complete watch face, to be sent. Only the components that
+     * differ from the last watch face the sidekick accepted are transferred.
+     */
+    public void sendWatchFace(WatchFaceDecomposition decomposition) {
+        synchronized (lock) {
+            pendingWatchFace = decomposition;
+            scheduleDrainLocked();
+        }
+    }
+
+    /** Queues {@code decomposition} to be sent for traditional watch mode. */
+    public void sendWatchFaceForTWM(WatchFaceDecomposition decomposition) {
+        synchronized (lock) {
+            pendingTwmWatchFace = decomposition;
+            scheduleDrainLocked();
+        }
+    }
+
+    /** Queues a reset of the sidekick, dropping any sends that have not started yet. */
+    public void clearWatchFace() {
+        synchronized (lock) {
+            pendingClear = true;
+            pendingWatchFace = null;
+            pendingTwmWatchFace = null;
+            scheduleDrainLocked();
+        }
+    }
+
+    /**
+     * Drops pending requests and posted tasks, and stops the client's thread once the current
+     * request ends.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            pendingClear = false;
+            pendingWatchFace = null;
+            pendingTwmWatchFace = null;
+        }
+        executor.shutdown();
+    }
+
+    private void scheduleDrainLocked() {
+        if (!drainScheduled && !executor.isShutdown()) {
+            drainScheduled = true;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean drained = false;
+                    try {
+                        drain();
+                        drained = true;
+                    } finally {
+                        if (!drained) {
+                            // The failed request is logged and dropped; later ones still run.
+                            synchronized (lock) {
+                                drainScheduled = false;
+                                if (pendingClear || pendingWatchFace != null
+                                        || pendingTwmWatchFace != null) {
+                                    scheduleDrainLocked();
+                                }
+                            }
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /** Runs pending requests, clear first, until none are left. */
+    private void drain() {
+        while (true) {
+            boolean clear;
+            WatchFaceDecomposition watchFace;
+            WatchFaceDecomposition twmWatchFace;
+            synchronized (lock) {
+                clear = pendingClear;
+                watchFace = pendingWatchFace;
+                twmWatchFace = pendingTwmWatchFace;
+                pendingClear = false;
+                pendingWatchFace = null;
+                pendingTwmWatchFace = null;
+                if (!clear && watchFace == null && twmWatchFace == null) {
+                    drainScheduled = false;
+                    return;
+                }
+            }
+            if (clear) {
+                report(Operation.CLEAR, null, runClear());
+            }
+            if (watchFace != null) {
+                report(Operation.SEND, watchFace, runSend(watchFace));
+            }
+            if (twmWatchFace != null) {
+                report(Operation.SEND_FOR_TWM, twmWatchFace, runSendForTwm(twmWatchFace));
+            }
+        }
+    }
+
+    private Result runClear() {
+        // Whatever the outcome, the sidekick's watch face is no longer known.
+        lastSentDecomposition = null;
+        if (service == null) {
+            return Result.SERVICE_UNAVAILABLE;
+        }
+        long start = SystemClock.elapsedRealtime();
+        try {
+            return Result.fromCode(service.clearWatchFace());
+        } catch (RemoteException e) {
+            Log.w(TAG, "clearWatchFace failed", e);
+            return Result.SERVICE_UNAVAILABLE;
+        } finally {
+            recordCall(Operation.CLEAR, start);
+        }
+    }
+
+    private Result runSend(WatchFaceDecomposition decomposition) {
+        // Only the fake applies added components and deletions; the system sidekick can only
+        // replace the components it holds, so any change to their ids is sent as a whole face.
+        DecompositionDiff diff = DecompositionDiff.compute(
+                lastSentDecomposition, decomposition, service instanceof FakeSidekickService);
+        if (diff.isEmpty()) {
+            Log.d(TAG, "Decomposition unchanged, nothing to send");
+            return Result.UNCHANGED;
+        }
+        if (service == null) {
+            return Result.SERVICE_UNAVAILABLE;
+        }
+        Log.d(TAG, "Sending " + diff.getChangedCount() + " components, deleting "
+                + diff.getDeletedCount() + ", replace: " + diff.shouldReplace());
+        Result result;
+        long start = SystemClock.elapsedRealtime();
+        ISharedSidekickService transport = sharedTransport;
+        try {
+            if (transport != null) {
+                result = sendShared(transport, diff.getUpdate(), diff.shouldReplace());
+            } else {
+                // Image pixels are parcelled once per component that shows them.
+                recordParcelledBytes(diff.getUpdate());
+                recordImageBytes(diff.getUpdate().getImagePool().getReferencedByteCount());
+                result = Result.fromCode(
+                        service.sendWatchFace(diff.getUpdate(), diff.shouldReplace()));
+            }
+        } catch (RemoteException e) {
+            Log.w(TAG, "sendWatchFace failed", e);
+            result = Result.SERVICE_UNAVAILABLE;
+        }
+        recordCall(Operation.SEND, start);
+        Log.d(TAG, (transport != null ? "sendWatchFaceShared: " : "sendWatchFace: ") + result
+                + " in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        // After a failed update the sidekick may hold part of it, so the next send replaces the
+        // whole watch face.
+        lastSentDecomposition = result.isSuccess() ? decomposition : null;
+        return result;
+    }
+
+    private Result sendShared(ISharedSidekickService transport, WatchFaceDecomposition update,
+            boolean shouldReplace) throws RemoteException {
+        Context context = sharedContext;
+        try (SharedImageFile pixels =
+                SharedImageFile.write(context, update, context.getCacheDir())) {
+            byte[] payload = DecompositionCodec.encode(update, pixels);
+            recordPayloadBytes(payload.length);
+            recordImageBytes(pixels.getByteCount());
+            return Result.fromCode(transport.sendWatchFaceShared(
+                    payload, pixels.getFileDescriptor(), shouldReplace));
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write shared images", e);
+            return Result.UNKNOWN_ERROR;
+        }
+    }
+
+    private Result runSendForTwm(WatchFaceDecomposition decomposition) {
+        if (service == null) {
+            return Result.SERVICE_UNAVAILABLE;
+        }
+        recordParcelledBytes(decomposition);
+        recordImageBytes(decomposition.getImagePool().getReferencedByteCount());
+        long start = SystemClock.elapsedRealtime();
+        try {
+            return Result.fromCode(service.sendWatchFaceForTWM(decomposition));
+        } catch (RemoteException e) {
+            Log.w(TAG, "sendWatchFaceForTWM failed", e);
+            return Result.SERVICE_UNAVAILABLE;
+        } finally {
+            recordCall(Operation.SEND_FOR_TWM, start);
+        }
+    }
+
+    private void recordCall(Operation operation, long startMs) {
+        OffloadTelemetry telemetry = this.telemetry;
+        if (telemetry != null) {
+            telemetry.recordCall(operation, SystemClock.elapsedRealtime() - startMs);
+        }
+    }
+
+    private void recordPayloadBytes(long bytes) {
+        OffloadTelemetry telemetry = this.telemetry;
+        if (telemetry != null) {
+            telemetry.recordPayloadBytes(bytes);
+        }
+    }
+
+    /**
+     * Records the size of the parcel {@code decomposition} is sent in. Parcelling it again costs
+     * about as much as the send's own, so it is only done while telemetry is on.
+     */
+    private void recordParcelledBytes(WatchFaceDecomposition decomposition) {
+        if (telemetry == null) {
+            return;
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            decomposition.writeToParcel(parcel, 0);
+            recordPayloadBytes(parcel.dataSize());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private void recordImageBytes(long bytes) {
+        OffloadTelemetry telemetry = this.telemetry;
+        if (telemetry != null) {
+            telemetry.recordImageBytes(bytes);
+        }
+    }
+
+    private void report(
+            Operation operation, WatchFaceDecomposition decomposition, Result result) {
+        if (!result.isSuccess()) {
+            Log.w(TAG, operation + " failed: " + result);
+        }
+        OffloadTelemetry telemetry = this.telemetry;
+        if (telemetry != null) {
+            telemetry.recordResult(operation, result);
+        }
+        Listener listener;
+        synchronized (lock) {
+            listener = this.listener;
+        }
+        if (listener != null) {
+            listener.onResult(operation, decomposition, result);
+        }
+    }
+}
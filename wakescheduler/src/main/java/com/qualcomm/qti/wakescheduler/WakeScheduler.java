@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2017 Qualcomm Technologies, Inc.
+ * All Rights Reserved.
+ * Confidential and Proprietary - Qualcomm Technologies, Inc.
+ */
+
+package com.qualcomm.qti.wakescheduler;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wakes an engine when something it shows next changes, rather than at a fixed rate.
+ *
+ * <p>The engine declares what on its face is animated, and how finely: a hand or digit that ticks
+ * each second, something that only changes each minute, a blinking element, or a hand that sweeps
+ * smoothly. Each declaration is a set of instants, aligned to the wall clock, at which pixels
+ * change. While the scheduler is active, it arms a single wakeup for the earliest instant to come,
+ * calls {@link Callback#onWake} then, and arms the next one. With nothing declared it never wakes,
+ * leaving the engine to {@code onTimeTick}.
+ *
+ * <p>Instants are counted from the epoch, so seconds and minutes fall on the local clock's
+ * boundaries in every time zone whose offset is whole minutes. Use it on the main thread.
+ */
+public class WakeScheduler {
+
+    /** Called at each instant something declared changes. */
+    public interface Callback {
+        /** Redraw the face, usually with {@code invalidate()}. */
+        void onWake();
+    }
+
+    /** The shortest interval at which a smooth sweep is redrawn. */
+    static final long MIN_SWEEP_INTERVAL_MS = 16;
+
+    private static final long SECOND_MS = 1000;
+    private static final long MINUTE_MS = 60 * SECOND_MS;
+
+    /** Changes at {@code offsetsMs} into every period of {@code periodMs} since the epoch. */
+    private static final class Element {
+        final long periodMs;
+        final long[] offsetsMs;
+
+        Element(long periodMs, long... offsetsMs) {
+            this.periodMs = periodMs;
+            this.offsetsMs = offsetsMs;
+        }
+    }
+
+    private final Callback mCallback;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<Element> mElements = new ArrayList<>();
+    private boolean mActive;
+    /** The instant the armed wakeup is for, or -1 if none is armed. */
+    private long mWakeMs = -1;
+
+    private final Runnable mWake = new Runnable() {
+        @Override
+        public void run() {
+            long wokenFor = mWakeMs;
+            mWakeMs = -1;
+            mCallback.onWake();
+            // The clock the handler waits on can run ahead of the wall clock, so never arm the
+            // instant just handled again.
+            arm(Math.max(System.currentTimeMillis(), wokenFor));
+        }
+    };
+
+    public WakeScheduler(Callback callback) {
+        mCallback = callback;
+    }
+
+    /** Declares something that changes on every second, such as a ticking second hand. */
+    public void addTickingSecond() {
+        add(new Element(SECOND_MS, 0));
+    }
+
+    /** Declares something that only changes on every minute. */
+    public void addMinute() {
+        add(new Element(MINUTE_MS, 0));
+    }
+
+    /**
+     * Declares something that shows for {@code onMs} and hides for {@code offMs}, starting to
+     * show on every multiple of {@code onMs + offMs}.
+     */
+    public void addBlink(long onMs, long offMs) {
+        add(new Element(onMs + offMs, 0, onMs));
+    }
+
+    /**
+     * Declares a hand that sweeps smoothly through a turn in {@code msPerTurn}, whose tip is
+     * {@code radiusPx} from its center. It is redrawn as often as its tip moves a pixel, but no
+     * more often than every {@link #MIN_SWEEP_INTERVAL_MS}.
+     */
+    public void addSweep(long msPerTurn, float radiusPx) {
+        long intervalMs = Math.round(msPerTurn / (2 * Math.PI * Math.max(radiusPx, 1f)));
+        add(new Element(Math.max(MIN_SWEEP_INTERVAL_MS, intervalMs), 0));
+    }
+
+    /** Forgets everything declared. */
+    public void clear() {
+        mElements.clear();
+        rearm();
+    }
+
+    /**
+     * Starts or stops waking. Engines are usually active while visible and not in ambient mode,
+     * when {@code onTimeTick} covers the minutes. Starting wakes the engine at once, so that it
+     * shows the current time straight away.
+     */
+    public void setActive(boolean active) {
+        boolean starting = active && !mActive;
+        mActive = active;
+        if (starting && !mElements.isEmpty()) {
+            mCallback.onWake();
+        }
+        rearm();
+    }
+
+    /**
+     * Returns the first instant after {@code nowMs} at which something declared changes, or -1 if
+     * nothing is declared.
+     */
+    public long getNextWakeMs(long nowMs) {
+        long next = -1;
+        for (int i = 0; i < mElements.size(); i++) {
+            Element element = mElements.get(i);
+            for (long offsetMs : element.offsetsMs) {
+                long candidate = Math.floorDiv(nowMs - offsetMs, element.periodMs)
+                        * element.periodMs + offsetMs + element.periodMs;
+                if (next < 0 || candidate < next) {
+                    next = candidate;
+                }
+            }
+        }
+        return next;
+    }
+
+    private void add(Element element) {
+        mElements.add(element);
+        rearm();
+    }
+
+    private void rearm() {
+        arm(System.currentTimeMillis());
+    }
+
+    private void arm(long afterMs) {
+        mHandler.removeCallbacks(mWake);
+        mWakeMs = -1;
+        if (!mActive) {
+            return;
+        }
+        long next = getNextWakeMs(afterMs);
+        if (next < 0) {
+            return;
+        }
+        mWakeMs = next;
+        mHandler.postDelayed(mWake, Math.max(0, next - System.currentTimeMillis()));
+    }
+}